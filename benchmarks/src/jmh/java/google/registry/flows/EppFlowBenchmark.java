@@ -0,0 +1,228 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.flows;
+
+import static com.google.common.base.Preconditions.checkState;
+import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.testing.DatastoreHelper.createHistoryEntryForEppResource;
+import static google.registry.testing.DatastoreHelper.createTld;
+import static google.registry.testing.DatastoreHelper.persistActiveContact;
+import static google.registry.testing.DatastoreHelper.persistActiveHost;
+import static google.registry.testing.DatastoreHelper.persistDomainWithDependentResources;
+import static google.registry.testing.DatastoreHelper.persistResource;
+import static google.registry.testing.TestDataHelper.loadFile;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableMap;
+import google.registry.flows.EppTestComponent.FakesAndMocksModule;
+import google.registry.model.contact.ContactResource;
+import google.registry.model.domain.DomainBase;
+import google.registry.model.eppcommon.ProtocolDefinition;
+import google.registry.model.eppoutput.EppOutput;
+import google.registry.model.ofy.Ofy;
+import google.registry.model.poll.PollMessage;
+import google.registry.monitoring.whitebox.EppMetric;
+import google.registry.testing.AppEngineRule;
+import google.registry.testing.FakeClock;
+import google.registry.testing.FakeHttpSession;
+import google.registry.testing.InjectRule;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for common EPP commands, run end to end through {@link EppController} and {@link
+ * FlowRunner} against an in-memory Datastore.
+ *
+ * <p>Each benchmark method exercises a single flow, so that throughput and, when run with the GC
+ * profiler, the allocation rate are reported per flow. Mutating commands (create and renew) are
+ * run as dry runs: the flow executes in full inside a transaction that is then rolled back, which
+ * keeps the Datastore contents, and hence the cost of each operation, constant across iterations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class EppFlowBenchmark {
+
+  private static final String TLD = "example";
+  private static final String EXISTING_DOMAIN = "existing." + TLD;
+  private static final DateTime NOW = DateTime.parse("2020-06-01T00:00:00Z");
+  private static final DateTime EXPIRATION_TIME = DateTime.parse("2021-01-01T00:00:00Z");
+
+  private final FakeClock clock = new FakeClock(NOW);
+  private final AppEngineRule appEngine =
+      AppEngineRule.builder().withDatastore().withTaskQueue().withClock(clock).build();
+  private final InjectRule inject = new InjectRule();
+  private final TransportCredentials credentials = new PasswordOnlyTransportCredentials();
+
+  private EppTestComponent component;
+  private SessionMetadata sessionMetadata;
+  private byte[] domainCreateXml;
+  private byte[] domainInfoXml;
+  private byte[] domainRenewXml;
+  private byte[] pollRequestXml;
+
+  /** A domain check command for a configurable number of labels. */
+  @State(Scope.Benchmark)
+  public static class DomainCheckCommand {
+
+    /** The number of domain names in the check command, up to the configured maximum. */
+    @Param({"1", "50"})
+    int numLabels;
+
+    byte[] xml;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      // Check the existing domain along with labels that have not been registered.
+      String names =
+          IntStream.range(0, numLabels)
+              .mapToObj(i -> i == 0 ? EXISTING_DOMAIN : String.format("check-%d.%s", i, TLD))
+              .map(name -> String.format("        <domain:name>%s</domain:name>", name))
+              .collect(Collectors.joining("\n"));
+      xml =
+          loadFile(
+                  EppFlowBenchmark.class,
+                  "domain_check_benchmark.xml",
+                  ImmutableMap.of("NAMES", names))
+              .getBytes(UTF_8);
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    appEngine.beforeEach(null);
+    // Keep transaction timestamps consistent with the time seen by the flows.
+    inject.setStaticField(Ofy.class, "clock", clock);
+    createTld(TLD);
+    ContactResource contact = persistActiveContact("jd1234");
+    persistActiveContact("sh8013");
+    persistActiveHost("ns1.example.net");
+    persistActiveHost("ns2.example.net");
+    DomainBase domain =
+        persistDomainWithDependentResources(
+            "existing", TLD, contact, NOW, NOW.minusMonths(6), EXPIRATION_TIME);
+    persistResource(
+        new PollMessage.OneTime.Builder()
+            .setClientId("TheRegistrar")
+            .setEventTime(NOW.minusDays(1))
+            .setMsg("Benchmark poll message.")
+            .setParent(createHistoryEntryForEppResource(domain))
+            .build());
+
+    sessionMetadata = new HttpSessionMetadata(new FakeHttpSession());
+    sessionMetadata.setClientId("TheRegistrar");
+    sessionMetadata.setServiceExtensionUris(ProtocolDefinition.getVisibleServiceExtensionUris());
+    component =
+        DaggerEppTestComponent.builder()
+            .fakesAndMocksModule(
+                FakesAndMocksModule.create(clock, EppMetric.builderForRequest(clock)))
+            .build();
+
+    domainCreateXml = loadXml("domain_create.xml", ImmutableMap.of("DOMAIN", "new." + TLD));
+    domainInfoXml = loadXml("domain_info.xml", ImmutableMap.of("DOMAIN", EXISTING_DOMAIN));
+    domainRenewXml =
+        loadXml(
+            "domain_renew.xml",
+            ImmutableMap.of(
+                "DOMAIN", EXISTING_DOMAIN, "EXPDATE", EXPIRATION_TIME.toString("yyyy-MM-dd"),
+                "YEARS", "1"));
+    pollRequestXml = loadXml("poll.xml", ImmutableMap.of());
+
+    // EppController turns every failure into an error response, so make sure that the benchmarks
+    // measure the success path rather than a misconfigured one.
+    verifySuccess(domainCreateXml, true);
+    verifySuccess(domainInfoXml, false);
+    verifySuccess(domainRenewXml, true);
+    verifySuccess(pollRequestXml, false);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    inject.afterEach(null);
+    appEngine.afterEach(null);
+  }
+
+  @Benchmark
+  public EppOutput domainCheck(DomainCheckCommand command) {
+    return runCommand(command.xml, false);
+  }
+
+  @Benchmark
+  public EppOutput domainInfo() {
+    return runCommand(domainInfoXml, false);
+  }
+
+  @Benchmark
+  public EppOutput domainCreate() {
+    return runCommand(domainCreateXml, true);
+  }
+
+  @Benchmark
+  public EppOutput domainRenew() {
+    return runCommand(domainRenewXml, true);
+  }
+
+  @Benchmark
+  public EppOutput pollRequest() {
+    return runCommand(pollRequestXml, false);
+  }
+
+  private EppOutput runCommand(byte[] inputXmlBytes, boolean isDryRun) {
+    EppOutput output =
+        component
+            .startRequest()
+            .eppController()
+            .handleEppCommand(
+                sessionMetadata,
+                credentials,
+                EppRequestSource.UNIT_TEST,
+                isDryRun,
+                false,
+                inputXmlBytes);
+    ofy().clearSessionCache(); // Clear the cache like OfyFilter would.
+    return output;
+  }
+
+  private void verifySuccess(byte[] inputXmlBytes, boolean isDryRun) {
+    EppOutput output = runCommand(inputXmlBytes, isDryRun);
+    checkState(
+        output.isSuccess(),
+        "Benchmark command failed with %s:\n%s",
+        output.getResponse().getResult().getCode(),
+        new String(inputXmlBytes, UTF_8));
+  }
+
+  private static byte[] loadXml(String filename, ImmutableMap<String, String> substitutions) {
+    return loadFile(EppTestCase.class, filename, substitutions).getBytes(UTF_8);
+  }
+}
@@ -0,0 +1,126 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy.quota;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import google.registry.proxy.ProxyConfig.Quota;
+import google.registry.proxy.ProxyConfig.Quota.QuotaGroup;
+import google.registry.util.SystemClock;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for acquiring and releasing quota with {@link TokenStore}.
+ *
+ * <p>Each operation takes a token and puts it back, the way a connection leases its quota when it
+ * is opened and returns it when it is closed. The benchmarks run on as many threads as there are
+ * processors, like the event loops of the proxy, so {@link #sharedUser} measures the cost under
+ * contention on a single bucket, and {@link #perThreadUser} measures it without.
+ *
+ * <p>With a lease size, the tokens are leased from an in-process {@link SharedTokenCounter} in the
+ * background, so the benchmarks measure the overhead of leasing without the latency of a remote
+ * counter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Threads(Threads.MAX)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class TokenStoreBenchmark {
+
+  private static final String SHARED_USER = "sharedUser";
+
+  /** The number of tokens allotted to each user. */
+  @Param({"100", "1000000"})
+  int tokenAmount;
+
+  /** The number of tokens leased at a time from the shared counter, or 0 if it's not used. */
+  @Param({"0", "10"})
+  int leaseSize;
+
+  private ExecutorService leaseExecutor;
+  private TokenStore tokenStore;
+
+  /** The user of each benchmark thread. */
+  @State(Scope.Thread)
+  public static class ThreadUser {
+
+    private static final AtomicInteger nextUser = new AtomicInteger();
+
+    final String userId = "user" + nextUser.getAndIncrement();
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    QuotaGroup defaultQuota = new QuotaGroup();
+    defaultQuota.userId = ImmutableList.of();
+    defaultQuota.tokenAmount = tokenAmount;
+    defaultQuota.refillSeconds = 60;
+    Quota quota = new Quota();
+    quota.refreshSeconds = 3600;
+    quota.leaseSize = leaseSize;
+    quota.defaultQuota = defaultQuota;
+    quota.customQuota = ImmutableList.of();
+    leaseExecutor = Executors.newSingleThreadExecutor();
+    tokenStore =
+        new TokenStore(
+            new QuotaConfig(quota, "benchmark"),
+            Ticker.systemTicker(),
+            new InMemorySharedTokenCounter(new SystemClock()),
+            leaseExecutor);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    leaseExecutor.shutdown();
+  }
+
+  @Benchmark
+  public long sharedUser() {
+    return takeAndPut(SHARED_USER);
+  }
+
+  @Benchmark
+  public long perThreadUser(ThreadUser threadUser) {
+    return takeAndPut(threadUser.userId);
+  }
+
+  private long takeAndPut(String userId) {
+    long grantedTokenRefillTime = tokenStore.take(userId);
+    if (grantedTokenRefillTime != TokenStore.NO_TOKEN_GRANTED) {
+      tokenStore.put(userId, grantedTokenRefillTime);
+    }
+    return grantedTokenRefillTime;
+  }
+}
@@ -0,0 +1,141 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
+import google.registry.keyring.api.Keyring;
+import google.registry.testing.FakeKeyringModule;
+import java.io.OutputStream;
+import java.security.Security;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openpgp.PGPKeyPair;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for encoding deposits with {@link Ghostryde#encoder} and {@link RydeEncoder}, with
+ * and without running the layers on separate threads.
+ *
+ * <p>Each operation encodes a whole deposit of XML-like data, so the throughput multiplied by the
+ * deposit size gives the encoding rate in bytes per second. The encoded output is counted and
+ * discarded, so that the benchmarks measure the encoding rather than the storage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class RydeEncoderBenchmark {
+
+  private static final DateTime MODIFIED = DateTime.parse("2020-06-01T00:00:00Z");
+  private static final int WRITE_SIZE = 8 * 1024;
+
+  /** The size of the deposit in bytes. */
+  @Param({"1048576", "67108864"})
+  int depositSize;
+
+  /** Whether the compression, encryption and signing run on separate threads. */
+  @Param({"false", "true"})
+  boolean pipelined;
+
+  private PGPPublicKey stagingKey;
+  private PGPPublicKey receiverKey;
+  private PGPKeyPair signingKey;
+  private byte[] deposit;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Security.addProvider(new BouncyCastleProvider());
+    Keyring keyring = new FakeKeyringModule().get();
+    stagingKey = keyring.getRdeStagingEncryptionKey();
+    receiverKey = keyring.getRdeReceiverKey();
+    signingKey = keyring.getRdeSigningKey();
+    deposit = makeDeposit(depositSize);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    Security.removeProvider(BouncyCastleProvider.PROVIDER_NAME);
+  }
+
+  @Benchmark
+  public long ghostrydeEncoder() throws Exception {
+    CountingOutputStream output = new CountingOutputStream(ByteStreams.nullOutputStream());
+    try (OutputStream encoder = Ghostryde.encoder(output, stagingKey, null, pipelined)) {
+      writeDeposit(encoder);
+    }
+    return output.getCount();
+  }
+
+  @Benchmark
+  public long rydeEncoder() throws Exception {
+    CountingOutputStream output = new CountingOutputStream(ByteStreams.nullOutputStream());
+    try (OutputStream encoder =
+        new RydeEncoder.Builder()
+            .setRydeOutput(output, receiverKey)
+            .setSignatureOutput(ByteStreams.nullOutputStream(), signingKey)
+            .setFileMetadata("benchmark", deposit.length, MODIFIED)
+            .setPipelined(pipelined)
+            .build()) {
+      writeDeposit(encoder);
+    }
+    return output.getCount();
+  }
+
+  /** Writes the deposit in chunks, the way it's copied from a staging file. */
+  private void writeDeposit(OutputStream encoder) throws Exception {
+    for (int off = 0; off < deposit.length; off += WRITE_SIZE) {
+      encoder.write(deposit, off, Math.min(WRITE_SIZE, deposit.length - off));
+    }
+  }
+
+  /** Returns repetitive XML, which compresses about as well as a real deposit. */
+  private static byte[] makeDeposit(int size) {
+    Random random = new Random(1);
+    StringBuilder builder = new StringBuilder(size + 1000);
+    while (builder.length() < size) {
+      builder.append(
+          String.format(
+              "<rde:domain><domain:name>example-%d.tld</domain:name>"
+                  + "<domain:roid>%X-TLD</domain:roid><domain:status s=\"ok\"/>"
+                  + "<domain:registrant>contact-%d</domain:registrant>"
+                  + "<domain:crDate>%s</domain:crDate></rde:domain>\n",
+              random.nextInt(),
+              random.nextLong(),
+              random.nextInt(1000),
+              MODIFIED.minusSeconds(random.nextInt(100_000_000))));
+    }
+    return builder.substring(0, size).getBytes(UTF_8);
+  }
+}
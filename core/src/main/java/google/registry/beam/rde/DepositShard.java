@@ -0,0 +1,47 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.beam.rde;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableMap;
+import google.registry.rde.RdeResourceType;
+import java.io.Serializable;
+
+/**
+ * A temporary file holding the sorted XML fragments of one shard of a deposit, written by {@link
+ * RdeStagingPipeline}.
+ */
+@AutoValue
+abstract class DepositShard implements Serializable {
+
+  private static final long serialVersionUID = 4315637105736487120L;
+
+  /** The position of the shard within the deposit. */
+  abstract int index();
+
+  /** The full path of the file that holds the fragments of the shard. */
+  abstract String file();
+
+  /** The number of fragments in the shard, by type. */
+  abstract ImmutableMap<RdeResourceType, Long> counts();
+
+  /** The number of fragments that failed to marshal, which are left out of the shard. */
+  abstract int errors();
+
+  static DepositShard create(
+      int index, String file, ImmutableMap<RdeResourceType, Long> counts, int errors) {
+    return new AutoValue_DepositShard(index, file, counts, errors);
+  }
+}
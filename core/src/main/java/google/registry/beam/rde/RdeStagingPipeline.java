@@ -0,0 +1,820 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.beam.rde;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Strings.nullToEmpty;
+import static com.google.common.base.Verify.verify;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSortedSet.toImmutableSortedSet;
+import static google.registry.model.EppResourceUtils.isActive;
+import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.util.DateTimeUtils.END_OF_TIME;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.appengine.api.datastore.KeyFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.io.CharStreams;
+import com.googlecode.objectify.Key;
+import google.registry.backup.VersionedEntity;
+import google.registry.beam.initsql.Transforms;
+import google.registry.keyring.api.PgpHelper;
+import google.registry.model.EppResource;
+import google.registry.model.contact.ContactResource;
+import google.registry.model.domain.DomainBase;
+import google.registry.model.host.HostResource;
+import google.registry.model.rde.RdeDepositType;
+import google.registry.model.rde.RdeMode;
+import google.registry.model.rde.RdeNamingUtils;
+import google.registry.model.registrar.Registrar;
+import google.registry.persistence.VKey;
+import google.registry.rde.DepositFragment;
+import google.registry.rde.DomainReferenceResolver;
+import google.registry.rde.Ghostryde;
+import google.registry.rde.PendingDeposit;
+import google.registry.rde.RdeCounter;
+import google.registry.rde.RdeMarshaller;
+import google.registry.rde.RdeResourceType;
+import google.registry.rde.RdeUtil;
+import google.registry.tldconfig.idn.IdnTableEnum;
+import google.registry.xjc.rdeheader.XjcRdeHeader;
+import google.registry.xjc.rdeheader.XjcRdeHeaderElement;
+import google.registry.xml.ValidationMode;
+import google.registry.xml.XmlException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.security.Security;
+import java.util.EnumMap;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import org.apache.beam.sdk.Pipeline;
+import org.apache.beam.sdk.coders.KvCoder;
+import org.apache.beam.sdk.coders.SerializableCoder;
+import org.apache.beam.sdk.coders.StringUtf8Coder;
+import org.apache.beam.sdk.coders.VarIntCoder;
+import org.apache.beam.sdk.io.FileSystems;
+import org.apache.beam.sdk.io.fs.MatchResult.Metadata;
+import org.apache.beam.sdk.io.fs.ResourceId;
+import org.apache.beam.sdk.transforms.Combine;
+import org.apache.beam.sdk.transforms.Create;
+import org.apache.beam.sdk.transforms.DoFn;
+import org.apache.beam.sdk.transforms.Filter;
+import org.apache.beam.sdk.transforms.Flatten;
+import org.apache.beam.sdk.transforms.GroupByKey;
+import org.apache.beam.sdk.transforms.MapElements;
+import org.apache.beam.sdk.transforms.ParDo;
+import org.apache.beam.sdk.transforms.SerializableFunction;
+import org.apache.beam.sdk.transforms.join.CoGbkResult;
+import org.apache.beam.sdk.transforms.join.CoGroupByKey;
+import org.apache.beam.sdk.transforms.join.KeyedPCollectionTuple;
+import org.apache.beam.sdk.util.MimeTypes;
+import org.apache.beam.sdk.values.KV;
+import org.apache.beam.sdk.values.PCollection;
+import org.apache.beam.sdk.values.PCollectionList;
+import org.apache.beam.sdk.values.TupleTag;
+import org.apache.beam.sdk.values.TypeDescriptors;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.joda.time.DateTime;
+
+/**
+ * Definition of a Beam pipeline that stages RDE and BRDA deposits from a Datastore backup.
+ *
+ * <p>This is the Beam counterpart of the {@link google.registry.rde.RdeStagingAction} mapreduce.
+ * Instead of loading every resource at the watermark through its revision history, the pipeline
+ * reads a Datastore export taken before the watermark along with the CommitLogs written after the
+ * export, and keeps the last version of each entity at the watermark. The hosts and contacts that
+ * domains refer to are resolved with joins, so that all fragments are marshalled in parallel
+ * without any further reads.
+ *
+ * <p>The fragments of a deposit are spread over a fixed number of shards by a hash of their
+ * resource identifiers. Each shard is sorted and written to a temporary file next to the deposit,
+ * after which a single step per deposit streams the shards in order into the Ghostryde-encrypted
+ * deposit. The content of a deposit therefore doesn't depend on how the work was distributed, and
+ * no step holds more than one shard in memory. The shard files are deleted once the deposit has
+ * been written successfully.
+ *
+ * <p>All deposits staged by one pipeline share the same watermark, and their revisions must be
+ * known beforehand. Differential deposits aren't supported, since the pipeline only has the state
+ * at the watermark. Rolling the RDE cursors forward and kicking off the uploads is left to the
+ * caller, once the pipeline has succeeded.
+ */
+public class RdeStagingPipeline implements Serializable {
+
+  private static final long serialVersionUID = -2793170423540197593L;
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** The Datastore kinds that are escrowed. */
+  static final ImmutableList<String> KINDS =
+      Stream.of(Registrar.class, ContactResource.class, HostResource.class, DomainBase.class)
+          .map(Key::getKind)
+          .collect(toImmutableList());
+
+  // Registrars to be excluded from data escrow, same as in RdeStagingMapper.
+  private static final ImmutableSet<Registrar.Type> IGNORED_REGISTRAR_TYPES =
+      Sets.immutableEnumSet(Registrar.Type.MONITORING, Registrar.Type.TEST);
+
+  private static final KvCoder<String, VersionedEntity> ENTITY_CODER =
+      KvCoder.of(StringUtf8Coder.of(), SerializableCoder.of(VersionedEntity.class));
+  private static final KvCoder<String, String> NAME_CODER =
+      KvCoder.of(StringUtf8Coder.of(), StringUtf8Coder.of());
+  private static final KvCoder<String, KV<String, String>> REFERENCE_CODER =
+      KvCoder.of(StringUtf8Coder.of(), NAME_CODER);
+  private static final KvCoder<KV<String, Integer>, KV<String, DepositFragment>> FRAGMENT_CODER =
+      KvCoder.of(
+          KvCoder.of(StringUtf8Coder.of(), VarIntCoder.of()),
+          KvCoder.of(StringUtf8Coder.of(), SerializableCoder.of(DepositFragment.class)));
+  private static final KvCoder<String, DepositShard> SHARD_CODER =
+      KvCoder.of(StringUtf8Coder.of(), SerializableCoder.of(DepositShard.class));
+
+  private static final TupleTag<String> NAME_TAG = new TupleTag<>("name");
+  private static final TupleTag<String> REFERRER_TAG = new TupleTag<>("referrer");
+  private static final TupleTag<VersionedEntity> DOMAIN_TAG = new TupleTag<>("domain");
+  private static final TupleTag<KV<String, String>> REFERENCE_TAG = new TupleTag<>("reference");
+  private static final TupleTag<VersionedEntity> HOST_TAG = new TupleTag<>("host");
+
+  private final String exportDir;
+  private final String commitLogDir;
+  private final DateTime exportTime;
+  private final DateTime watermark;
+  private final ValidationMode validationMode;
+  private final byte[] stagingKeyBytes;
+  private final String outputDir;
+  private final int numShards;
+
+  /** The deposits to stage, by the common prefix of their file names. */
+  private final ImmutableMap<String, PendingDeposit> deposits;
+
+  /**
+   * Creates a pipeline that stages the given deposits.
+   *
+   * @param exportDir the directory of a Datastore export taken at {@code exportTime}
+   * @param commitLogDir the directory with the CommitLogs written since the export
+   * @param exportTime the start time of the export, which must not be after the watermark
+   * @param deposits the deposits to stage, which must have the same watermark and a revision
+   * @param stagingKeyBytes the public key with which the deposits are encrypted
+   * @param outputDir the directory, with a trailing slash, to write the deposit files to
+   * @param numShards the number of shards over which the fragments of each deposit are spread
+   */
+  public RdeStagingPipeline(
+      String exportDir,
+      String commitLogDir,
+      DateTime exportTime,
+      ImmutableList<PendingDeposit> deposits,
+      ValidationMode validationMode,
+      byte[] stagingKeyBytes,
+      String outputDir,
+      int numShards) {
+    checkArgument(!deposits.isEmpty(), "No deposits to stage");
+    this.watermark = deposits.get(0).watermark();
+    for (PendingDeposit deposit : deposits) {
+      checkArgument(
+          deposit.watermark().equals(watermark),
+          "Deposits with different watermarks: %s and %s",
+          watermark,
+          deposit.watermark());
+      checkArgument(deposit.revision() != null, "Revision of %s is not set", deposit);
+      checkArgument(
+          deposit.depositType() != RdeDepositType.DIFF,
+          "Differential deposits can't be staged by this pipeline: %s",
+          deposit);
+    }
+    checkArgument(
+        !exportTime.isAfter(watermark),
+        "Export at %s is after the watermark %s",
+        exportTime,
+        watermark);
+    checkArgument(numShards > 0, "Number of shards must be positive");
+    this.exportDir = exportDir;
+    this.commitLogDir = commitLogDir;
+    this.exportTime = exportTime;
+    this.validationMode = validationMode;
+    this.stagingKeyBytes = stagingKeyBytes;
+    this.outputDir = outputDir;
+    this.numShards = numShards;
+    this.deposits = Maps.uniqueIndex(deposits, RdeStagingPipeline::getFilePrefix);
+  }
+
+  /** Returns the path of a deposit's files, relative to the output directory, sans extension. */
+  static String getFilePrefix(PendingDeposit deposit) {
+    String prefix =
+        RdeNamingUtils.makeRydeFilename(
+            deposit.tld(), deposit.watermark(), deposit.mode(), 1, deposit.revision());
+    if (deposit.manual()) {
+      checkState(
+          deposit.directoryWithTrailingSlash() != null, "Manual subdirectory not specified");
+      prefix = "manual/" + deposit.directoryWithTrailingSlash() + prefix;
+    }
+    return prefix;
+  }
+
+  /**
+   * Adds the transforms that stage the deposits to the pipeline, returning the full paths of the
+   * deposit files that are written.
+   */
+  public PCollection<String> setupPipeline(Pipeline pipeline) {
+    PCollection<KV<String, VersionedEntity>> entities = loadEntitiesAtWatermark(pipeline);
+    PCollection<KV<String, VersionedEntity>> registrars = filterKind(entities, Registrar.class);
+    PCollection<KV<String, VersionedEntity>> contacts =
+        filterKind(entities, ContactResource.class);
+    PCollection<KV<String, VersionedEntity>> hosts = filterKind(entities, HostResource.class);
+    PCollection<KV<String, VersionedEntity>> domains = filterKind(entities, DomainBase.class);
+    PCollection<KV<String, VersionedEntity>> contactsAndHosts =
+        PCollectionList.of(contacts)
+            .and(hosts)
+            .apply("Merge contacts and hosts", Flatten.pCollections());
+
+    PCollection<KV<KV<String, Integer>, KV<String, DepositFragment>>> fragments =
+        PCollectionList.of(
+                registrars
+                    .apply("Marshal registrars", ParDo.of(new MarshalRegistrarFn(this)))
+                    .setCoder(FRAGMENT_CODER))
+            .and(
+                contactsAndHosts
+                    .apply(
+                        "Marshal contacts and external hosts",
+                        ParDo.of(new MarshalContactOrExternalHostFn(this)))
+                    .setCoder(FRAGMENT_CODER))
+            .and(marshalDomainsAndSubordinateHosts(contactsAndHosts, hosts, domains))
+            .and(createEmptyFragments(pipeline))
+            .apply("Merge fragments", Flatten.pCollections());
+
+    return fragments
+        .apply("Group fragments by shard", GroupByKey.create())
+        .apply("Write shards", ParDo.of(new WriteShardFn(outputDir)))
+        .setCoder(SHARD_CODER)
+        .apply("Group shards by deposit", GroupByKey.create())
+        .apply("Write deposits", ParDo.of(new WriteDepositFn(this)))
+        .setCoder(StringUtf8Coder.of());
+  }
+
+  /**
+   * Creates an empty fragment for the first shard of every deposit, so that every deposit gets
+   * written even if it has no fragments at all.
+   */
+  private PCollection<KV<KV<String, Integer>, KV<String, DepositFragment>>> createEmptyFragments(
+      Pipeline pipeline) {
+    DepositFragment emptyFragment = DepositFragment.create(RdeResourceType.HEADER, "", "");
+    return pipeline.apply(
+        "Create empty fragments",
+        Create.of(
+                deposits.keySet().stream()
+                    .map(prefix -> KV.of(KV.of(prefix, 0), KV.of("", emptyFragment)))
+                    .collect(toImmutableList()))
+            .withCoder(FRAGMENT_CODER));
+  }
+
+  /**
+   * Loads the last version at the watermark of all escrowed entities that exist at that time,
+   * keyed by the string form of their Datastore keys.
+   */
+  private PCollection<KV<String, VersionedEntity>> loadEntitiesAtWatermark(Pipeline pipeline) {
+    PCollection<VersionedEntity> exported =
+        pipeline
+            .apply(
+                "Get export file patterns",
+                Transforms.getDatastoreExportFilePatterns(exportDir, KINDS))
+            .apply("Find export files", Transforms.getFilesByPatterns())
+            .apply("Load export files", Transforms.loadExportDataFromFiles());
+    // CommitLog files are named after the end of the period they cover, so the file that covers the
+    // watermark can't be told apart from the later ones. Mutations after the watermark are dropped
+    // when the entities are keyed below.
+    PCollection<VersionedEntity> committed =
+        pipeline
+            .apply("Get CommitLog file patterns", Transforms.getCommitLogFilePatterns(commitLogDir))
+            .apply("Find CommitLog files", Transforms.getFilesByPatterns())
+            .apply(
+                "Get CommitLog file names",
+                MapElements.into(TypeDescriptors.strings())
+                    .via((Metadata metadata) -> metadata.resourceId().toString()))
+            .apply(
+                "Filter CommitLogs by time",
+                Transforms.filterCommitLogsByTime(exportTime, END_OF_TIME))
+            .apply("Find CommitLog files since export", Transforms.getFilesByPatterns())
+            .apply("Load CommitLog files", Transforms.loadCommitLogsFromFiles());
+    return PCollectionList.of(exported)
+        .and(committed)
+        .apply("Merge export and CommitLogs", Flatten.pCollections())
+        .apply("Key entities up to watermark", ParDo.of(new KeyEntityFn(watermark)))
+        .setCoder(ENTITY_CODER)
+        .apply("Get latest versions", Combine.perKey(new LatestVersionFn()))
+        .apply(
+            "Drop deleted entities",
+            Filter.by((KV<String, VersionedEntity> entity) -> !entity.getValue().isDelete()));
+  }
+
+  private static PCollection<KV<String, VersionedEntity>> filterKind(
+      PCollection<KV<String, VersionedEntity>> entities, Class<?> clazz) {
+    String kind = Key.getKind(clazz);
+    return entities.apply(
+        "Filter " + kind,
+        Filter.by(
+            (KV<String, VersionedEntity> entity) ->
+                entity.getValue().key().getKind().equals(kind)));
+  }
+
+  /**
+   * Marshals domains with the contacts and hosts they refer to, and subordinate hosts with their
+   * superordinate domains.
+   */
+  private PCollection<KV<KV<String, Integer>, KV<String, DepositFragment>>>
+      marshalDomainsAndSubordinateHosts(
+          PCollection<KV<String, VersionedEntity>> contactsAndHosts,
+          PCollection<KV<String, VersionedEntity>> hosts,
+          PCollection<KV<String, VersionedEntity>> domains) {
+    PCollection<KV<String, String>> names =
+        contactsAndHosts
+            .apply("Get contact IDs and host names", ParDo.of(new GetNameFn()))
+            .setCoder(NAME_CODER);
+    PCollection<KV<String, String>> referrers =
+        domains
+            .apply("Get domain references", ParDo.of(new GetReferencesFn()))
+            .setCoder(NAME_CODER);
+    PCollection<KV<String, KV<String, String>>> references =
+        KeyedPCollectionTuple.of(NAME_TAG, names)
+            .and(REFERRER_TAG, referrers)
+            .apply("Join references with names", CoGroupByKey.create())
+            .apply("Key names by referring domain", ParDo.of(new ResolveReferencesFn()))
+            .setCoder(REFERENCE_CODER);
+    PCollection<KV<String, VersionedEntity>> subordinateHosts =
+        hosts
+            .apply("Key subordinate hosts by domain", ParDo.of(new KeyBySuperordinateDomainFn()))
+            .setCoder(ENTITY_CODER);
+    return KeyedPCollectionTuple.of(DOMAIN_TAG, domains)
+        .and(REFERENCE_TAG, references)
+        .and(HOST_TAG, subordinateHosts)
+        .apply("Join domains with references and hosts", CoGroupByKey.create())
+        .apply("Marshal domains and subordinate hosts", ParDo.of(new MarshalDomainFn(this)))
+        .setCoder(FRAGMENT_CODER);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T loadOfyEntity(VersionedEntity entity) {
+    return (T) ofy().load().fromEntity(entity.getEntity().get());
+  }
+
+  /** Returns the resource projected to the watermark, or null if it doesn't exist at that time. */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  private static <T extends EppResource> T loadAtWatermark(
+      VersionedEntity entity, DateTime watermark) {
+    T resource = loadOfyEntity(entity);
+    return isActive(resource, watermark) ? (T) resource.cloneProjectedAtTime(watermark) : null;
+  }
+
+  private static boolean isProberData(EppResource resource) {
+    return nullToEmpty(resource.getCreationClientId()).startsWith("prober-")
+        || nullToEmpty(resource.getPersistedCurrentSponsorClientId()).startsWith("prober-")
+        || nullToEmpty(resource.getLastEppUpdateClientId()).startsWith("prober-");
+  }
+
+  private static String getKeyString(VKey<?> key) {
+    return key.getOfyKey().getString();
+  }
+
+  /** Keys the escrowed entities by their Datastore keys, dropping mutations after the watermark. */
+  private static class KeyEntityFn extends DoFn<VersionedEntity, KV<String, VersionedEntity>> {
+
+    private final DateTime watermark;
+
+    KeyEntityFn(DateTime watermark) {
+      this.watermark = watermark;
+    }
+
+    @ProcessElement
+    public void processElement(
+        @Element VersionedEntity entity, OutputReceiver<KV<String, VersionedEntity>> out) {
+      if (entity.commitTimeMills() <= watermark.getMillis()
+          && KINDS.contains(entity.key().getKind())) {
+        out.output(KV.of(KeyFactory.keyToString(entity.key()), entity));
+      }
+    }
+  }
+
+  /** Picks the last version of an entity. */
+  private static class LatestVersionFn
+      implements SerializableFunction<Iterable<VersionedEntity>, VersionedEntity> {
+
+    private static final long serialVersionUID = 7204916354389011325L;
+
+    @Override
+    public VersionedEntity apply(Iterable<VersionedEntity> versions) {
+      VersionedEntity latest = null;
+      for (VersionedEntity version : versions) {
+        if (latest == null || version.commitTimeMills() > latest.commitTimeMills()) {
+          latest = version;
+        }
+      }
+      return latest;
+    }
+  }
+
+  /** Emits the contact ID of a contact, or the host name of a host. */
+  private static class GetNameFn extends DoFn<KV<String, VersionedEntity>, KV<String, String>> {
+
+    @ProcessElement
+    public void processElement(
+        @Element KV<String, VersionedEntity> entity, OutputReceiver<KV<String, String>> out) {
+      Object resource = loadOfyEntity(entity.getValue());
+      out.output(
+          KV.of(
+              entity.getKey(),
+              (resource instanceof ContactResource)
+                  ? ((ContactResource) resource).getContactId()
+                  : ((HostResource) resource).getHostName()));
+    }
+  }
+
+  /** Emits the keys of the nameservers and contacts of a domain, along with the domain's key. */
+  private static class GetReferencesFn
+      extends DoFn<KV<String, VersionedEntity>, KV<String, String>> {
+
+    @ProcessElement
+    public void processElement(
+        @Element KV<String, VersionedEntity> entity, OutputReceiver<KV<String, String>> out) {
+      DomainBase domain = loadOfyEntity(entity.getValue());
+      ImmutableSet.Builder<VKey<?>> references = new ImmutableSet.Builder<>();
+      references.addAll(domain.getNameservers()).addAll(domain.getReferencedContacts());
+      if (domain.getRegistrant() != null) {
+        references.add(domain.getRegistrant());
+      }
+      for (VKey<?> reference : references.build()) {
+        out.output(KV.of(getKeyString(reference), entity.getKey()));
+      }
+    }
+  }
+
+  /** Turns a referenced resource's name and referring domains into names by referring domain. */
+  private static class ResolveReferencesFn
+      extends DoFn<KV<String, CoGbkResult>, KV<String, KV<String, String>>> {
+
+    @ProcessElement
+    public void processElement(
+        @Element KV<String, CoGbkResult> element,
+        OutputReceiver<KV<String, KV<String, String>>> out) {
+      // Unresolved references are left out, and reported when the domain is marshalled.
+      String name = element.getValue().getOnly(NAME_TAG, null);
+      if (name == null) {
+        return;
+      }
+      for (String domainKey : element.getValue().getAll(REFERRER_TAG)) {
+        out.output(KV.of(domainKey, KV.of(element.getKey(), name)));
+      }
+    }
+  }
+
+  /** Keys subordinate hosts by the key of their superordinate domains. */
+  private static class KeyBySuperordinateDomainFn
+      extends DoFn<KV<String, VersionedEntity>, KV<String, VersionedEntity>> {
+
+    @ProcessElement
+    public void processElement(
+        @Element KV<String, VersionedEntity> entity,
+        OutputReceiver<KV<String, VersionedEntity>> out) {
+      HostResource host = loadOfyEntity(entity.getValue());
+      if (host.isSubordinate()) {
+        out.output(KV.of(getKeyString(host.getSuperordinateDomain()), entity.getValue()));
+      }
+    }
+  }
+
+  /** Resolves references to names that were joined with the referring domain. */
+  private static class JoinedReferenceResolver implements DomainReferenceResolver {
+
+    private final ImmutableMap<String, String> namesByKey;
+
+    JoinedReferenceResolver(ImmutableMap<String, String> namesByKey) {
+      this.namesByKey = namesByKey;
+    }
+
+    @Override
+    public ImmutableSet<String> getNameserverHostNames(DomainBase domain) {
+      return domain.getNameservers().stream()
+          .map(key -> namesByKey.get(getKeyString(key)))
+          .filter(Objects::nonNull)
+          .collect(toImmutableSortedSet(Ordering.natural()));
+    }
+
+    @Nullable
+    @Override
+    public String getContactId(VKey<ContactResource> contactKey) {
+      return namesByKey.get(getKeyString(contactKey));
+    }
+  }
+
+  /**
+   * Base class of the functions that marshal resources into the fragments of all deposits they
+   * belong to.
+   */
+  private abstract static class MarshalFn<InputT>
+      extends DoFn<InputT, KV<KV<String, Integer>, KV<String, DepositFragment>>> {
+
+    final ImmutableMap<String, PendingDeposit> deposits;
+    final DateTime watermark;
+    final RdeMarshaller marshaller;
+    private final int numShards;
+
+    MarshalFn(RdeStagingPipeline pipeline) {
+      this.deposits = pipeline.deposits;
+      this.watermark = pipeline.watermark;
+      this.marshaller = new RdeMarshaller(pipeline.validationMode);
+      this.numShards = pipeline.numShards;
+    }
+
+    /** Emits the fragment to all deposits that include its type of resource. */
+    void emit(
+        OutputReceiver<KV<KV<String, Integer>, KV<String, DepositFragment>>> out,
+        DepositFragment fragment,
+        String id) {
+      emit(out, fragment, id, deposit -> true);
+    }
+
+    /**
+     * Emits the fragment to the deposits that include its type of resource and match the given
+     * predicate.
+     */
+    void emit(
+        OutputReceiver<KV<KV<String, Integer>, KV<String, DepositFragment>>> out,
+        DepositFragment fragment,
+        String id,
+        Predicate<PendingDeposit> predicate) {
+      String sortKey = fragment.type() + ":" + id;
+      int shard = Math.floorMod(sortKey.hashCode(), numShards);
+      deposits.forEach(
+          (prefix, deposit) -> {
+            if (fragment.type().getModes().contains(deposit.mode()) && predicate.test(deposit)) {
+              out.output(KV.of(KV.of(prefix, shard), KV.of(sortKey, fragment)));
+            }
+          });
+    }
+  }
+
+  /** Marshals a registrar. */
+  private static class MarshalRegistrarFn extends MarshalFn<KV<String, VersionedEntity>> {
+
+    MarshalRegistrarFn(RdeStagingPipeline pipeline) {
+      super(pipeline);
+    }
+
+    @ProcessElement
+    public void processElement(
+        @Element KV<String, VersionedEntity> entity,
+        OutputReceiver<KV<KV<String, Integer>, KV<String, DepositFragment>>> out) {
+      Registrar registrar = loadOfyEntity(entity.getValue());
+      if (!IGNORED_REGISTRAR_TYPES.contains(registrar.getType())) {
+        emit(out, marshaller.marshalRegistrar(registrar), registrar.getClientId());
+      }
+    }
+  }
+
+  /** Marshals a contact or a host without a superordinate domain. */
+  private static class MarshalContactOrExternalHostFn
+      extends MarshalFn<KV<String, VersionedEntity>> {
+
+    MarshalContactOrExternalHostFn(RdeStagingPipeline pipeline) {
+      super(pipeline);
+    }
+
+    @ProcessElement
+    public void processElement(
+        @Element KV<String, VersionedEntity> entity,
+        OutputReceiver<KV<KV<String, Integer>, KV<String, DepositFragment>>> out) {
+      EppResource resource = loadAtWatermark(entity.getValue(), watermark);
+      if (resource == null || isProberData(resource)) {
+        return;
+      }
+      if (resource instanceof ContactResource) {
+        ContactResource contact = (ContactResource) resource;
+        emit(out, marshaller.marshalContact(contact), contact.getContactId());
+      } else {
+        HostResource host = (HostResource) resource;
+        if (!host.isSubordinate()) {
+          emit(out, marshaller.marshalExternalHost(host), host.getHostName());
+        }
+      }
+    }
+  }
+
+  /** Marshals a domain and its subordinate hosts. */
+  private static class MarshalDomainFn extends MarshalFn<KV<String, CoGbkResult>> {
+
+    MarshalDomainFn(RdeStagingPipeline pipeline) {
+      super(pipeline);
+    }
+
+    @ProcessElement
+    public void processElement(
+        @Element KV<String, CoGbkResult> element,
+        OutputReceiver<KV<KV<String, Integer>, KV<String, DepositFragment>>> out) {
+      CoGbkResult result = element.getValue();
+      VersionedEntity domainEntity = result.getOnly(DOMAIN_TAG, null);
+      DomainBase domain =
+          (domainEntity == null) ? null : loadAtWatermark(domainEntity, watermark);
+      if (domain != null && !isProberData(domain)) {
+        ImmutableMap.Builder<String, String> namesByKey = new ImmutableMap.Builder<>();
+        for (KV<String, String> reference : result.getAll(REFERENCE_TAG)) {
+          namesByKey.put(reference.getKey(), reference.getValue());
+        }
+        JoinedReferenceResolver resolver = new JoinedReferenceResolver(namesByKey.build());
+        // The fragment differs between modes, so only marshal the ones that are needed.
+        for (RdeMode mode : RdeMode.values()) {
+          String tld = domain.getTld();
+          Predicate<PendingDeposit> predicate =
+              deposit -> deposit.tld().equals(tld) && deposit.mode() == mode;
+          if (deposits.values().stream().anyMatch(predicate)) {
+            emit(
+                out,
+                marshaller.marshalDomain(domain, mode, resolver),
+                domain.getDomainName(),
+                predicate);
+          }
+        }
+      }
+      for (VersionedEntity hostEntity : result.getAll(HOST_TAG)) {
+        HostResource host = loadAtWatermark(hostEntity, watermark);
+        if (host == null || isProberData(host)) {
+          continue;
+        }
+        checkState(
+            domain != null,
+            "Superordinate domain %s of host %s does not exist at %s",
+            element.getKey(),
+            host.getHostName(),
+            watermark);
+        emit(out, marshaller.marshalSubordinateHost(host, domain), host.getHostName());
+      }
+    }
+  }
+
+  /** Sorts the fragments of a shard and writes them to a temporary file. */
+  private static class WriteShardFn
+      extends DoFn<KV<KV<String, Integer>, Iterable<KV<String, DepositFragment>>>,
+          KV<String, DepositShard>> {
+
+    private final String outputDir;
+
+    WriteShardFn(String outputDir) {
+      this.outputDir = outputDir;
+    }
+
+    @ProcessElement
+    public void processElement(
+        @Element KV<KV<String, Integer>, Iterable<KV<String, DepositFragment>>> element,
+        OutputReceiver<KV<String, DepositShard>> out)
+        throws IOException {
+      String prefix = element.getKey().getKey();
+      int index = element.getKey().getValue();
+      String file = String.format("%s%s.xml.shard-%05d", outputDir, prefix, index);
+      EnumMap<RdeResourceType, Long> counts = new EnumMap<>(RdeResourceType.class);
+      int errors = 0;
+      ImmutableList<KV<String, DepositFragment>> fragments =
+          Ordering.natural()
+              .onResultOf((KV<String, DepositFragment> fragment) -> fragment.getKey())
+              .immutableSortedCopy(element.getValue());
+      ResourceId resourceId = FileSystems.matchNewResource(file, false);
+      try (Writer output =
+          new OutputStreamWriter(
+              Channels.newOutputStream(FileSystems.create(resourceId, MimeTypes.TEXT)), UTF_8)) {
+        for (KV<String, DepositFragment> entry : fragments) {
+          DepositFragment fragment = entry.getValue();
+          if (!fragment.xml().isEmpty()) {
+            output.write(fragment.xml());
+            counts.merge(fragment.type(), 1L, Long::sum);
+          }
+          if (!fragment.error().isEmpty()) {
+            errors++;
+            logger.atSevere().log("Fragment error: %s", fragment.error());
+          }
+        }
+      }
+      out.output(
+          KV.of(prefix, DepositShard.create(index, file, ImmutableMap.copyOf(counts), errors)));
+    }
+  }
+
+  /** Merges the shards of a deposit into the encrypted deposit, its length and its report. */
+  private static class WriteDepositFn extends DoFn<KV<String, Iterable<DepositShard>>, String> {
+
+    private final ImmutableMap<String, PendingDeposit> deposits;
+    private final byte[] stagingKeyBytes;
+    private final RdeMarshaller marshaller;
+    private final String outputDir;
+
+    WriteDepositFn(RdeStagingPipeline pipeline) {
+      this.deposits = pipeline.deposits;
+      this.stagingKeyBytes = pipeline.stagingKeyBytes;
+      this.marshaller = new RdeMarshaller(pipeline.validationMode);
+      this.outputDir = pipeline.outputDir;
+    }
+
+    @Setup
+    public void setup() {
+      Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @ProcessElement
+    public void processElement(
+        @Element KV<String, Iterable<DepositShard>> element, OutputReceiver<String> out)
+        throws IOException {
+      String prefix = element.getKey();
+      PendingDeposit deposit = deposits.get(prefix);
+      ImmutableList<DepositShard> shards =
+          Ordering.natural()
+              .onResultOf(DepositShard::index)
+              .immutableSortedCopy(element.getValue());
+      PGPPublicKey stagingKey = PgpHelper.loadPublicKeyBytes(stagingKeyBytes);
+      RdeMode mode = deposit.mode();
+      DateTime watermark = deposit.watermark();
+      int revision = deposit.revision();
+      String id = RdeUtil.timestampToId(watermark);
+
+      RdeCounter counter = new RdeCounter();
+      int errors = 0;
+      for (DepositShard shard : shards) {
+        shard.counts().forEach(counter::add);
+        errors += shard.errors();
+      }
+
+      String xmlFile = outputDir + prefix + ".xml.ghostryde";
+      // The byte length of the raw unencrypted XML, as written by RdeStagingReducer.
+      String xmlLengthFile = outputDir + prefix + ".xml.length";
+      logger.atInfo().log("Writing %s and %s", xmlFile, xmlLengthFile);
+      XjcRdeHeader header;
+      try (OutputStream gcsOutput = create(xmlFile);
+          OutputStream lengthOutput = create(xmlLengthFile);
+          OutputStream ghostrydeEncoder = Ghostryde.encoder(gcsOutput, stagingKey, lengthOutput);
+          Writer output = new OutputStreamWriter(ghostrydeEncoder, UTF_8)) {
+        output.write(marshaller.makeHeader(id, watermark, RdeResourceType.getUris(mode), revision));
+        for (DepositShard shard : shards) {
+          try (Reader input =
+              new InputStreamReader(
+                  Channels.newInputStream(
+                      FileSystems.open(FileSystems.matchNewResource(shard.file(), false))),
+                  UTF_8)) {
+            CharStreams.copy(input, output);
+          }
+        }
+        for (IdnTableEnum idn : IdnTableEnum.values()) {
+          output.write(marshaller.marshalIdn(idn.getTable()));
+          counter.increment(RdeResourceType.IDN);
+        }
+        header = counter.makeHeader(deposit.tld(), mode);
+        output.write(marshaller.marshalOrDie(new XjcRdeHeaderElement(header)));
+        output.write(marshaller.makeFooter());
+      }
+
+      // If an entity was broken, abort after writing as much deposit data as possible.
+      verify(errors == 0, "RDE staging failed for TLD %s", deposit.tld());
+
+      if (mode == RdeMode.FULL) {
+        String reportFile = outputDir + prefix + "-report.xml.ghostryde";
+        logger.atInfo().log("Writing %s", reportFile);
+        try (OutputStream gcsOutput = create(reportFile);
+            OutputStream ghostrydeEncoder = Ghostryde.encoder(gcsOutput, stagingKey)) {
+          counter.makeReport(id, watermark, header, revision).marshal(ghostrydeEncoder, UTF_8);
+        } catch (XmlException e) {
+          throw new RuntimeException(e);
+        }
+      }
+
+      FileSystems.delete(
+          shards.stream()
+              .map(shard -> FileSystems.matchNewResource(shard.file(), false))
+              .collect(toImmutableList()));
+      out.output(xmlFile);
+    }
+
+    private static OutputStream create(String file) throws IOException {
+      return Channels.newOutputStream(
+          FileSystems.create(FileSystems.matchNewResource(file, false), MimeTypes.BINARY));
+    }
+  }
+}
@@ -303,6 +303,22 @@ public final class RegistryConfig {
       return 100;
     }
 
+    /**
+     * The time that a PublishDnsUpdatesAction batch should take to publish, which
+     * ReadDnsQueueAction uses to shrink the batches of TLDs whose DNS servers are slow.
+     *
+     * <p>Batches never grow beyond the size set by provideDnsTldUpdateBatchSize. This should be
+     * comfortably shorter than providePublishDnsUpdatesLockDuration, so that slow batches are
+     * split up before they start timing out.
+     *
+     * @see google.registry.dns.DnsUpdateBatchSizer
+     */
+    @Provides
+    @Config("dnsTldUpdateTargetPublishDuration")
+    public static Duration provideDnsTldUpdateTargetPublishDuration() {
+      return Duration.standardMinutes(1);
+    }
+
     /**
      * The maximum time we allow publishDnsUpdates to run.
      *
@@ -346,6 +362,21 @@ public final class RegistryConfig {
       return Duration.standardSeconds(45);
     }
 
+    /**
+     * The number of threads with which ReadDnsQueueAction leases and fans out tasks from the
+     * dns-pull queue.
+     *
+     * <p>Each thread leases its own batches, so this multiplies the rate at which the queue is
+     * drained, up to the rate limit that DnsQueue applies to lease requests.
+     *
+     * @see google.registry.dns.ReadDnsQueueAction
+     */
+    @Provides
+    @Config("readDnsQueueActionWorkerCount")
+    public static int provideReadDnsQueueActionWorkerCount() {
+      return 4;
+    }
+
     /**
      * Returns the default time to live for DNS A and AAAA records.
      *
@@ -615,6 +646,17 @@ public final class RegistryConfig {
       return config.registryPolicy.requireSslCertificates;
     }
 
+    /**
+     * Returns the maximum number of characters of EPP command XML to write to the command log.
+     *
+     * @see google.registry.flows.FlowRunner
+     */
+    @Provides
+    @Config("eppCommandLogMaxLength")
+    public static int provideEppCommandLogMaxLength(RegistryConfigSettings config) {
+      return config.registryPolicy.eppCommandLogMaxLength;
+    }
+
     /**
      * Returns the default job zone to run Apache Beam (Cloud Dataflow) jobs in.
      *
@@ -772,6 +814,28 @@ public final class RegistryConfig {
       return Duration.standardDays(1);
     }
 
+    /**
+     * Whether RDE deposits are differential, except on the full deposit day of the week.
+     *
+     * @see google.registry.rde.PendingDepositChecker
+     */
+    @Provides
+    @Config("rdeDifferentialDepositsEnabled")
+    public static boolean provideRdeDifferentialDepositsEnabled(RegistryConfigSettings config) {
+      return config.rde.differentialDepositsEnabled;
+    }
+
+    /**
+     * Day of the week on which a full RDE deposit is made when differential deposits are enabled.
+     *
+     * @see google.registry.rde.PendingDepositChecker
+     */
+    @Provides
+    @Config("rdeFullDepositDayOfWeek")
+    public static int provideRdeFullDepositDayOfWeek() {
+      return DateTimeConstants.SUNDAY;
+    }
+
     /**
      * Maximum amount of time for sending a small XML file to ICANN via HTTP, before killing.
      *
@@ -1333,6 +1397,17 @@ public final class RegistryConfig {
     public static String provideRdapTosStaticUrl(RegistryConfigSettings config) {
       return config.registryPolicy.rdapTosStaticUrl;
     }
+
+    /**
+     * Whether RDAP search results are written to the response as they are formatted.
+     *
+     * @see google.registry.rdap.RdapSearchActionBase
+     */
+    @Provides
+    @Config("rdapStreamSearchResults")
+    public static boolean provideRdapStreamSearchResults(RegistryConfigSettings config) {
+      return config.registryPolicy.rdapStreamSearchResults;
+    }
   }
 
   /** Returns the App Engine project ID, which is based off the environment name. */
@@ -1467,6 +1542,57 @@ public final class RegistryConfig {
     return CONFIG_SETTINGS.get().caching.eppResourceMaxCachedEntries;
   }
 
+  /** Returns whether to use a Bloom filter to rule out cached lookups of nonexistent domains. */
+  public static boolean isForeignKeyIndexFilterEnabled() {
+    return CONFIG_SETTINGS.get().caching.foreignKeyIndexFilterEnabled;
+  }
+
+  @VisibleForTesting
+  public static void overrideIsForeignKeyIndexFilterEnabledForTesting(boolean enabled) {
+    CONFIG_SETTINGS.get().caching.foreignKeyIndexFilterEnabled = enabled;
+  }
+
+  /** Returns the length of time after which the foreign key index Bloom filter is rebuilt. */
+  public static Duration getForeignKeyIndexFilterRefreshDuration() {
+    return Duration.standardSeconds(
+        CONFIG_SETTINGS.get().caching.foreignKeyIndexFilterRefreshSeconds);
+  }
+
+  /** Returns whether to cache the rendered text of WHOIS domain responses in memory. */
+  public static boolean isWhoisResponseCachingEnabled() {
+    return CONFIG_SETTINGS.get().caching.whoisResponseCachingEnabled;
+  }
+
+  @VisibleForTesting
+  public static void overrideIsWhoisResponseCachingEnabledForTesting(boolean enabled) {
+    CONFIG_SETTINGS.get().caching.whoisResponseCachingEnabled = enabled;
+  }
+
+  /** Returns the amount of time a rendered WHOIS domain response is cached in memory. */
+  public static Duration getWhoisResponseCachingDuration() {
+    return Duration.standardSeconds(CONFIG_SETTINGS.get().caching.whoisResponseCachingSeconds);
+  }
+
+  /** Returns the maximum total size, in bytes, of the WHOIS domain responses to cache. */
+  public static long getWhoisResponseCacheMaxBytes() {
+    return CONFIG_SETTINGS.get().caching.whoisResponseCacheMaxBytes;
+  }
+
+  /** Returns whether RDAP wildcard searches by name use the in-memory name indexes. */
+  public static boolean isRdapNameIndexEnabled() {
+    return CONFIG_SETTINGS.get().caching.rdapNameIndexEnabled;
+  }
+
+  @VisibleForTesting
+  public static void overrideIsRdapNameIndexEnabledForTesting(boolean enabled) {
+    CONFIG_SETTINGS.get().caching.rdapNameIndexEnabled = enabled;
+  }
+
+  /** Returns the length of time after which the RDAP name indexes are rebuilt. */
+  public static Duration getRdapNameIndexRefreshDuration() {
+    return Duration.standardSeconds(CONFIG_SETTINGS.get().caching.rdapNameIndexRefreshSeconds);
+  }
+
   /** Returns the email address that outgoing emails from the app are sent from. */
   public static InternetAddress getGSuiteOutgoingEmailAddress() {
     return parseEmailAddress(CONFIG_SETTINGS.get().gSuite.outgoingEmailAddress);
@@ -95,9 +95,11 @@ public class RegistryConfigSettings {
     public String whoisDisclaimer;
     public String rdapTos;
     public String rdapTosStaticUrl;
+    public boolean rdapStreamSearchResults;
     public String registryName;
     public List<String> spec11WebResources;
     public boolean requireSslCertificates;
+    public int eppCommandLogMaxLength;
   }
 
   /** Configuration for Cloud Datastore. */
@@ -144,6 +146,13 @@ public class RegistryConfigSettings {
     public boolean eppResourceCachingEnabled;
     public int eppResourceCachingSeconds;
     public int eppResourceMaxCachedEntries;
+    public boolean foreignKeyIndexFilterEnabled;
+    public int foreignKeyIndexFilterRefreshSeconds;
+    public boolean whoisResponseCachingEnabled;
+    public int whoisResponseCachingSeconds;
+    public long whoisResponseCacheMaxBytes;
+    public boolean rdapNameIndexEnabled;
+    public int rdapNameIndexRefreshSeconds;
   }
 
   /** Configuration for ICANN monthly reporting. */
@@ -163,6 +172,7 @@ public class RegistryConfigSettings {
     public String reportUrlPrefix;
     public String uploadUrl;
     public String sshIdentityEmailAddress;
+    public boolean differentialDepositsEnabled;
   }
 
   /** Configuration for the web-based registrar console. */
@@ -14,8 +14,12 @@
 
 package google.registry.dns;
 
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static google.registry.config.RegistryEnvironment.PRODUCTION;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.monitoring.metrics.DistributionFitter;
 import com.google.monitoring.metrics.EventMetric;
@@ -23,8 +27,10 @@ import com.google.monitoring.metrics.ExponentialFitter;
 import com.google.monitoring.metrics.FibonacciFitter;
 import com.google.monitoring.metrics.IncrementableMetric;
 import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.Metric;
 import com.google.monitoring.metrics.MetricRegistryImpl;
 import google.registry.config.RegistryEnvironment;
+import java.util.concurrent.ConcurrentHashMap;
 import javax.inject.Inject;
 import org.joda.time.Duration;
 
@@ -60,6 +66,9 @@ public class DnsMetrics {
           LabelDescriptor.create("status", "Whether the publish succeeded, or why it failed."),
           LabelDescriptor.create("dnsWriter", "The DnsWriter used."));
 
+  private static final ImmutableSet<LabelDescriptor> LABEL_DESCRIPTORS_FOR_QUEUE =
+      ImmutableSet.of(LabelDescriptor.create("tld", "TLD"));
+
   // Finer-grained fitter than the DEFAULT_FITTER, allows values between 100 ms and just over 29
   // hours.
   private static final DistributionFitter EXPONENTIAL_FITTER =
@@ -182,6 +191,37 @@ public class DnsMetrics {
               LABEL_DESCRIPTORS_FOR_LATENCY,
               EXPONENTIAL_FITTER);
 
+  /** Values of {@link #queueLag}, replaced as a whole by each ReadDnsQueueAction run. */
+  private static volatile ImmutableMap<ImmutableList<String>, Long> queueLagMillis =
+      ImmutableMap.of();
+
+  /** Values of {@link #updateBatchSize}, keyed by TLD label. */
+  private static final ConcurrentHashMap<ImmutableList<String>, Long> updateBatchSizes =
+      new ConcurrentHashMap<>();
+
+  @VisibleForTesting
+  static final Metric<Long> queueLag =
+      MetricRegistryImpl.getDefault()
+          .newGauge(
+              "/dns/queue/lag",
+              "Age of the oldest refresh request read from the dns-pull queue by the most recent "
+                  + "readDnsQueue on this instance",
+              "milliseconds",
+              LABEL_DESCRIPTORS_FOR_QUEUE,
+              () -> queueLagMillis,
+              Long.class);
+
+  @VisibleForTesting
+  static final Metric<Long> updateBatchSize =
+      MetricRegistryImpl.getDefault()
+          .newGauge(
+              "/dns/queue/update_batch_size",
+              "Number of refresh requests most recently batched into each publishDnsUpdates",
+              "count",
+              LABEL_DESCRIPTORS_FOR_QUEUE,
+              () -> ImmutableMap.copyOf(updateBatchSizes),
+              Long.class);
+
   @Inject
   DnsMetrics() {}
 
@@ -262,4 +302,25 @@ public class DnsMetrics {
         timeSinceUpdateRequest.getMillis(), numberOfItems, tld, status.name(), dnsWriter);
     publishQueueDelay.record(timeSinceActionEnqueued.getMillis(), tld, status.name(), dnsWriter);
   }
+
+  /**
+   * Records how far behind the dns-pull queue is for each TLD, as seen by a ReadDnsQueueAction run.
+   *
+   * <p>The lag of a TLD is the age of its oldest refresh request that the run read from the queue,
+   * or zero if it read none. The values replace those of the previous run, so that TLDs that are
+   * no longer in the map stop being reported.
+   */
+  void recordQueueLag(ImmutableMap<String, Duration> lagByTld) {
+    queueLagMillis =
+        lagByTld.entrySet().stream()
+            .collect(
+                toImmutableMap(
+                    entry -> ImmutableList.of(entry.getKey()),
+                    entry -> entry.getValue().getMillis()));
+  }
+
+  /** Records the batch size that ReadDnsQueueAction chose for the updates of a TLD. */
+  void recordUpdateBatchSize(String tld, int batchSize) {
+    updateBatchSizes.put(ImmutableList.of(tld), (long) batchSize);
+  }
 }
@@ -0,0 +1,76 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import google.registry.config.RegistryConfig.Config;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.joda.time.Duration;
+
+/**
+ * Chooses how many refresh items {@link ReadDnsQueueAction} batches into each {@link
+ * PublishDnsUpdatesAction} of a TLD.
+ *
+ * <p>Each successful publish reports how long it took, and the sizer keeps an exponentially
+ * weighted moving average of the time per item for each TLD, over all of its DNS writers. The batch
+ * size is the number of items that are expected to be published within the target duration,
+ * capped at the configured maximum. This keeps the batches of TLDs with slow DNS servers small
+ * enough to finish well within the publish lock duration, while TLDs with fast servers keep using
+ * large batches.
+ *
+ * <p>The averages are only kept in memory, so each instance adapts separately. Until an instance
+ * has seen a publish for a TLD, it uses the maximum batch size.
+ */
+@Singleton
+public class DnsUpdateBatchSizer {
+
+  /** Weight of the most recent publish in the moving average. */
+  private static final double SMOOTHING_FACTOR = 0.2;
+
+  private final ConcurrentHashMap<String, Double> averageMillisPerItemByTld =
+      new ConcurrentHashMap<>();
+  private final Duration targetPublishDuration;
+
+  @Inject
+  public DnsUpdateBatchSizer(
+      @Config("dnsTldUpdateTargetPublishDuration") Duration targetPublishDuration) {
+    this.targetPublishDuration = targetPublishDuration;
+  }
+
+  /** Records the time it took to successfully publish a batch of the given number of items. */
+  void recordPublish(String tld, Duration processingDuration, int numItems) {
+    if (numItems <= 0) {
+      return;
+    }
+    double millisPerItem = (double) processingDuration.getMillis() / numItems;
+    averageMillisPerItemByTld.merge(
+        tld, millisPerItem, (average, latest) -> average + SMOOTHING_FACTOR * (latest - average));
+  }
+
+  /** Returns the number of items to batch together for the TLD, between 1 and the given maximum. */
+  int getBatchSize(String tld, int maxBatchSize) {
+    Double averageMillisPerItem = averageMillisPerItemByTld.get(tld);
+    if (averageMillisPerItem == null) {
+      return maxBatchSize;
+    }
+    // Dividing by an average of zero gives infinity, which is then capped to the maximum.
+    long batchSize = (long) (targetPublishDuration.getMillis() / averageMillisPerItem);
+    return (int) max(1, min(maxBatchSize, batchSize));
+  }
+}
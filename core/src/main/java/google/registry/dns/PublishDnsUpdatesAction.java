@@ -63,6 +63,7 @@ public final class PublishDnsUpdatesAction implements Runnable, Callable<Void> {
   @Inject DnsQueue dnsQueue;
   @Inject DnsWriterProxy dnsWriterProxy;
   @Inject DnsMetrics dnsMetrics;
+  @Inject DnsUpdateBatchSizer batchSizer;
   @Inject @Config("publishDnsUpdatesLockDuration") Duration timeout;
 
   /**
@@ -231,6 +232,9 @@ public final class PublishDnsUpdatesAction implements Runnable, Callable<Void> {
       Duration duration = new Duration(timeAtStart, clock.nowUtc());
       dnsMetrics.recordCommit(
           tld, dnsWriter, commitStatus, duration, domainsPublished, hostsPublished);
+      if (commitStatus == CommitStatus.SUCCESS) {
+        batchSizer.recordPublish(tld, duration, domainsPublished + hostsPublished);
+      }
       logger.atInfo().log(
           "writer.commit() statistics: TLD: %s, dnsWriter: %s, commitStatus: %s, duration: %s, "
               + "domainsPublished: %d, domainsRejected: %d, hostsPublished: %d, hostsRejected: %d",
@@ -14,6 +14,8 @@
 
 package google.registry.dns;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.collect.ImmutableSetMultimap.toImmutableSetMultimap;
 import static com.google.common.collect.Sets.difference;
 import static google.registry.dns.DnsConstants.DNS_PUBLISH_PUSH_QUEUE_NAME;
@@ -53,6 +55,7 @@ import google.registry.request.Action;
 import google.registry.request.Parameter;
 import google.registry.request.auth.Auth;
 import google.registry.util.Clock;
+import google.registry.util.Concurrent;
 import google.registry.util.TaskQueueUtils;
 import java.io.UnsupportedEncodingException;
 import java.util.Collection;
@@ -61,7 +64,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import javax.inject.Inject;
 import javax.inject.Named;
 import org.joda.time.DateTime;
@@ -70,6 +75,11 @@ import org.joda.time.Duration;
 /**
  * Action for fanning out DNS refresh tasks by TLD, using data taken from the DNS pull queue.
  *
+ * <p>Tasks are leased and fanned out by several worker threads, each of which leases its own
+ * batches until the queue is empty or the requested duration has passed. The number of refresh
+ * items batched into each publish task is chosen per TLD by {@link DnsUpdateBatchSizer}, based on
+ * how long recent publishes for the TLD took.
+ *
  * <h3>Parameters Reference</h3>
  *
  * <ul>
@@ -103,14 +113,20 @@ public final class ReadDnsQueueAction implements Runnable {
 
   @Inject @Config("dnsTldUpdateBatchSize") int tldUpdateBatchSize;
   @Inject @Config("readDnsQueueActionRuntime") Duration requestedMaximumDuration;
+  @Inject @Config("readDnsQueueActionWorkerCount") int workerCount;
   @Inject @Named(DNS_PUBLISH_PUSH_QUEUE_NAME) Queue dnsPublishPushQueue;
   @Inject @Parameter(PARAM_JITTER_SECONDS) Optional<Integer> jitterSeconds;
   @Inject Clock clock;
   @Inject DnsQueue dnsQueue;
+  @Inject DnsMetrics dnsMetrics;
+  @Inject DnsUpdateBatchSizer batchSizer;
   @Inject HashFunction hashFunction;
   @Inject TaskQueueUtils taskQueueUtils;
   @Inject ReadDnsQueueAction() {}
 
+  /** The age of the oldest refresh item dispatched for each TLD, across all workers. */
+  private final ConcurrentHashMap<String, Duration> queueLagByTld = new ConcurrentHashMap<>();
+
   /** Container for items we pull out of the DNS pull queue and process for fanout. */
   @AutoValue
   abstract static class RefreshItem implements Comparable<RefreshItem> {
@@ -139,16 +155,42 @@ public final class ReadDnsQueueAction implements Runnable {
   public void run() {
     DateTime requestedEndTime = clock.nowUtc().plus(requestedMaximumDuration);
     ImmutableSet<String> tlds = Registries.getTlds();
+    int numTasksLeased =
+        Concurrent.transform(
+                IntStream.range(0, workerCount).boxed().collect(toImmutableList()),
+                workerCount,
+                worker -> leaseAndDispatchTasks(requestedEndTime, tlds))
+            .stream()
+            .mapToInt(Integer::intValue)
+            .sum();
+    logger.atInfo().log("Leased %d DNS update tasks with %d workers.", numTasksLeased, workerCount);
+    dnsMetrics.recordQueueLag(
+        tlds.stream()
+            .collect(
+                toImmutableMap(
+                    tld -> tld, tld -> queueLagByTld.getOrDefault(tld, Duration.ZERO))));
+  }
+
+  /**
+   * Leases batches of tasks and dispatches them until the queue is empty, or until the requested
+   * end time.
+   *
+   * @return the number of tasks leased
+   */
+  private int leaseAndDispatchTasks(DateTime requestedEndTime, ImmutableSet<String> tlds) {
+    int numTasksLeased = 0;
     while (requestedEndTime.isAfterNow()) {
       List<TaskHandle> tasks = dnsQueue.leaseTasks(requestedMaximumDuration.plus(LEASE_PADDING));
       logger.atInfo().log("Leased %d DNS update tasks.", tasks.size());
+      numTasksLeased += tasks.size();
       if (!tasks.isEmpty()) {
         dispatchTasks(ImmutableSet.copyOf(tasks), tlds);
       }
       if (tasks.size() < dnsQueue.getLeaseTasksBatchSize()) {
-        return;
+        break;
       }
     }
+    return numTasksLeased;
   }
 
   /** A set of tasks grouped based on the action to take on them. */
@@ -234,6 +276,7 @@ public final class ReadDnsQueueAction implements Runnable {
       logger.atWarning().log(
           "The dns-pull queue has unknown TLDs: %s.", classifiedTasks.unknownTlds());
     }
+    updateQueueLag(classifiedTasks.refreshItemsByTld());
     bucketRefreshItems(classifiedTasks.refreshItemsByTld());
     if (!classifiedTasks.tasksToKeep().isEmpty()) {
       logger.atWarning().log(
@@ -256,6 +299,24 @@ public final class ReadDnsQueueAction implements Runnable {
     logger.atInfo().log("Done processing DNS tasks.");
   }
 
+  /** Updates the age of the oldest refresh item of each TLD with the given items. */
+  private void updateQueueLag(ImmutableSetMultimap<String, RefreshItem> refreshItemsByTld) {
+    DateTime now = clock.nowUtc();
+    refreshItemsByTld
+        .asMap()
+        .forEach(
+            (tld, items) ->
+                queueLagByTld.merge(
+                    tld,
+                    new Duration(
+                        items.stream()
+                            .map(RefreshItem::creationTime)
+                            .min(Comparator.naturalOrder())
+                            .get(),
+                        now),
+                    (a, b) -> a.isLongerThan(b) ? a : b));
+  }
+
   /**
    * Classifies the given tasks based on what action we need to take on them.
    *
@@ -318,9 +379,11 @@ public final class ReadDnsQueueAction implements Runnable {
         : refreshItemsByTld.asMap().entrySet()) {
       String tld = tldRefreshItemsEntry.getKey();
       int numPublishLocks = Registry.get(tld).getNumDnsPublishLocks();
+      int batchSize = batchSizer.getBatchSize(tld, tldUpdateBatchSize);
+      dnsMetrics.recordUpdateBatchSize(tld, batchSize);
       // 1 lock or less implies no TLD-wide locks, simply enqueue everything under lock 1 of 1
       if (numPublishLocks <= 1) {
-        enqueueUpdates(tld, 1, 1, tldRefreshItemsEntry.getValue());
+        enqueueUpdates(tld, 1, 1, batchSize, tldRefreshItemsEntry.getValue());
       } else {
         tldRefreshItemsEntry
             .getValue()
@@ -332,7 +395,9 @@ public final class ReadDnsQueueAction implements Runnable {
             .asMap()
             .entrySet()
             .forEach(
-                entry -> enqueueUpdates(tld, entry.getKey(), numPublishLocks, entry.getValue()));
+                entry ->
+                    enqueueUpdates(
+                        tld, entry.getKey(), numPublishLocks, batchSize, entry.getValue()));
       }
     }
   }
@@ -352,11 +417,15 @@ public final class ReadDnsQueueAction implements Runnable {
 
   /**
    * Creates DNS refresh tasks for all writers for the tld within a lock index and batches large
-   * updates into smaller chunks.
+   * updates into chunks of the given size.
    */
   private void enqueueUpdates(
-      String tld, int lockIndex, int numPublishLocks, Collection<RefreshItem> items) {
-    for (List<RefreshItem> chunk : Iterables.partition(items, tldUpdateBatchSize)) {
+      String tld,
+      int lockIndex,
+      int numPublishLocks,
+      int batchSize,
+      Collection<RefreshItem> items) {
+    for (List<RefreshItem> chunk : Iterables.partition(items, batchSize)) {
       DateTime earliestCreateTime =
           chunk.stream().map(RefreshItem::creationTime).min(Comparator.naturalOrder()).get();
       for (String dnsWriter : Registry.get(tld).getDnsWriters()) {
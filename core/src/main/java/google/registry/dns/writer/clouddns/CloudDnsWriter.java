@@ -28,6 +28,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.net.InternetDomainName;
@@ -88,6 +89,7 @@ public class CloudDnsWriter extends BaseDnsWriter {
   private final String projectId;
   private final String zoneName;
   private final Dns dnsConnection;
+  private final CloudDnsZoneSnapshot zoneSnapshot;
   private final HashMap<String, ImmutableSet<ResourceRecordSet>> desiredRecords = new HashMap<>();
 
   @Inject
@@ -100,9 +102,11 @@ public class CloudDnsWriter extends BaseDnsWriter {
       @Config("dnsDefaultDsTtl") Duration defaultDsTtl,
       @Named("cloudDns") RateLimiter rateLimiter,
       @Named("cloudDnsNumThreads") int numThreads,
+      CloudDnsZoneSnapshot zoneSnapshot,
       Clock clock,
       Retrier retrier) {
     this.dnsConnection = dnsConnection;
+    this.zoneSnapshot = zoneSnapshot;
     this.projectId = projectId;
     this.zoneName = zoneName.replace('.', '-');
     this.defaultATtl = defaultATtl;
@@ -264,9 +268,10 @@ public class CloudDnsWriter extends BaseDnsWriter {
    *
    * <p>The zone for the TLD must exist first in Cloud DNS and must be DNSSEC enabled.
    *
-   * <p>The relevant resource records (including those of all subordinate hosts) will be retrieved
-   * and the operation will be retried until the state of the retrieved zone data matches the
-   * representation built via this writer.
+   * <p>The relevant resource records (including those of all subordinate hosts) will be taken from
+   * the {@link CloudDnsZoneSnapshot}, or retrieved if the snapshot doesn't have them, and the
+   * operation will be retried until the state of the zone data matches the representation built
+   * via this writer.
    */
   @Override
   protected void commitUnchecked() {
@@ -287,33 +292,97 @@ public class CloudDnsWriter extends BaseDnsWriter {
   /** Mutate the zone with the provided {@code desiredRecords}. */
   @VisibleForTesting
   void mutateZone(ImmutableMap<String, ImmutableSet<ResourceRecordSet>> desiredRecords) {
-    // Fetch all existing records for names that this writer is trying to modify
-    ImmutableSet.Builder<ResourceRecordSet> flattenedExistingRecords = new ImmutableSet.Builder<>();
+    // Get all existing records for names that this writer is trying to modify
+    Map<String, ImmutableSet<ResourceRecordSet>> existingRecords =
+        getExistingRecordsWithGlue(desiredRecords.keySet(), true);
+
+    // Nothing would be written for a name whose snapshot already has its desired records, so Cloud
+    // DNS would never get to reject it if the snapshot is stale. Read those names again instead of
+    // trusting the snapshot, so that out of band changes to them are overwritten.
+    ImmutableSet<String> unchangedSnapshotNames =
+        zoneSnapshot.getAll(zoneName, existingRecords.keySet()).entrySet().stream()
+            .filter(
+                entry ->
+                    entry
+                        .getValue()
+                        .equals(desiredRecords.getOrDefault(entry.getKey(), ImmutableSet.of())))
+            .map(Map.Entry::getKey)
+            .collect(toImmutableSet());
+    if (!unchangedSnapshotNames.isEmpty()) {
+      existingRecords.putAll(getExistingRecordsWithGlue(unchangedSnapshotNames, false));
+    }
 
-    // First, fetch the records for the given domains
-    Map<String, List<ResourceRecordSet>> domainRecords =
-        getResourceRecordsForDomains(desiredRecords.keySet());
+    // Flatten the existing and desired records into one set each.
+    ImmutableSet<ResourceRecordSet> flattenedDesiredRecords = flatten(desiredRecords);
+    ImmutableSet<ResourceRecordSet> flattenedExistingRecords = flatten(existingRecords);
 
-    // add the records to the list of existing records
-    domainRecords.values().forEach(flattenedExistingRecords::addAll);
+    // Delete all existing records and add back the desired records
+    try {
+      updateResourceRecords(flattenedDesiredRecords, flattenedExistingRecords);
+    } catch (RuntimeException e) {
+      // The snapshot might not match the zone, so read these names again on the next attempt.
+      zoneSnapshot.invalidateAll(zoneName, existingRecords.keySet());
+      throw e;
+    }
+
+    // All of these names now have exactly the desired records, which are empty for the glue records
+    // of nameservers that are no longer used.
+    zoneSnapshot.putAll(
+        zoneName,
+        Maps.toMap(
+            Sets.union(existingRecords.keySet(), desiredRecords.keySet()),
+            name -> desiredRecords.getOrDefault(name, ImmutableSet.of())));
+  }
+
+  /**
+   * Returns the existing {@link ResourceRecordSet}s for the given domain names under this zone,
+   * and for the in-bailiwick nameservers that those records delegate to.
+   */
+  private Map<String, ImmutableSet<ResourceRecordSet>> getExistingRecordsWithGlue(
+      Set<String> domainNames, boolean useSnapshot) {
+    Map<String, ImmutableSet<ResourceRecordSet>> existingRecords = new HashMap<>();
+
+    // First, get the records for the given domains
+    existingRecords.putAll(getExistingRecords(domainNames, useSnapshot));
 
     // Get the glue record host names from the given records
     ImmutableSet<String> hostsToRead =
-        domainRecords
+        existingRecords
             .entrySet()
             .stream()
             .flatMap(entry -> filterGlueRecords(entry.getKey(), entry.getValue().stream()))
+            .filter(hostName -> !existingRecords.containsKey(hostName))
             .collect(toImmutableSet());
 
-    // Then fetch and add the records for these hosts
-    getResourceRecordsForDomains(hostsToRead).values().forEach(flattenedExistingRecords::addAll);
+    // Then get the records for these hosts
+    existingRecords.putAll(getExistingRecords(hostsToRead, useSnapshot));
+    return existingRecords;
+  }
 
-    // Flatten the desired records into one set.
-    ImmutableSet.Builder<ResourceRecordSet> flattenedDesiredRecords = new ImmutableSet.Builder<>();
-    desiredRecords.values().forEach(flattenedDesiredRecords::addAll);
+  /** Returns all of the record sets of the given names, as one set. */
+  private static ImmutableSet<ResourceRecordSet> flatten(
+      Map<String, ImmutableSet<ResourceRecordSet>> recordsByName) {
+    ImmutableSet.Builder<ResourceRecordSet> records = new ImmutableSet.Builder<>();
+    recordsByName.values().forEach(records::addAll);
+    return records.build();
+  }
 
-    // Delete all existing records and add back the desired records
-    updateResourceRecords(flattenedDesiredRecords.build(), flattenedExistingRecords.build());
+  /**
+   * Returns the existing {@link ResourceRecordSet}s for the given domain names under this zone,
+   * from the snapshot if it has them and {@code useSnapshot} is set, and otherwise from Cloud DNS.
+   *
+   * <p>The provided domains should be in absolute form.
+   */
+  private ImmutableMap<String, ImmutableSet<ResourceRecordSet>> getExistingRecords(
+      Set<String> domainNames, boolean useSnapshot) {
+    ImmutableMap<String, ImmutableSet<ResourceRecordSet>> knownRecords =
+        useSnapshot ? zoneSnapshot.getAll(zoneName, domainNames) : ImmutableMap.of();
+    ImmutableMap.Builder<String, ImmutableSet<ResourceRecordSet>> existingRecords =
+        new ImmutableMap.Builder<String, ImmutableSet<ResourceRecordSet>>().putAll(knownRecords);
+    getResourceRecordsForDomains(Sets.difference(domainNames, knownRecords.keySet()))
+        .forEach(
+            (domainName, records) -> existingRecords.put(domainName, ImmutableSet.copyOf(records)));
+    return existingRecords.build();
   }
 
   /**
@@ -0,0 +1,87 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns.writer.clouddns;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.api.services.dns.model.ResourceRecordSet;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.joda.time.Duration;
+
+/**
+ * The record sets that {@link CloudDnsWriter} last wrote to, or read from, Cloud DNS, by zone and
+ * name.
+ *
+ * <p>The writer uses the snapshot as the existing state of the names it publishes, so that it only
+ * needs to read the records of names it hasn't seen recently. A snapshot can go stale when another
+ * instance, or anything else, changes the zone. That is safe, because Cloud DNS rejects a change
+ * whose deletions don't match the current records, or whose additions already exist; the writer
+ * then invalidates the names of the change and retries with freshly read records. When the
+ * snapshot says that there is nothing to change, there is no change for Cloud DNS to reject, so the
+ * writer reads the names again before skipping the write. Entries also expire after a while, so
+ * that records which were changed out of band without ever conflicting are eventually read again.
+ *
+ * <p>Names whose records were all deleted are kept as empty sets, which is different from names
+ * that aren't in the snapshot at all.
+ */
+@Singleton
+public class CloudDnsZoneSnapshot {
+
+  /** The maximum number of names whose records are kept for each zone. */
+  private static final long MAX_NAMES_PER_ZONE = 100000;
+
+  /** How long records are trusted before they are read from Cloud DNS again. */
+  private static final Duration EXPIRY = Duration.standardHours(1);
+
+  private final ConcurrentHashMap<String, Cache<String, ImmutableSet<ResourceRecordSet>>> zones =
+      new ConcurrentHashMap<>();
+
+  @Inject
+  public CloudDnsZoneSnapshot() {}
+
+  /** Returns the known records of the given names in the zone, omitting unknown names. */
+  ImmutableMap<String, ImmutableSet<ResourceRecordSet>> getAll(
+      String zoneName, Set<String> names) {
+    return getZone(zoneName).getAllPresent(names);
+  }
+
+  /** Records the current records of the given names in the zone. */
+  void putAll(String zoneName, Map<String, ImmutableSet<ResourceRecordSet>> recordsByName) {
+    getZone(zoneName).putAll(recordsByName);
+  }
+
+  /** Forgets the records of the given names in the zone, so that they are read again. */
+  void invalidateAll(String zoneName, Set<String> names) {
+    getZone(zoneName).invalidateAll(names);
+  }
+
+  private Cache<String, ImmutableSet<ResourceRecordSet>> getZone(String zoneName) {
+    return zones.computeIfAbsent(
+        zoneName,
+        unused ->
+            CacheBuilder.newBuilder()
+                .maximumSize(MAX_NAMES_PER_ZONE)
+                .expireAfterWrite(EXPIRY.getMillis(), MILLISECONDS)
+                .build());
+  }
+}
@@ -16,17 +16,29 @@ package google.registry.dns.writer.dnsupdate;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Verify.verify;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static google.registry.dns.writer.dnsupdate.DnsConnectionPool.closeQuietly;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
 import com.google.common.primitives.Ints;
 import google.registry.config.RegistryConfig.Config;
+import google.registry.util.Clock;
 import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
 import javax.inject.Inject;
 import javax.net.SocketFactory;
 import org.joda.time.Duration;
@@ -38,16 +50,25 @@ import org.xbill.DNS.Opcode;
  * s and the message framing defined in <a href="https://tools.ietf.org/html/rfc1035">RFC 1035</a>.
  * We would like use the dnsjava library's {@link org.xbill.DNS.SimpleResolver} class for this, but
  * it requires {@link java.nio.channels.SocketChannel} which is not supported on AppEngine.
+ *
+ * <p>Connections are kept open in a {@link DnsConnectionPool} after use, so that consecutive
+ * requests to the same server don't each pay for a new TCP handshake. Several messages can be sent
+ * over a connection without waiting for the response to each one, as allowed by <a
+ * href="https://tools.ietf.org/html/rfc7766#section-6.2.1.1">RFC 7766</a>; the responses are
+ * matched to the queries by message ID, since the server may answer them in any order.
  */
 public class DnsMessageTransport {
 
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
   /**
    * Size of message length field for DNS TCP transport.
    *
    * @see <a href="https://tools.ietf.org/html/rfc1035">RFC 1035</a>
    */
   static final int MESSAGE_LENGTH_FIELD_BYTES = 2;
-  private static final int MESSAGE_MAXIMUM_LENGTH = (1 << (MESSAGE_LENGTH_FIELD_BYTES * 8)) - 1;
+
+  static final int MESSAGE_MAXIMUM_LENGTH = (1 << (MESSAGE_LENGTH_FIELD_BYTES * 8)) - 1;
 
   /**
    * The standard DNS port number.
@@ -59,6 +80,11 @@ public class DnsMessageTransport {
   private final SocketFactory factory;
   private final String updateHost;
   private final int updateTimeout;
+  private final Duration connectionIdleTimeout;
+  private final int maxIdleConnections;
+  private final int maxPipelinedMessages;
+  private final DnsConnectionPool connectionPool;
+  private final Clock clock;
 
   /**
    * Class constructor.
@@ -66,15 +92,31 @@ public class DnsMessageTransport {
    * @param factory a factory for TCP sockets
    * @param updateHost host name of the DNS server
    * @param updateTimeout update I/O timeout
+   * @param connectionIdleTimeout how long an idle connection is kept open for reuse
+   * @param maxIdleConnections the maximum number of idle connections kept open for reuse
+   * @param maxPipelinedMessages the maximum number of messages awaiting a response on a connection
+   * @param connectionPool the pool of idle connections
+   * @param clock a source of time
    */
   @Inject
   public DnsMessageTransport(
       SocketFactory factory,
       @Config("dnsUpdateHost") String updateHost,
-      @Config("dnsUpdateTimeout") Duration updateTimeout) {
+      @Config("dnsUpdateTimeout") Duration updateTimeout,
+      @Config("dnsUpdateConnectionIdleTimeout") Duration connectionIdleTimeout,
+      @Config("dnsUpdateMaxIdleConnections") int maxIdleConnections,
+      @Config("dnsUpdateMaxPipelinedMessages") int maxPipelinedMessages,
+      DnsConnectionPool connectionPool,
+      Clock clock) {
+    checkArgument(maxPipelinedMessages > 0, "maxPipelinedMessages must be positive");
     this.factory = factory;
     this.updateHost = updateHost;
     this.updateTimeout = Ints.checkedCast(updateTimeout.getMillis());
+    this.connectionIdleTimeout = connectionIdleTimeout;
+    this.maxIdleConnections = maxIdleConnections;
+    this.maxPipelinedMessages = maxPipelinedMessages;
+    this.connectionPool = connectionPool;
+    this.clock = clock;
   }
 
   /**
@@ -87,21 +129,93 @@ public class DnsMessageTransport {
    * @throws IllegalArgumentException if the query is too large to be sent (&gt; 65535 bytes)
    */
   public Message send(Message query) throws IOException {
-    try (Socket socket = factory.createSocket(InetAddress.getByName(updateHost), DNS_PORT)) {
+    return getOnlyElement(sendAll(ImmutableList.of(query)));
+  }
+
+  /**
+   * Sends DNS "query" messages (most likely UPDATEs) over a single connection, and returns the
+   * responses in the order of the queries. Each response is checked for matching ID and opcode.
+   *
+   * <p>If an idle connection from the pool fails, which happens when the server has closed it in
+   * the meantime, all the queries are sent again over a new connection. Callers must therefore
+   * only send messages that can safely be applied more than once.
+   *
+   * @param queries the messages to send, which must have distinct IDs
+   * @return the responses received from the server
+   * @throws IOException if the Socket input/output streams throws one
+   * @throws IllegalArgumentException if a query is too large to be sent (&gt; 65535 bytes)
+   */
+  public ImmutableList<Message> sendAll(ImmutableList<Message> queries) throws IOException {
+    checkArgument(
+        queries.stream().map(query -> query.getHeader().getID()).collect(toImmutableSet()).size()
+            == queries.size(),
+        "DNS messages sent together must have distinct IDs");
+    ImmutableList<byte[]> queryData =
+        queries.stream().map(DnsMessageTransport::toWireChecked).collect(toImmutableList());
+    Optional<Socket> pooledSocket =
+        connectionPool.take(updateHost, clock.nowUtc().minus(connectionIdleTimeout));
+    if (pooledSocket.isPresent()) {
+      try {
+        return sendAllOnConnection(pooledSocket.get(), queries, queryData);
+      } catch (SocketTimeoutException e) {
+        throw e;
+      } catch (IOException e) {
+        logger.atInfo().withCause(e).log(
+            "Pooled connection to %s failed; retrying on a new connection", updateHost);
+      }
+    }
+    Socket socket = factory.createSocket(InetAddress.getByName(updateHost), DNS_PORT);
+    return sendAllOnConnection(socket, queries, queryData);
+  }
+
+  /**
+   * Sends the queries over the given socket, and returns the socket to the pool if all of them
+   * were answered. The socket is closed otherwise.
+   */
+  private ImmutableList<Message> sendAllOnConnection(
+      Socket socket, ImmutableList<Message> queries, ImmutableList<byte[]> queryData)
+      throws IOException {
+    boolean succeeded = false;
+    try {
       socket.setSoTimeout(updateTimeout);
-      writeMessage(socket.getOutputStream(), query);
-      Message response = readMessage(socket.getInputStream());
-      checkValidResponse(query, response);
-      return response;
+      OutputStream outputStream = socket.getOutputStream();
+      InputStream inputStream = socket.getInputStream();
+      Map<Integer, Message> responsesById = new HashMap<>();
+      // Limit the number of outstanding queries, so that the server never has to stop reading
+      // while its responses are waiting to be read.
+      for (int start = 0; start < queries.size(); start += maxPipelinedMessages) {
+        Map<Integer, Message> pendingQueries = new HashMap<>();
+        for (int i = start; i < Math.min(start + maxPipelinedMessages, queries.size()); i++) {
+          writeMessage(outputStream, queryData.get(i));
+          pendingQueries.put(queries.get(i).getHeader().getID(), queries.get(i));
+        }
+        while (!pendingQueries.isEmpty()) {
+          Message response = readMessage(inputStream);
+          Message query = pendingQueries.remove(response.getHeader().getID());
+          checkValidResponse(query, response, pendingQueries.keySet());
+          responsesById.put(response.getHeader().getID(), response);
+        }
+      }
+      succeeded = true;
+      return queries.stream()
+          .map(query -> responsesById.get(query.getHeader().getID()))
+          .collect(toImmutableList());
+    } finally {
+      if (succeeded) {
+        connectionPool.release(updateHost, socket, clock.nowUtc(), maxIdleConnections);
+      } else {
+        closeQuietly(socket);
+      }
     }
   }
 
-  private void checkValidResponse(Message query, Message response) {
+  private void checkValidResponse(
+      Message query, Message response, Iterable<Integer> otherPendingIds) {
     verify(
-        response.getHeader().getID() == query.getHeader().getID(),
+        query != null,
         "response ID %s does not match query ID %s",
         response.getHeader().getID(),
-        query.getHeader().getID());
+        Joiner.on(" or ").join(otherPendingIds));
     verify(
         response.getHeader().getOpcode() == query.getHeader().getOpcode(),
         "response opcode '%s' does not match query opcode '%s'",
@@ -109,13 +223,17 @@ public class DnsMessageTransport {
         Opcode.string(query.getHeader().getOpcode()));
   }
 
-  private void writeMessage(OutputStream outputStream, Message message) throws IOException {
+  private static byte[] toWireChecked(Message message) {
     byte[] messageData = message.toWire();
     checkArgument(
         messageData.length <= MESSAGE_MAXIMUM_LENGTH,
         "DNS request message larger than maximum of %s: %s",
         MESSAGE_MAXIMUM_LENGTH,
         messageData.length);
+    return messageData;
+  }
+
+  private void writeMessage(OutputStream outputStream, byte[] messageData) throws IOException {
     ByteBuffer buffer = ByteBuffer.allocate(messageData.length + MESSAGE_LENGTH_FIELD_BYTES);
     buffer.putShort((short) messageData.length);
     buffer.put(messageData);
@@ -41,4 +41,32 @@ public class DnsUpdateConfigModule {
   public static Duration provideDnsUpdateTimeout() {
     return Duration.standardSeconds(30);
   }
+
+  /**
+   * How long a connection to the DNS server is kept open after use, so that it can be reused by
+   * later DNS updates.
+   */
+  @Provides
+  @Config("dnsUpdateConnectionIdleTimeout")
+  public static Duration provideDnsUpdateConnectionIdleTimeout() {
+    return Duration.standardMinutes(1);
+  }
+
+  /**
+   * Maximum number of idle connections to the DNS server that are kept open for reuse.
+   */
+  @Provides
+  @Config("dnsUpdateMaxIdleConnections")
+  public static int provideDnsUpdateMaxIdleConnections() {
+    return 4;
+  }
+
+  /**
+   * Maximum number of DNS update messages sent over a connection before waiting for responses.
+   */
+  @Provides
+  @Config("dnsUpdateMaxPipelinedMessages")
+  public static int provideDnsUpdateMaxPipelinedMessages() {
+    return 16;
+  }
 }
@@ -18,6 +18,7 @@ import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Verify.verify;
 import static com.google.common.collect.Sets.intersection;
 import static com.google.common.collect.Sets.union;
+import static google.registry.dns.writer.dnsupdate.DnsMessageTransport.MESSAGE_MAXIMUM_LENGTH;
 import static google.registry.model.EppResourceUtils.loadByForeignKey;
 
 import com.google.common.base.Joiner;
@@ -36,6 +37,8 @@ import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import javax.inject.Inject;
 import org.joda.time.Duration;
@@ -48,6 +51,8 @@ import org.xbill.DNS.NSRecord;
 import org.xbill.DNS.Name;
 import org.xbill.DNS.RRset;
 import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
 import org.xbill.DNS.TextParseException;
 import org.xbill.DNS.Type;
 import org.xbill.DNS.Update;
@@ -72,8 +77,13 @@ import org.xbill.DNS.Update;
  * assuming that this will be done by a third party DNS provider.
  *
  * <p>Each commit call is treated as an atomic update to the DNS. If a commit fails an exception
- * is thrown. The SOA record serial number is implicitly incremented by the server on each UPDATE
- * message, as required by RFC 2136. Care must be taken to make sure the SOA serial number does not
+ * is thrown. However, a commit whose UPDATE message would be larger than the maximum size of a DNS
+ * message is split into several messages that are sent over one connection. Each of these messages
+ * contains all the changes for the domains in it, so that no domain is ever published partially,
+ * but some of the messages may fail while others succeed.
+ *
+ * <p>The SOA record serial number is implicitly incremented by the server on each UPDATE message,
+ * as required by RFC 2136. Care must be taken to make sure the SOA serial number does not
  * go backwards if the entire TLD (zone) is "reset" to empty and republished.
  */
 public class DnsUpdateWriter extends BaseDnsWriter {
@@ -92,6 +102,9 @@ public class DnsUpdateWriter extends BaseDnsWriter {
   private final Update update;
   private final String zoneName;
 
+  /** The number of records in the update section of {@link #update} before each domain. */
+  private final List<Integer> domainRecordOffsets = new ArrayList<>();
+
   /**
    * Class constructor.
    *
@@ -129,6 +142,7 @@ public class DnsUpdateWriter extends BaseDnsWriter {
   private void publishDomain(String domainName, String requestingHostName) {
     Optional<DomainBase> domainOptional =
         loadByForeignKey(DomainBase.class, domainName, clock.nowUtc());
+    domainRecordOffsets.add(update.getHeader().getCount(Section.UPDATE));
     update.delete(toAbsoluteName(domainName), Type.ANY);
     // If the domain is now deleted, then don't update DNS for it.
     if (domainOptional.isPresent()) {
@@ -173,17 +187,69 @@ public class DnsUpdateWriter extends BaseDnsWriter {
   @Override
   protected void commitUnchecked() {
     try {
-      Message response = transport.send(update);
-      verify(
-          response.getRcode() == Rcode.NOERROR,
-          "DNS server failed domain update for '%s' rcode: %s",
-          zoneName,
-          Rcode.string(response.getRcode()));
+      ImmutableList<Message> messages = splitUpdate();
+      ImmutableList<Message> responses =
+          (messages.size() == 1)
+              ? ImmutableList.of(transport.send(update))
+              : transport.sendAll(messages);
+      for (Message response : responses) {
+        verify(
+            response.getRcode() == Rcode.NOERROR,
+            "DNS server failed domain update for '%s' rcode: %s",
+            zoneName,
+            Rcode.string(response.getRcode()));
+      }
     } catch (IOException e) {
       throw new RuntimeException("publishDomain failed for zone: " + zoneName, e);
     }
   }
 
+  /**
+   * Returns the UPDATE messages to send, which is normally just {@link #update}.
+   *
+   * <p>If {@link #update} is too large to be sent, its records are split into several messages
+   * without splitting the records of a domain, using the uncompressed size of the records as an
+   * upper bound of their size in a message.
+   */
+  private ImmutableList<Message> splitUpdate() {
+    if (update.toWire().length <= MESSAGE_MAXIMUM_LENGTH) {
+      return ImmutableList.of(update);
+    }
+    Record[] records = update.getSectionArray(Section.UPDATE);
+    int emptyMessageLength = new Update(toAbsoluteName(zoneName)).toWire().length;
+    ImmutableList.Builder<Message> messages = new ImmutableList.Builder<>();
+    Update message = null;
+    int messageLength = 0;
+    int messageId = update.getHeader().getID();
+    for (int i = 0; i < domainRecordOffsets.size(); i++) {
+      int start = domainRecordOffsets.get(i);
+      int end =
+          (i + 1 < domainRecordOffsets.size()) ? domainRecordOffsets.get(i + 1) : records.length;
+      int domainLength = 0;
+      for (int j = start; j < end; j++) {
+        domainLength += records[j].toWire(Section.UPDATE).length;
+      }
+      if (message != null && messageLength + domainLength > MESSAGE_MAXIMUM_LENGTH) {
+        messages.add(message);
+        message = null;
+      }
+      if (message == null) {
+        message = new Update(toAbsoluteName(zoneName));
+        // Messages sent over the same connection must have distinct IDs.
+        message.getHeader().setID(messageId++ & 0xFFFF);
+        messageLength = emptyMessageLength;
+      }
+      for (int j = start; j < end; j++) {
+        message.addRecord(records[j], Section.UPDATE);
+      }
+      messageLength += domainLength;
+    }
+    if (message != null) {
+      messages.add(message);
+    }
+    return messages.build();
+  }
+
   private RRset makeDelegationSignerSet(DomainBase domain) {
     RRset signerSet = new RRset();
     for (DelegationSignerData signerData : domain.getDsData()) {
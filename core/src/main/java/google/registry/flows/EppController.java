@@ -119,6 +119,7 @@ public final class EppController {
         EppMetric metric = eppMetricBuilder.build();
         eppMetrics.incrementEppRequests(metric);
         eppMetrics.recordProcessingTime(metric);
+        eppMetrics.recordStorageStats(metric);
       }
     }
   }
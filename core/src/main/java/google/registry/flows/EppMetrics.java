@@ -17,11 +17,14 @@ package google.registry.flows;
 import static com.google.monitoring.metrics.EventMetric.DEFAULT_FITTER;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.monitoring.metrics.DistributionFitter;
 import com.google.monitoring.metrics.EventMetric;
+import com.google.monitoring.metrics.ExponentialFitter;
 import com.google.monitoring.metrics.IncrementableMetric;
 import com.google.monitoring.metrics.LabelDescriptor;
 import com.google.monitoring.metrics.MetricRegistryImpl;
 import google.registry.monitoring.whitebox.EppMetric;
+import google.registry.persistence.transaction.StorageStats;
 import javax.inject.Inject;
 
 /** EPP Instrumentation. */
@@ -71,6 +74,81 @@ public class EppMetrics {
               LABEL_DESCRIPTORS,
               DEFAULT_FITTER);
 
+  private static final ImmutableSet<LabelDescriptor> LABEL_DESCRIPTORS_BY_COMMAND =
+      ImmutableSet.of(LabelDescriptor.create("command", "The name of the command."));
+
+  // Formatting a command for the logs normally takes well under a millisecond, so use buckets
+  // that start at 10 microseconds instead of the DEFAULT_FITTER.
+  private static final DistributionFitter COMMAND_LOGGING_TIME_FITTER =
+      ExponentialFitter.create(20, 2.0, 0.01);
+
+  private static final EventMetric commandLoggingTime =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/epp/command_logging_time",
+              "Time spent sanitizing and formatting EPP commands for logging",
+              "milliseconds",
+              LABEL_DESCRIPTORS_BY_COMMAND,
+              COMMAND_LOGGING_TIME_FITTER);
+
+  // Flows perform at most a few hundred storage operations, so use buckets of powers of two.
+  private static final DistributionFitter STORAGE_OPERATION_COUNT_FITTER =
+      ExponentialFitter.create(12, 2.0, 1.0);
+
+  private static final EventMetric storageReads =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/epp/storage/reads",
+              "Number of Datastore or Cloud SQL reads per EPP command",
+              "count",
+              LABEL_DESCRIPTORS_BY_COMMAND,
+              STORAGE_OPERATION_COUNT_FITTER);
+
+  private static final EventMetric storageWrites =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/epp/storage/writes",
+              "Number of Datastore or Cloud SQL writes per EPP command",
+              "count",
+              LABEL_DESCRIPTORS_BY_COMMAND,
+              STORAGE_OPERATION_COUNT_FITTER);
+
+  private static final EventMetric storageKeysLoaded =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/epp/storage/keys_loaded",
+              "Number of keys loaded from Datastore or Cloud SQL per EPP command",
+              "count",
+              LABEL_DESCRIPTORS_BY_COMMAND,
+              STORAGE_OPERATION_COUNT_FITTER);
+
+  private static final EventMetric transactionAttempts =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/epp/storage/transaction_attempts",
+              "Number of transaction attempts per EPP command, including retries",
+              "count",
+              LABEL_DESCRIPTORS_BY_COMMAND,
+              STORAGE_OPERATION_COUNT_FITTER);
+
+  private static final EventMetric transactionRetries =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/epp/storage/transaction_retries",
+              "Number of transaction retries per EPP command",
+              "count",
+              LABEL_DESCRIPTORS_BY_COMMAND,
+              STORAGE_OPERATION_COUNT_FITTER);
+
+  private static final EventMetric transactionTime =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/epp/storage/transaction_time",
+              "Time spent inside transactions per EPP command",
+              "milliseconds",
+              LABEL_DESCRIPTORS_BY_COMMAND,
+              DEFAULT_FITTER);
+
   private enum TrafficType {
     CANARY, PROBER, REAL
   }
@@ -104,6 +182,31 @@ public class EppMetrics {
     requestTime.record(processingTime, commandName, getTrafficType(tld).toString(), eppStatusCode);
   }
 
+  /** Records the time spent preparing an EPP command's XML for the command log. */
+  public void recordCommandLoggingTime(String commandName, double milliseconds) {
+    commandLoggingTime.record(milliseconds, commandName);
+  }
+
+  /**
+   * Records the storage operations performed by the flow of an EPP request, if it was run.
+   *
+   * <p>Comparing the time spent in transactions with the processing time shows whether a command
+   * is bound by storage or by computation.
+   */
+  public void recordStorageStats(EppMetric metric) {
+    if (!metric.getStorageStats().isPresent()) {
+      return;
+    }
+    StorageStats stats = metric.getStorageStats().get();
+    String commandName = metric.getCommandName().orElse("");
+    storageReads.record(stats.getReads(), commandName);
+    storageWrites.record(stats.getWrites(), commandName);
+    storageKeysLoaded.record(stats.getKeysLoaded(), commandName);
+    transactionAttempts.record(stats.getTransactionAttempts(), commandName);
+    transactionRetries.record(stats.getTransactionRetries(), commandName);
+    transactionTime.record(stats.getTransactionTimeMicros() / 1000.0, commandName);
+  }
+
   private static TrafficType getTrafficType(String tld) {
     if (tld.endsWith("canary.test")) {
       return TrafficType.CANARY;
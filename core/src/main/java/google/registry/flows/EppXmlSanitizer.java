@@ -15,6 +15,7 @@
 package google.registry.flows;
 
 import static com.google.common.base.Preconditions.checkState;
+import static google.registry.xml.XmlTransformer.prettyPrint;
 
 import com.google.common.base.CharMatcher;
 import com.google.common.collect.ImmutableSet;
@@ -29,6 +30,8 @@ import java.util.Optional;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.xml.namespace.QName;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
 import javax.xml.stream.XMLEventFactory;
 import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLEventWriter;
@@ -38,6 +41,13 @@ import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.Characters;
 import javax.xml.stream.events.StartDocument;
 import javax.xml.stream.events.XMLEvent;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.sax.SAXSource;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.XMLFilterImpl;
 
 /**
  * Sanitizes sensitive data in incoming/outgoing EPP XML messages.
@@ -74,6 +84,7 @@ public class EppXmlSanitizer {
   private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
   private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newFactory();
   private static final XMLEventFactory XML_EVENT_FACTORY = XMLEventFactory.newFactory();
+  private static final SAXParserFactory SAX_PARSER_FACTORY = createSaxParserFactory();
 
   /**
    * Returns sanitized EPP XML message. For malformed XML messages, base64-encoded raw bytes will be
@@ -95,6 +106,26 @@ public class EppXmlSanitizer {
     }
   }
 
+  /**
+   * Returns sanitized and pretty-printed EPP XML message, for logging.
+   *
+   * <p>This is equivalent to {@code prettyPrint(sanitizeEppXml(inputXmlBytes))}, but masks the
+   * sensitive data while the XML is being pretty-printed, so that the message is only parsed once.
+   * Malformed XML messages fall back to the two-pass implementation, which returns them
+   * base64-encoded.
+   */
+  public static String sanitizeAndPrettyPrintEppXml(byte[] inputXmlBytes) {
+    try {
+      XMLReader xmlReader = SAX_PARSER_FACTORY.newSAXParser().getXMLReader();
+      return prettyPrint(
+          new SAXSource(
+              new SanitizingXmlFilter(xmlReader),
+              new InputSource(new ByteArrayInputStream(inputXmlBytes))));
+    } catch (ParserConfigurationException | SAXException | TransformerException e) {
+      return prettyPrint(sanitizeEppXml(inputXmlBytes));
+    }
+  }
+
   private static String sanitizeAndEncode(byte[] inputXmlBytes)
       throws XMLStreamException, UnsupportedEncodingException {
     XMLEventReader xmlEventReader =
@@ -142,6 +173,58 @@ public class EppXmlSanitizer {
     return outputXmlBytes.toString(inputEncoding);
   }
 
+  /** An {@link XMLFilterImpl} that masks the character data of sensitive elements. */
+  private static class SanitizingXmlFilter extends XMLFilterImpl {
+
+    /** Name of the sensitive element that the filter is currently in, or null if there is none. */
+    private QName sensitiveElementName;
+
+    /** Character data of the current sensitive element, masked as a whole when it ends. */
+    private final StringBuilder sensitiveData = new StringBuilder();
+
+    SanitizingXmlFilter(XMLReader parent) {
+      super(parent);
+    }
+
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes atts)
+        throws SAXException {
+      flushSensitiveData();
+      super.startElement(uri, localName, qName, atts);
+      if (sensitiveElementName == null
+          && EPP_TAGS_IN_LOWER_CASE.contains(localName.toLowerCase(Locale.ROOT))) {
+        sensitiveElementName = new QName(uri, localName);
+      }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+      flushSensitiveData();
+      if (sensitiveElementName != null && sensitiveElementName.equals(new QName(uri, localName))) {
+        sensitiveElementName = null;
+      }
+      super.endElement(uri, localName, qName);
+    }
+
+    @Override
+    public void characters(char[] ch, int start, int length) throws SAXException {
+      if (sensitiveElementName == null) {
+        super.characters(ch, start, length);
+      } else {
+        // SAX may split character data into several chunks, so collect all of it before masking.
+        sensitiveData.append(ch, start, length);
+      }
+    }
+
+    private void flushSensitiveData() throws SAXException {
+      if (sensitiveData.length() > 0) {
+        char[] masked = maskSensitiveData(sensitiveData.toString()).toCharArray();
+        sensitiveData.setLength(0);
+        super.characters(masked, 0, masked.length);
+      }
+    }
+  }
+
   private static String maskSensitiveData(String original) {
     return original
         .codePoints()
@@ -167,4 +250,11 @@ public class EppXmlSanitizer {
     xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
     return xmlInputFactory;
   }
+
+  private static SAXParserFactory createSaxParserFactory() {
+    SAXParserFactory saxParserFactory = SAXParserFactory.newInstance();
+    // Preserve Name Space information.
+    saxParserFactory.setNamespaceAware(true);
+    return saxParserFactory;
+  }
 }
@@ -14,11 +14,15 @@
 
 package google.registry.flows;
 
+import static com.google.common.flogger.LazyArgs.lazy;
 import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
-import static google.registry.xml.XmlTransformer.prettyPrint;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.flogger.FluentLogger;
+import google.registry.config.RegistryConfig.Config;
 import google.registry.flows.FlowModule.ClientId;
 import google.registry.flows.FlowModule.DryRun;
 import google.registry.flows.FlowModule.InputXml;
@@ -28,6 +32,7 @@ import google.registry.flows.session.LoginFlow;
 import google.registry.model.eppcommon.Trid;
 import google.registry.model.eppoutput.EppOutput;
 import google.registry.monitoring.whitebox.EppMetric;
+import google.registry.persistence.transaction.StorageStats;
 import javax.inject.Inject;
 import javax.inject.Provider;
 
@@ -50,18 +55,20 @@ public class FlowRunner {
   @Inject SessionMetadata sessionMetadata;
   @Inject Trid trid;
   @Inject FlowReporter flowReporter;
+  @Inject EppMetrics eppMetrics;
+  @Inject @Config("eppCommandLogMaxLength") int commandLogMaxLength;
   @Inject FlowRunner() {}
 
   /** Runs the EPP flow, and records metrics on the given builder. */
   public EppOutput run(final EppMetric.Builder eppMetricBuilder) throws EppException {
-    String prettyXml = prettyPrint(EppXmlSanitizer.sanitizeEppXml(inputXmlBytes));
-
+    // Sanitizing and pretty-printing the command is expensive, so it is deferred until the log
+    // statement is actually going to be written.
     logger.atInfo().log(
         COMMAND_LOG_FORMAT,
         trid.getServerTransactionId(),
         clientId,
         sessionMetadata,
-        prettyXml.replace("\n", "\n\t"),
+        lazy(() -> formatInputXmlForLogging().replace("\n", "\n\t")),
         credentials,
         eppRequestSource,
         isDryRun ? "DRY_RUN" : "LIVE",
@@ -71,6 +78,15 @@ public class FlowRunner {
       flowReporter.recordToLogs();
     }
     eppMetricBuilder.setCommandNameFromFlow(flowClass.getSimpleName());
+    StorageStats.startRecording();
+    try {
+      return runFlow(eppMetricBuilder);
+    } finally {
+      eppMetricBuilder.setStorageStats(StorageStats.stopRecording());
+    }
+  }
+
+  private EppOutput runFlow(EppMetric.Builder eppMetricBuilder) throws EppException {
     if (!isTransactional) {
       EppOutput eppOutput = EppOutput.create(flowProvider.get().run());
       if (flowClass.equals(LoginFlow.class)) {
@@ -100,6 +116,26 @@ public class FlowRunner {
     }
   }
 
+  /**
+   * Returns the sanitized and pretty-printed input XML, truncated to the configured maximum length.
+   */
+  @VisibleForTesting
+  String formatInputXmlForLogging() {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    String prettyXml = EppXmlSanitizer.sanitizeAndPrettyPrintEppXml(inputXmlBytes);
+    if (prettyXml.length() > commandLogMaxLength) {
+      prettyXml =
+          String.format(
+              "%s\n... (%d characters truncated)",
+              prettyXml.substring(0, commandLogMaxLength),
+              prettyXml.length() - commandLogMaxLength);
+    }
+    eppMetrics.recordCommandLoggingTime(
+        flowClass.getSimpleName().replaceFirst("Flow$", ""),
+        stopwatch.elapsed(MICROSECONDS) / 1000.0);
+    return prettyXml;
+  }
+
   /** Exception for canceling a transaction while capturing what the output would have been. */
   private static class DryRunException extends RuntimeException {
     final EppOutput output;
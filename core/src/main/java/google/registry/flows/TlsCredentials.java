@@ -20,7 +20,9 @@ import static google.registry.request.RequestParameters.extractOptionalHeader;
 import static google.registry.request.RequestParameters.extractRequiredHeader;
 
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableList;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.net.HostAndPort;
 import com.google.common.net.InetAddresses;
@@ -30,7 +32,7 @@ import google.registry.config.RegistryConfig.Config;
 import google.registry.flows.EppException.AuthenticationErrorException;
 import google.registry.model.registrar.Registrar;
 import google.registry.request.Header;
-import google.registry.util.CidrAddressBlock;
+import google.registry.util.CidrAddressBlockTrie;
 import java.net.InetAddress;
 import java.util.Optional;
 import javax.inject.Inject;
@@ -55,6 +57,19 @@ public class TlsCredentials implements TransportCredentials {
 
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
+  /**
+   * The IP allow lists of registrars, compiled into tries.
+   *
+   * <p>The keys are compared by identity, so each version of a registrar that is loaded gets its
+   * own trie, and the trie is dropped along with the registrar.
+   */
+  private static final LoadingCache<Registrar, CidrAddressBlockTrie> IP_ALLOW_LIST_CACHE =
+      CacheBuilder.newBuilder()
+          .weakKeys()
+          .build(
+              CacheLoader.from(
+                  registrar -> CidrAddressBlockTrie.create(registrar.getIpAddressAllowList())));
+
   private final boolean requireSslCertificates;
   private final String clientCertificateHash;
   private final InetAddress clientInetAddr;
@@ -90,23 +105,21 @@ public class TlsCredentials implements TransportCredentials {
    * @throws BadRegistrarIpAddressException If IP address is not in the allow list provided
    */
   private void validateIp(Registrar registrar) throws AuthenticationErrorException {
-    ImmutableList<CidrAddressBlock> ipAddressAllowList = registrar.getIpAddressAllowList();
+    CidrAddressBlockTrie ipAddressAllowList = IP_ALLOW_LIST_CACHE.getUnchecked(registrar);
     if (ipAddressAllowList.isEmpty()) {
       logger.atInfo().log(
           "Skipping IP allow list check because %s doesn't have an IP allow list",
           registrar.getClientId());
       return;
     }
-    for (CidrAddressBlock cidrAddressBlock : ipAddressAllowList) {
-      if (cidrAddressBlock.contains(clientInetAddr)) {
-        // IP address is in allow list; return early.
-        return;
-      }
+    if (ipAddressAllowList.contains(clientInetAddr)) {
+      // IP address is in allow list; return early.
+      return;
     }
     logger.atInfo().log(
         "Authentication error: IP address %s is not allow-listed for registrar %s; allow list is:"
             + " %s",
-        clientInetAddr, registrar.getClientId(), ipAddressAllowList);
+        clientInetAddr, registrar.getClientId(), registrar.getIpAddressAllowList());
     throw new BadRegistrarIpAddressException();
   }
 
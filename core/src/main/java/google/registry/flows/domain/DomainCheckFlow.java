@@ -17,10 +17,10 @@ package google.registry.flows.domain;
 import static com.google.common.base.Strings.emptyToNull;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static google.registry.flows.FlowUtils.validateClientIsLoggedIn;
 import static google.registry.flows.ResourceFlowUtils.verifyTargetIdCount;
 import static google.registry.flows.domain.DomainFlowUtils.checkAllowedAccessToTld;
-import static google.registry.flows.domain.DomainFlowUtils.getReservationTypes;
 import static google.registry.flows.domain.DomainFlowUtils.handleFeeRequest;
 import static google.registry.flows.domain.DomainFlowUtils.isAnchorTenant;
 import static google.registry.flows.domain.DomainFlowUtils.isReserved;
@@ -30,7 +30,9 @@ import static google.registry.flows.domain.DomainFlowUtils.validateDomainNameWit
 import static google.registry.flows.domain.DomainFlowUtils.verifyNotInPredelegation;
 import static google.registry.model.registry.Registry.TldState.START_DATE_SUNRISE;
 import static google.registry.model.registry.label.ReservationType.getTypeOfHighestSeverity;
+import static java.util.stream.Collectors.groupingBy;
 
+import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -69,7 +71,9 @@ import google.registry.model.eppoutput.EppResponse.ResponseExtension;
 import google.registry.model.index.ForeignKeyIndex;
 import google.registry.model.registry.Registry;
 import google.registry.model.registry.Registry.TldState;
+import google.registry.model.registry.label.PremiumListUtils;
 import google.registry.model.registry.label.ReservationType;
+import google.registry.model.registry.label.ReservedList;
 import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
 import google.registry.persistence.VKey;
 import google.registry.util.Clock;
@@ -162,8 +166,10 @@ public final class DomainCheckFlow implements Flow {
             // TODO: Use as of date from fee extension v0.12 instead of now, if specified.
             .setAsOfDate(now)
             .build());
+    // Names that the foreign key filter rules out are reported as available without a Datastore
+    // read. The rest are still loaded uncached, to keep their check results consistent.
     ImmutableMap<String, ForeignKeyIndex<DomainBase>> existingDomains =
-        ForeignKeyIndex.load(DomainBase.class, domainNames, now);
+        ForeignKeyIndex.loadFiltered(DomainBase.class, domainNames, now);
     Optional<AllocationTokenExtension> allocationTokenExtension =
         eppInput.getSingleExtension(AllocationTokenExtension.class);
     Optional<AllocationTokenDomainCheckResults> tokenDomainCheckResults =
@@ -185,11 +191,14 @@ public final class DomainCheckFlow implements Flow {
             .orElse(ImmutableMap.of());
     Optional<AllocationToken> allocationToken =
         tokenDomainCheckResults.flatMap(AllocationTokenDomainCheckResults::token);
+    ImmutableMap<InternetDomainName, ImmutableSet<ReservationType>> reservationTypes =
+        getReservationTypes(parsedDomains.values());
     for (String domainName : domainNames) {
       Optional<String> message =
           getMessageForCheck(
               parsedDomains.get(domainName),
               existingDomains,
+              reservationTypes,
               domainCheckResults,
               tldStates,
               allocationToken);
@@ -218,9 +227,38 @@ public final class DomainCheckFlow implements Flow {
         .build();
   }
 
+  /**
+   * Returns the reservation types of each of the given domains.
+   *
+   * <p>The domains are grouped by TLD so that the reserved lists of each TLD are looked up once for
+   * all of its labels, instead of several times per domain name.
+   */
+  private static ImmutableMap<InternetDomainName, ImmutableSet<ReservationType>>
+      getReservationTypes(ImmutableCollection<InternetDomainName> domainNames) {
+    ImmutableMap.Builder<InternetDomainName, ImmutableSet<ReservationType>> reservationTypes =
+        new ImmutableMap.Builder<>();
+    domainNames.stream()
+        .collect(groupingBy(domainName -> domainName.parent().toString()))
+        .forEach(
+            (tld, domainNamesOnTld) -> {
+              ImmutableMap<String, ImmutableSet<ReservationType>> typesByLabel =
+                  ReservedList.getReservationTypes(
+                      domainNamesOnTld.stream()
+                          .map(domainName -> domainName.parts().get(0))
+                          .collect(toImmutableSet()),
+                      tld);
+              domainNamesOnTld.forEach(
+                  domainName ->
+                      reservationTypes.put(
+                          domainName, typesByLabel.get(domainName.parts().get(0))));
+            });
+    return reservationTypes.build();
+  }
+
   private Optional<String> getMessageForCheck(
       InternetDomainName domainName,
       ImmutableMap<String, ForeignKeyIndex<DomainBase>> existingDomains,
+      ImmutableMap<InternetDomainName, ImmutableSet<ReservationType>> reservationTypesByDomain,
       ImmutableMap<InternetDomainName, String> tokenCheckResults,
       ImmutableMap<String, TldState> tldStates,
       Optional<AllocationToken> allocationToken) {
@@ -228,10 +266,10 @@ public final class DomainCheckFlow implements Flow {
       return Optional.of("In use");
     }
     TldState tldState = tldStates.get(domainName.parent().toString());
-    if (isReserved(domainName, START_DATE_SUNRISE.equals(tldState))) {
-      if (!isValidReservedCreate(domainName, allocationToken)
-          && !isAnchorTenant(domainName, allocationToken, Optional.empty())) {
-        ImmutableSet<ReservationType> reservationTypes = getReservationTypes(domainName);
+    ImmutableSet<ReservationType> reservationTypes = reservationTypesByDomain.get(domainName);
+    if (isReserved(reservationTypes, START_DATE_SUNRISE.equals(tldState))) {
+      if (!isValidReservedCreate(domainName, reservationTypes, allocationToken)
+          && !isAnchorTenant(domainName, reservationTypes, allocationToken, Optional.empty())) {
         if (!reservationTypes.isEmpty()) {
           ReservationType highestSeverityType = getTypeOfHighestSeverity(reservationTypes);
           return Optional.of(highestSeverityType.getMessageForCheck());
@@ -259,6 +297,7 @@ public final class DomainCheckFlow implements Flow {
         new ImmutableList.Builder<>();
     ImmutableMap<String, EppResource> domainObjs =
         loadDomainsForRestoreChecks(feeCheck, domainNames, existingDomains);
+    prefetchPremiumListEntries(domainNames.values());
 
     for (FeeCheckCommandExtensionItem feeCheckItem : feeCheck.getItems()) {
       for (String domainName : getDomainNamesToCheckForFee(feeCheckItem, domainNames.keySet())) {
@@ -279,6 +318,23 @@ public final class DomainCheckFlow implements Flow {
     return ImmutableList.of(feeCheck.createResponse(responseItems.build()));
   }
 
+  /**
+   * Loads the premium list entries of all of the domains into the in-memory cache in one batch per
+   * TLD, so that pricing the domains one by one afterwards doesn't load them one at a time.
+   */
+  private static void prefetchPremiumListEntries(
+      ImmutableCollection<InternetDomainName> domainNames) {
+    domainNames.stream()
+        .collect(groupingBy(domainName -> domainName.parent().toString()))
+        .forEach(
+            (tld, domainNamesOnTld) ->
+                PremiumListUtils.prefetchPremiumListEntries(
+                    domainNamesOnTld.stream()
+                        .map(domainName -> domainName.parts().get(0))
+                        .collect(toImmutableSet()),
+                    Registry.get(tld)));
+  }
+
   /**
    * Loads and returns all existing domains that are having restore fees checked.
    *
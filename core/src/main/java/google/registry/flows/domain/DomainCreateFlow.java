@@ -99,6 +99,7 @@ import google.registry.model.eppoutput.EppResponse;
 import google.registry.model.host.HostResource;
 import google.registry.model.index.EppResourceIndex;
 import google.registry.model.index.ForeignKeyIndex;
+import google.registry.model.index.ForeignKeyIndexFilter;
 import google.registry.model.ofy.ObjectifyService;
 import google.registry.model.poll.PendingActionNotificationResponse.DomainPendingActionNotificationResponse;
 import google.registry.model.poll.PollMessage;
@@ -383,6 +384,9 @@ public class DomainCreateFlow implements TransactionalFlow {
                 .setYears(years)
                 .build());
     persistEntityChanges(entityChanges);
+    // Make the new domain visible to cached lookups on this instance right away. If the transaction
+    // ends up failing, this only adds a harmless false positive to the filter.
+    ForeignKeyIndexFilter.put(newDomain);
 
     BeforeResponseReturnData responseData =
         flowCustomLogic.beforeResponse(
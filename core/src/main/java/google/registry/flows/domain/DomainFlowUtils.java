@@ -258,9 +258,21 @@ public class DomainFlowUtils {
       InternetDomainName domainName,
       Optional<AllocationToken> token,
       Optional<MetadataExtension> metadataExtension) {
+    return isAnchorTenant(domainName, getReservationTypes(domainName), token, metadataExtension);
+  }
+
+  /**
+   * Returns whether a given domain create request is for a valid anchor tenant, given the
+   * reservation types of the domain that were already looked up.
+   */
+  static boolean isAnchorTenant(
+      InternetDomainName domainName,
+      ImmutableSet<ReservationType> reservationTypes,
+      Optional<AllocationToken> token,
+      Optional<MetadataExtension> metadataExtension) {
     // If the domain is reserved for anchor tenants, then check if the allocation token exists and
     // is for this domain.
-    if (getReservationTypes(domainName).contains(RESERVED_FOR_ANCHOR_TENANT)
+    if (reservationTypes.contains(RESERVED_FOR_ANCHOR_TENANT)
         && token.isPresent()
         && token.get().getDomainName().isPresent()
         && token.get().getDomainName().get().equals(domainName.toString())) {
@@ -274,9 +286,20 @@ public class DomainFlowUtils {
   /** Returns whether a given domain create request is for a valid reserved domain. */
   public static boolean isValidReservedCreate(
       InternetDomainName domainName, Optional<AllocationToken> token) {
+    return isValidReservedCreate(domainName, getReservationTypes(domainName), token);
+  }
+
+  /**
+   * Returns whether a given domain create request is for a valid reserved domain, given the
+   * reservation types of the domain that were already looked up.
+   */
+  static boolean isValidReservedCreate(
+      InternetDomainName domainName,
+      ImmutableSet<ReservationType> reservationTypes,
+      Optional<AllocationToken> token) {
     // If the domain is reserved for specific use, then check if the allocation token exists and
     // is for this domain.
-    return getReservationTypes(domainName).contains(RESERVED_FOR_SPECIFIC_USE)
+    return reservationTypes.contains(RESERVED_FOR_SPECIFIC_USE)
         && token.isPresent()
         && token.get().getDomainName().isPresent()
         && token.get().getDomainName().get().equals(domainName.toString());
@@ -432,7 +455,11 @@ public class DomainFlowUtils {
       ImmutableSet.of(RESERVED_FOR_SPECIFIC_USE, RESERVED_FOR_ANCHOR_TENANT, FULLY_BLOCKED);
 
   static boolean isReserved(InternetDomainName domainName, boolean isSunrise) {
-    ImmutableSet<ReservationType> types = getReservationTypes(domainName);
+    return isReserved(getReservationTypes(domainName), isSunrise);
+  }
+
+  /** Returns whether a domain with the given reservation types is reserved. */
+  static boolean isReserved(ImmutableSet<ReservationType> types, boolean isSunrise) {
     return !Sets.intersection(types, RESERVED_TYPES).isEmpty()
         || !(isSunrise || intersection(TYPES_ALLOWED_FOR_CREATE_ONLY_IN_SUNRISE, types).isEmpty());
   }
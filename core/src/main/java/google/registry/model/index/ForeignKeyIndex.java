@@ -17,6 +17,9 @@ package google.registry.model.index;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static google.registry.config.RegistryConfig.getEppResourceCachingDuration;
 import static google.registry.config.RegistryConfig.getEppResourceMaxCachedEntries;
+import static google.registry.model.index.ForeignKeyIndexFilter.FilterCheckOutcome.FILTER_NEGATIVE;
+import static google.registry.model.index.ForeignKeyIndexFilter.FilterCheckOutcome.FILTER_POSITIVE_EXISTS;
+import static google.registry.model.index.ForeignKeyIndexFilter.FilterCheckOutcome.FILTER_POSITIVE_NONEXISTENT;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
 import static google.registry.util.TypeUtils.instantiate;
@@ -184,6 +187,38 @@ public abstract class ForeignKeyIndex<E extends EppResource> extends BackupGroup
         .collect(ImmutableMap.toImmutableMap(Map.Entry::getKey, Map.Entry::getValue));
   }
 
+  /**
+   * Load a list of {@link ForeignKeyIndex} instances like {@link #load(Class, Iterable, DateTime)},
+   * except that foreign keys which the {@link ForeignKeyIndexFilter} rules out are omitted without
+   * being loaded, if the filter is enabled for this resource type.
+   *
+   * <p>A resource created on another instance since the filter was last rebuilt is reported as
+   * nonexistent, so don't use this to check uniqueness before creating a resource.
+   */
+  public static <E extends EppResource> ImmutableMap<String, ForeignKeyIndex<E>> loadFiltered(
+      Class<E> clazz, Iterable<String> foreignKeys, final DateTime now) {
+    if (!ForeignKeyIndexFilter.isEnabledFor(clazz)) {
+      return load(clazz, foreignKeys, now);
+    }
+    ImmutableSet<String> checkedKeys = ImmutableSet.copyOf(foreignKeys);
+    ImmutableList<String> positiveKeys =
+        checkedKeys.stream()
+            .filter(fk -> ForeignKeyIndexFilter.mightExist(clazz, fk))
+            .collect(toImmutableList());
+    ImmutableMap<String, ForeignKeyIndex<E>> fkis =
+        positiveKeys.isEmpty() ? ImmutableMap.of() : load(clazz, positiveKeys, now);
+    recordFilterCheckOutcomes(clazz, checkedKeys.size(), positiveKeys.size(), fkis.size());
+    return fkis;
+  }
+
+  private static void recordFilterCheckOutcomes(
+      Class<? extends EppResource> clazz, int numChecked, int numPositive, int numExisting) {
+    ForeignKeyIndexFilter.recordCheckOutcome(clazz, FILTER_NEGATIVE, numChecked - numPositive);
+    ForeignKeyIndexFilter.recordCheckOutcome(clazz, FILTER_POSITIVE_EXISTS, numExisting);
+    ForeignKeyIndexFilter.recordCheckOutcome(
+        clazz, FILTER_POSITIVE_NONEXISTENT, numPositive - numExisting);
+  }
+
   static final CacheLoader<Key<ForeignKeyIndex<?>>, Optional<ForeignKeyIndex<?>>> CACHE_LOADER =
       new CacheLoader<Key<ForeignKeyIndex<?>>, Optional<ForeignKeyIndex<?>>>() {
 
@@ -245,6 +280,9 @@ public abstract class ForeignKeyIndex<E extends EppResource> extends BackupGroup
    * <p>The returned map will omit any keys for which the {@link ForeignKeyIndex} doesn't exist or
    * has been soft deleted.
    *
+   * <p>If the {@link ForeignKeyIndexFilter} is enabled for this resource type, foreign keys that it
+   * rules out are omitted without being loaded at all.
+   *
    * <p>Don't use the cached version of this method unless you really need it for performance
    * reasons, and are OK with the trade-offs in loss of transactional consistency.
    */
@@ -253,8 +291,10 @@ public abstract class ForeignKeyIndex<E extends EppResource> extends BackupGroup
     if (!RegistryConfig.isEppResourceCachingEnabled()) {
       return tm().doTransactionless(() -> load(clazz, foreignKeys, now));
     }
+    boolean useFilter = ForeignKeyIndexFilter.isEnabledFor(clazz);
     ImmutableList<Key<ForeignKeyIndex<?>>> fkiKeys =
         Streams.stream(foreignKeys)
+            .filter(fk -> !useFilter || ForeignKeyIndexFilter.mightExist(clazz, fk))
             .map(fk -> Key.<ForeignKeyIndex<?>>create(mapToFkiClass(clazz), fk))
             .collect(toImmutableList());
     try {
@@ -269,6 +309,13 @@ public abstract class ForeignKeyIndex<E extends EppResource> extends BackupGroup
                   ImmutableMap.toImmutableMap(
                       entry -> entry.getKey().getName(),
                       entry -> (ForeignKeyIndex<E>) entry.getValue().get()));
+      if (useFilter) {
+        recordFilterCheckOutcomes(
+            clazz,
+            ImmutableSet.copyOf(foreignKeys).size(),
+            ImmutableSet.copyOf(fkiKeys).size(),
+            fkisFromCache.size());
+      }
       return fkisFromCache;
     } catch (ExecutionException e) {
       throw new RuntimeException("Error loading cached ForeignKeyIndexes", e.getCause());
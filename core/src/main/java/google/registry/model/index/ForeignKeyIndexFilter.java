@@ -0,0 +1,205 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.index;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.hash.Funnels.unencodedCharsFunnel;
+import static google.registry.config.RegistryConfig.getForeignKeyIndexFilterRefreshDuration;
+import static google.registry.model.index.ForeignKeyIndex.mapToFkiClass;
+import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.joda.time.DateTimeZone.UTC;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.BloomFilter;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.MetricRegistryImpl;
+import com.googlecode.objectify.Key;
+import google.registry.config.RegistryConfig;
+import google.registry.model.EppResource;
+import google.registry.model.domain.DomainBase;
+import google.registry.util.Concurrent;
+import google.registry.util.NonFinalForTesting;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * In-memory Bloom filters of the foreign keys of existing EPP resources.
+ *
+ * <p>A Bloom filter never reports that a foreign key it contains is absent, so {@link
+ * ForeignKeyIndex#loadCached} can use it to skip loading the {@link ForeignKeyIndex} of a resource
+ * that definitely doesn't exist. This matters during domain drops, when large numbers of distinct
+ * nonexistent names are queried and each one would otherwise miss the foreign key index cache.
+ *
+ * <p>Each filter is built from a keys-only query over the foreign key indexes that are not yet
+ * deleted, and is rebuilt in the background once it is older than the configured refresh duration;
+ * lookups keep using the old filter while it is being rebuilt, instead of waiting for the query.
+ * Resources created on this instance are added to
+ * the filter right away through {@link #put}, but resources created on other instances are only
+ * picked up by the next rebuild. Deletions don't need to be tracked, since a foreign key that the
+ * filter still contains simply falls through to the regular lookup.
+ *
+ * <p>Because of that delay, the filter is only used for domains, whose availability checks and
+ * cached lookups (such as WHOIS) can tolerate a newly created domain briefly appearing not to
+ * exist. Callers that can't, such as registry locks, confirm a miss with an uncached load whenever
+ * the filter {@link #isEnabledFor is enabled} for the type, and domain creates never consult it.
+ * Cached contact and host lookups are used to validate the references of domain mutations, which
+ * would then fail.
+ */
+public final class ForeignKeyIndexFilter {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** The resource types whose cached lookups are checked against a filter. */
+  static final ImmutableSet<Class<? extends EppResource>> FILTERED_RESOURCE_CLASSES =
+      ImmutableSet.of(DomainBase.class);
+
+  private static final double FALSE_POSITIVE_PROBABILITY = 0.01;
+
+  /**
+   * Minimum capacity of a filter, which leaves room for resources created on this instance before
+   * the next rebuild.
+   */
+  private static final int MIN_EXPECTED_INSERTIONS = 10000;
+
+  /** Possible outcomes of a foreign key lookup that was checked against a filter. */
+  enum FilterCheckOutcome {
+    /** The filter knows that the resource doesn't exist, so nothing was loaded. */
+    FILTER_NEGATIVE,
+
+    /** The filter thinks that the resource might exist, and it does. */
+    FILTER_POSITIVE_EXISTS,
+
+    /** The filter thinks that the resource might exist, but it doesn't (a false positive). */
+    FILTER_POSITIVE_NONEXISTENT
+  }
+
+  private static final ImmutableSet<LabelDescriptor> LABEL_DESCRIPTORS =
+      ImmutableSet.of(
+          LabelDescriptor.create("resource_type", "The type of the EPP resource."),
+          LabelDescriptor.create("outcome", "Outcome of the check against the filter."));
+
+  /** Metric recording the result of each foreign key lookup checked against a filter. */
+  @VisibleForTesting
+  static final IncrementableMetric filterChecks =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/epp_resource/foreign_key_filter/checks",
+              "Count of foreign key lookups checked against the Bloom filter",
+              "count",
+              LABEL_DESCRIPTORS);
+
+  static final CacheLoader<Class<? extends EppResource>, BloomFilter<String>> CACHE_LOADER =
+      new CacheLoader<Class<? extends EppResource>, BloomFilter<String>>() {
+        @Override
+        public BloomFilter<String> load(Class<? extends EppResource> clazz) {
+          DateTime now = DateTime.now(UTC);
+          ImmutableList<String> foreignKeys =
+              tm().doTransactionless(
+                      () ->
+                          ofy()
+                              .load()
+                              .type(mapToFkiClass(clazz))
+                              .filter("deletionTime >", now)
+                              .keys()
+                              .list())
+                  .stream()
+                  .map(Key::getName)
+                  .collect(toImmutableList());
+          BloomFilter<String> filter =
+              BloomFilter.create(
+                  unencodedCharsFunnel(),
+                  Math.max(2 * foreignKeys.size(), MIN_EXPECTED_INSERTIONS),
+                  FALSE_POSITIVE_PROBABILITY);
+          foreignKeys.forEach(filter::put);
+          logger.atInfo().log(
+              "Built foreign key filter for %d %s resources.",
+              foreignKeys.size(), clazz.getSimpleName());
+          return filter;
+        }
+      };
+
+  @NonFinalForTesting
+  private static LoadingCache<Class<? extends EppResource>, BloomFilter<String>> cacheFilters =
+      createFiltersCache(getForeignKeyIndexFilterRefreshDuration());
+
+  private static LoadingCache<Class<? extends EppResource>, BloomFilter<String>>
+      createFiltersCache(Duration refresh) {
+    return CacheBuilder.newBuilder()
+        .refreshAfterWrite(refresh.getMillis(), MILLISECONDS)
+        .build(CacheLoader.asyncReloading(CACHE_LOADER, Concurrent::runOnRequestThread));
+  }
+
+  @VisibleForTesting
+  public static void setCacheForTest(Optional<Duration> refresh) {
+    Duration effectiveRefresh = refresh.orElse(getForeignKeyIndexFilterRefreshDuration());
+    cacheFilters = createFiltersCache(effectiveRefresh);
+  }
+
+  /** Returns whether cached lookups of the given resource type are checked against a filter. */
+  public static boolean isEnabledFor(Class<? extends EppResource> clazz) {
+    return RegistryConfig.isForeignKeyIndexFilterEnabled()
+        && FILTERED_RESOURCE_CLASSES.contains(clazz);
+  }
+
+  /**
+   * Returns false if a resource of the given type with the given foreign key definitely doesn't
+   * exist, and true if it might.
+   */
+  static boolean mightExist(Class<? extends EppResource> clazz, String foreignKey) {
+    return getFilter(clazz).mightContain(foreignKey);
+  }
+
+  /**
+   * Adds the foreign key of a newly created resource to the filter for its type, if there is one.
+   *
+   * <p>This should be called by flows that create resources, so that cached lookups on this
+   * instance don't report the resource as nonexistent until the filter is next rebuilt.
+   */
+  public static void put(EppResource resource) {
+    if (isEnabledFor(resource.getClass())) {
+      getFilter(resource.getClass()).put(resource.getForeignKey());
+    }
+  }
+
+  static void recordCheckOutcome(
+      Class<? extends EppResource> clazz, FilterCheckOutcome outcome, long count) {
+    if (count > 0) {
+      filterChecks.incrementBy(count, clazz.getSimpleName(), outcome.name());
+    }
+  }
+
+  private static BloomFilter<String> getFilter(Class<? extends EppResource> clazz) {
+    try {
+      return cacheFilters.get(clazz);
+    } catch (ExecutionException e) {
+      throw new UncheckedExecutionException(
+          "Could not build the foreign key filter for " + clazz.getSimpleName(), e.getCause());
+    }
+  }
+
+  private ForeignKeyIndexFilter() {}
+}
@@ -104,9 +104,11 @@ public class ObjectifyService {
 
       @Override
       protected AsyncDatastoreService createRawAsyncDatastoreService(DatastoreServiceConfig cfg) {
-        // In the unit test environment, wrap the Datastore service in a proxy that can be used to
-        // examine the number of requests sent to Datastore.
-        AsyncDatastoreService service = super.createRawAsyncDatastoreService(cfg);
+        // Wrap the Datastore service in a proxy that reports the calls made by each flow. In the
+        // unit test environment, also wrap it in a proxy that can be used to examine the number of
+        // requests sent to Datastore.
+        AsyncDatastoreService service =
+            new StatsRecordingAsyncDatastoreService(super.createRawAsyncDatastoreService(cfg));
         return RegistryEnvironment.get().equals(RegistryEnvironment.UNITTEST)
             ? new RequestCapturingAsyncDatastoreService(service)
             : service;
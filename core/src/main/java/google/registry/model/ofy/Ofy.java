@@ -20,12 +20,14 @@ import static com.google.common.collect.Maps.uniqueIndex;
 import static com.googlecode.objectify.ObjectifyService.ofy;
 import static google.registry.config.RegistryConfig.getBaseOfyRetryDuration;
 import static google.registry.util.CollectionUtils.union;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
 
 import com.google.appengine.api.datastore.DatastoreFailureException;
 import com.google.appengine.api.datastore.DatastoreTimeoutException;
 import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.taskqueue.TransientFailureException;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Streams;
@@ -39,6 +41,7 @@ import com.googlecode.objectify.cmd.Saver;
 import google.registry.model.annotations.NotBackedUp;
 import google.registry.model.annotations.VirtualEntity;
 import google.registry.model.ofy.ReadOnlyWork.KillTransactionException;
+import google.registry.persistence.transaction.StorageStats;
 import google.registry.util.Clock;
 import google.registry.util.NonFinalForTesting;
 import google.registry.util.Sleeper;
@@ -218,7 +221,12 @@ public class Ofy {
   <R> R transactNew(Supplier<R> work) {
     // Wrap the Work in a CommitLoggedWork so that we can give transactions a frozen view of time
     // and maintain commit logs for them.
-    return transactCommitLoggedWork(new CommitLoggedWork<>(work, getClock()));
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    try {
+      return transactCommitLoggedWork(new CommitLoggedWork<>(work, getClock()));
+    } finally {
+      StorageStats.recordTransactionTime(stopwatch.elapsed(MICROSECONDS));
+    }
   }
 
   /**
@@ -246,6 +254,7 @@ public class Ofy {
     for (long attempt = 0, sleepMillis = baseRetryMillis;
         true;
         attempt++, sleepMillis *= 2) {
+      StorageStats.recordTransactionAttempt(attempt > 0);
       try {
         ofy().transactNew(() -> {
           work.run();
@@ -0,0 +1,39 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.rde;
+
+import com.google.common.base.Ascii;
+
+/**
+ * Type of an RDE deposit, as defined by the {@code type} attribute of the deposit.
+ *
+ * <p>Incremental deposits aren't supported, since every differential deposit is followed by either
+ * another differential deposit or a full one.
+ */
+public enum RdeDepositType {
+
+  /** Deposit of every object in the registry at the watermark. */
+  FULL,
+
+  /**
+   * Deposit of the objects that were created, updated or deleted since the previous deposit, which
+   * can be either full or differential.
+   */
+  DIFF;
+
+  public String getFilenameComponent() {
+    return Ascii.toLowerCase(name());
+  }
+}
@@ -0,0 +1,77 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.rde;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import google.registry.model.EppResource;
+import google.registry.model.ImmutableObject;
+import google.registry.model.annotations.NotBackedUp;
+import google.registry.model.annotations.NotBackedUp.Reason;
+import google.registry.schema.replay.DatastoreEntity;
+import google.registry.schema.replay.SqlEntity;
+
+/**
+ * Datastore entity caching the RDE XML fragment of an EPP resource between RDE staging runs.
+ *
+ * <p>A fragment is only valid for the exact content it was marshalled from, which is identified by
+ * its {@link #fingerprint}. Since most resources don't change from one day to the next, this lets
+ * RDE staging skip the conversion and marshalling of most of them.
+ */
+@Entity
+@NotBackedUp(reason = Reason.AUTO_GENERATED)
+public final class RdeFragmentCacheEntry extends ImmutableObject implements DatastoreEntity {
+
+  /** String triplet of kind, repo ID and mode, e.g. {@code DomainBase_2-TLD_full}. */
+  @Id
+  String id;
+
+  /** Hash of the resource and everything else the fragment was marshalled from. */
+  String fingerprint;
+
+  /** The marshalled XML fragment. */
+  String xml;
+
+  public String getFingerprint() {
+    return fingerprint;
+  }
+
+  public String getXml() {
+    return xml;
+  }
+
+  @Override
+  public ImmutableList<SqlEntity> toSqlEntities() {
+    return ImmutableList.of(); // not persisted in SQL
+  }
+
+  /** Returns the ID of the entry for a resource in a given mode. */
+  public static String createId(Key<? extends EppResource> resourceKey, RdeMode mode) {
+    return String.format(
+        "%s_%s_%s", resourceKey.getKind(), resourceKey.getName(), mode.getFilenameComponent());
+  }
+
+  public static RdeFragmentCacheEntry create(String id, String fingerprint, String xml) {
+    RdeFragmentCacheEntry instance = new RdeFragmentCacheEntry();
+    instance.id = checkNotNull(id, "id");
+    instance.fingerprint = checkNotNull(fingerprint, "fingerprint");
+    instance.xml = checkNotNull(xml, "xml");
+    return instance;
+  }
+}
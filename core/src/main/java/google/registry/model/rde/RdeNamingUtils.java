@@ -33,15 +33,48 @@ public final class RdeNamingUtils {
    */
   public static
       String makeRydeFilename(String tld, DateTime date, RdeMode mode, int series, int revision) {
+    return makeRydeFilename(tld, date, mode, RdeDepositType.FULL, series, revision);
+  }
+
+  /**
+   * Returns extensionless RDE filename of a deposit of the given type.
+   *
+   * <p>Differential deposits use {@code diff} as the type component of the name, and are only
+   * made in {@link RdeMode#FULL} mode.
+   */
+  public static String makeRydeFilename(
+      String tld,
+      DateTime date,
+      RdeMode mode,
+      RdeDepositType depositType,
+      int series,
+      int revision) {
     checkArgument(series >= 1, "series >= 1");
     checkArgument(revision >= 0, "revision >= 0");
-    return String.format("%s_S%d_R%d", makePartialName(tld, date, mode), series, revision);
+    return String.format(
+        "%s_S%d_R%d", makePartialName(tld, date, mode, depositType), series, revision);
   }
 
   /** Returns same thing as {@link #makeRydeFilename} except without the series and revision. */
   static String makePartialName(String tld, DateTime date, RdeMode mode) {
-    return String.format("%s_%s_%s",
-        checkNotNull(tld), formatDate(date), mode.getFilenameComponent());
+    return makePartialName(tld, date, mode, RdeDepositType.FULL);
+  }
+
+  /** Returns same thing as {@link #makeRydeFilename} except without the series and revision. */
+  static String makePartialName(
+      String tld, DateTime date, RdeMode mode, RdeDepositType depositType) {
+    checkArgument(
+        depositType == RdeDepositType.FULL || mode == RdeMode.FULL,
+        "%s deposits can't be made in %s mode",
+        depositType,
+        mode);
+    return String.format(
+        "%s_%s_%s",
+        checkNotNull(tld),
+        formatDate(date),
+        depositType == RdeDepositType.FULL
+            ? mode.getFilenameComponent()
+            : depositType.getFilenameComponent());
   }
 
   /** Returns date as a hyphened string with ISO-8601 ordering, e.g. {@code 1984-12-18}. */
@@ -37,7 +37,10 @@ import org.joda.time.DateTime;
 @Entity
 public final class RdeRevision extends ImmutableObject {
 
-  /** String triplet of tld, date, and mode, e.g. {@code soy_2015-09-01_full}. */
+  /**
+   * String triplet of tld, date, and mode, e.g. {@code soy_2015-09-01_full}, where the mode is
+   * {@code diff} for differential deposits.
+   */
   @Id
   String id;
 
@@ -54,8 +57,22 @@ public final class RdeRevision extends ImmutableObject {
    * @return {@code 0} for first deposit generation and {@code >0} for resends
    */
   public static int getNextRevision(String tld, DateTime date, RdeMode mode) {
+    return getNextRevision(tld, date, mode, RdeDepositType.FULL);
+  }
+
+  /**
+   * Returns next revision ID to use when staging a new deposit file of the given type.
+   *
+   * @return {@code 0} for first deposit generation and {@code >0} for resends
+   */
+  public static int getNextRevision(
+      String tld, DateTime date, RdeMode mode, RdeDepositType depositType) {
     RdeRevision object =
-        ofy().load().type(RdeRevision.class).id(makePartialName(tld, date, mode)).now();
+        ofy()
+            .load()
+            .type(RdeRevision.class)
+            .id(makePartialName(tld, date, mode, depositType))
+            .now();
     return object == null ? 0 : object.revision + 1;
   }
 
@@ -69,8 +86,18 @@ public final class RdeRevision extends ImmutableObject {
    * @throws VerifyException if Datastore state doesn't meet the above criteria
    */
   public static void saveRevision(String tld, DateTime date, RdeMode mode, int revision) {
+    saveRevision(tld, date, mode, RdeDepositType.FULL, revision);
+  }
+
+  /**
+   * Sets the revision ID for a given triplet, where differential deposits have their own triplet.
+   *
+   * @see #saveRevision(String, DateTime, RdeMode, int)
+   */
+  public static void saveRevision(
+      String tld, DateTime date, RdeMode mode, RdeDepositType depositType, int revision) {
     checkArgument(revision >= 0, "Negative revision: %s", revision);
-    String triplet = makePartialName(tld, date, mode);
+    String triplet = makePartialName(tld, date, mode, depositType);
     tm().assertInTransaction();
     RdeRevision object = ofy().load().type(RdeRevision.class).id(triplet).now();
     if (revision == 0) {
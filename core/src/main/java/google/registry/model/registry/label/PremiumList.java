@@ -15,6 +15,7 @@
 package google.registry.model.registry.label;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.hash.Funnels.unencodedCharsFunnel;
 import static google.registry.config.RegistryConfig.getDomainLabelListCacheDuration;
 import static google.registry.config.RegistryConfig.getSingletonCachePersistDuration;
@@ -48,6 +49,7 @@ import google.registry.util.NonFinalForTesting;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -223,6 +225,19 @@ public final class PremiumList extends BaseDomainLabelList<Money, PremiumList.Pr
                 return tm()
                     .doTransactionless(() -> Optional.ofNullable(ofy().load().key(entryKey).now()));
               }
+
+              @Override
+              public Map<Key<PremiumListEntry>, Optional<PremiumListEntry>> loadAll(
+                  Iterable<? extends Key<PremiumListEntry>> entryKeys) {
+                // Load all of the entries in a single batch, which is what makes getAll() on the
+                // cache cheaper than a sequence of get() calls.
+                ImmutableList<Key<PremiumListEntry>> keys = ImmutableList.copyOf(entryKeys);
+                Map<Key<PremiumListEntry>, PremiumListEntry> entries =
+                    tm().doTransactionless(() -> ofy().load().keys(keys));
+                return keys.stream()
+                    .collect(
+                        toImmutableMap(key -> key, key -> Optional.ofNullable(entries.get(key))));
+              }
             });
   }
 
@@ -80,20 +80,7 @@ public final class PremiumListUtils {
     }
     DateTime startTime = DateTime.now(UTC);
     String listName = registry.getPremiumList().getName();
-    Optional<PremiumList> optionalPremiumList = PremiumList.getCached(listName);
-    checkState(optionalPremiumList.isPresent(), "Could not load premium list '%s'", listName);
-    PremiumList premiumList = optionalPremiumList.get();
-    PremiumListRevision revision;
-    try {
-      revision = cachePremiumListRevisions.get(premiumList.getRevisionKey());
-    } catch (InvalidCacheLoadException | ExecutionException e) {
-      throw new RuntimeException(
-          "Could not load premium list revision " + premiumList.getRevisionKey(), e);
-    }
-    checkState(
-        revision.getProbablePremiumLabels() != null,
-        "Probable premium labels Bloom filter is null on revision '%s'",
-        premiumList.getRevisionKey());
+    PremiumListRevision revision = loadCurrentRevision(listName);
 
     CheckResults checkResults = checkStatus(revision, label);
     DomainLabelMetrics.recordPremiumListCheckOutcome(
@@ -117,6 +104,54 @@ public final class PremiumListUtils {
     return checkResults.premiumPrice();
   }
 
+  /**
+   * Loads the premium list entries of the given labels on the specified registry into the
+   * in-memory cache, so that subsequent calls to {@link #getPremiumPrice} for these labels are
+   * served from the cache.
+   *
+   * <p>The entries that aren't already cached are loaded from Datastore in a single batch, rather
+   * than one at a time as {@link #getPremiumPrice} would. Labels that the Bloom filter rules out
+   * are skipped, as they never require a Datastore load.
+   */
+  public static void prefetchPremiumListEntries(Iterable<String> labels, Registry registry) {
+    if (registry.getPremiumList() == null) {
+      return;
+    }
+    PremiumListRevision revision = loadCurrentRevision(registry.getPremiumList().getName());
+    Key<PremiumListRevision> revisionKey = Key.create(revision);
+    ImmutableSet<Key<PremiumListEntry>> entryKeys =
+        Streams.stream(labels)
+            .filter(label -> revision.getProbablePremiumLabels().mightContain(label))
+            .map(label -> Key.create(revisionKey, PremiumListEntry.class, label))
+            .collect(toImmutableSet());
+    if (entryKeys.isEmpty()) {
+      return;
+    }
+    try {
+      cachePremiumListEntries.getAll(entryKeys);
+    } catch (InvalidCacheLoadException | ExecutionException e) {
+      throw new RuntimeException("Could not load premium list entries " + entryKeys, e);
+    }
+  }
+
+  private static PremiumListRevision loadCurrentRevision(String listName) {
+    Optional<PremiumList> optionalPremiumList = PremiumList.getCached(listName);
+    checkState(optionalPremiumList.isPresent(), "Could not load premium list '%s'", listName);
+    PremiumList premiumList = optionalPremiumList.get();
+    PremiumListRevision revision;
+    try {
+      revision = cachePremiumListRevisions.get(premiumList.getRevisionKey());
+    } catch (InvalidCacheLoadException | ExecutionException e) {
+      throw new RuntimeException(
+          "Could not load premium list revision " + premiumList.getRevisionKey(), e);
+    }
+    checkState(
+        revision.getProbablePremiumLabels() != null,
+        "Probable premium labels Bloom filter is null on revision '%s'",
+        premiumList.getRevisionKey());
+    return revision;
+  }
+
   private static CheckResults checkStatus(PremiumListRevision premiumListRevision, String label) {
     if (!premiumListRevision.getProbablePremiumLabels().mightContain(label)) {
       return CheckResults.create(BLOOM_FILTER_NEGATIVE, Optional.empty());
@@ -21,6 +21,7 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import google.registry.model.eppoutput.Result.Code;
 import google.registry.model.registry.Registries;
+import google.registry.persistence.transaction.StorageStats;
 import google.registry.util.Clock;
 import java.util.Optional;
 import org.joda.time.DateTime;
@@ -41,6 +42,9 @@ public abstract class EppMetric {
 
   public abstract Optional<Code> getStatus();
 
+  /** Returns the storage operations performed by the flow, if it was run. */
+  public abstract Optional<StorageStats> getStorageStats();
+
   /** Create an {@link EppMetric.Builder}. */
   public static Builder builder() {
     return new AutoValue_EppMetric.Builder();
@@ -115,6 +119,8 @@ public abstract class EppMetric {
 
     public abstract Builder setStatus(Code code);
 
+    public abstract Builder setStorageStats(StorageStats storageStats);
+
     Builder setClock(Clock clock) {
       this.clock = clock;
       return this;
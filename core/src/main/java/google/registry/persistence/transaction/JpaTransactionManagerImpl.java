@@ -15,20 +15,30 @@
 package google.registry.persistence.transaction;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static com.google.common.collect.Iterables.partition;
 import static google.registry.util.PreconditionsUtils.checkArgumentNotNull;
 import static java.util.AbstractMap.SimpleEntry;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.stream.Collectors.groupingBy;
 import static java.util.stream.Collectors.joining;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Multimaps;
 import com.google.common.flogger.FluentLogger;
 import google.registry.persistence.VKey;
 import google.registry.util.Clock;
 import java.lang.reflect.Field;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Optional;
@@ -38,6 +48,7 @@ import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
 import javax.persistence.PersistenceException;
+import javax.persistence.PersistenceUnitUtil;
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
 import javax.persistence.metamodel.EntityType;
@@ -49,6 +60,14 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
 
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
+  /**
+   * The maximum number of keys that are loaded with a single {@code IN} query.
+   *
+   * <p>This keeps the number of bind parameters in each query well below the limits of the
+   * database and JDBC driver (32767 for PostgreSQL).
+   */
+  @VisibleForTesting static final int LOAD_BATCH_SIZE = 1000;
+
   // EntityManagerFactory is thread safe.
   private final EntityManagerFactory emf;
   private final Clock clock;
@@ -91,10 +110,12 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
     if (inTransaction()) {
       return work.get();
     }
+    Stopwatch stopwatch = Stopwatch.createStarted();
     TransactionInfo txnInfo = transactionInfo.get();
     txnInfo.entityManager = emf.createEntityManager();
     EntityTransaction txn = txnInfo.entityManager.getTransaction();
     try {
+      StorageStats.recordTransactionAttempt(false);
       txn.begin();
       txnInfo.inTransaction = true;
       txnInfo.transactionTime = clock.nowUtc();
@@ -111,6 +132,7 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
       throw e;
     } finally {
       txnInfo.clear();
+      StorageStats.recordTransactionTime(stopwatch.elapsed(MICROSECONDS));
     }
   }
 
@@ -170,6 +192,7 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
   public void saveNew(Object entity) {
     checkArgumentNotNull(entity, "entity must be specified");
     assertInTransaction();
+    StorageStats.recordWrite();
     getEntityManager().persist(entity);
   }
 
@@ -184,6 +207,7 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
   public void saveNewOrUpdate(Object entity) {
     checkArgumentNotNull(entity, "entity must be specified");
     assertInTransaction();
+    StorageStats.recordWrite();
     getEntityManager().merge(entity);
   }
 
@@ -199,6 +223,7 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
     checkArgumentNotNull(entity, "entity must be specified");
     assertInTransaction();
     checkArgument(checkExists(entity), "Given entity does not exist");
+    StorageStats.recordWrite();
     getEntityManager().merge(entity);
   }
 
@@ -234,6 +259,7 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
                 Integer.class)
             .setMaxResults(1);
     entityIds.forEach(entityId -> query.setParameter(entityId.name, entityId.value));
+    StorageStats.recordRead(1);
     return query.getResultList().size() > 0;
   }
 
@@ -241,6 +267,7 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
   public <T> Optional<T> maybeLoad(VKey<T> key) {
     checkArgumentNotNull(key, "key must be specified");
     assertInTransaction();
+    StorageStats.recordRead(1);
     return Optional.ofNullable(getEntityManager().find(key.getKind(), key.getSqlKey()));
   }
 
@@ -248,6 +275,7 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
   public <T> T load(VKey<T> key) {
     checkArgumentNotNull(key, "key must be specified");
     assertInTransaction();
+    StorageStats.recordRead(1);
     T result = getEntityManager().find(key.getKind(), key.getSqlKey());
     if (result == null) {
       throw new NoSuchElementException(key.toString());
@@ -255,25 +283,76 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
     return result;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The keys are grouped by kind, and the entities of each kind are loaded with one {@code IN}
+   * query per {@link #LOAD_BATCH_SIZE} keys, rather than with one query per key. Entities with a
+   * composite primary key are still loaded one at a time.
+   */
   @Override
   public <T> ImmutableMap<VKey<? extends T>, T> load(Iterable<? extends VKey<? extends T>> keys) {
     checkArgumentNotNull(keys, "keys must be specified");
     assertInTransaction();
-    return StreamSupport.stream(keys.spliterator(), false)
+    ImmutableMap.Builder<VKey<? extends T>, T> results = new ImmutableMap.Builder<>();
+    StreamSupport.stream(keys.spliterator(), false)
         // Accept duplicate keys.
         .distinct()
-        .map(
-            key ->
-                new SimpleEntry<VKey<? extends T>, T>(
-                    key, getEntityManager().find(key.getKind(), key.getSqlKey())))
-        .filter(entry -> entry.getValue() != null)
-        .collect(toImmutableMap(Entry::getKey, Entry::getValue));
+        .<VKey<? extends T>>map(key -> key)
+        .collect(
+            groupingBy(key -> (Class<?>) key.getKind(), LinkedHashMap::new, toImmutableList()))
+        .forEach((kind, keysOfKind) -> results.putAll(loadKind(kind, keysOfKind)));
+    return results.build();
+  }
+
+  private <T> ImmutableMap<VKey<? extends T>, T> loadKind(
+      Class<?> kind, ImmutableList<VKey<? extends T>> keys) {
+    EntityType<?> entityType = getEntityType(kind);
+    if (!entityType.hasSingleIdAttribute() || keys.size() == 1) {
+      return keys.stream()
+          .map(
+              key -> {
+                StorageStats.recordRead(1);
+                return new SimpleEntry<VKey<? extends T>, T>(
+                    key, getEntityManager().find(key.getKind(), key.getSqlKey()));
+              })
+          .filter(entry -> entry.getValue() != null)
+          .collect(toImmutableMap(Entry::getKey, Entry::getValue));
+    }
+    String idName = getIdName(entityType);
+    PersistenceUnitUtil persistenceUnitUtil = emf.getPersistenceUnitUtil();
+    // Keys that differ only in their ofy keys have the same sql key, and all get the entity.
+    ImmutableListMultimap<Object, VKey<? extends T>> keysBySqlKey =
+        Multimaps.index(keys, VKey::getSqlKey);
+    ImmutableMap.Builder<VKey<? extends T>, T> results = new ImmutableMap.Builder<>();
+    for (List<Object> sqlKeys : partition(keysBySqlKey.keySet(), LOAD_BATCH_SIZE)) {
+      StorageStats.recordRead(sqlKeys.size());
+      // All keys in this group are of the same kind, so the loaded entities are of type T.
+      @SuppressWarnings("unchecked")
+      List<T> entities =
+          (List<T>)
+              getEntityManager()
+                  .createQuery(
+                      String.format(
+                          "SELECT entity FROM %s entity WHERE entity.%s IN :ids",
+                          entityType.getName(), idName),
+                      kind)
+                  .setParameter("ids", sqlKeys)
+                  .getResultList();
+      entities.forEach(
+          entity ->
+              keysBySqlKey
+                  .get(persistenceUnitUtil.getIdentifier(entity))
+                  .forEach(key -> results.put(key, entity)));
+    }
+    return results.build();
   }
 
   @Override
   public <T> ImmutableList<T> loadAll(Class<T> clazz) {
     checkArgumentNotNull(clazz, "clazz must be specified");
     assertInTransaction();
+    StorageStats.recordRead(0);
     return ImmutableList.copyOf(
         getEntityManager()
             .createQuery(
@@ -291,6 +370,7 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
         String.format("DELETE FROM %s WHERE %s", entityType.getName(), getAndClause(entityIds));
     Query query = getEntityManager().createQuery(sql);
     entityIds.forEach(entityId -> query.setParameter(entityId.name, entityId.value));
+    StorageStats.recordWrite();
     return query.executeUpdate();
   }
 
@@ -330,7 +410,7 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
   private static ImmutableSet<EntityId> getEntityIdsFromEntity(
       EntityType<?> entityType, Object entity) {
     if (entityType.hasSingleIdAttribute()) {
-      String idName = entityType.getDeclaredId(entityType.getIdType().getJavaType()).getName();
+      String idName = getIdName(entityType);
       Object idValue = getFieldValue(entity, idName);
       return ImmutableSet.of(new EntityId(idName, idValue));
     } else {
@@ -341,7 +421,7 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
   private static ImmutableSet<EntityId> getEntityIdsFromSqlKey(
       EntityType<?> entityType, Object sqlKey) {
     if (entityType.hasSingleIdAttribute()) {
-      String idName = entityType.getDeclaredId(entityType.getIdType().getJavaType()).getName();
+      String idName = getIdName(entityType);
       return ImmutableSet.of(new EntityId(idName, sqlKey));
     } else {
       return getEntityIdsFromIdContainer(entityType, sqlKey);
@@ -366,14 +446,31 @@ public class JpaTransactionManagerImpl implements JpaTransactionManager {
         .collect(joining(" AND "));
   }
 
+  /**
+   * Returns the name of the id attribute of an entity with a single id.
+   *
+   * <p>Unlike {@link EntityType#getDeclaredId}, this also finds an id that the entity inherits from
+   * a mapped superclass or from the root of its inheritance hierarchy.
+   */
+  private static String getIdName(EntityType<?> entityType) {
+    return entityType.getId(entityType.getIdType().getJavaType()).getName();
+  }
+
   private static Object getFieldValue(Object object, String fieldName) {
-    try {
-      Field field = object.getClass().getDeclaredField(fieldName);
-      field.setAccessible(true);
-      return field.get(object);
-    } catch (NoSuchFieldException | IllegalAccessException e) {
-      throw new IllegalArgumentException(e);
+    // The field may be declared by a superclass, such as the mapped superclass of an entity.
+    for (Class<?> clazz = object.getClass(); clazz != null; clazz = clazz.getSuperclass()) {
+      try {
+        Field field = clazz.getDeclaredField(fieldName);
+        field.setAccessible(true);
+        return field.get(object);
+      } catch (NoSuchFieldException e) {
+        // Look for the field in the superclass.
+      } catch (IllegalAccessException e) {
+        throw new IllegalArgumentException(e);
+      }
     }
+    throw new IllegalArgumentException(
+        String.format("%s has no field %s", object.getClass().getName(), fieldName));
   }
 
   private static class TransactionInfo {
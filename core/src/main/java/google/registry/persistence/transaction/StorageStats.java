@@ -0,0 +1,127 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.persistence.transaction;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * Counts of the storage operations performed by the current thread while recording is on.
+ *
+ * <p>Recording is started with {@link #startRecording} and stopped with {@link #stopRecording},
+ * which returns what was recorded in between. The Datastore and Cloud SQL transaction managers
+ * report their operations through the static {@code record} methods, which do nothing when the
+ * current thread isn't recording, so that the cost outside of instrumented code paths is a single
+ * thread-local lookup.
+ *
+ * <p>Reads and writes count the calls that are sent to the database, so that loading ten entities
+ * with one batch load is one read of ten keys. Reads served from a session cache aren't counted,
+ * and Cloud SQL writes are counted when they are issued rather than when they are flushed. The
+ * time spent in transactions includes retries; nested transactions that aren't joined to the
+ * enclosing one are counted once for each level of nesting.
+ */
+@AutoValue
+public abstract class StorageStats {
+
+  private static final ThreadLocal<Counters> currentCounters = new ThreadLocal<>();
+
+  /** Returns the number of reads sent to the database, including queries. */
+  public abstract long getReads();
+
+  /** Returns the number of writes sent to the database, including deletes. */
+  public abstract long getWrites();
+
+  /** Returns the number of keys requested by reads that load entities by key. */
+  public abstract long getKeysLoaded();
+
+  /** Returns the number of times that a transaction was attempted, including retries. */
+  public abstract long getTransactionAttempts();
+
+  /** Returns the number of times that a transaction was retried after a transient failure. */
+  public abstract long getTransactionRetries();
+
+  /** Returns the wall time spent inside transactions, in microseconds. */
+  public abstract long getTransactionTimeMicros();
+
+  /**
+   * Starts recording the storage operations of the current thread.
+   *
+   * <p>Any recording already in progress on this thread is discarded.
+   */
+  public static void startRecording() {
+    currentCounters.set(new Counters());
+  }
+
+  /** Stops recording on the current thread and returns what was recorded. */
+  public static StorageStats stopRecording() {
+    Counters counters = currentCounters.get();
+    checkState(counters != null, "Not recording storage stats on this thread");
+    currentCounters.remove();
+    return new AutoValue_StorageStats(
+        counters.reads,
+        counters.writes,
+        counters.keysLoaded,
+        counters.transactionAttempts,
+        counters.transactionRetries,
+        counters.transactionTimeMicros);
+  }
+
+  /** Records a read that requested the given number of keys, or zero for a query. */
+  public static void recordRead(long numKeys) {
+    Counters counters = currentCounters.get();
+    if (counters != null) {
+      counters.reads++;
+      counters.keysLoaded += numKeys;
+    }
+  }
+
+  /** Records a write or delete. */
+  public static void recordWrite() {
+    Counters counters = currentCounters.get();
+    if (counters != null) {
+      counters.writes++;
+    }
+  }
+
+  /** Records an attempt at a transaction, and whether it is a retry of a failed attempt. */
+  public static void recordTransactionAttempt(boolean isRetry) {
+    Counters counters = currentCounters.get();
+    if (counters != null) {
+      counters.transactionAttempts++;
+      if (isRetry) {
+        counters.transactionRetries++;
+      }
+    }
+  }
+
+  /** Records the wall time spent inside a transaction, including any retries. */
+  public static void recordTransactionTime(long micros) {
+    Counters counters = currentCounters.get();
+    if (counters != null) {
+      counters.transactionTimeMicros += micros;
+    }
+  }
+
+  /** Mutable counters for a single thread. */
+  private static class Counters {
+    long reads;
+    long writes;
+    long keysLoaded;
+    long transactionAttempts;
+    long transactionRetries;
+    long transactionTimeMicros;
+  }
+}
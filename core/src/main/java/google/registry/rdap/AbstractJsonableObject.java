@@ -18,6 +18,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static java.lang.annotation.RetentionPolicy.RUNTIME;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -33,6 +34,7 @@ import java.lang.annotation.Target;
 import java.lang.reflect.Field;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -50,6 +52,9 @@ import org.joda.time.DateTime;
  * <p>You can annotate fields or methods with 0 parameters with {@link JsonElement}, and its value
  * will be "JSONified" and added to the generated JSON object.
  *
+ * <p>The annotated members of named classes are read by a {@link JsonableSerializer} that is
+ * generated at compile time. Reflection is only used for the rest, such as anonymous classes.
+ *
  * <p>This implementation is geared towards RDAP replies, and hence has RDAP-specific quirks.
  * Specifically:
  *
@@ -231,41 +236,50 @@ abstract class AbstractJsonableObject implements Jsonable {
     String[] value();
   }
 
+  /**
+   * Adds the {@link JsonableElement} members of an object to a {@link JsonObjectBuilder}.
+   *
+   * <p>Implementations are generated at compile time for every named subclass of this class, so
+   * that {@link #toJson} doesn't have to find and read the members with reflection. The generated
+   * class for {@code Outer.Inner} is {@code JsonableSerializer_Outer_Inner}, in the same package.
+   */
+  interface JsonableSerializer<T extends AbstractJsonableObject> {
+    void addElements(T object, JsonObjectBuilder builder);
+  }
+
+  private static final String SERIALIZER_CLASS_NAME_PREFIX = "JsonableSerializer_";
+
+  /** The generated serializer of each class, or empty if its members are read with reflection. */
+  private static final ClassValue<Optional<JsonableSerializer<AbstractJsonableObject>>>
+      serializers =
+          new ClassValue<Optional<JsonableSerializer<AbstractJsonableObject>>>() {
+            @Override
+            protected Optional<JsonableSerializer<AbstractJsonableObject>> computeValue(
+                Class<?> clazz) {
+              return findGeneratedSerializer(clazz);
+            }
+          };
+
+  /** The {@link RestrictJsonNames} of each class, which are checked for every element. */
+  private static final ClassValue<Optional<ImmutableSet<String>>> nameRestrictions =
+      new ClassValue<Optional<ImmutableSet<String>>>() {
+        @Override
+        protected Optional<ImmutableSet<String>> computeValue(Class<?> clazz) {
+          return findNameRestriction(clazz);
+        }
+      };
+
   @Override
   public final JsonObject toJson() {
     try {
       JsonObjectBuilder builder = new JsonObjectBuilder();
-
-      for (Field field : getAllJsonableElementFields()) {
-        JsonableElement jsonableElement = field.getAnnotation(JsonableElement.class);
-        Object object;
-        try {
-          field.setAccessible(true);
-          object = field.get(this);
-        } catch (IllegalAccessException e) {
-          throw new IllegalStateException(
-              String.format("Error reading value of field '%s'", field), e);
-        } finally {
-          field.setAccessible(false);
-        }
-        builder.add(jsonableElement, field, object);
-      }
-
-      for (Method method : getAllJsonableElementMethods()) {
-        JsonableElement jsonableElement = method.getAnnotation(JsonableElement.class);
-        Object object;
-        try {
-          method.setAccessible(true);
-          object = method.invoke(this);
-        } catch (ReflectiveOperationException e) {
-          throw new IllegalStateException(
-              String.format("Error reading value of method '%s'", method), e);
-        } finally {
-          method.setAccessible(false);
-        }
-        builder.add(jsonableElement, method, object);
+      Optional<JsonableSerializer<AbstractJsonableObject>> serializer =
+          serializers.get(getClass());
+      if (serializer.isPresent()) {
+        serializer.get().addElements(this, builder);
+      } else {
+        addElementsUsingReflection(builder);
       }
-
       return builder.build();
     } catch (Throwable e) {
       throw new JsonableException(
@@ -273,6 +287,91 @@ abstract class AbstractJsonableObject implements Jsonable {
     }
   }
 
+  @VisibleForTesting
+  static boolean hasGeneratedSerializer(Class<? extends AbstractJsonableObject> clazz) {
+    return serializers.get(clazz).isPresent();
+  }
+
+  /**
+   * Finds the generated serializer of a class, or of its closest superclass that has one.
+   *
+   * <p>A superclass's serializer can only be used if none of the classes in between declare any
+   * {@link JsonableElement} members themselves, which is the case for AutoValue classes, for
+   * instance. Anonymous classes don't have a generated serializer.
+   */
+  private static Optional<JsonableSerializer<AbstractJsonableObject>> findGeneratedSerializer(
+      Class<?> clazz) {
+    for (; !clazz.equals(AbstractJsonableObject.class); clazz = clazz.getSuperclass()) {
+      String packagePrefix = clazz.getPackage().getName() + ".";
+      String serializerClassName =
+          packagePrefix
+              + SERIALIZER_CLASS_NAME_PREFIX
+              + clazz.getName().substring(packagePrefix.length()).replace('$', '_');
+      try {
+        @SuppressWarnings("unchecked")
+        JsonableSerializer<AbstractJsonableObject> serializer =
+            (JsonableSerializer<AbstractJsonableObject>)
+                Class.forName(serializerClassName, true, clazz.getClassLoader())
+                    .getDeclaredConstructor()
+                    .newInstance();
+        return Optional.of(serializer);
+      } catch (ClassNotFoundException e) {
+        // Not generated for this class, so try its superclass.
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException(
+            String.format("Error instantiating serializer '%s'", serializerClassName), e);
+      }
+      if (Arrays.stream(clazz.getDeclaredFields())
+              .anyMatch(field -> field.isAnnotationPresent(JsonableElement.class))
+          || Arrays.stream(clazz.getDeclaredMethods())
+              .anyMatch(method -> method.isAnnotationPresent(JsonableElement.class))) {
+        return Optional.empty();
+      }
+    }
+    return Optional.empty();
+  }
+
+  /** Adds the {@link JsonableElement} members of this object, found using reflection. */
+  private void addElementsUsingReflection(JsonObjectBuilder builder) {
+    for (Field field : getAllJsonableElementFields()) {
+      JsonableElement jsonableElement = field.getAnnotation(JsonableElement.class);
+      Object object;
+      try {
+        field.setAccessible(true);
+        object = field.get(this);
+      } catch (IllegalAccessException e) {
+        throw new IllegalStateException(
+            String.format("Error reading value of field '%s'", field), e);
+      } finally {
+        field.setAccessible(false);
+      }
+      builder.add(getElementName(jsonableElement, field), field.toString(), object);
+    }
+
+    for (Method method : getAllJsonableElementMethods()) {
+      JsonableElement jsonableElement = method.getAnnotation(JsonableElement.class);
+      Object object;
+      try {
+        method.setAccessible(true);
+        object = method.invoke(this);
+      } catch (ReflectiveOperationException e) {
+        throw new IllegalStateException(
+            String.format("Error reading value of method '%s'", method), e);
+      } finally {
+        method.setAccessible(false);
+      }
+      builder.add(getElementName(jsonableElement, method), method.toString(), object);
+    }
+  }
+
+  /**
+   * Returns the name of the element, which is the name of the member unless the {@link
+   * JsonableElement} overrides it.
+   */
+  private static String getElementName(JsonableElement jsonableElement, Member member) {
+    return jsonableElement.value().isEmpty() ? member.getName() : jsonableElement.value();
+  }
+
   /**
    * Get all the fields declared on this class.
    *
@@ -323,7 +422,7 @@ abstract class AbstractJsonableObject implements Jsonable {
   }
 
   /** Converts an Object to a JsonElement. */
-  private static JsonElement toJsonElement(String name, Member member, Object object) {
+  private static JsonElement toJsonElement(String name, String member, Object object) {
     if (object instanceof Jsonable) {
       Jsonable jsonable = (Jsonable) object;
       verifyAllowedJsonKeyName(name, member, jsonable.getClass());
@@ -362,6 +461,10 @@ abstract class AbstractJsonableObject implements Jsonable {
    * the class is an element in a array with this name.
    */
   static Optional<ImmutableSet<String>> getNameRestriction(Class<?> clazz) {
+    return nameRestrictions.get(clazz);
+  }
+
+  private static Optional<ImmutableSet<String>> findNameRestriction(Class<?> clazz) {
     // Find the first superclass that has an RestrictJsonNames annotation.
     //
     // The reason we don't use @Inherited on the annotation instead is that we want a good error
@@ -385,7 +488,7 @@ abstract class AbstractJsonableObject implements Jsonable {
    *
    * <p>If there's no @RestrictJsonNames annotation, all names are allowed.
    */
-  static void verifyAllowedJsonKeyName(String name, @Nullable Member member, Class<?> clazz) {
+  static void verifyAllowedJsonKeyName(String name, @Nullable String member, Class<?> clazz) {
     Optional<ImmutableSet<String>> allowedFieldNames = getNameRestriction(clazz);
     if (!allowedFieldNames.isPresent()) {
       return;
@@ -405,11 +508,20 @@ abstract class AbstractJsonableObject implements Jsonable {
         member);
   }
 
-  private static final class JsonObjectBuilder {
+  /** Builds a JSON object out of the elements of an {@link AbstractJsonableObject}. */
+  static final class JsonObjectBuilder {
     private final JsonObject jsonObject = new JsonObject();
-    private final HashMap<String, Member> seenNames = new HashMap<>();
-
-    void add(JsonableElement jsonableElement, Member member, Object object) {
+    private final HashMap<String, String> seenNames = new HashMap<>();
+
+    /**
+     * Adds an element to the object.
+     *
+     * @param name the name of the element, which is the name of the member unless the {@link
+     *     JsonableElement} overrides it
+     * @param member a description of the member, for error messages
+     * @param object the value of the member
+     */
+    void add(String name, String member, Object object) {
       checkNotNull(
           object, "Member '%s' is null. If you want an optional member - use Optional", member);
 
@@ -423,7 +535,7 @@ abstract class AbstractJsonableObject implements Jsonable {
       }
 
       // First, if this is a Merge element, merge it with the current elements
-      if (MERGE_NAME.equals(jsonableElement.value())) {
+      if (MERGE_NAME.equals(name)) {
         // We want to merge this member with the current member.
         // Recursively get all the ElementData of this member
         checkState(
@@ -435,9 +547,6 @@ abstract class AbstractJsonableObject implements Jsonable {
         return;
       }
 
-      String name =
-          jsonableElement.value().isEmpty() ? member.getName() : jsonableElement.value();
-
       // If this is an Iterable, return a stream of the inner elements
       if (object instanceof Iterable) {
         checkState(
@@ -466,7 +575,7 @@ abstract class AbstractJsonableObject implements Jsonable {
       return jsonObject;
     }
 
-    private void mergeWith(JsonObject otherJsonObject, Member member) {
+    private void mergeWith(JsonObject otherJsonObject, String member) {
       for (Map.Entry<String, JsonElement> entry : otherJsonObject.entrySet()) {
         String name = entry.getKey();
         JsonElement otherElement = entry.getValue();
@@ -489,7 +598,7 @@ abstract class AbstractJsonableObject implements Jsonable {
 
     }
 
-    private void addObject(String name, Member member, Object object) {
+    private void addObject(String name, String member, Object object) {
       checkState(
           !jsonObject.has(name),
           "Encountered the same field name '%s' multiple times: '%s' vs. '%s'",
@@ -500,7 +609,7 @@ abstract class AbstractJsonableObject implements Jsonable {
       jsonObject.add(name, toJsonElement(name, member, object));
     }
 
-    private void addObjectIntoArray(String name, Member member, Object object) {
+    private void addObjectIntoArray(String name, String member, Object object) {
       JsonElement innerElement = jsonObject.get(name);
       JsonArray jsonArray;
       if (innerElement == null) {
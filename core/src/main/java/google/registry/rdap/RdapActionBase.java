@@ -181,17 +181,22 @@ public abstract class RdapActionBase implements Runnable {
       return;
     }
 
+    response.setPayload(createGson().toJson(createTopLevelReplyObject(replyObject).toJson()));
+  }
+
+  /** Returns the {@link Gson} used to write the payload, as requested by formatOutput. */
+  Gson createGson() {
     GsonBuilder gsonBuilder = new GsonBuilder();
     gsonBuilder.disableHtmlEscaping();
     if (formatOutputParam.orElse(false)) {
       gsonBuilder.setPrettyPrinting();
     }
-    Gson gson = gsonBuilder.create();
-
-    TopLevelReplyObject topLevelObject =
-        TopLevelReplyObject.create(replyObject, rdapJsonFormatter.createTosNotice());
+    return gsonBuilder.create();
+  }
 
-    response.setPayload(gson.toJson(topLevelObject.toJson()));
+  /** Adds the required top-level boilerplate to a reply. */
+  TopLevelReplyObject createTopLevelReplyObject(ReplyPayloadBase replyObject) {
+    return TopLevelReplyObject.create(replyObject, rdapJsonFormatter.createTosNotice());
   }
 
   /**
@@ -129,7 +129,7 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
       }
       results = searchByNameserverIp(inetAddress);
     }
-    if (results.domainSearchResults().isEmpty()) {
+    if (hasNoResults(results.domainSearchResults())) {
       throw new NotFoundException("No domains found");
     }
     return results;
@@ -165,13 +165,22 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
                     + " without a TLD suffix",
                 RdapSearchPattern.MIN_INITIAL_STRING_LENGTH));
       }
-      return searchByDomainNameWithInitialString(partialStringQuery);
+      return useNameIndex()
+          ? searchByDomainNameUsingIndex(partialStringQuery)
+          : searchByDomainNameWithInitialString(partialStringQuery);
     }
     if (partialStringQuery.getSuffix() == null) {
       throw new UnprocessableEntityException(
           "Initial search string is required for wildcard domain searches without a TLD suffix");
     }
-    return searchByDomainNameByTld(partialStringQuery.getSuffix());
+    return useNameIndex()
+        ? searchByDomainNameUsingIndex(partialStringQuery)
+        : searchByDomainNameByTld(partialStringQuery.getSuffix());
+  }
+
+  /** Returns whether a wildcard search by domain name can be answered from the name index. */
+  private boolean useNameIndex() {
+    return !shouldIncludeDeleted() && RdapNameIndex.isEnabledFor(DomainBase.class);
   }
 
   /** Searches for domains by domain name without a wildcard or interest in deleted entries. */
@@ -215,6 +224,18 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
     return makeSearchResults(getMatchingResources(query, true, querySizeLimit));
   }
 
+  /**
+   * Searches for domains by domain name with a wildcard, using the {@link RdapNameIndex}.
+   *
+   * <p>Unlike the Datastore queries, this loads exactly the domains that are returned, whether the
+   * pattern has an initial string, a TLD suffix or both.
+   */
+  private DomainSearchResponse searchByDomainNameUsingIndex(
+      final RdapSearchPattern partialStringQuery) {
+    return makeSearchResults(
+        getMatchingResourcesFromIndex(DomainBase.class, partialStringQuery));
+  }
+
   /** Searches for domains by domain name with a TLD suffix. */
   private DomainSearchResponse searchByDomainNameByTld(String tld) {
     // Even though we are not searching on fullyQualifiedDomainName, we want the results to come
@@ -494,9 +515,9 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
     Optional<String> newCursor = Optional.empty();
     for (DomainBase domain : Iterables.limit(domains, rdapResultSetMaxSize)) {
       newCursor = Optional.of(domain.getDomainName());
-      builder
-          .domainSearchResultsBuilder()
-          .add(rdapJsonFormatter.createRdapDomain(domain, outputDataType));
+      addSearchResult(
+          builder.domainSearchResultsBuilder(),
+          () -> rdapJsonFormatter.createRdapDomain(domain, outputDataType));
     }
     if (rdapResultSetMaxSize < domains.size()) {
       builder.setNextPageUri(createNavigationUri(newCursor.get()));
@@ -176,7 +176,7 @@ public class RdapEntitySearchAction extends RdapSearchActionBase {
     }
 
     // Build the result object and return it.
-    if (results.entitySearchResults().isEmpty()) {
+    if (hasNoResults(results.entitySearchResults())) {
       throw new NotFoundException("No entities found");
     }
     return results;
@@ -451,9 +451,9 @@ public class RdapEntitySearchAction extends RdapSearchActionBase {
     for (ContactResource contact : Iterables.limit(contacts, rdapResultSetMaxSize)) {
       // As per Andy Newton on the regext mailing list, contacts by themselves have no role, since
       // they are global, and might have different roles for different domains.
-      builder
-          .entitySearchResultsBuilder()
-          .add(
+      addSearchResult(
+          builder.entitySearchResultsBuilder(),
+          () ->
               rdapJsonFormatter.createRdapContactEntity(
                   contact, ImmutableSet.of(), outputDataType));
       newCursor =
@@ -466,9 +466,9 @@ public class RdapEntitySearchAction extends RdapSearchActionBase {
     if (rdapResultSetMaxSize > contacts.size()) {
       for (Registrar registrar :
           Iterables.limit(registrars, rdapResultSetMaxSize - contacts.size())) {
-        builder
-            .entitySearchResultsBuilder()
-            .add(rdapJsonFormatter.createRdapRegistrarEntity(registrar, outputDataType));
+        addSearchResult(
+            builder.entitySearchResultsBuilder(),
+            () -> rdapJsonFormatter.createRdapRegistrarEntity(registrar, outputDataType));
         newCursor = Optional.of(REGISTRAR_CURSOR_PREFIX + registrar.getRegistrarName());
       }
     }
@@ -0,0 +1,220 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rdap;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static google.registry.config.RegistryConfig.getRdapNameIndexRefreshDuration;
+import static google.registry.model.index.ForeignKeyIndex.mapToFkiClass;
+import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.joda.time.DateTimeZone.UTC;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Ordering;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.googlecode.objectify.Key;
+import google.registry.config.RegistryConfig;
+import google.registry.model.EppResource;
+import google.registry.model.domain.DomainBase;
+import google.registry.model.host.HostResource;
+import google.registry.util.Concurrent;
+import google.registry.util.NonFinalForTesting;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * In-memory indexes of the names of existing domains and hosts, for RDAP wildcard searches.
+ *
+ * <p>A wildcard search by name can't filter out deleted resources in its Datastore query, since
+ * that would need a second inequality filter, so it has to over-fetch and then filter in memory,
+ * and searches with only a TLD suffix have to scan the TLD. The index instead lists the matching
+ * names in order, starting right after the cursor, so that the search can load exactly as many
+ * resources as it returns.
+ *
+ * <p>Each index holds the sorted names of one resource type, partitioned by their last label, so
+ * that a prefix is found by binary search and a suffix only searches the partition of its TLD. It
+ * is built from a keys-only query over the foreign key indexes that are not yet deleted, and is
+ * rebuilt in the background once it is older than the configured refresh duration; searches keep
+ * using the old index while it is being rebuilt, instead of waiting for the query. Resources
+ * created since the last rebuild are therefore missing from the results, and resources deleted
+ * since then are filtered out when they are loaded.
+ */
+final class RdapNameIndex {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** The resource types whose names are indexed. */
+  static final ImmutableSet<Class<? extends EppResource>> INDEXED_RESOURCE_CLASSES =
+      ImmutableSet.of(DomainBase.class, HostResource.class);
+
+  static final CacheLoader<Class<? extends EppResource>, NameIndex> CACHE_LOADER =
+      new CacheLoader<Class<? extends EppResource>, NameIndex>() {
+        @Override
+        public NameIndex load(Class<? extends EppResource> clazz) {
+          DateTime now = DateTime.now(UTC);
+          ImmutableList<String> names =
+              tm().doTransactionless(
+                      () ->
+                          ofy()
+                              .load()
+                              .type(mapToFkiClass(clazz))
+                              .filter("deletionTime >", now)
+                              .keys()
+                              .list())
+                  .stream()
+                  .map(Key::getName)
+                  .collect(toImmutableList());
+          logger.atInfo().log(
+              "Built RDAP name index for %d %s resources.", names.size(), clazz.getSimpleName());
+          return new NameIndex(names);
+        }
+      };
+
+  @NonFinalForTesting
+  private static LoadingCache<Class<? extends EppResource>, NameIndex> cacheIndexes =
+      createIndexesCache(getRdapNameIndexRefreshDuration());
+
+  private static LoadingCache<Class<? extends EppResource>, NameIndex> createIndexesCache(
+      Duration refresh) {
+    return CacheBuilder.newBuilder()
+        .refreshAfterWrite(refresh.getMillis(), MILLISECONDS)
+        .build(CacheLoader.asyncReloading(CACHE_LOADER, Concurrent::runOnRequestThread));
+  }
+
+  @VisibleForTesting
+  static void setCacheForTest(Optional<Duration> refresh) {
+    cacheIndexes = createIndexesCache(refresh.orElse(getRdapNameIndexRefreshDuration()));
+  }
+
+  /** Returns whether wildcard searches of the given resource type should use an index. */
+  static boolean isEnabledFor(Class<? extends EppResource> clazz) {
+    return RegistryConfig.isRdapNameIndexEnabled() && INDEXED_RESOURCE_CLASSES.contains(clazz);
+  }
+
+  /**
+   * Returns the indexed names of the given resource type that match a wildcard search pattern, in
+   * sorted order.
+   *
+   * @param clazz the type of resource to be searched
+   * @param partialStringQuery the search pattern; if it has a suffix, the suffix must consist of
+   *     whole labels
+   * @param cursorString if present, only names after the cursor string are returned
+   */
+  static Iterator<String> getMatchingNames(
+      Class<? extends EppResource> clazz,
+      RdapSearchPattern partialStringQuery,
+      Optional<String> cursorString) {
+    try {
+      return cacheIndexes.get(clazz).getMatchingNames(partialStringQuery, cursorString);
+    } catch (ExecutionException e) {
+      throw new UncheckedExecutionException(
+          "Could not build the RDAP name index for " + clazz.getSimpleName(), e.getCause());
+    }
+  }
+
+  /** The sorted names of the existing resources of one type, partitioned by their last label. */
+  @VisibleForTesting
+  static final class NameIndex {
+
+    private final ImmutableMap<String, String[]> namesByLastLabel;
+
+    NameIndex(Iterable<String> names) {
+      Map<String, List<String>> partitions = new HashMap<>();
+      for (String name : names) {
+        partitions.computeIfAbsent(getLastLabel(name), label -> new ArrayList<>()).add(name);
+      }
+      ImmutableMap.Builder<String, String[]> builder = new ImmutableMap.Builder<>();
+      partitions.forEach(
+          (label, partition) -> {
+            String[] sortedNames = partition.toArray(new String[0]);
+            Arrays.sort(sortedNames);
+            builder.put(label, sortedNames);
+          });
+      namesByLastLabel = builder.build();
+    }
+
+    Iterator<String> getMatchingNames(
+        RdapSearchPattern partialStringQuery, Optional<String> cursorString) {
+      String suffix = partialStringQuery.getSuffix();
+      ImmutableList<String[]> partitions;
+      if (suffix == null) {
+        partitions = namesByLastLabel.values().asList();
+      } else {
+        String[] partition = namesByLastLabel.get(getLastLabel(suffix));
+        partitions = (partition == null) ? ImmutableList.of() : ImmutableList.of(partition);
+      }
+      Iterator<String> names =
+          Iterators.mergeSorted(
+              partitions.stream()
+                  .map(partition -> getRange(partition, partialStringQuery, cursorString))
+                  .collect(toImmutableList()),
+              Ordering.natural());
+      // The search pattern only checks that a name ends with the suffix, and a TLD suffix such as
+      // "tld" mustn't match names in "xtld".
+      return Iterators.filter(
+          names,
+          name ->
+              partialStringQuery.matches(name) && (suffix == null || name.endsWith("." + suffix)));
+    }
+
+    /** Returns the names in a sorted partition that start with the initial string. */
+    private static Iterator<String> getRange(
+        String[] partition, RdapSearchPattern partialStringQuery, Optional<String> cursorString) {
+      String initialString = partialStringQuery.getInitialString();
+      int from = getIndexOfFirstAtOrAfter(partition, initialString);
+      if (cursorString.isPresent()) {
+        from = Math.max(from, getIndexOfFirstAfter(partition, cursorString.get()));
+      }
+      int to =
+          initialString.isEmpty()
+              ? partition.length
+              : getIndexOfFirstAtOrAfter(partition, partialStringQuery.getNextInitialString());
+      return Arrays.asList(partition).subList(from, Math.max(from, to)).iterator();
+    }
+
+    private static int getIndexOfFirstAtOrAfter(String[] partition, String string) {
+      int index = Arrays.binarySearch(partition, string);
+      return (index >= 0) ? index : -index - 1;
+    }
+
+    private static int getIndexOfFirstAfter(String[] partition, String string) {
+      int index = Arrays.binarySearch(partition, string);
+      return (index >= 0) ? index + 1 : -index - 1;
+    }
+
+    private static String getLastLabel(String name) {
+      return name.substring(name.lastIndexOf('.') + 1);
+    }
+  }
+
+  private RdapNameIndex() {}
+}
@@ -108,7 +108,7 @@ public class RdapNameserverSearchAction extends RdapSearchActionBase {
       }
       results = searchByIp(inetAddress);
     }
-    if (results.nameserverSearchResults().isEmpty()) {
+    if (hasNoResults(results.nameserverSearchResults())) {
       throw new NotFoundException("No nameservers found");
     }
     return results;
@@ -161,9 +161,9 @@ public class RdapNameserverSearchAction extends RdapSearchActionBase {
     metricInformationBuilder.setNumHostsRetrieved(hostResource.isPresent() ? 1 : 0);
 
     if (shouldBeVisible(hostResource)) {
-      builder
-          .nameserverSearchResultsBuilder()
-          .add(rdapJsonFormatter.createRdapNameserver(hostResource.get(), OutputDataType.FULL));
+      addSearchResult(
+          builder.nameserverSearchResultsBuilder(),
+          () -> rdapJsonFormatter.createRdapNameserver(hostResource.get(), OutputDataType.FULL));
     }
     return builder.build();
   }
@@ -211,9 +211,13 @@ public class RdapNameserverSearchAction extends RdapSearchActionBase {
    * Searches for nameservers by name with a prefix and wildcard.
    *
    * <p>There are no pending deletes for hosts, so we can call {@link
-   * RdapSearchActionBase#queryItems}.
+   * RdapSearchActionBase#queryItems}, unless the {@link RdapNameIndex} can be used instead.
    */
   private NameserverSearchResponse searchByNameUsingPrefix(RdapSearchPattern partialStringQuery) {
+    if (!shouldIncludeDeleted() && RdapNameIndex.isEnabledFor(HostResource.class)) {
+      return makeSearchResults(
+          getMatchingResourcesFromIndex(HostResource.class, partialStringQuery), CursorType.NAME);
+    }
     // Add 1 so we can detect truncation.
     int querySizeLimit = getStandardQuerySizeLimit();
     Query<HostResource> query =
@@ -270,9 +274,9 @@ public class RdapNameserverSearchAction extends RdapSearchActionBase {
     for (HostResource host : Iterables.limit(hosts, rdapResultSetMaxSize)) {
       newCursor =
           Optional.of((cursorType == CursorType.NAME) ? host.getHostName() : host.getRepoId());
-      builder
-          .nameserverSearchResultsBuilder()
-          .add(rdapJsonFormatter.createRdapNameserver(host, outputDataType));
+      addSearchResult(
+          builder.nameserverSearchResultsBuilder(),
+          () -> rdapJsonFormatter.createRdapNameserver(host, outputDataType));
     }
     if (rdapResultSetMaxSize < hosts.size()) {
       builder.setNextPageUri(createNavigationUri(newCursor.get()));
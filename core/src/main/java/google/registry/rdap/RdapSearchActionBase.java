@@ -15,32 +15,48 @@
 package google.registry.rdap;
 
 import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
 import static google.registry.util.DateTimeUtils.END_OF_TIME;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterators;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.stream.JsonWriter;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.cmd.Query;
+import google.registry.config.RegistryConfig.Config;
 import google.registry.model.EppResource;
+import google.registry.model.index.ForeignKeyIndex;
 import google.registry.model.registrar.Registrar;
+import google.registry.persistence.VKey;
 import google.registry.rdap.RdapMetrics.EndpointType;
 import google.registry.rdap.RdapMetrics.WildcardType;
+import google.registry.rdap.RdapObjectClasses.ReplyPayloadBase;
 import google.registry.rdap.RdapSearchResults.BaseSearchResponse;
 import google.registry.rdap.RdapSearchResults.IncompletenessWarningType;
+import google.registry.request.Action;
 import google.registry.request.HttpException.BadRequestException;
 import google.registry.request.HttpException.UnprocessableEntityException;
 import google.registry.request.Parameter;
 import google.registry.request.ParameterMap;
 import google.registry.request.RequestUrl;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 import javax.inject.Inject;
 
 /**
@@ -57,9 +73,16 @@ public abstract class RdapSearchActionBase extends RdapActionBase {
   @Inject @ParameterMap ImmutableListMultimap<String, String> parameterMap;
   @Inject @Parameter("cursor") Optional<String> cursorTokenParam;
   @Inject @Parameter("registrar") Optional<String> registrarParam;
+  @Inject @Config("rdapStreamSearchResults") boolean rdapStreamSearchResults;
 
   protected Optional<String> cursorString;
 
+  /** The results that will be formatted as they are written, if the results are streamed. */
+  private final List<Supplier<? extends Jsonable>> streamedResults = new ArrayList<>();
+
+  /** Whether streamed results have started being written, after which errors can't be sent. */
+  private boolean isPayloadStreaming = false;
+
   RdapSearchActionBase(String humanReadableObjectTypeName, EndpointType endpointType) {
     super(humanReadableObjectTypeName, endpointType);
   }
@@ -78,6 +101,86 @@ public abstract class RdapSearchActionBase extends RdapActionBase {
 
   public abstract BaseSearchResponse getSearchResponse(boolean isHeadRequest);
 
+  /**
+   * Returns whether search results are streamed.
+   *
+   * <p>Streamed results are formatted one at a time while they are written to the response, and
+   * each is flushed to the client right away, rather than formatting all of them up front and
+   * holding the whole response in memory. Since the response status is sent with the first result,
+   * an error while formatting a later result can only truncate the response.
+   *
+   * <p>HEAD requests are never streamed, so that the results are still formatted to make sure the
+   * request would succeed as a GET.
+   */
+  boolean shouldStreamResults() {
+    return rdapStreamSearchResults && requestMethod != Action.Method.HEAD;
+  }
+
+  /**
+   * Adds a search result to a response, or, if results are streamed, defers formatting it until
+   * the response is written.
+   *
+   * @param resultsBuilder the builder of the response's results
+   * @param result formats the result
+   */
+  <T extends Jsonable> void addSearchResult(
+      ImmutableList.Builder<T> resultsBuilder, Supplier<T> result) {
+    if (shouldStreamResults()) {
+      streamedResults.add(result);
+    } else {
+      resultsBuilder.add(result.get());
+    }
+  }
+
+  /** Returns true if a search didn't find anything, counting any streamed results. */
+  boolean hasNoResults(List<?> results) {
+    return results.isEmpty() && streamedResults.isEmpty();
+  }
+
+  @Override
+  void setPayload(ReplyPayloadBase replyObject) {
+    if (!(replyObject instanceof BaseSearchResponse) || streamedResults.isEmpty()) {
+      super.setPayload(replyObject);
+      return;
+    }
+    // The results are written first, so that they are sent as soon as each is formatted. The rest
+    // of the reply, such as the notices and the navigation links, is already known, and is written
+    // after them.
+    isPayloadStreaming = true;
+    Gson gson = createGson();
+    try {
+      JsonWriter jsonWriter = gson.newJsonWriter(response.getPayloadWriter());
+      jsonWriter.beginObject();
+      jsonWriter.name(((BaseSearchResponse) replyObject).searchResultsName());
+      jsonWriter.beginArray();
+      for (Supplier<? extends Jsonable> result : streamedResults) {
+        gson.toJson(result.get().toJson(), jsonWriter);
+        jsonWriter.flush();
+      }
+      jsonWriter.endArray();
+      for (Map.Entry<String, JsonElement> member :
+          createTopLevelReplyObject(replyObject).toJson().entrySet()) {
+        jsonWriter.name(member.getKey());
+        gson.toJson(member.getValue(), jsonWriter);
+      }
+      jsonWriter.endObject();
+      jsonWriter.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  void setError(int status, String title, String description) {
+    if (isPayloadStreaming) {
+      // The OK status and part of the payload have already been sent, so the client gets a
+      // truncated response.
+      metricInformationBuilder.setStatusCode(status);
+      return;
+    }
+    super.setError(status, title, description);
+  }
+
   /**
    * Decodes the cursor token passed in the HTTP request.
    *
@@ -202,6 +305,77 @@ public abstract class RdapSearchActionBase extends RdapActionBase {
         numResourcesQueried);
   }
 
+  /**
+   * Loads the resources whose names match a wildcard pattern, using the {@link RdapNameIndex}.
+   *
+   * <p>The index lists the matching names in order, so unlike {@link #getMatchingResources(Query,
+   * boolean, int)}, this only loads as many resources as are still needed to fill a result set.
+   * The index doesn't list the resources created since it was last built, though, so the result
+   * set is always marked as possibly incomplete. It doesn't include deleted resources, so it can't
+   * be used if {@link #shouldIncludeDeleted} is true.
+   *
+   * <p>Names that are filtered out don't count towards the result set, so no more names are read
+   * than a search that includes deleted resources would query, no matter how many are filtered out.
+   *
+   * @param clazz the type of resource to be searched
+   * @param partialStringQuery the search pattern, which must have a wildcard, and either a suffix
+   *     or an initial string at least {@link RdapSearchPattern#MIN_INITIAL_STRING_LENGTH} long
+   * @return an {@link RdapResultSet} of up to {@code rdapResultSetMaxSize + 1} resources, so that
+   *     truncation can be detected
+   */
+  <T extends EppResource> RdapResultSet<T> getMatchingResourcesFromIndex(
+      Class<T> clazz, RdapSearchPattern partialStringQuery) {
+    // As with queryItems, don't list every resource in the system.
+    if ((partialStringQuery.getSuffix() == null)
+        && (partialStringQuery.getInitialString().length()
+            < RdapSearchPattern.MIN_INITIAL_STRING_LENGTH)) {
+      throw new UnprocessableEntityException(
+          String.format(
+              "Initial search string must be at least %d characters",
+              RdapSearchPattern.MIN_INITIAL_STRING_LENGTH));
+    }
+    Iterator<String> names =
+        RdapNameIndex.getMatchingNames(clazz, partialStringQuery, cursorString);
+    Optional<String> desiredRegistrar = getDesiredRegistrar();
+    List<T> resources = new ArrayList<>();
+    int maxNamesRead = RESULT_SET_SIZE_SCALING_FACTOR * (rdapResultSetMaxSize + 1);
+    int numNamesRead = 0;
+    int numResourcesRetrieved = 0;
+    while ((resources.size() <= rdapResultSetMaxSize)
+        && (numNamesRead < maxNamesRead)
+        && names.hasNext()) {
+      // The index may still list resources that have been deleted since it was built, so only the
+      // number of resources that are still needed is loaded at a time.
+      int batchSize =
+          Math.min(rdapResultSetMaxSize + 1 - resources.size(), maxNamesRead - numNamesRead);
+      ImmutableList<String> batch = ImmutableList.copyOf(Iterators.limit(names, batchSize));
+      numNamesRead += batch.size();
+      ImmutableMap<String, ForeignKeyIndex<T>> foreignKeyIndexes =
+          ForeignKeyIndex.load(clazz, batch, getRequestTime());
+      ImmutableMap<VKey<? extends T>, T> loadedResources =
+          tm().load(
+                  foreignKeyIndexes.values().stream()
+                      .map(ForeignKeyIndex::getResourceKey)
+                      .collect(toImmutableList()));
+      numResourcesRetrieved += loadedResources.size();
+      for (String name : batch) {
+        ForeignKeyIndex<T> foreignKeyIndex = foreignKeyIndexes.get(name);
+        if (foreignKeyIndex == null) {
+          continue;
+        }
+        T resource = loadedResources.get(foreignKeyIndex.getResourceKey());
+        if ((resource != null)
+            && shouldBeVisible(resource)
+            && (!desiredRegistrar.isPresent()
+                || desiredRegistrar.get().equals(resource.getPersistedCurrentSponsorClientId()))) {
+          resources.add(resource);
+        }
+      }
+    }
+    return RdapResultSet.create(
+        resources, IncompletenessWarningType.MIGHT_BE_INCOMPLETE, numResourcesRetrieved);
+  }
+
   RdapSearchPattern recordWildcardType(RdapSearchPattern partialStringQuery) {
     if (!partialStringQuery.getHasWildcard()) {
       metricInformationBuilder.setWildcardType(WildcardType.NO_WILDCARD);
@@ -46,6 +46,9 @@ abstract class RdapSearchResults {
     abstract IncompletenessWarningType incompletenessWarningType();
     abstract ImmutableMap<String, URI> navigationLinks();
 
+    /** Returns the JSON name of the array of search results. */
+    abstract String searchResultsName();
+
     @JsonableElement("notices") ImmutableList<Notice> getIncompletenessWarnings() {
       switch (incompletenessWarningType()) {
         case TRUNCATED:
@@ -105,6 +108,11 @@ abstract class RdapSearchResults {
 
     @JsonableElement abstract ImmutableList<RdapDomain> domainSearchResults();
 
+    @Override
+    String searchResultsName() {
+      return "domainSearchResults";
+    }
+
     DomainSearchResponse() {
       super(BoilerplateType.DOMAIN);
     }
@@ -126,6 +134,11 @@ abstract class RdapSearchResults {
 
     @JsonableElement public abstract ImmutableList<RdapEntity> entitySearchResults();
 
+    @Override
+    String searchResultsName() {
+      return "entitySearchResults";
+    }
+
     EntitySearchResponse() {
       super(BoilerplateType.ENTITY);
     }
@@ -147,6 +160,11 @@ abstract class RdapSearchResults {
 
     @JsonableElement public abstract ImmutableList<RdapNameserver> nameserverSearchResults();
 
+    @Override
+    String searchResultsName() {
+      return "nameserverSearchResults";
+    }
+
     NameserverSearchResponse() {
       super(BoilerplateType.NAMESERVER);
     }
@@ -27,8 +27,24 @@ public abstract class DepositFragment implements Serializable {
   public abstract String xml();
   public abstract String error();
 
+  /** Whether {@link #xml} is a delete element, which goes in the deletes of a deposit. */
+  public abstract boolean delete();
+
   public static DepositFragment create(RdeResourceType type, String xml, String error) {
-    return new AutoValue_DepositFragment(type, xml, error);
+    return new AutoValue_DepositFragment(type, xml, error, false);
+  }
+
+  /** Returns a fragment that deletes an object in a differential deposit. */
+  public static DepositFragment createDelete(RdeResourceType type, String xml) {
+    return new AutoValue_DepositFragment(type, xml, "", true);
+  }
+
+  /**
+   * Returns a fragment without XML for an object that is left out of a differential deposit
+   * because it hasn't changed, but still needs to be counted in the header.
+   */
+  public static DepositFragment createUnchanged(RdeResourceType type) {
+    return new AutoValue_DepositFragment(type, "", "", false);
   }
 
   DepositFragment() {}
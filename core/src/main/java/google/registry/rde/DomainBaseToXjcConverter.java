@@ -15,7 +15,6 @@
 package google.registry.rde;
 
 import static com.google.common.base.Preconditions.checkState;
-import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
 
 import com.google.common.base.Ascii;
 import com.google.common.base.Strings;
@@ -52,12 +51,19 @@ final class DomainBaseToXjcConverter {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
   /** Converts {@link DomainBase} to {@link XjcRdeDomainElement}. */
-  static XjcRdeDomainElement convert(DomainBase domain, RdeMode mode) {
-    return new XjcRdeDomainElement(convertDomain(domain, mode));
+  static XjcRdeDomainElement convert(
+      DomainBase domain, RdeMode mode, DomainReferenceResolver resolver) {
+    return new XjcRdeDomainElement(convertDomain(domain, mode, resolver));
   }
 
-  /** Converts {@link DomainBase} to {@link XjcRdeDomain}. */
+  /** Converts {@link DomainBase} to {@link XjcRdeDomain}, loading the resources it refers to. */
   static XjcRdeDomain convertDomain(DomainBase model, RdeMode mode) {
+    return convertDomain(model, mode, DomainReferenceResolver.DATABASE);
+  }
+
+  /** Converts {@link DomainBase} to {@link XjcRdeDomain}. */
+  static XjcRdeDomain convertDomain(
+      DomainBase model, RdeMode mode, DomainReferenceResolver resolver) {
     XjcRdeDomain bean = new XjcRdeDomain();
 
     // o  A <name> element that contains the fully qualified name of the
@@ -143,7 +149,7 @@ final class DomainBaseToXjcConverter {
     //    it is that with host attributes, you inline the nameserver data
     //    on each domain; with host objects, you normalize the nameserver
     //    data to a separate EPP object.
-    ImmutableSet<String> linkedNameserverHostNames = model.loadNameserverHostNames();
+    ImmutableSet<String> linkedNameserverHostNames = resolver.getNameserverHostNames(model);
     if (!linkedNameserverHostNames.isEmpty()) {
       XjcDomainNsType nameservers = new XjcDomainNsType();
       for (String hostName : linkedNameserverHostNames) {
@@ -172,20 +178,20 @@ final class DomainBaseToXjcConverter {
         if (registrant == null) {
           logger.atWarning().log("Domain %s has no registrant contact.", domainName);
         } else {
-          ContactResource registrantContact = tm().load(registrant);
+          String registrantContactId = resolver.getContactId(registrant);
           checkState(
-              registrantContact != null,
+              registrantContactId != null,
               "Registrant contact %s on domain %s does not exist",
               registrant,
               domainName);
-          bean.setRegistrant(registrantContact.getContactId());
+          bean.setRegistrant(registrantContactId);
         }
 
         // o  Zero or more OPTIONAL <contact> elements that contain identifiers
         //    for the human or organizational social information objects
         //    associated with the domain name object.
         for (DesignatedContact contact : model.getContacts()) {
-          bean.getContacts().add(convertDesignatedContact(contact, domainName));
+          bean.getContacts().add(convertDesignatedContact(contact, domainName, resolver));
         }
 
         // o  An OPTIONAL <secDNS> element that contains the public key
@@ -298,21 +304,21 @@ final class DomainBaseToXjcConverter {
 
   /** Converts {@link DesignatedContact} to {@link XjcDomainContactType}. */
   private static XjcDomainContactType convertDesignatedContact(
-      DesignatedContact model, String domainName) {
+      DesignatedContact model, String domainName, DomainReferenceResolver resolver) {
     XjcDomainContactType bean = new XjcDomainContactType();
     checkState(
         model.getContactKey() != null,
         "Contact key for type %s is null on domain %s",
         model.getType(),
         domainName);
-    ContactResource contact = tm().load(model.getContactKey());
+    String contactId = resolver.getContactId(model.getContactKey());
     checkState(
-        contact != null,
+        contactId != null,
         "Contact %s on domain %s does not exist",
         model.getContactKey(),
         domainName);
     bean.setType(XjcDomainContactAttrType.fromValue(Ascii.toLowerCase(model.getType().toString())));
-    bean.setValue(contact.getContactId());
+    bean.setValue(contactId);
     return bean;
   }
 
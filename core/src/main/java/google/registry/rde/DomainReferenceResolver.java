@@ -0,0 +1,56 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
+
+import com.google.common.collect.ImmutableSet;
+import google.registry.model.contact.ContactResource;
+import google.registry.model.domain.DomainBase;
+import google.registry.persistence.VKey;
+import javax.annotation.Nullable;
+
+/**
+ * Looks up the identifiers of the hosts and contacts that a {@link DomainBase} refers to by key,
+ * when converting the domain to an RDE fragment.
+ *
+ * <p>The {@link #DATABASE default} implementation loads the referenced resources. Callers that
+ * already have them, such as the Beam RDE staging pipeline, can resolve them without a load.
+ */
+public interface DomainReferenceResolver {
+
+  /** Resolves references by loading the referenced resources from the database. */
+  DomainReferenceResolver DATABASE =
+      new DomainReferenceResolver() {
+        @Override
+        public ImmutableSet<String> getNameserverHostNames(DomainBase domain) {
+          return domain.loadNameserverHostNames();
+        }
+
+        @Nullable
+        @Override
+        public String getContactId(VKey<ContactResource> contactKey) {
+          ContactResource contact = tm().load(contactKey);
+          return (contact == null) ? null : contact.getContactId();
+        }
+      };
+
+  /** Returns the host names of the nameservers of the domain, in sorted order. */
+  ImmutableSet<String> getNameserverHostNames(DomainBase domain);
+
+  /** Returns the contact ID of the contact with the given key, or null if it doesn't exist. */
+  @Nullable
+  String getContactId(VKey<ContactResource> contactKey);
+}
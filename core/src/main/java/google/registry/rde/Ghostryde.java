@@ -126,7 +126,8 @@ public final class Ghostryde {
     checkNotNull(data, "data");
     checkArgument(key.isEncryptionKey(), "not an encryption key");
     ByteArrayOutputStream output = new ByteArrayOutputStream();
-    try (OutputStream encoder = encoder(output, key)) {
+    // The data is already in memory and usually small, so it isn't worth starting threads for.
+    try (OutputStream encoder = encoder(output, key, null, false)) {
       encoder.write(data);
     }
     return output.toByteArray();
@@ -160,6 +161,8 @@ public final class Ghostryde {
    * the header. We don't want to have to decrypt the entire ghostryde file to determine the length,
    * so we just save it separately.
    *
+   * <p>The compression and encryption run on separate threads.
+   *
    * @param output where to write the encrypted data
    * @param encryptionKey the encryption key to use
    * @param lengthOutput if not null - will save the total length of the data written to this
@@ -167,13 +170,37 @@ public final class Ghostryde {
    */
   public static ImprovedOutputStream encoder(
       OutputStream output, PGPPublicKey encryptionKey, @Nullable OutputStream lengthOutput) {
+    return encoder(output, encryptionKey, lengthOutput, true);
+  }
+
+  /**
+   * Creates a Ghostryde Encoder.
+   *
+   * @param output where to write the encrypted data
+   * @param encryptionKey the encryption key to use
+   * @param lengthOutput if not null - will save the total length of the data written to this
+   *     output. See {@link #readLength}.
+   * @param pipelined whether the compression and encryption run on separate threads, connected by
+   *     {@link RydePipe}s. The output is the same either way.
+   */
+  public static ImprovedOutputStream encoder(
+      OutputStream output,
+      PGPPublicKey encryptionKey,
+      @Nullable OutputStream lengthOutput,
+      boolean pipelined) {
 
     // We use a Closer to handle the stream .close, to make sure it's done correctly.
     Closer closer = Closer.create();
     OutputStream encryptionLayer =
         closer.register(
             openEncryptor(output, GHOSTRYDE_USE_INTEGRITY_PACKET, ImmutableList.of(encryptionKey)));
+    if (pipelined) {
+      encryptionLayer = closer.register(new RydePipe("GhostrydeEncryptor", encryptionLayer));
+    }
     OutputStream kompressor = closer.register(openCompressor(encryptionLayer));
+    if (pipelined) {
+      kompressor = closer.register(new RydePipe("GhostrydeCompressor", kompressor));
+    }
     OutputStream fileLayer =
         closer.register(openPgpFileWriter(kompressor, INNER_FILENAME, INNER_MODIFICATION_TIME));
 
@@ -14,8 +14,11 @@
 
 package google.registry.rde;
 
+import static com.google.common.base.Preconditions.checkState;
+
 import com.google.auto.value.AutoValue;
 import google.registry.model.common.Cursor.CursorType;
+import google.registry.model.rde.RdeDepositType;
 import google.registry.model.rde.RdeMode;
 import java.io.Serializable;
 import javax.annotation.Nullable;
@@ -47,6 +50,12 @@ public abstract class PendingDeposit implements Serializable {
   /** Which type of deposit to generate: full (RDE) or thin (BRDA). */
   public abstract RdeMode mode();
 
+  /**
+   * Whether the deposit contains every object or only the changes since the previous deposit,
+   * which is the one at {@link #previousWatermark}.
+   */
+  public abstract RdeDepositType depositType();
+
   /** The cursor type to update (not used in manual operation). */
   @Nullable
   public abstract CursorType cursor();
@@ -69,20 +78,39 @@ public abstract class PendingDeposit implements Serializable {
   @Nullable
   public abstract Integer revision();
 
-  static PendingDeposit create(
+  public static PendingDeposit create(
       String tld, DateTime watermark, RdeMode mode, CursorType cursor, Duration interval) {
     return new AutoValue_PendingDeposit(
         false,
         tld,
         watermark,
         mode,
+        RdeDepositType.FULL,
+        cursor,
+        interval,
+        null,
+        null);
+  }
+
+  /**
+   * Creates a differential RDE deposit of the changes since the deposit one interval before the
+   * watermark.
+   */
+  public static PendingDeposit createDifferential(
+      String tld, DateTime watermark, CursorType cursor, Duration interval) {
+    return new AutoValue_PendingDeposit(
+        false,
+        tld,
+        watermark,
+        RdeMode.FULL,
+        RdeDepositType.DIFF,
         cursor,
         interval,
         null,
         null);
   }
 
-  static PendingDeposit createInManualOperation(
+  public static PendingDeposit createInManualOperation(
       String tld,
       DateTime watermark,
       RdeMode mode,
@@ -93,11 +121,33 @@ public abstract class PendingDeposit implements Serializable {
         tld,
         watermark,
         mode,
+        RdeDepositType.FULL,
         null,
         null,
         directoryWithTrailingSlash,
         revision);
   }
 
+  /** Returns a copy of this deposit that generates files with the given revision number. */
+  public PendingDeposit withRevision(int revision) {
+    return new AutoValue_PendingDeposit(
+        manual(),
+        tld(),
+        watermark(),
+        mode(),
+        depositType(),
+        cursor(),
+        interval(),
+        directoryWithTrailingSlash(),
+        revision);
+  }
+
+  /** Returns the watermark of the deposit that a differential deposit is relative to. */
+  public DateTime previousWatermark() {
+    checkState(depositType() == RdeDepositType.DIFF, "Not a differential deposit: %s", this);
+    checkState(interval() != null, "Interval must be present");
+    return watermark().minus(interval());
+  }
+
   PendingDeposit() {}
 }
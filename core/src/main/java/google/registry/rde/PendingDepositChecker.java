@@ -51,6 +51,10 @@ import org.joda.time.Duration;
  * <p>If no deposits have been made so far, then {@code startingPoint} is used as the watermark
  * of the next deposit. If that's a day in the future, then escrow won't start until that date.
  * This first deposit time will be set to Datastore in a transaction.
+ *
+ * <p>If differential deposits are enabled, RDE deposits only contain the changes since the previous
+ * deposit, except on the full deposit day of the week and for the first deposit of a TLD, which
+ * always contain everything.
  */
 public final class PendingDepositChecker {
 
@@ -58,6 +62,8 @@ public final class PendingDepositChecker {
   @Inject @Config("brdaDayOfWeek") int brdaDayOfWeek;
   @Inject @Config("brdaInterval") Duration brdaInterval;
   @Inject @Config("rdeInterval") Duration rdeInterval;
+  @Inject @Config("rdeDifferentialDepositsEnabled") boolean rdeDifferentialDepositsEnabled;
+  @Inject @Config("rdeFullDepositDayOfWeek") int rdeFullDepositDayOfWeek;
   @Inject PendingDepositChecker() {}
 
   /** Returns multimap of TLDs to all RDE and BRDA deposits that need to happen. */
@@ -99,13 +105,28 @@ public final class PendingDepositChecker {
             ? cursor.getCursorTime()
             : transactionallyInitializeCursor(registry, cursorType, startingPoint));
         if (isBeforeOrAt(watermark, now)) {
-          builder.put(tld, PendingDeposit.create(tld, watermark, mode, cursorType, interval));
+          builder.put(
+              tld,
+              isDifferential(mode, cursor != null, watermark)
+                  ? PendingDeposit.createDifferential(tld, watermark, cursorType, interval)
+                  : PendingDeposit.create(tld, watermark, mode, cursorType, interval));
         }
       }
     }
     return builder.build();
   }
 
+  /**
+   * Returns whether the deposit at {@code watermark} only needs to contain the changes since the
+   * previous one, which only exists if the cursor was already there.
+   */
+  private boolean isDifferential(RdeMode mode, boolean hasPreviousDeposit, DateTime watermark) {
+    return rdeDifferentialDepositsEnabled
+        && mode == RdeMode.FULL
+        && hasPreviousDeposit
+        && watermark.getDayOfWeek() != rdeFullDepositDayOfWeek;
+  }
+
   private DateTime transactionallyInitializeCursor(
       final Registry registry,
       final CursorType cursorType,
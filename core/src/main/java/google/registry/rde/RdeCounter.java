@@ -16,6 +16,7 @@ package google.registry.rde;
 
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import google.registry.model.rde.RdeDepositType;
 import google.registry.model.rde.RdeMode;
 import google.registry.xjc.rde.XjcRdeDepositTypeType;
 import google.registry.xjc.rdeheader.XjcRdeHeader;
@@ -49,6 +50,11 @@ public final class RdeCounter {
     counts.get(type).incrementAndGet();
   }
 
+  /** Adds a number of resources to the count on a given resource. */
+  public void add(RdeResourceType type, long count) {
+    counts.get(type).addAndGet(count);
+  }
+
   /** Constructs a header containing the sum of {@link #increment(RdeResourceType)} calls. */
   public XjcRdeHeader makeHeader(String tld, RdeMode mode) {
     XjcRdeHeader header = new XjcRdeHeader();
@@ -63,9 +69,19 @@ public final class RdeCounter {
   /** Returns an ICANN notification report as a JAXB object. */
   public XjcRdeReport
       makeReport(String id, DateTime watermark, XjcRdeHeader header, int revision) {
+    return makeReport(id, watermark, header, revision, RdeDepositType.FULL);
+  }
+
+  /** Returns an ICANN notification report on a deposit of the given type as a JAXB object. */
+  public XjcRdeReport makeReport(
+      String id,
+      DateTime watermark,
+      XjcRdeHeader header,
+      int revision,
+      RdeDepositType depositType) {
     XjcRdeReport report = new XjcRdeReport();
     report.setId(id);
-    report.setKind(XjcRdeDepositTypeType.FULL);
+    report.setKind(XjcRdeDepositTypeType.valueOf(depositType.name()));
     report.setCrDate(watermark);
     report.setWatermark(watermark);
     report.setVersion(ICANN_REPORT_SPEC_VERSION);
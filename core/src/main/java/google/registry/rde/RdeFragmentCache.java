@@ -0,0 +1,166 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static google.registry.model.ofy.ObjectifyService.ofy;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.googlecode.objectify.Key;
+import google.registry.model.EppResource;
+import google.registry.model.ImmutableObject;
+import google.registry.model.contact.ContactResource;
+import google.registry.model.domain.DomainBase;
+import google.registry.model.host.HostResource;
+import google.registry.model.rde.RdeFragmentCacheEntry;
+import google.registry.model.rde.RdeMode;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Cache of the XML fragments of a single EPP resource that persists between RDE staging runs.
+ *
+ * <p>Entries are stored as {@link RdeFragmentCacheEntry} entities, one per resource and mode, and
+ * are addressed by a fingerprint of everything the fragment is marshalled from: the resource as of
+ * the watermark (which includes its update timestamp and any projection to the watermark), the
+ * mode, and the {@code dependencies} that the caller passes in, such as the names of the
+ * nameservers of a domain. A resource that hasn't changed since the last run gets the same
+ * fingerprint, so its cached fragment is returned without converting or marshalling it again.
+ *
+ * <p>Fragments with errors are never cached, so that they are reported on every run.
+ */
+@NotThreadSafe
+final class RdeFragmentCache {
+
+  /**
+   * Version of the XML that the fragments are marshalled to, which is part of every fingerprint.
+   *
+   * <p>Increment this whenever the conversion of resources to XML changes, so that fragments cached
+   * by older versions of the code aren't used.
+   */
+  private static final int VERSION = 1;
+
+  private final Key<EppResource> resourceKey;
+  private final Map<String, RdeFragmentCacheEntry> entries;
+  private final Map<String, RdeFragmentCacheEntry> newEntries = new LinkedHashMap<>();
+
+  long hits = 0;
+  long misses = 0;
+
+  private RdeFragmentCache(
+      Key<EppResource> resourceKey, Map<String, RdeFragmentCacheEntry> entries) {
+    this.resourceKey = resourceKey;
+    this.entries = entries;
+  }
+
+  /** Starts loading the cached fragments of {@code resource} for all modes. */
+  static RdeFragmentCache load(EppResource resource) {
+    Key<EppResource> resourceKey = Key.create(resource);
+    ImmutableList<String> ids =
+        EnumSet.allOf(RdeMode.class).stream()
+            .map(mode -> RdeFragmentCacheEntry.createId(resourceKey, mode))
+            .collect(toImmutableList());
+    return new RdeFragmentCache(
+        resourceKey, ofy().load().type(RdeFragmentCacheEntry.class).ids(ids));
+  }
+
+  /**
+   * Returns the fragment of {@code resource} in {@code mode}, from the cache if it has an entry
+   * with a matching fingerprint, or else from {@code marshaller}.
+   *
+   * @param resource the resource as of the watermark
+   * @param mode the mode of the fragment, which should be {@link RdeMode#FULL} for resources whose
+   *     fragments are the same in both modes
+   * @param dependencies other entities and strings that the fragment is marshalled from
+   * @param marshaller supplies the fragment on a cache miss
+   */
+  DepositFragment get(
+      EppResource resource,
+      RdeMode mode,
+      ImmutableList<?> dependencies,
+      Supplier<DepositFragment> marshaller) {
+    String id = RdeFragmentCacheEntry.createId(resourceKey, mode);
+    String fingerprint = fingerprint(resource, mode, dependencies);
+    RdeFragmentCacheEntry entry = entries.get(id);
+    if (entry != null && entry.getFingerprint().equals(fingerprint)) {
+      hits++;
+      return DepositFragment.create(getType(resource), entry.getXml(), "");
+    }
+    misses++;
+    DepositFragment fragment = marshaller.get();
+    if (fragment.error().isEmpty()) {
+      newEntries.put(id, RdeFragmentCacheEntry.create(id, fingerprint, fragment.xml()));
+    }
+    return fragment;
+  }
+
+  /**
+   * Saves the fragments that were marshalled because of cache misses.
+   *
+   * <p>If the same resource was marshalled at more than one point in time, the last one is kept.
+   */
+  void save() {
+    if (!newEntries.isEmpty()) {
+      ofy().saveWithoutBackup().entities(newEntries.values()).now();
+      newEntries.clear();
+    }
+  }
+
+  private static String fingerprint(
+      EppResource resource, RdeMode mode, ImmutableList<?> dependencies) {
+    Hasher hasher = Hashing.sha256().newHasher().putInt(VERSION);
+    putString(hasher, mode.name());
+    putString(hasher, toFingerprintString(resource));
+    for (Object dependency : dependencies) {
+      putString(hasher, toFingerprintString(dependency));
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Returns a string with the values of all fields of {@code object} if it's an entity.
+   *
+   * <p>This can't use the raw Datastore entity, since converting to it sets the update timestamp.
+   */
+  private static String toFingerprintString(Object object) {
+    return (object instanceof ImmutableObject)
+        ? ((ImmutableObject) object).toDiffableFieldMap().toString()
+        : String.valueOf(object);
+  }
+
+  /** Adds a string with its length, so that consecutive strings can't run into each other. */
+  private static void putString(Hasher hasher, String string) {
+    byte[] bytes = string.getBytes(UTF_8);
+    hasher.putInt(bytes.length).putBytes(bytes);
+  }
+
+  private static RdeResourceType getType(EppResource resource) {
+    if (resource instanceof DomainBase) {
+      return RdeResourceType.DOMAIN;
+    } else if (resource instanceof ContactResource) {
+      return RdeResourceType.CONTACT;
+    } else if (resource instanceof HostResource) {
+      return RdeResourceType.HOST;
+    } else {
+      throw new AssertionError(resource.toString());
+    }
+  }
+}
@@ -17,12 +17,15 @@ package google.registry.rde;
 import static com.google.common.base.Verify.verify;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.flogger.FluentLogger;
 import com.googlecode.objectify.Key;
+import google.registry.model.EppResource;
 import google.registry.model.ImmutableObject;
 import google.registry.model.contact.ContactResource;
 import google.registry.model.domain.DomainBase;
 import google.registry.model.host.HostResource;
+import google.registry.model.rde.RdeDepositType;
 import google.registry.model.rde.RdeMode;
 import google.registry.model.registrar.Registrar;
 import google.registry.tldconfig.idn.IdnTable;
@@ -31,6 +34,12 @@ import google.registry.xjc.rde.XjcRdeContentsType;
 import google.registry.xjc.rde.XjcRdeDeposit;
 import google.registry.xjc.rde.XjcRdeDepositTypeType;
 import google.registry.xjc.rde.XjcRdeMenuType;
+import google.registry.xjc.rdecontact.XjcRdeContactDelete;
+import google.registry.xjc.rdecontact.XjcRdeContactDeleteElement;
+import google.registry.xjc.rdedomain.XjcRdeDomainDelete;
+import google.registry.xjc.rdedomain.XjcRdeDomainDeleteElement;
+import google.registry.xjc.rdehost.XjcRdeHostDelete;
+import google.registry.xjc.rdehost.XjcRdeHostDeleteElement;
 import google.registry.xjc.rdeidn.XjcRdeIdn;
 import google.registry.xjc.rdeidn.XjcRdeIdnElement;
 import google.registry.xjc.rdepolicy.XjcRdePolicy;
@@ -41,9 +50,11 @@ import google.registry.xml.XmlFragmentMarshaller;
 import java.io.ByteArrayOutputStream;
 import java.io.Serializable;
 import java.util.Collection;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.xml.bind.JAXBElement;
 import javax.xml.bind.MarshalException;
+import javax.xml.namespace.QName;
 import org.joda.time.DateTime;
 
 /** XML document <i>fragment</i> marshaller for RDE. */
@@ -53,6 +64,8 @@ public final class RdeMarshaller implements Serializable {
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
   private static final long serialVersionUID = 202890386611768455L;
 
+  private static final String RDE_HOST_NAMESPACE = "urn:ietf:params:xml:ns:rdeHost-1.0";
+
   private final ValidationMode validationMode;
   private transient XmlFragmentMarshaller memoizedMarshaller;
 
@@ -63,6 +76,25 @@ public final class RdeMarshaller implements Serializable {
   /** Returns top-portion of XML document. */
   public String makeHeader(
       String depositId, DateTime watermark, Collection<String> uris, int revision) {
+    return makeHeader(
+        depositId, watermark, uris, revision, RdeDepositType.FULL, null, ImmutableList.of());
+  }
+
+  /**
+   * Returns top-portion of XML document of a deposit of the given type.
+   *
+   * @param prevId ID of the previous deposit, which a differential deposit is relative to
+   * @param deletes delete XML fragments made by {@link #marshalDelete}, which come before the
+   *     contents of the deposit
+   */
+  public String makeHeader(
+      String depositId,
+      DateTime watermark,
+      Collection<String> uris,
+      int revision,
+      RdeDepositType depositType,
+      @Nullable String prevId,
+      Collection<String> deletes) {
     // We can't make JAXB marshal half an element. So we're going to use a kludge where we provide
     // it with the minimum data necessary to marshal a deposit, and then cut it up by manually.
     XjcRdeMenuType menu = new XjcRdeMenuType();
@@ -76,7 +108,10 @@ public final class RdeMarshaller implements Serializable {
     XjcRdeDeposit deposit = new XjcRdeDeposit();
     deposit.setId(depositId);
     deposit.setWatermark(watermark);
-    deposit.setType(XjcRdeDepositTypeType.FULL);
+    deposit.setType(XjcRdeDepositTypeType.valueOf(depositType.name()));
+    if (prevId != null) {
+      deposit.setPrevId(prevId);
+    }
     if (revision > 0) {
       deposit.setResend(revision);
     }
@@ -92,7 +127,15 @@ public final class RdeMarshaller implements Serializable {
     String marker = "<rde:contents>\n";
     int startOfContents = rdeDocument.indexOf(marker);
     verify(startOfContents > 0, "Bad RDE document:\n%s", rdeDocument);
-    return rdeDocument.substring(0, startOfContents + marker.length());
+    if (deletes.isEmpty()) {
+      return rdeDocument.substring(0, startOfContents + marker.length());
+    }
+    // The deletes are fragments too, so they get spliced in between the menu and the contents.
+    return rdeDocument.substring(0, startOfContents)
+        + "<rde:deletes>\n"
+        + String.join("", deletes)
+        + "\n</rde:deletes>\n"
+        + marker;
   }
 
   /** Returns bottom-portion of XML document. */
@@ -125,8 +168,17 @@ public final class RdeMarshaller implements Serializable {
 
   /** Turns {@link DomainBase} object into an XML fragment. */
   public DepositFragment marshalDomain(DomainBase domain, RdeMode mode) {
+    return marshalDomain(domain, mode, DomainReferenceResolver.DATABASE);
+  }
+
+  /**
+   * Turns {@link DomainBase} object into an XML fragment, looking up the hosts and contacts it
+   * refers to with the given resolver.
+   */
+  public DepositFragment marshalDomain(
+      DomainBase domain, RdeMode mode, DomainReferenceResolver resolver) {
     return marshalResource(RdeResourceType.DOMAIN, domain,
-        DomainBaseToXjcConverter.convert(domain, mode));
+        DomainBaseToXjcConverter.convert(domain, mode, resolver));
   }
 
   /** Turns {@link HostResource} object into an XML fragment. */
@@ -148,6 +200,39 @@ public final class RdeMarshaller implements Serializable {
         RegistrarToXjcConverter.convert(registrar));
   }
 
+  /**
+   * Turns a resource that was deleted since the previous deposit into a delete XML fragment for a
+   * differential deposit.
+   *
+   * <p>Hosts are identified by their ROID, since their names can be reused.
+   */
+  public DepositFragment marshalDelete(EppResource resource) {
+    if (resource instanceof DomainBase) {
+      XjcRdeDomainDelete bean = new XjcRdeDomainDelete();
+      bean.getNames().add(((DomainBase) resource).getDomainName());
+      return DepositFragment.createDelete(
+          RdeResourceType.DOMAIN, marshalOrDie(new XjcRdeDomainDeleteElement(bean)));
+    } else if (resource instanceof ContactResource) {
+      XjcRdeContactDelete bean = new XjcRdeContactDelete();
+      bean.getIds().add(((ContactResource) resource).getContactId());
+      return DepositFragment.createDelete(
+          RdeResourceType.CONTACT, marshalOrDie(new XjcRdeContactDeleteElement(bean)));
+    } else if (resource instanceof HostResource) {
+      XjcRdeHostDelete bean = new XjcRdeHostDelete();
+      bean.getNameOrRoids()
+          .add(
+              new JAXBElement<>(
+                  new QName(RDE_HOST_NAMESPACE, "roid"),
+                  String.class,
+                  XjcRdeHostDelete.class,
+                  resource.getRepoId()));
+      return DepositFragment.createDelete(
+          RdeResourceType.HOST, marshalOrDie(new XjcRdeHostDeleteElement(bean)));
+    } else {
+      throw new IllegalArgumentException("Can't delete from a deposit: " + resource);
+    }
+  }
+
   /** Turns {@link IdnTable} object into an XML fragment. */
   public String marshalIdn(IdnTable idn) {
     XjcRdeIdn bean = new XjcRdeIdn();
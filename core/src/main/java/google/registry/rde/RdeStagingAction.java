@@ -76,6 +76,15 @@ import org.joda.time.Duration;
  * <p>The XML deposit files generated by this job are humongous. A tiny XML report file is generated
  * for each deposit, telling us how much of what it contains.
  *
+ * <h3>Differential Deposits</h3>
+ *
+ * <p>If {@code rde.differentialDepositsEnabled} is set, the RDE deposits on all days except the
+ * full deposit day of the week are differential. Each resource is rewound both to the watermark
+ * and to the watermark of the previous deposit, and only the ones whose XML differs are written
+ * out. Resources that were deleted in between become deletes, and registrars are always included.
+ * Differential deposits are named with {@code diff} instead of {@code full}, and {@link
+ * RdeUploadAction} and {@link RdeReportAction} pick them up when no full deposit was staged.
+ *
  * <p>Once a deposit is successfully generated, an {@link RdeUploadAction} is enqueued which will
  * upload it via SFTP to the third-party escrow provider.
  *
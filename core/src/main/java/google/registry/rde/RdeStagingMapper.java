@@ -22,6 +22,7 @@ import static google.registry.persistence.transaction.TransactionManagerFactory.
 
 import com.google.appengine.tools.mapreduce.Mapper;
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
@@ -32,15 +33,26 @@ import google.registry.model.EppResource;
 import google.registry.model.contact.ContactResource;
 import google.registry.model.domain.DomainBase;
 import google.registry.model.host.HostResource;
+import google.registry.model.rde.RdeDepositType;
 import google.registry.model.rde.RdeMode;
 import google.registry.model.registrar.Registrar;
+import google.registry.persistence.VKey;
 import google.registry.xml.ValidationMode;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
 import org.joda.time.DateTime;
 
-/** Mapper for {@link RdeStagingAction}. */
+/**
+ * Mapper for {@link RdeStagingAction}.
+ *
+ * <p>For differential deposits, each resource is loaded both at the watermark and at the previous
+ * watermark, which replays its commit log mutations in between. A resource is only included if
+ * its XML changed, and resources that were deleted in between are emitted as deletes. Unchanged
+ * resources are still emitted without XML, so that the reducer can count them in the header.
+ */
 public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit, DepositFragment> {
 
   private static final long serialVersionUID = -1518185703789372524L;
@@ -115,20 +127,28 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
       tlds = pendings.keySet();
     }
 
-    // Get the set of all point-in-time watermarks we need, to minimize rewinding.
+    // Get the set of all point-in-time watermarks we need, to minimize rewinding. Differential
+    // deposits also need the resource at the watermark of the previous deposit.
     ImmutableSet<DateTime> dates =
         tlds.stream()
             .map(pendings::get)
             .flatMap(ImmutableSet::stream)
-            .map(PendingDeposit::watermark)
+            .flatMap(
+                pending ->
+                    pending.depositType() == RdeDepositType.DIFF
+                        ? Stream.of(pending.watermark(), pending.previousWatermark())
+                        : Stream.of(pending.watermark()))
             .collect(toImmutableSet());
 
     // Launch asynchronous fetches of point-in-time representations of resource.
     ImmutableMap<DateTime, Result<EppResource>> resourceAtTimes =
         ImmutableMap.copyOf(Maps.asMap(dates, input -> loadAtPointInTime(resource, input)));
 
+    // Start loading the fragments of resource that were cached by previous runs.
+    RdeFragmentCache fragmentCache = RdeFragmentCache.load(resource);
+
     // Convert resource to an XML fragment for each watermark/mode pair lazily and cache the result.
-    Fragmenter fragmenter = new Fragmenter(resourceAtTimes);
+    Fragmenter fragmenter = new Fragmenter(resourceAtTimes, fragmentCache);
 
     // Emit resource as an XML fragment for all TLDs and modes pending deposit.
     long resourcesEmitted = 0;
@@ -141,7 +161,9 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
           continue;
         }
         Optional<DepositFragment> fragment =
-            fragmenter.marshal(pending.watermark(), pending.mode());
+            pending.depositType() == RdeDepositType.DIFF
+                ? fragmenter.marshalChange(pending.previousWatermark(), pending.watermark())
+                : fragmenter.marshal(pending.watermark(), pending.mode());
         if (fragment.isPresent()) {
           emit(pending, fragment.get());
           resourcesEmitted++;
@@ -152,6 +174,11 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
     getContext().incrementCounter("fragmenter cache hits", fragmenter.cacheHits);
     getContext().incrementCounter("fragmenter resources not found", fragmenter.resourcesNotFound);
     getContext().incrementCounter("fragmenter resources found", fragmenter.resourcesFound);
+    getContext().incrementCounter("fragmenter resources unchanged", fragmenter.resourcesUnchanged);
+    getContext().incrementCounter("fragmenter resources deleted", fragmenter.resourcesDeleted);
+    getContext().incrementCounter("fragment cache hits", fragmentCache.hits);
+    getContext().incrementCounter("fragment cache misses", fragmentCache.misses);
+    fragmentCache.save();
 
     // Avoid running out of memory.
     ofy().clearSessionCache();
@@ -161,13 +188,19 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
   private class Fragmenter {
     private final Map<WatermarkModePair, Optional<DepositFragment>> cache = new HashMap<>();
     private final ImmutableMap<DateTime, Result<EppResource>> resourceAtTimes;
+    private final RdeFragmentCache fragmentCache;
 
     long cacheHits = 0;
     long resourcesNotFound = 0;
     long resourcesFound = 0;
+    long resourcesUnchanged = 0;
+    long resourcesDeleted = 0;
 
-    Fragmenter(ImmutableMap<DateTime, Result<EppResource>> resourceAtTimes) {
+    Fragmenter(
+        ImmutableMap<DateTime, Result<EppResource>> resourceAtTimes,
+        RdeFragmentCache fragmentCache) {
       this.resourceAtTimes = resourceAtTimes;
+      this.fragmentCache = fragmentCache;
     }
 
     Optional<DepositFragment> marshal(DateTime watermark, RdeMode mode) {
@@ -186,26 +219,55 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
       }
       resourcesFound++;
       if (resource instanceof DomainBase) {
-        result = Optional.of(marshaller.marshalDomain((DomainBase) resource, mode));
+        DomainBase domain = (DomainBase) resource;
+        // Nameservers can be renamed without the domain changing, so their names are part of the
+        // fingerprint. Contact IDs can't change, so the contacts don't need to be.
+        ImmutableSet<String> hostNames = domain.loadNameserverHostNames();
+        result =
+            Optional.of(
+                fragmentCache.get(
+                    domain,
+                    mode,
+                    hostNames.asList(),
+                    () ->
+                        marshaller.marshalDomain(
+                            domain, mode, new LoadedNameserversResolver(hostNames))));
         cache.put(WatermarkModePair.create(watermark, mode), result);
         return result;
       } else if (resource instanceof ContactResource) {
-        result = Optional.of(marshaller.marshalContact((ContactResource) resource));
+        ContactResource contact = (ContactResource) resource;
+        result =
+            Optional.of(
+                fragmentCache.get(
+                    contact,
+                    RdeMode.FULL,
+                    ImmutableList.of(),
+                    () -> marshaller.marshalContact(contact)));
         cache.put(WatermarkModePair.create(watermark, RdeMode.FULL), result);
         cache.put(WatermarkModePair.create(watermark, RdeMode.THIN), result);
         return result;
       } else if (resource instanceof HostResource) {
         HostResource host = (HostResource) resource;
-        result =
-            Optional.of(
-                host.isSubordinate()
-                    ? marshaller.marshalSubordinateHost(
-                        host,
-                        // Note that loadAtPointInTime() does cloneProjectedAtTime(watermark) for
-                        // us.
-                        loadAtPointInTime(tm().load(host.getSuperordinateDomain()), watermark)
-                            .now())
-                    : marshaller.marshalExternalHost(host));
+        if (host.isSubordinate()) {
+          // Note that loadAtPointInTime() does cloneProjectedAtTime(watermark) for us.
+          DomainBase superordinateDomain =
+              loadAtPointInTime(tm().load(host.getSuperordinateDomain()), watermark).now();
+          result =
+              Optional.of(
+                  fragmentCache.get(
+                      host,
+                      RdeMode.FULL,
+                      ImmutableList.of(superordinateDomain),
+                      () -> marshaller.marshalSubordinateHost(host, superordinateDomain)));
+        } else {
+          result =
+              Optional.of(
+                  fragmentCache.get(
+                      host,
+                      RdeMode.FULL,
+                      ImmutableList.of(),
+                      () -> marshaller.marshalExternalHost(host)));
+        }
         cache.put(WatermarkModePair.create(watermark, RdeMode.FULL), result);
         cache.put(WatermarkModePair.create(watermark, RdeMode.THIN), result);
         return result;
@@ -213,6 +275,53 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
         throw new AssertionError(resource.toString());
       }
     }
+
+    /**
+     * Returns the fragment for a differential deposit relative to the deposit at {@code
+     * previousWatermark}, which is a delete if the resource was deleted since then, or a fragment
+     * without XML if its XML hasn't changed.
+     */
+    Optional<DepositFragment> marshalChange(DateTime previousWatermark, DateTime watermark) {
+      // The previous version goes first, so that the current one is what the fragment cache keeps.
+      Optional<DepositFragment> previous = marshal(previousWatermark, RdeMode.FULL);
+      Optional<DepositFragment> current = marshal(watermark, RdeMode.FULL);
+      if (!current.isPresent()) {
+        if (!previous.isPresent()) {
+          return current;
+        }
+        resourcesDeleted++;
+        return Optional.of(
+            marshaller.marshalDelete(resourceAtTimes.get(previousWatermark).now()));
+      }
+      if (previous.isPresent()
+          && previous.get().error().isEmpty()
+          && current.get().error().isEmpty()
+          && previous.get().xml().equals(current.get().xml())) {
+        resourcesUnchanged++;
+        return Optional.of(DepositFragment.createUnchanged(current.get().type()));
+      }
+      return current;
+    }
+  }
+
+  /** Resolves the nameservers of a domain to host names that have already been loaded. */
+  private static class LoadedNameserversResolver implements DomainReferenceResolver {
+    private final ImmutableSet<String> hostNames;
+
+    LoadedNameserversResolver(ImmutableSet<String> hostNames) {
+      this.hostNames = hostNames;
+    }
+
+    @Override
+    public ImmutableSet<String> getNameserverHostNames(DomainBase domain) {
+      return hostNames;
+    }
+
+    @Nullable
+    @Override
+    public String getContactId(VKey<ContactResource> contactKey) {
+      return DATABASE.getContactId(contactKey);
+    }
   }
 
   /** Map key for {@link Fragmenter} cache. */
@@ -35,6 +35,7 @@ import google.registry.gcs.GcsUtils;
 import google.registry.keyring.api.KeyModule;
 import google.registry.keyring.api.PgpHelper;
 import google.registry.model.common.Cursor;
+import google.registry.model.rde.RdeDepositType;
 import google.registry.model.rde.RdeMode;
 import google.registry.model.rde.RdeNamingUtils;
 import google.registry.model.rde.RdeRevision;
@@ -51,9 +52,12 @@ import google.registry.xml.XmlException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.StringWriter;
 import java.io.Writer;
 import java.security.Security;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Callable;
 import javax.inject.Inject;
@@ -121,13 +125,19 @@ public final class RdeStagingReducer extends Reducer<PendingDeposit, DepositFrag
 
     // Determine some basic things about the deposit.
     final RdeMode mode = key.mode();
+    final RdeDepositType depositType = key.depositType();
     final String tld = key.tld();
     final DateTime watermark = key.watermark();
     final int revision =
         Optional.ofNullable(key.revision())
-            .orElse(RdeRevision.getNextRevision(tld, watermark, mode));
+            .orElse(RdeRevision.getNextRevision(tld, watermark, mode, depositType));
     String id = RdeUtil.timestampToId(watermark);
-    String prefix = RdeNamingUtils.makeRydeFilename(tld, watermark, mode, 1, revision);
+    String prevId =
+        depositType == RdeDepositType.DIFF
+            ? RdeUtil.timestampToId(key.previousWatermark())
+            : null;
+    String prefix =
+        RdeNamingUtils.makeRydeFilename(tld, watermark, mode, depositType, 1, revision);
     if (key.manual()) {
       checkState(key.directoryWithTrailingSlash() != null, "Manual subdirectory not specified");
       prefix = "manual/" + key.directoryWithTrailingSlash() + prefix;
@@ -144,6 +154,20 @@ public final class RdeStagingReducer extends Reducer<PendingDeposit, DepositFrag
     // These variables will be populated as we write the deposit XML and used for other files.
     boolean failed = false;
     XjcRdeHeader header;
+    List<String> deletes = new ArrayList<>();
+
+    // The deletes of a differential deposit come before its contents, so its fragments have to be
+    // buffered until all of them have been seen. That's fine since it only contains the changes of
+    // a single interval. Full deposits are written out as their fragments come in.
+    StringWriter bufferedContents = null;
+    if (depositType == RdeDepositType.DIFF) {
+      bufferedContents = new StringWriter();
+      try {
+        failed = writeFragments(fragments, bufferedContents, counter, deletes);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
 
     // Write a gigantic XML file to GCS. We'll start by opening encrypted out/err file handles.
 
@@ -154,19 +178,21 @@ public final class RdeStagingReducer extends Reducer<PendingDeposit, DepositFrag
         Writer output = new OutputStreamWriter(ghostrydeEncoder, UTF_8)) {
 
       // Output the top portion of the XML document.
-      output.write(marshaller.makeHeader(id, watermark, RdeResourceType.getUris(mode), revision));
+      output.write(
+          marshaller.makeHeader(
+              id,
+              watermark,
+              RdeResourceType.getUris(mode),
+              revision,
+              depositType,
+              prevId,
+              deletes));
 
       // Output XML fragments emitted to us by RdeStagingMapper while counting them.
-      while (fragments.hasNext()) {
-        DepositFragment fragment = fragments.next();
-        if (!fragment.xml().isEmpty()) {
-          output.write(fragment.xml());
-          counter.increment(fragment.type());
-        }
-        if (!fragment.error().isEmpty()) {
-          failed = true;
-          logger.atSevere().log("Fragment error: %s", fragment.error());
-        }
+      if (bufferedContents != null) {
+        output.write(bufferedContents.toString());
+      } else {
+        failed = writeFragments(fragments, output, counter, deletes);
       }
       for (IdnTableEnum idn : IdnTableEnum.values()) {
         output.write(marshaller.marshalIdn(idn.getTable()));
@@ -194,7 +220,9 @@ public final class RdeStagingReducer extends Reducer<PendingDeposit, DepositFrag
       logger.atInfo().log("Writing %s", reportFilename);
       try (OutputStream gcsOutput = cloudStorage.openOutputStream(reportFilename);
           OutputStream ghostrydeEncoder = Ghostryde.encoder(gcsOutput, stagingKey)) {
-        counter.makeReport(id, watermark, header, revision).marshal(ghostrydeEncoder, UTF_8);
+        counter
+            .makeReport(id, watermark, header, revision, depositType)
+            .marshal(ghostrydeEncoder, UTF_8);
       } catch (IOException | XmlException e) {
         throw new RuntimeException(e);
       }
@@ -226,7 +254,7 @@ public final class RdeStagingReducer extends Reducer<PendingDeposit, DepositFrag
                   Cursor.create(key.cursor(), newPosition, registry), registry.getTldStr());
               logger.atInfo().log(
                   "Rolled forward %s on %s cursor to %s", key.cursor(), tld, newPosition);
-              RdeRevision.saveRevision(tld, watermark, mode, revision);
+              RdeRevision.saveRevision(tld, watermark, mode, depositType, revision);
               if (mode == RdeMode.FULL) {
                 taskQueueUtils.enqueue(
                     getQueue("rde-upload"),
@@ -241,6 +269,38 @@ public final class RdeStagingReducer extends Reducer<PendingDeposit, DepositFrag
             });
   }
 
+  /**
+   * Writes the XML fragments emitted by {@link RdeStagingMapper} while counting them, and collects
+   * the deletes of a differential deposit instead of writing them.
+   *
+   * <p>Fragments without XML are resources that are unchanged in a differential deposit, which
+   * still count towards the header, or resources with errors, which don't.
+   *
+   * @return whether any of the fragments had an error
+   */
+  private static boolean writeFragments(
+      Iterator<DepositFragment> fragments, Writer output, RdeCounter counter, List<String> deletes)
+      throws IOException {
+    boolean failed = false;
+    while (fragments.hasNext()) {
+      DepositFragment fragment = fragments.next();
+      if (fragment.delete()) {
+        deletes.add(fragment.xml());
+        continue;
+      }
+      if (!fragment.xml().isEmpty()) {
+        output.write(fragment.xml());
+      }
+      if (fragment.error().isEmpty()) {
+        counter.increment(fragment.type());
+      } else {
+        failed = true;
+        logger.atSevere().log("Fragment error: %s", fragment.error());
+      }
+    }
+    return failed;
+  }
+
   /** Injectible factory for creating {@link RdeStagingReducer}. */
   static class Factory {
     @Inject TaskQueueUtils taskQueueUtils;
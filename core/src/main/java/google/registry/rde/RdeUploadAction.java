@@ -42,6 +42,7 @@ import google.registry.gcs.GcsUtils;
 import google.registry.keyring.api.KeyModule.Key;
 import google.registry.model.common.Cursor;
 import google.registry.model.common.Cursor.CursorType;
+import google.registry.model.rde.RdeDepositType;
 import google.registry.model.rde.RdeNamingUtils;
 import google.registry.model.rde.RdeRevision;
 import google.registry.model.registry.Registry;
@@ -77,7 +78,8 @@ import org.joda.time.Duration;
  * Iron Mountain) via SFTP.
  *
  * <p>This action is invoked by {@link RdeStagingAction} once it's created the files we need. The
- * date is calculated from {@link CursorType#RDE_UPLOAD}.
+ * date is calculated from {@link CursorType#RDE_UPLOAD}. The deposit is differential if that's what
+ * was staged for the date.
  *
  * <p>Once this action completes, it rolls the cursor forward a day and triggers {@link
  * RdeReportAction}.
@@ -160,9 +162,11 @@ public final class RdeUploadAction implements Runnable, EscrowTask {
               sftpCursorTime,
               timeSinceLastSftp.getStandardMinutes()));
     }
-    int revision = RdeRevision.getNextRevision(tld, watermark, FULL) - 1;
+    RdeDepositType depositType = RdeUtil.getStagedDepositType(tld, watermark);
+    int revision = RdeRevision.getNextRevision(tld, watermark, FULL, depositType) - 1;
     verify(revision >= 0, "RdeRevision was not set on generated deposit");
-    final String name = RdeNamingUtils.makeRydeFilename(tld, watermark, FULL, 1, revision);
+    final String name =
+        RdeNamingUtils.makeRydeFilename(tld, watermark, FULL, depositType, 1, revision);
     final GcsFilename xmlFilename = new GcsFilename(bucket, name + ".xml.ghostryde");
     final GcsFilename xmlLengthFilename = new GcsFilename(bucket, name + ".xml.length");
     GcsFilename reportFilename = new GcsFilename(bucket, name + "-report.xml.ghostryde");
@@ -20,6 +20,9 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 import com.google.common.io.BaseEncoding;
 import com.google.re2j.Matcher;
 import com.google.re2j.Pattern;
+import google.registry.model.rde.RdeDepositType;
+import google.registry.model.rde.RdeMode;
+import google.registry.model.rde.RdeRevision;
 import google.registry.xjc.rde.XjcRdeRrType;
 import google.registry.xml.XmlException;
 import java.io.BufferedInputStream;
@@ -83,6 +86,17 @@ public final class RdeUtil {
     return BaseEncoding.base32().omitPadding().encode(bytes);
   }
 
+  /**
+   * Returns the type of the RDE deposit that was staged for {@code watermark}, which is only
+   * differential if no full deposit was staged for it.
+   */
+  static RdeDepositType getStagedDepositType(String tld, DateTime watermark) {
+    return RdeRevision.getNextRevision(tld, watermark, RdeMode.FULL, RdeDepositType.FULL) == 0
+            && RdeRevision.getNextRevision(tld, watermark, RdeMode.FULL, RdeDepositType.DIFF) > 0
+        ? RdeDepositType.DIFF
+        : RdeDepositType.FULL;
+  }
+
   static XjcRdeRrType makeXjcRdeRrType(String clientId) {
     XjcRdeRrType bean = new XjcRdeRrType();
     bean.setValue(clientId);
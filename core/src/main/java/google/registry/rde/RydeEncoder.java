@@ -48,6 +48,10 @@ import org.joda.time.DateTime;
  *
  * <p>Because of the external tar file encoding - the encoder must know the total length of the data
  * from the start. This is a bit annoying, but necessary.
+ *
+ * <p>By default the compression, encryption and signing each run on their own thread, connected by
+ * {@link RydePipe}s, since they're the bottleneck when encoding large deposits. The output is the
+ * same as when all layers run on the calling thread.
  */
 @NotThreadSafe
 public final class RydeEncoder extends FilterOutputStream {
@@ -65,13 +69,24 @@ public final class RydeEncoder extends FilterOutputStream {
       String filenamePrefix,
       DateTime modified,
       PGPKeyPair signingKey,
-      Collection<PGPPublicKey> receiverKeys) {
+      Collection<PGPPublicKey> receiverKeys,
+      boolean pipelined) {
     super(null);
     this.sigOutput = sigOutput;
     signer = closer.register(new RydePgpSigningOutputStream(checkNotNull(rydeOutput), signingKey));
+    OutputStream signLayer = signer;
+    if (pipelined) {
+      signLayer = closer.register(new RydePipe("RydeSigner", signLayer));
+    }
     OutputStream encryptLayer =
-        closer.register(openEncryptor(signer, RYDE_USE_INTEGRITY_PACKET, receiverKeys));
+        closer.register(openEncryptor(signLayer, RYDE_USE_INTEGRITY_PACKET, receiverKeys));
+    if (pipelined) {
+      encryptLayer = closer.register(new RydePipe("RydeEncryptor", encryptLayer));
+    }
     OutputStream kompressor = closer.register(openCompressor(encryptLayer));
+    if (pipelined) {
+      kompressor = closer.register(new RydePipe("RydeCompressor", kompressor));
+    }
     OutputStream fileLayer =
         closer.register(openPgpFileWriter(kompressor, filenamePrefix + ".tar", modified));
     OutputStream tarLayer =
@@ -114,6 +129,7 @@ public final class RydeEncoder extends FilterOutputStream {
     DateTime modified;
     PGPKeyPair signingKey;
     ImmutableList<PGPPublicKey> receiverKeys;
+    boolean pipelined = true;
 
     /** Sets the OutputStream for the Ryde-encoded data, and the keys used for the encryption. */
     public Builder setRydeOutput(
@@ -139,6 +155,16 @@ public final class RydeEncoder extends FilterOutputStream {
       return this;
     }
 
+    /**
+     * Sets whether the compression, encryption and signing run on separate threads.
+     *
+     * <p>Defaults to true.
+     */
+    public Builder setPipelined(boolean pipelined) {
+      this.pipelined = pipelined;
+      return this;
+    }
+
     /** Returns the built {@link RydeEncoder}. */
     public RydeEncoder build() {
       return new RydeEncoder(
@@ -148,7 +174,8 @@ public final class RydeEncoder extends FilterOutputStream {
           checkNotNull(filenamePrefix, "Must call 'setFileMetadata'"),
           checkNotNull(modified, "Must call 'setFileMetadata'"),
           checkNotNull(signingKey, "Must call 'setSignatureOutput'"),
-          checkNotNull(receiverKeys, "Must call 'setRydeOutput'"));
+          checkNotNull(receiverKeys, "Must call 'setRydeOutput'"),
+          pipelined);
     }
   }
 }
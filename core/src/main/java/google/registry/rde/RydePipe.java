@@ -0,0 +1,208 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static com.google.appengine.api.ThreadManager.currentRequestThreadFactory;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.apphosting.api.ApiProxy;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import javax.annotation.WillNotClose;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * Stream that hands the data written to it over to another thread, which writes it to the wrapped
+ * {@link OutputStream}.
+ *
+ * <p>Putting a pipe between two layers of the RyDE or Ghostryde encoding lets the compression,
+ * encryption and signing of a deposit run concurrently. The data is passed along in chunks through
+ * a bounded queue, so a slow layer holds back the layers above it rather than piling up data in
+ * memory.
+ *
+ * <p>Writes, flushes and the close reach the wrapped stream in the same order as they would if the
+ * layers were chained directly, so the layer below sees the same bytes and produces the same
+ * output. Only the boundaries between the individual {@code write} calls change, which none of the
+ * PGP layers depend on.
+ *
+ * <p>An exception thrown by the wrapped stream is rethrown by the next {@link #write}, {@link
+ * #flush} or {@link #close} call. The pipe must always be closed, even after a failure, since that
+ * is what stops the thread.
+ */
+@NotThreadSafe
+final class RydePipe extends OutputStream {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final int CHUNK_SIZE = 64 * 1024;
+  private static final int MAX_QUEUED_CHUNKS = 16;
+
+  /** Marker telling the thread to flush the wrapped stream. */
+  private static final byte[] FLUSH = new byte[0];
+
+  /** Marker telling the thread that no more data will follow. */
+  private static final byte[] END = new byte[0];
+
+  private final String name;
+  private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(MAX_QUEUED_CHUNKS);
+  private final OutputStream os;
+  private Thread thread;
+
+  /** The first exception thrown by the wrapped stream, after which its chunks are discarded. */
+  private volatile Throwable failure;
+
+  private byte[] chunk = new byte[CHUNK_SIZE];
+  private int chunkLength;
+  private boolean isClosed;
+
+  /**
+   * Creates a pipe that writes to {@code os} on a new thread, which is started on the first write.
+   *
+   * @param name the name of the pipe, used in thread names and error messages
+   * @param os is the downstream {@link OutputStream} which is not closed by this object
+   */
+  RydePipe(String name, @WillNotClose OutputStream os) {
+    this.name = name;
+    this.os = checkNotNull(os, "os");
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    checkWritable();
+    chunk[chunkLength++] = (byte) b;
+    if (chunkLength == CHUNK_SIZE) {
+      handOffChunk();
+    }
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    checkWritable();
+    while (len > 0) {
+      int count = Math.min(len, CHUNK_SIZE - chunkLength);
+      System.arraycopy(b, off, chunk, chunkLength, count);
+      chunkLength += count;
+      off += count;
+      len -= count;
+      if (chunkLength == CHUNK_SIZE) {
+        handOffChunk();
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+    checkWritable();
+    handOffChunk();
+    put(FLUSH);
+  }
+
+  /** Hands off any remaining data, waits for it to be written, and stops the thread. */
+  @Override
+  public void close() throws IOException {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+    handOffChunk();
+    chunk = null;
+    if (thread != null) {
+      put(END);
+      Uninterruptibles.joinUninterruptibly(thread);
+    }
+    checkFailure();
+  }
+
+  private void handOffChunk() {
+    if (chunkLength == 0) {
+      return;
+    }
+    if (chunkLength == CHUNK_SIZE) {
+      put(chunk);
+      chunk = new byte[CHUNK_SIZE];
+    } else {
+      put(Arrays.copyOf(chunk, chunkLength));
+    }
+    chunkLength = 0;
+  }
+
+  private void put(byte[] item) {
+    if (thread == null) {
+      thread = getThreadFactory().newThread(this::drain);
+      checkState(thread != null, "Failed to create a thread for %s", name);
+      thread.start();
+    }
+    Uninterruptibles.putUninterruptibly(queue, item);
+  }
+
+  private void checkWritable() throws IOException {
+    checkState(!isClosed, "%s is closed", name);
+    checkFailure();
+  }
+
+  private void checkFailure() throws IOException {
+    if (failure != null) {
+      throw new IOException(String.format("Failed to write to %s", name), failure);
+    }
+  }
+
+  /** Writes the queued chunks to the wrapped stream until the end marker is reached. */
+  private void drain() {
+    while (true) {
+      byte[] next = Uninterruptibles.takeUninterruptibly(queue);
+      if (next == END) {
+        return;
+      }
+      // Keep taking chunks after a failure so that the writing thread never blocks on a full queue.
+      if (failure != null) {
+        continue;
+      }
+      try {
+        if (next == FLUSH) {
+          os.flush();
+        } else {
+          os.write(next);
+        }
+      } catch (Throwable t) {
+        logger.atWarning().withCause(t).log("Write to %s failed", name);
+        failure = t;
+      }
+    }
+  }
+
+  /**
+   * Returns an App Engine request thread factory if we're in a request, so that the thread is tied
+   * to the request like the rest of its work, and a factory for plain daemon threads otherwise
+   * (e.g. in Beam pipelines or the nomulus tool). The encoding layers don't call any App Engine
+   * APIs, so either works.
+   */
+  private ThreadFactory getThreadFactory() {
+    if (ApiProxy.getCurrentEnvironment() != null) {
+      ThreadFactory requestThreadFactory = currentRequestThreadFactory();
+      if (requestThreadFactory != null) {
+        return requestThreadFactory;
+      }
+    }
+    return new ThreadFactoryBuilder().setNameFormat(name + "-%d").setDaemon(true).build();
+  }
+}
@@ -15,6 +15,7 @@
 package google.registry.request;
 
 import com.google.common.net.MediaType;
+import java.io.Writer;
 import javax.servlet.http.HttpServletResponse;
 import org.joda.time.DateTime;
 
@@ -38,6 +39,16 @@ public interface Response {
    */
   void setPayload(String payload);
 
+  /**
+   * Returns a writer for an HTTP payload that is written in parts, so that the beginning of the
+   * payload can be flushed to the client before the rest of it is known.
+   *
+   * <p>This is an alternative to {@link #setPayload}; only one of the two may be used.
+   *
+   * @throws IllegalStateException if you've already written the payload
+   */
+  Writer getPayloadWriter();
+
   /**
    * Writes an HTTP header to the response.
    *
@@ -15,6 +15,7 @@
 package google.registry.tools;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static google.registry.model.EppResourceUtils.loadByForeignKey;
 import static google.registry.model.EppResourceUtils.loadByForeignKeyCached;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
@@ -28,6 +29,7 @@ import google.registry.batch.AsyncTaskEnqueuer;
 import google.registry.model.billing.BillingEvent;
 import google.registry.model.billing.BillingEvent.Reason;
 import google.registry.model.domain.DomainBase;
+import google.registry.model.index.ForeignKeyIndexFilter;
 import google.registry.model.registry.Registry;
 import google.registry.model.registry.RegistryLockDao;
 import google.registry.model.reporting.HistoryEntry;
@@ -304,9 +306,14 @@ public final class DomainLockUtils {
   }
 
   private static DomainBase getDomain(String domainName, DateTime now) {
-    return loadByForeignKeyCached(DomainBase.class, domainName, now)
-        .orElseThrow(
-            () -> new IllegalArgumentException(String.format("Unknown domain %s", domainName)));
+    Optional<DomainBase> domain = loadByForeignKeyCached(DomainBase.class, domainName, now);
+    if (!domain.isPresent() && ForeignKeyIndexFilter.isEnabledFor(DomainBase.class)) {
+      // The foreign key filter may not have picked up a domain created on another instance yet,
+      // so a miss is only a maybe, which is confirmed against Datastore.
+      domain = loadByForeignKey(DomainBase.class, domainName, now);
+    }
+    return domain.orElseThrow(
+        () -> new IllegalArgumentException(String.format("Unknown domain %s", domainName)));
   }
 
   private static RegistryLock getByVerificationCode(String verificationCode) {
@@ -30,7 +30,6 @@ import google.registry.model.domain.DesignatedContact;
 import google.registry.model.domain.DesignatedContact.Type;
 import google.registry.model.domain.DomainBase;
 import google.registry.model.domain.GracePeriod;
-import google.registry.model.eppcommon.StatusValue;
 import google.registry.model.registrar.Registrar;
 import google.registry.model.registrar.RegistrarContact;
 import google.registry.model.translators.EnumToAttributeAdapter.EppEnum;
@@ -80,49 +79,76 @@ final class DomainWhoisResponse extends WhoisResponseImpl {
         "Could not load registrar %s",
         domain.getCurrentSponsorClientId());
     Registrar registrar = registrarOptional.get();
+    ImmutableSet<EppEnum> statuses = getStatuses();
+    String domainText =
+        DomainWhoisResponseCache.get(
+            domain,
+            statuses,
+            registrar,
+            fullOutput,
+            preferUnicode,
+            () -> renderDomain(registrar, statuses, preferUnicode));
+    return WhoisResponseResults.create(
+        domainText
+            + new DomainEmitter()
+                .emitLastUpdated(getTimestamp())
+                .emitAwipMessage()
+                .emitFooter(disclaimer)
+                .toString(),
+        1);
+  }
+
+  /** Renders the part of the response that doesn't depend on the time of the query. */
+  private String renderDomain(
+      Registrar registrar, ImmutableSet<EppEnum> statuses, boolean preferUnicode) {
     Optional<RegistrarContact> abuseContact =
         registrar
             .getContacts()
             .stream()
             .filter(RegistrarContact::getVisibleInDomainWhoisAsAbuse)
             .findFirst();
-    return WhoisResponseResults.create(
-        new DomainEmitter()
-            .emitField("Domain Name", maybeFormatHostname(domain.getDomainName(), preferUnicode))
-            .emitField("Registry Domain ID", domain.getRepoId())
-            .emitField("Registrar WHOIS Server", registrar.getWhoisServer())
-            .emitField("Registrar URL", registrar.getUrl())
-            .emitFieldIfDefined("Updated Date", getFormattedString(domain.getLastEppUpdateTime()))
-            .emitField("Creation Date", getFormattedString(domain.getCreationTime()))
-            .emitField(
-                "Registry Expiry Date", getFormattedString(domain.getRegistrationExpirationTime()))
-            .emitField("Registrar", registrar.getRegistrarName())
-            .emitField("Registrar IANA ID", Objects.toString(registrar.getIanaIdentifier(), ""))
-            // Email address is a required field for registrar contacts. Therefore as long as there
-            // is an abuse contact, we can get an email address from it.
-            .emitField(
-                "Registrar Abuse Contact Email",
-                abuseContact.map(RegistrarContact::getEmailAddress).orElse(""))
-            .emitField(
-                "Registrar Abuse Contact Phone",
-                abuseContact.map(RegistrarContact::getPhoneNumber).orElse(""))
-            .emitStatusValues(domain.getStatusValues(), domain.getGracePeriods())
-            .emitContact("Registrant", Optional.of(domain.getRegistrant()), preferUnicode)
-            .emitContact("Admin", getContactReference(Type.ADMIN), preferUnicode)
-            .emitContact("Tech", getContactReference(Type.TECH), preferUnicode)
-            .emitContact("Billing", getContactReference(Type.BILLING), preferUnicode)
-            .emitSet(
-                "Name Server",
-                domain.loadNameserverHostNames(),
-                hostName -> maybeFormatHostname(hostName, preferUnicode))
-            .emitField(
-                "DNSSEC", isNullOrEmpty(domain.getDsData()) ? "unsigned" : "signedDelegation")
-            .emitWicfLink()
-            .emitLastUpdated(getTimestamp())
-            .emitAwipMessage()
-            .emitFooter(disclaimer)
-            .toString(),
-        1);
+    return new DomainEmitter()
+        .emitField("Domain Name", maybeFormatHostname(domain.getDomainName(), preferUnicode))
+        .emitField("Registry Domain ID", domain.getRepoId())
+        .emitField("Registrar WHOIS Server", registrar.getWhoisServer())
+        .emitField("Registrar URL", registrar.getUrl())
+        .emitFieldIfDefined("Updated Date", getFormattedString(domain.getLastEppUpdateTime()))
+        .emitField("Creation Date", getFormattedString(domain.getCreationTime()))
+        .emitField(
+            "Registry Expiry Date", getFormattedString(domain.getRegistrationExpirationTime()))
+        .emitField("Registrar", registrar.getRegistrarName())
+        .emitField("Registrar IANA ID", Objects.toString(registrar.getIanaIdentifier(), ""))
+        // Email address is a required field for registrar contacts. Therefore as long as there
+        // is an abuse contact, we can get an email address from it.
+        .emitField(
+            "Registrar Abuse Contact Email",
+            abuseContact.map(RegistrarContact::getEmailAddress).orElse(""))
+        .emitField(
+            "Registrar Abuse Contact Phone",
+            abuseContact.map(RegistrarContact::getPhoneNumber).orElse(""))
+        .emitStatusValues(statuses)
+        .emitContact("Registrant", Optional.of(domain.getRegistrant()), preferUnicode)
+        .emitContact("Admin", getContactReference(Type.ADMIN), preferUnicode)
+        .emitContact("Tech", getContactReference(Type.TECH), preferUnicode)
+        .emitContact("Billing", getContactReference(Type.BILLING), preferUnicode)
+        .emitSet(
+            "Name Server",
+            domain.loadNameserverHostNames(),
+            hostName -> maybeFormatHostname(hostName, preferUnicode))
+        .emitField(
+            "DNSSEC", isNullOrEmpty(domain.getDsData()) ? "unsigned" : "signedDelegation")
+        .emitWicfLink()
+        .toString();
+  }
+
+  /** Returns the status values and grace periods of the domain, as they're shown in the AWIP. */
+  private ImmutableSet<EppEnum> getStatuses() {
+    ImmutableSet.Builder<EppEnum> combinedStatuses = new ImmutableSet.Builder<>();
+    combinedStatuses.addAll(domain.getStatusValues());
+    for (GracePeriod gracePeriod : domain.getGracePeriods()) {
+      combinedStatuses.add(gracePeriod.getType());
+    }
+    return combinedStatuses.build();
   }
 
   /** Returns the contact of the given type. */
@@ -186,16 +212,10 @@ final class DomainWhoisResponse extends WhoisResponseImpl {
     }
 
     /** Emits status values and grace periods as a set, in the AWIP format. */
-    DomainEmitter emitStatusValues(
-        Set<StatusValue> statusValues, Set<GracePeriod> gracePeriods) {
-      ImmutableSet.Builder<EppEnum> combinedStatuses = new ImmutableSet.Builder<>();
-      combinedStatuses.addAll(statusValues);
-      for (GracePeriod gracePeriod : gracePeriods) {
-        combinedStatuses.add(gracePeriod.getType());
-      }
+    DomainEmitter emitStatusValues(Set<EppEnum> statuses) {
       return emitSet(
           "Domain Status",
-          combinedStatuses.build(),
+          statuses,
           status -> {
             String xmlName = status.getXmlName();
             return String.format("%s %s%s", xmlName, ICANN_STATUS_URL_PREFIX, xmlName);
@@ -0,0 +1,127 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.whois;
+
+import static google.registry.config.RegistryConfig.getWhoisResponseCacheMaxBytes;
+import static google.registry.config.RegistryConfig.getWhoisResponseCachingDuration;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import google.registry.config.RegistryConfig;
+import google.registry.model.domain.DomainBase;
+import google.registry.model.registrar.Registrar;
+import google.registry.model.translators.EnumToAttributeAdapter.EppEnum;
+import google.registry.util.NonFinalForTesting;
+import java.util.Optional;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * A limited size, limited time cache of the rendered text of WHOIS domain responses.
+ *
+ * <p>Popular domains are queried over and over again, and rendering a response means loading all
+ * of the domain's contacts and nameservers. The cache keeps the part of the response that only
+ * depends on the domain and its registrar, keyed by their last update times, so a response is
+ * re-rendered as soon as either of them is changed. The domain is projected to the time of the
+ * query before it's rendered, so the key also includes the fields that a projection can change.
+ *
+ * <p>Changes to the contacts and nameservers don't update the domain, so they are only picked up
+ * once the cached response expires. This is the same trade-off as with {@link
+ * google.registry.model.EppResource#loadCached}, which is used to load them in the first place.
+ */
+final class DomainWhoisResponseCache {
+
+  private static final WhoisMetrics whoisMetrics = new WhoisMetrics();
+
+  @NonFinalForTesting
+  private static Cache<Key, String> cache = createCache(getWhoisResponseCachingDuration());
+
+  private static Cache<Key, String> createCache(Duration expiry) {
+    return CacheBuilder.newBuilder()
+        .expireAfterWrite(expiry.getMillis(), MILLISECONDS)
+        .maximumWeight(getWhoisResponseCacheMaxBytes())
+        // Strings take two bytes per character.
+        .<Key, String>weigher((key, text) -> 2 * (key.domainName().length() + text.length()))
+        .build();
+  }
+
+  @VisibleForTesting
+  static void setCacheForTest(Optional<Duration> expiry) {
+    cache = createCache(expiry.orElse(getWhoisResponseCachingDuration()));
+  }
+
+  private DomainWhoisResponseCache() {}
+
+  /**
+   * Returns the cached text of the response to a query on {@code domain}, rendering and caching it
+   * with {@code renderer} if it isn't cached yet.
+   */
+  static String get(
+      DomainBase domain,
+      ImmutableSet<EppEnum> statuses,
+      Registrar registrar,
+      boolean fullOutput,
+      boolean preferUnicode,
+      Supplier<String> renderer) {
+    if (!RegistryConfig.isWhoisResponseCachingEnabled()) {
+      return renderer.get();
+    }
+    Key key =
+        new AutoValue_DomainWhoisResponseCache_Key(
+            domain.getDomainName(),
+            domain.getUpdateAutoTimestamp().getTimestamp(),
+            domain.getRegistrationExpirationTime(),
+            statuses,
+            registrar.getClientId(),
+            registrar.getLastUpdateTime(),
+            fullOutput,
+            preferUnicode);
+    String text = cache.getIfPresent(key);
+    whoisMetrics.recordResponseCacheLookup(text != null);
+    if (text == null) {
+      text = renderer.get();
+      cache.put(key, text);
+    }
+    return text;
+  }
+
+  /** The fields of a domain and its registrar that the cached text depends on. */
+  @AutoValue
+  abstract static class Key {
+    abstract String domainName();
+
+    @Nullable
+    abstract DateTime domainUpdateTime();
+
+    abstract DateTime registrationExpirationTime();
+
+    abstract ImmutableSet<EppEnum> statuses();
+
+    abstract String registrarClientId();
+
+    @Nullable
+    abstract DateTime registrarUpdateTime();
+
+    abstract boolean fullOutput();
+
+    abstract boolean preferUnicode();
+  }
+}
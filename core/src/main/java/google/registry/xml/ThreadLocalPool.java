@@ -0,0 +1,68 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.xml;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import javax.xml.bind.JAXBException;
+
+/**
+ * A per-thread pool of objects that are expensive to create and not thread-safe, such as JAXB
+ * marshallers and schema validators.
+ *
+ * <p>Each thread keeps at most one idle instance. An instance is taken out of the pool while it is
+ * in use, so a reentrant call on the same thread gets a new instance instead of one that is already
+ * busy. Callers should only {@link #release} instances that were used successfully, so that an
+ * object left in an inconsistent state by an exception is never reused.
+ */
+final class ThreadLocalPool<T> {
+
+  /** A factory for new pooled objects. */
+  @FunctionalInterface
+  interface Factory<T> {
+    T create() throws JAXBException;
+  }
+
+  private final String type;
+  private final Factory<T> factory;
+  private final ThreadLocal<T> idleInstance = new ThreadLocal<>();
+
+  /**
+   * Creates a new pool.
+   *
+   * @param type the name of the pooled type, used as the metric label
+   * @param factory the factory to create new instances with
+   */
+  ThreadLocalPool(String type, Factory<T> factory) {
+    this.type = checkNotNull(type, "type");
+    this.factory = checkNotNull(factory, "factory");
+  }
+
+  /** Returns this thread's idle instance if it has one, and a newly created one otherwise. */
+  T borrow() throws JAXBException {
+    T instance = idleInstance.get();
+    XmlTransformerMetrics.recordPoolRequest(type, instance != null);
+    if (instance == null) {
+      return factory.create();
+    }
+    idleInstance.set(null);
+    return instance;
+  }
+
+  /** Returns an instance to this thread's pool, to be reused by the next {@link #borrow}. */
+  void release(T instance) {
+    idleInstance.set(checkNotNull(instance, "instance"));
+  }
+}
@@ -18,8 +18,10 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Strings.nullToEmpty;
 import static google.registry.xml.ValidationMode.STRICT;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.Closer;
@@ -47,6 +49,7 @@ import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Result;
+import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
@@ -54,6 +57,7 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
@@ -75,6 +79,25 @@ public class XmlTransformer {
   /** A {@link Schema} to validate XML. */
   private final Schema schema;
 
+  /**
+   * Marshaller properties that vary between calls, with their default values.
+   *
+   * <p>Marshallers are pooled, so these are reset before each use in case a previous caller changed
+   * them.
+   */
+  private static final ImmutableMap<String, Object> DEFAULT_MARSHALLER_PROPERTIES =
+      ImmutableMap.of(Marshaller.JAXB_ENCODING, UTF_8.toString(), Marshaller.JAXB_FRAGMENT, false);
+
+  /** Per-thread pools of the objects created from {@link #jaxbContext} and {@link #schema}. */
+  private final ThreadLocalPool<Unmarshaller> unmarshallers =
+      new ThreadLocalPool<>("unmarshaller", this::createUnmarshaller);
+
+  private final ThreadLocalPool<Marshaller> marshallers =
+      new ThreadLocalPool<>("marshaller", this::createMarshaller);
+
+  private final ThreadLocalPool<Validator> validators =
+      new ThreadLocalPool<>("validator", this::createValidator);
+
   /**
    * Create a new XmlTransformer that validates using the given schemas, but uses the given classes
    * (rather than generated ones) for marshaling and unmarshaling.
@@ -125,10 +148,17 @@ public class XmlTransformer {
    * @throws XmlException if XML input was invalid or root element doesn't match {@code expect}.
    */
   public void validate(String xml) throws XmlException {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    boolean valid = false;
     try {
-      schema.newValidator().validate(new StreamSource(new StringReader(xml)));
-    } catch (SAXException | IOException e) {
+      Validator validator = validators.borrow();
+      validator.validate(new StreamSource(new StringReader(xml)));
+      validators.release(validator);
+      valid = true;
+    } catch (SAXException | IOException | JAXBException e) {
       throw new XmlException(e);
+    } finally {
+      XmlTransformerMetrics.recordValidationTime(valid, stopwatch.elapsed(MICROSECONDS) / 1000.0);
     }
   }
 
@@ -144,8 +174,14 @@ public class XmlTransformer {
    */
   public <T> T unmarshal(Class<T> clazz, InputStream stream) throws XmlException {
     try (InputStream autoClosingStream = stream) {
-      return clazz.cast(getUnmarshaller().unmarshal(
-          XML_INPUT_FACTORY.createXMLStreamReader(new StreamSource(autoClosingStream, SYSTEM_ID))));
+      Unmarshaller unmarshaller = unmarshallers.borrow();
+      T result =
+          clazz.cast(
+              unmarshaller.unmarshal(
+                  XML_INPUT_FACTORY.createXMLStreamReader(
+                      new StreamSource(autoClosingStream, SYSTEM_ID))));
+      unmarshallers.release(unmarshaller);
+      return result;
     } catch (UnmarshalException e) {
       // Plain old parsing exceptions have a SAXParseException with no further cause.
       if (e.getLinkedException() instanceof SAXParseException
@@ -190,10 +226,12 @@ public class XmlTransformer {
   public void marshal(Object root, Writer writer, ValidationMode validation) throws XmlException {
     try {
       // Omit XML declaration because character-oriented output prevents us from knowing.
-      getMarshaller(
-          STRICT.equals(validation) ? schema : null,
-          ImmutableMap.of(Marshaller.JAXB_FRAGMENT, true)).marshal(
-              checkNotNull(root, "root"), checkNotNull(writer, "writer"));
+      Marshaller marshaller =
+          getMarshaller(
+              STRICT.equals(validation) ? schema : null,
+              ImmutableMap.of(Marshaller.JAXB_FRAGMENT, true));
+      marshaller.marshal(checkNotNull(root, "root"), checkNotNull(writer, "writer"));
+      marshallers.release(marshaller);
     } catch (JAXBException e) {
       throw new XmlException(e);
     }
@@ -217,10 +255,12 @@ public class XmlTransformer {
   public void marshal(Object root, OutputStream out, Charset charset, ValidationMode validation)
       throws XmlException {
     try {
-      getMarshaller(
-          STRICT.equals(validation) ? schema : null,
-          ImmutableMap.of(Marshaller.JAXB_ENCODING, charset.toString())).marshal(
-              checkNotNull(root, "root"), checkNotNull(out, "out"));
+      Marshaller marshaller =
+          getMarshaller(
+              STRICT.equals(validation) ? schema : null,
+              ImmutableMap.of(Marshaller.JAXB_ENCODING, charset.toString()));
+      marshaller.marshal(checkNotNull(root, "root"), checkNotNull(out, "out"));
+      marshallers.release(marshaller);
     } catch (JAXBException e) {
       throw new XmlException(e);
     }
@@ -240,8 +280,9 @@ public class XmlTransformer {
    */
   public void marshalStrict(Object root, Result result) throws XmlException {
     try {
-      getMarshaller(schema, ImmutableMap.of())
-          .marshal(checkNotNull(root, "root"), checkNotNull(result, "result"));
+      Marshaller marshaller = getMarshaller(schema, ImmutableMap.of());
+      marshaller.marshal(checkNotNull(root, "root"), checkNotNull(result, "result"));
+      marshallers.release(marshaller);
     } catch (JAXBException e) {
       throw new XmlException(e);
     }
@@ -274,8 +315,8 @@ public class XmlTransformer {
     return JAXBContext.newInstance(prefix + Joiner.on(':' + prefix).join(schemaNames));
   }
 
-  /** Get a {@link Unmarshaller} instance with the default configuration. */
-  private Unmarshaller getUnmarshaller() throws JAXBException {
+  /** Creates a {@link Unmarshaller} instance with the default configuration. */
+  private Unmarshaller createUnmarshaller() throws JAXBException {
     Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
     unmarshaller.setSchema(schema);
     // This handler was the default in JAXB 1.0. It fails on any exception thrown while
@@ -285,40 +326,69 @@ public class XmlTransformer {
     return unmarshaller;
   }
 
-  /** Get a {@link Marshaller} instance with the given configuration. */
+  /** Creates a {@link Validator} for {@link #schema}. */
+  private Validator createValidator() {
+    return schema.newValidator();
+  }
+
+  /** Creates a {@link Marshaller} instance with the settings shared by all callers. */
+  private Marshaller createMarshaller() throws JAXBException {
+    Marshaller marshaller = jaxbContext.createMarshaller();
+    marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+    return marshaller;
+  }
+
+  /**
+   * Gets a pooled {@link Marshaller} instance with the given configuration.
+   *
+   * <p>The caller should {@link ThreadLocalPool#release} the marshaller once it has been used
+   * successfully.
+   */
   private Marshaller getMarshaller(@Nullable Schema schemaParam, Map<String, ?> properties)
       throws JAXBException {
-    Marshaller marshaller = jaxbContext.createMarshaller();
+    Marshaller marshaller = marshallers.borrow();
+    for (Map.Entry<String, ?> entry : DEFAULT_MARSHALLER_PROPERTIES.entrySet()) {
+      marshaller.setProperty(entry.getKey(), entry.getValue());
+    }
     for (Map.Entry<String, ?> entry : properties.entrySet()) {
       marshaller.setProperty(entry.getKey(), entry.getValue());
     }
-    marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
     marshaller.setSchema(schemaParam);
     return marshaller;
   }
 
   /** Pretty print XML. */
   public static String prettyPrint(String xmlString) {
-    StringWriter prettyXml = new StringWriter();
     try {
-      Transformer transformer = transformerFactory.newTransformer();
-      transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-      transformer.setOutputProperty(OutputKeys.STANDALONE, "yes");
-      transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-      transformer.transform(
-          new StreamSource(new StringReader(xmlString)),
-          new StreamResult(prettyXml));
-
-      // Remove whitespace-only/blank lines (which the XMLTransformer in Java 9 and up sometimes
-      // adds depending on input format). Surprisingly, this is the least bad solution. See:
-      // https://stackoverflow.com/questions/58478632/how-to-avoid-extra-blank-lines-in-xml-generation-with-java
-      // Note that a simple regex replace is waaaaay more performant than using an XSLT.
-      return prettyXml.toString().replaceAll("\\n\\s*\\n", "\n");
+      return prettyPrint(new StreamSource(new StringReader(xmlString)));
     } catch (TransformerException e) {
       return xmlString;  // We couldn't prettify it, but that's ok; fail gracefully.
     }
   }
 
+  /**
+   * Pretty print XML read from the given {@link Source}.
+   *
+   * <p>This allows the XML to be pretty-printed in the same pass that reads it, for example from a
+   * {@link javax.xml.transform.sax.SAXSource} whose XML filter transforms the XML on the fly.
+   *
+   * @throws TransformerException if the XML could not be read or formatted
+   */
+  public static String prettyPrint(Source source) throws TransformerException {
+    StringWriter prettyXml = new StringWriter();
+    Transformer transformer = transformerFactory.newTransformer();
+    transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+    transformer.setOutputProperty(OutputKeys.STANDALONE, "yes");
+    transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+    transformer.transform(source, new StreamResult(prettyXml));
+
+    // Remove whitespace-only/blank lines (which the XMLTransformer in Java 9 and up sometimes
+    // adds depending on input format). Surprisingly, this is the least bad solution. See:
+    // https://stackoverflow.com/questions/58478632/how-to-avoid-extra-blank-lines-in-xml-generation-with-java
+    // Note that a simple regex replace is waaaaay more performant than using an XSLT.
+    return prettyXml.toString().replaceAll("\\n\\s*\\n", "\n");
+  }
+
   /** Pretty print XML bytes. */
   public static String prettyPrint(byte[] xmlBytes) {
     return prettyPrint(new String(xmlBytes, UTF_8));
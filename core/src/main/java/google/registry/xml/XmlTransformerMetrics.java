@@ -0,0 +1,68 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.xml;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.monitoring.metrics.DistributionFitter;
+import com.google.monitoring.metrics.EventMetric;
+import com.google.monitoring.metrics.ExponentialFitter;
+import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.MetricRegistryImpl;
+
+/** Instrumentation for {@link XmlTransformer}. */
+class XmlTransformerMetrics {
+
+  private static final ImmutableSet<LabelDescriptor> POOL_LABEL_DESCRIPTORS =
+      ImmutableSet.of(
+          LabelDescriptor.create("type", "The type of the pooled object."),
+          LabelDescriptor.create(
+              "hit", "Whether an idle object was reused instead of creating a new one."));
+
+  private static final ImmutableSet<LabelDescriptor> VALIDATION_LABEL_DESCRIPTORS =
+      ImmutableSet.of(LabelDescriptor.create("valid", "Whether the XML was valid."));
+
+  // Buckets from 10 microseconds up to about 10 seconds, so that both cached-schema validation of
+  // small EPP commands and validation of large RDE deposits land in distinct buckets.
+  private static final DistributionFitter VALIDATION_TIME_FITTER =
+      ExponentialFitter.create(20, 2.0, 0.01);
+
+  private static final IncrementableMetric poolRequests =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/xml/pool_requests",
+              "Count of requests for pooled JAXB marshallers, unmarshallers and schema validators",
+              "count",
+              POOL_LABEL_DESCRIPTORS);
+
+  private static final EventMetric validationTime =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/xml/validation_time",
+              "Time spent validating XML against schemas",
+              "milliseconds",
+              VALIDATION_LABEL_DESCRIPTORS,
+              VALIDATION_TIME_FITTER);
+
+  private XmlTransformerMetrics() {}
+
+  static void recordPoolRequest(String type, boolean hit) {
+    poolRequests.increment(type, String.valueOf(hit));
+  }
+
+  static void recordValidationTime(boolean valid, double milliseconds) {
+    validationTime.record(milliseconds, String.valueOf(valid));
+  }
+}
@@ -47,7 +47,7 @@ import org.joda.time.format.DateTimeFormatter;
  * every transaction is invoked on this store, ensuring strictly increasing timestamps on causally
  * dependent transactions. In production, the same ordering is ensured by sleep and retry.
  */
-class BackupTestStore implements AutoCloseable {
+public class BackupTestStore implements AutoCloseable {
 
   private static final DateTimeFormatter EXPORT_TIMESTAMP_FORMAT =
       DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss_SSS");
@@ -59,7 +59,7 @@ class BackupTestStore implements AutoCloseable {
 
   private CommitLogCheckpoint prevCommitLogCheckpoint;
 
-  BackupTestStore(FakeClock fakeClock) throws Exception {
+  public BackupTestStore(FakeClock fakeClock) throws Exception {
     this.fakeClock = fakeClock;
     this.appEngine =
         new AppEngineRule.Builder()
@@ -88,7 +88,7 @@ class BackupTestStore implements AutoCloseable {
    * transaction.
    */
   @SafeVarargs
-  final long insertOrUpdate(Object... entities) {
+  public final long insertOrUpdate(Object... entities) {
     long timestamp = fakeClock.nowUtc().getMillis();
     tm().transact(() -> ofy().save().entities(entities).now());
     fakeClock.advanceOneMilli();
@@ -141,7 +141,7 @@ class BackupTestStore implements AutoCloseable {
    *     to simulate an inconsistent export
    * @return directory where data is exported
    */
-  File export(
+  public File export(
       String exportRootPath, Iterable<Class<?>> pojoTypes, Set<Key<? extends Object>> excludes)
       throws IOException {
     File exportDirectory = getExportDirectory(exportRootPath);
@@ -175,7 +175,7 @@ class BackupTestStore implements AutoCloseable {
     builder.build();
   }
 
-  File saveCommitLogs(String commitLogDir) {
+  public File saveCommitLogs(String commitLogDir) {
     CommitLogCheckpoint checkpoint = CommitLogExports.computeCheckpoint(fakeClock);
     File commitLogFile =
         CommitLogExports.saveCommitLogs(commitLogDir, prevCommitLogCheckpoint, checkpoint);
@@ -0,0 +1,302 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.beam.rde;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.common.Cursor.CursorType.BRDA;
+import static google.registry.model.common.Cursor.CursorType.RDE_STAGING;
+import static google.registry.testing.DatastoreHelper.newContactResource;
+import static google.registry.testing.DatastoreHelper.newDomainBase;
+import static google.registry.testing.DatastoreHelper.newHostResource;
+import static google.registry.testing.DatastoreHelper.newRegistry;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import google.registry.beam.initsql.BackupTestStore;
+import google.registry.keyring.api.Keyring;
+import google.registry.keyring.api.PgpHelper;
+import google.registry.model.contact.ContactResource;
+import google.registry.model.domain.DomainBase;
+import google.registry.model.host.HostResource;
+import google.registry.model.ofy.Ofy;
+import google.registry.model.rde.RdeMode;
+import google.registry.model.registrar.Registrar;
+import google.registry.rde.Ghostryde;
+import google.registry.rde.PendingDeposit;
+import google.registry.rde.RdeResourceType;
+import google.registry.testing.AppEngineRule;
+import google.registry.testing.FakeClock;
+import google.registry.testing.FakeKeyringModule;
+import google.registry.testing.InjectRule;
+import google.registry.tldconfig.idn.IdnTableEnum;
+import google.registry.xjc.XjcXmlTransformer;
+import google.registry.xjc.rde.XjcRdeContentType;
+import google.registry.xjc.rde.XjcRdeDeposit;
+import google.registry.xjc.rdeheader.XjcRdeHeader;
+import google.registry.xjc.rdeheader.XjcRdeHeaderCount;
+import google.registry.xml.ValidationMode;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import javax.xml.bind.JAXBElement;
+import org.apache.beam.sdk.testing.PAssert;
+import org.apache.beam.sdk.testing.TestPipeline;
+import org.apache.beam.sdk.values.PCollection;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link RdeStagingPipeline}. */
+@RunWith(JUnit4.class)
+public class RdeStagingPipelineTest {
+
+  private static final DateTime START_TIME = DateTime.parse("2000-01-01T00:00:00.0Z");
+  private static final DateTime WATERMARK = DateTime.parse("2000-01-02T00:00:00.0Z");
+
+  private static final ImmutableList<Class<?>> KINDS =
+      ImmutableList.of(
+          Registrar.class, ContactResource.class, HostResource.class, DomainBase.class);
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Rule public final InjectRule injectRule = new InjectRule();
+
+  @Rule
+  public final TestPipeline pipeline =
+      TestPipeline.create().enableAbandonedNodeEnforcement(true);
+
+  private final PendingDeposit fullDeposit =
+      PendingDeposit.create("tld1", WATERMARK, RdeMode.FULL, RDE_STAGING, Duration.standardDays(1))
+          .withRevision(0);
+  private final PendingDeposit thinDeposit =
+      PendingDeposit.create("tld1", WATERMARK, RdeMode.THIN, BRDA, Duration.standardDays(1))
+          .withRevision(0);
+
+  private BackupTestStore store;
+  private PGPPrivateKey decryptKey;
+  private byte[] encryptKeyBytes;
+  private DateTime exportTime;
+  private File exportDir;
+  private File commitLogDir;
+  private String outputDir;
+
+  @Before
+  public void beforeEach() throws Exception {
+    FakeClock fakeClock = new FakeClock(START_TIME);
+    store = new BackupTestStore(fakeClock);
+    injectRule.setStaticField(Ofy.class, "clock", fakeClock);
+    try (Keyring keyring = new FakeKeyringModule().get()) {
+      encryptKeyBytes = PgpHelper.convertPublicKeyToBytes(keyring.getRdeStagingEncryptionKey());
+      decryptKey = keyring.getRdeStagingDecryptionKey();
+    }
+
+    store.insertOrUpdate(newRegistry("tld1", "TLD1"));
+    ContactResource contact = newContactResource("contact_1");
+    HostResource externalHost = newHostResource("ns1.external.example");
+    DomainBase domain =
+        newDomainBase("domain1.tld1", contact)
+            .asBuilder()
+            .setNameservers(ImmutableSet.of(externalHost.createVKey()))
+            .build();
+    store.insertOrUpdate(AppEngineRule.makeRegistrar1(), contact, externalHost, domain);
+    exportTime = fakeClock.nowUtc();
+    exportDir =
+        store.export(temporaryFolder.getRoot().getAbsolutePath(), KINDS, ImmutableSet.of());
+
+    // Changes after the export but before the watermark are included in the deposit.
+    fakeClock.setTo(DateTime.parse("2000-01-01T12:00:00.0Z"));
+    store.insertOrUpdate(
+        newContactResource("contact_2"),
+        newHostResource("ns1.domain1.tld1")
+            .asBuilder()
+            .setSuperordinateDomain(domain.createVKey())
+            .build());
+
+    // Changes after the watermark are not.
+    fakeClock.setTo(DateTime.parse("2000-01-02T12:00:00.0Z"));
+    store.insertOrUpdate(newContactResource("contact_3"));
+
+    commitLogDir = temporaryFolder.newFolder();
+    store.saveCommitLogs(commitLogDir.getAbsolutePath());
+    outputDir = temporaryFolder.newFolder().getAbsolutePath() + "/";
+  }
+
+  @After
+  public void afterEach() throws Exception {
+    if (store != null) {
+      store.close();
+      store = null;
+    }
+  }
+
+  private RdeStagingPipeline createPipeline(ImmutableList<PendingDeposit> deposits) {
+    return new RdeStagingPipeline(
+        exportDir.getAbsolutePath(),
+        commitLogDir.getAbsolutePath(),
+        exportTime,
+        deposits,
+        ValidationMode.LENIENT,
+        encryptKeyBytes,
+        outputDir,
+        4);
+  }
+
+  @Test
+  public void testStaging() throws Exception {
+    PCollection<String> files =
+        createPipeline(ImmutableList.of(fullDeposit, thinDeposit)).setupPipeline(pipeline);
+    PAssert.that(files)
+        .containsInAnyOrder(
+            outputDir + "tld1_2000-01-02_full_S1_R0.xml.ghostryde",
+            outputDir + "tld1_2000-01-02_thin_S1_R0.xml.ghostryde");
+    pipeline.run();
+
+    String fullXml = readDeposit("tld1_2000-01-02_full_S1_R0");
+    assertThat(fullXml).contains("contact_1");
+    assertThat(fullXml).contains("contact_2");
+    assertThat(fullXml).doesNotContain("contact_3");
+    assertThat(fullXml).contains("domain1.tld1");
+    assertThat(fullXml).contains("ns1.external.example");
+    assertThat(fullXml).contains("ns1.domain1.tld1");
+    assertThat(fullXml).contains("NewRegistrar");
+    assertThat(getCounts(fullXml))
+        .containsExactly(
+            RdeResourceType.CONTACT.getUri(), 2L,
+            RdeResourceType.DOMAIN.getUri(), 1L,
+            RdeResourceType.HOST.getUri(), 2L,
+            RdeResourceType.REGISTRAR.getUri(), 1L,
+            RdeResourceType.IDN.getUri(), (long) IdnTableEnum.values().length);
+    assertThat(new File(outputDir, "tld1_2000-01-02_full_S1_R0-report.xml.ghostryde").exists())
+        .isTrue();
+
+    String thinXml = readDeposit("tld1_2000-01-02_thin_S1_R0");
+    assertThat(thinXml).contains("domain1.tld1");
+    assertThat(thinXml).doesNotContain("contact_1");
+    assertThat(getCounts(thinXml))
+        .containsExactly(
+            RdeResourceType.DOMAIN.getUri(), 1L,
+            RdeResourceType.REGISTRAR.getUri(), 1L,
+            RdeResourceType.IDN.getUri(), (long) IdnTableEnum.values().length);
+    assertThat(new File(outputDir, "tld1_2000-01-02_thin_S1_R0-report.xml.ghostryde").exists())
+        .isFalse();
+
+    // Only the deposits, their lengths and the report are left behind.
+    assertThat(new File(outputDir).list())
+        .asList()
+        .containsExactly(
+            "tld1_2000-01-02_full_S1_R0.xml.ghostryde",
+            "tld1_2000-01-02_full_S1_R0.xml.length",
+            "tld1_2000-01-02_full_S1_R0-report.xml.ghostryde",
+            "tld1_2000-01-02_thin_S1_R0.xml.ghostryde",
+            "tld1_2000-01-02_thin_S1_R0.xml.length");
+  }
+
+  @Test
+  public void testFailure_differentWatermarks() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                createPipeline(
+                    ImmutableList.of(
+                        fullDeposit,
+                        PendingDeposit.create(
+                                "tld1",
+                                WATERMARK.plusDays(1),
+                                RdeMode.THIN,
+                                BRDA,
+                                Duration.standardDays(1))
+                            .withRevision(0))));
+    assertThat(thrown).hasMessageThat().contains("different watermarks");
+  }
+
+  @Test
+  public void testFailure_revisionNotSet() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                createPipeline(
+                    ImmutableList.of(
+                        PendingDeposit.create(
+                            "tld1",
+                            WATERMARK,
+                            RdeMode.FULL,
+                            RDE_STAGING,
+                            Duration.standardDays(1)))));
+    assertThat(thrown).hasMessageThat().contains("Revision");
+  }
+
+  @Test
+  public void testFailure_differentialDeposit() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                createPipeline(
+                    ImmutableList.of(
+                        PendingDeposit.createDifferential(
+                                "tld1", WATERMARK, RDE_STAGING, Duration.standardDays(1))
+                            .withRevision(0))));
+    assertThat(thrown).hasMessageThat().contains("Differential deposits");
+  }
+
+  @Test
+  public void testFailure_exportAfterWatermark() {
+    exportTime = WATERMARK.plusMillis(1);
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> createPipeline(ImmutableList.of(fullDeposit)));
+    assertThat(thrown).hasMessageThat().contains("after the watermark");
+  }
+
+  /** Decrypts a deposit, checking that its length file matches. */
+  private String readDeposit(String prefix) throws Exception {
+    byte[] xml =
+        Ghostryde.decode(
+            Files.readAllBytes(new File(outputDir, prefix + ".xml.ghostryde").toPath()),
+            decryptKey);
+    byte[] length = Files.readAllBytes(new File(outputDir, prefix + ".xml.length").toPath());
+    assertThat(new String(length, UTF_8)).isEqualTo(Integer.toString(xml.length));
+    return new String(xml, UTF_8);
+  }
+
+  private static ImmutableMap<String, Long> getCounts(String xml) throws Exception {
+    XjcRdeDeposit deposit =
+        XjcXmlTransformer.unmarshal(
+            XjcRdeDeposit.class, new ByteArrayInputStream(xml.getBytes(UTF_8)));
+    for (JAXBElement<? extends XjcRdeContentType> content : deposit.getContents().getContents()) {
+      if (content.getValue() instanceof XjcRdeHeader) {
+        ImmutableMap.Builder<String, Long> builder = new ImmutableMap.Builder<>();
+        for (XjcRdeHeaderCount count : ((XjcRdeHeader) content.getValue()).getCounts()) {
+          builder.put(count.getUri(), count.getValue());
+        }
+        return builder.build();
+      }
+    }
+    throw new AssertionError("Deposit has no header");
+  }
+}
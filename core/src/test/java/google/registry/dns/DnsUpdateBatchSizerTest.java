@@ -0,0 +1,70 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.joda.time.Duration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link DnsUpdateBatchSizer}. */
+@RunWith(JUnit4.class)
+public class DnsUpdateBatchSizerTest {
+
+  private final DnsUpdateBatchSizer batchSizer =
+      new DnsUpdateBatchSizer(Duration.standardSeconds(10));
+
+  @Test
+  public void testGetBatchSize_noPublishes_usesMaximum() {
+    assertThat(batchSizer.getBatchSize("tld", 100)).isEqualTo(100);
+  }
+
+  @Test
+  public void testGetBatchSize_slowPublishes_shrinksBatch() {
+    batchSizer.recordPublish("tld", Duration.standardSeconds(20), 50);
+    assertThat(batchSizer.getBatchSize("tld", 100)).isEqualTo(25);
+    assertThat(batchSizer.getBatchSize("other", 100)).isEqualTo(100);
+  }
+
+  @Test
+  public void testGetBatchSize_fastPublishes_cappedAtMaximum() {
+    batchSizer.recordPublish("tld", Duration.millis(10), 50);
+    assertThat(batchSizer.getBatchSize("tld", 100)).isEqualTo(100);
+    batchSizer.recordPublish("tld", Duration.ZERO, 50);
+    assertThat(batchSizer.getBatchSize("tld", 100)).isEqualTo(100);
+  }
+
+  @Test
+  public void testGetBatchSize_verySlowPublishes_atLeastOne() {
+    batchSizer.recordPublish("tld", Duration.standardMinutes(5), 1);
+    assertThat(batchSizer.getBatchSize("tld", 100)).isEqualTo(1);
+  }
+
+  @Test
+  public void testRecordPublish_movingAverage() {
+    // 400 ms per item, then 200 ms per item: the average moves a fifth of the way to the latter.
+    batchSizer.recordPublish("tld", Duration.standardSeconds(40), 100);
+    batchSizer.recordPublish("tld", Duration.standardSeconds(20), 100);
+    assertThat(batchSizer.getBatchSize("tld", 100)).isEqualTo(27);
+  }
+
+  @Test
+  public void testRecordPublish_emptyBatch_ignored() {
+    batchSizer.recordPublish("tld", Duration.standardSeconds(20), 0);
+    assertThat(batchSizer.getBatchSize("tld", 100)).isEqualTo(100);
+  }
+}
@@ -65,6 +65,7 @@ public class PublishDnsUpdatesActionTest {
   private final DnsWriter dnsWriter = mock(DnsWriter.class);
   private final DnsMetrics dnsMetrics = mock(DnsMetrics.class);
   private final DnsQueue dnsQueue = mock(DnsQueue.class);
+  private final DnsUpdateBatchSizer batchSizer = mock(DnsUpdateBatchSizer.class);
   private PublishDnsUpdatesAction action;
 
   @Before
@@ -95,6 +96,7 @@ public class PublishDnsUpdatesActionTest {
     action.dnsWriter = "correctWriter";
     action.dnsWriterProxy = new DnsWriterProxy(ImmutableMap.of("correctWriter", dnsWriter));
     action.dnsMetrics = dnsMetrics;
+    action.batchSizer = batchSizer;
     action.dnsQueue = dnsQueue;
     action.lockIndex = 1;
     action.numPublishLocks = 1;
@@ -147,6 +149,7 @@ public class PublishDnsUpdatesActionTest {
     verify(dnsMetrics).incrementPublishHostRequests("xn--q9jyb4c", 0, PublishStatus.REJECTED);
     verify(dnsMetrics)
         .recordCommit("xn--q9jyb4c", "correctWriter", CommitStatus.SUCCESS, Duration.ZERO, 1, 0);
+    verify(batchSizer).recordPublish("xn--q9jyb4c", Duration.ZERO, 1);
     verify(dnsMetrics)
         .recordActionResult(
             "xn--q9jyb4c",
@@ -204,6 +207,7 @@ public class PublishDnsUpdatesActionTest {
             Duration.standardHours(1));
     verifyNoMoreInteractions(dnsMetrics);
     verifyNoMoreInteractions(dnsQueue);
+    verifyNoMoreInteractions(batchSizer);
   }
 
   @Test
@@ -20,6 +20,7 @@ import static com.google.common.collect.Lists.transform;
 import static com.google.common.collect.MoreCollectors.onlyElement;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth8.assertThat;
+import static com.google.monitoring.metrics.contrib.LongMetricSubject.assertThat;
 import static google.registry.dns.DnsConstants.DNS_PUBLISH_PUSH_QUEUE_NAME;
 import static google.registry.dns.DnsConstants.DNS_PULL_QUEUE_NAME;
 import static google.registry.dns.DnsConstants.DNS_TARGET_CREATE_TIME_PARAM;
@@ -68,6 +69,8 @@ public class ReadDnsQueueActionTest {
 
   private static final int TEST_TLD_UPDATE_BATCH_SIZE = 100;
   private DnsQueue dnsQueue;
+  private int workerCount = 1;
+  private DnsUpdateBatchSizer batchSizer = new DnsUpdateBatchSizer(Duration.standardMinutes(1));
   // Because of a bug in the queue test environment - b/73372999 - we must set the fake date of the
   // test in the future. Set to year 3000 so it'll remain in the future for a very long time.
   private FakeClock clock = new FakeClock(DateTime.parse("3000-01-01TZ"));
@@ -122,8 +125,11 @@ public class ReadDnsQueueActionTest {
     ReadDnsQueueAction action = new ReadDnsQueueAction();
     action.tldUpdateBatchSize = TEST_TLD_UPDATE_BATCH_SIZE;
     action.requestedMaximumDuration = Duration.standardSeconds(10);
+    action.workerCount = workerCount;
     action.clock = clock;
     action.dnsQueue = dnsQueue;
+    action.dnsMetrics = new DnsMetrics();
+    action.batchSizer = batchSizer;
     action.dnsPublishPushQueue = QueueFactory.getQueue(DNS_PUBLISH_PUSH_QUEUE_NAME);
     action.hashFunction = Hashing.murmur3_32();
     action.taskQueueUtils = new TaskQueueUtils(new Retrier(null, 1));
@@ -226,6 +232,80 @@ public class ReadDnsQueueActionTest {
         .containsExactlyElementsIn(domains);
   }
 
+  @Test
+  public void testSuccess_multipleWorkers_moreUpdatesThanQueueBatchSize() {
+    workerCount = 3;
+    ImmutableList<String> domains =
+        IntStream.range(0, 1500)
+            .mapToObj(i -> String.format("domain_%04d.com", i))
+            .collect(toImmutableList());
+    domains.forEach(dnsQueue::addDomainRefreshTask);
+
+    run();
+
+    assertNoTasksEnqueued(DNS_PULL_QUEUE_NAME);
+    ImmutableList<ImmutableMultimap<String, String>> queuedParams =
+        getQueuedParams(DNS_PUBLISH_PUSH_QUEUE_NAME);
+    // Each worker leases its own batches of at most 1000 tasks, none of which straddle a batch of
+    // 100 updates, so the updates are split the same way as with a single worker.
+    assertThat(queuedParams).hasSize(15);
+    assertThat(
+            queuedParams
+                .stream()
+                .map(params -> params.get("domains").stream().collect(onlyElement()))
+                .flatMap(values -> Splitter.on(',').splitToList(values).stream()))
+        .containsExactlyElementsIn(domains);
+  }
+
+  @Test
+  public void testSuccess_slowPublishes_shrinkBatchSize() {
+    batchSizer = new DnsUpdateBatchSizer(Duration.standardSeconds(10));
+    // 250 milliseconds per item, so that 40 items are published within the target duration.
+    batchSizer.recordPublish("com", Duration.standardSeconds(1), 4);
+    IntStream.range(0, 100)
+        .mapToObj(i -> String.format("domain_%04d.com", i))
+        .forEach(dnsQueue::addDomainRefreshTask);
+    IntStream.range(0, 100)
+        .mapToObj(i -> String.format("domain_%04d.net", i))
+        .forEach(dnsQueue::addDomainRefreshTask);
+
+    run();
+
+    assertNoTasksEnqueued(DNS_PULL_QUEUE_NAME);
+    ImmutableList<ImmutableMultimap<String, String>> queuedParams =
+        getQueuedParams(DNS_PUBLISH_PUSH_QUEUE_NAME);
+    assertThat(
+            queuedParams.stream()
+                .map(params -> params.get("tld").stream().collect(onlyElement()))
+                .collect(toImmutableList()))
+        .containsExactly("com", "com", "com", "net");
+    assertThat(DnsMetrics.updateBatchSize)
+        .hasValueForLabels(40, "com")
+        .and()
+        .hasValueForLabels(TEST_TLD_UPDATE_BATCH_SIZE, "net");
+  }
+
+  @Test
+  public void testSuccess_recordsQueueLag() {
+    dnsQueue.addDomainRefreshTask("domain.com");
+    clock.advanceBy(Duration.standardMinutes(5));
+    dnsQueue.addDomainRefreshTask("domain.net");
+
+    run();
+
+    // run() advances the clock by an hour before reading the queue.
+    assertThat(DnsMetrics.queueLag)
+        .hasValueForLabels(Duration.standardMinutes(65).getMillis(), "com")
+        .and()
+        .hasValueForLabels(Duration.standardMinutes(60).getMillis(), "net")
+        .and()
+        .hasValueForLabels(0, "example")
+        .and()
+        .hasValueForLabels(0, "multilock.uk")
+        .and()
+        .hasNoOtherValues();
+  }
+
   @Test
   public void testSuccess_twoDnsWriters() {
     persistResource(
@@ -29,6 +29,11 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonError.ErrorInfo;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
 import com.google.api.services.dns.Dns;
 import com.google.api.services.dns.model.Change;
 import com.google.api.services.dns.model.ResourceRecordSet;
@@ -48,7 +53,6 @@ import google.registry.testing.AppEngineRule;
 import google.registry.util.Retrier;
 import google.registry.util.SystemClock;
 import google.registry.util.SystemSleeper;
-import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
@@ -87,6 +91,7 @@ public class CloudDnsWriterTest {
   @Captor ArgumentCaptor<String> zoneNameCaptor;
   @Captor ArgumentCaptor<Change> changeCaptor;
 
+  private final CloudDnsZoneSnapshot zoneSnapshot = new CloudDnsZoneSnapshot();
   private CloudDnsWriter writer;
   private ImmutableSet<ResourceRecordSet> stubZone;
 
@@ -119,18 +124,7 @@ public class CloudDnsWriterTest {
   @Before
   public void setUp() throws Exception {
     createTld("tld");
-    writer =
-        new CloudDnsWriter(
-            dnsConnection,
-            "projectId",
-            "triple.secret.tld", // used by testInvalidZoneNames()
-            DEFAULT_A_TTL,
-            DEFAULT_NS_TTL,
-            DEFAULT_DS_TTL,
-            RateLimiter.create(20),
-            10, // max num threads
-            new SystemClock(),
-            new Retrier(new SystemSleeper(), 5));
+    writer = createWriter();
 
     // Create an empty zone.
     stubZone = ImmutableSet.of();
@@ -153,15 +147,49 @@ public class CloudDnsWriterTest {
               // Fail if the records to delete has records that aren't in the stub zone.
               // This matches documented Google Cloud DNS behavior.
               if (!Sets.difference(toDelete, stubZone).isEmpty()) {
-                throw new IOException();
+                throw newZoneStateError(412, "preconditionFailed");
               }
-              stubZone =
-                  Sets.union(Sets.difference(stubZone, toDelete).immutableCopy(), toAdd)
-                      .immutableCopy();
+              // Also fail if a record set to add already exists and isn't deleted.
+              ImmutableSet<ResourceRecordSet> remaining =
+                  Sets.difference(stubZone, toDelete).immutableCopy();
+              if (toAdd.stream()
+                  .anyMatch(
+                      added ->
+                          remaining.stream()
+                              .anyMatch(
+                                  existing ->
+                                      existing.getName().equals(added.getName())
+                                          && existing.getType().equals(added.getType())))) {
+                throw newZoneStateError(409, "alreadyExists");
+              }
+              stubZone = Sets.union(remaining, toAdd).immutableCopy();
               return requestedChange;
             });
   }
 
+  /** Returns the error that Cloud DNS reports when a change doesn't match the zone. */
+  private static GoogleJsonResponseException newZoneStateError(int statusCode, String reason) {
+    return new GoogleJsonResponseException(
+        new HttpResponseException.Builder(statusCode, reason, new HttpHeaders()),
+        new GoogleJsonError().setErrors(ImmutableList.of(new ErrorInfo().setReason(reason))));
+  }
+
+  /** Returns a new writer, sharing the zone snapshot with the other writers of the test. */
+  private CloudDnsWriter createWriter() {
+    return new CloudDnsWriter(
+        dnsConnection,
+        "projectId",
+        "triple.secret.tld", // used by testInvalidZoneNames()
+        DEFAULT_A_TTL,
+        DEFAULT_NS_TTL,
+        DEFAULT_DS_TTL,
+        RateLimiter.create(20),
+        10, // max num threads
+        zoneSnapshot,
+        new SystemClock(),
+        new Retrier(new SystemSleeper(), 5));
+  }
+
   private void verifyZone(ImmutableSet<ResourceRecordSet> expectedRecords) {
     // Trigger zone changes
     writer.commit();
@@ -396,6 +424,125 @@ public class CloudDnsWriterTest {
     verifyZone(fakeDomainRecords("example.tld", "ns.another-example.tld."));
   }
 
+  @Test
+  public void testLoadDomain_republished_usesSnapshot() {
+    DomainBase domain =
+        persistResource(
+            fakeDomain(
+                    "example.tld",
+                    ImmutableSet.of(persistResource(fakeHost("0.ip4.example.tld", IPv4))),
+                    0)
+                .asBuilder()
+                .addSubordinateHost("0.ip4.example.tld")
+                .build());
+    writer.publishDomain("example.tld");
+    verifyZone(fakeDomainRecords("example.tld", 1, 0, 0, 0));
+    // The domain and its nameserver were read once.
+    verify(resourceRecordSets, times(2)).list(anyString(), anyString());
+
+    persistResource(
+        domain
+            .asBuilder()
+            .setNameservers(persistResource(fakeHost("0.external")).createVKey())
+            .setDsData(
+                ImmutableSet.of(
+                    DelegationSignerData.create(0, 3, 1, base16().decode("1234567890ABCDEF"))))
+            .build());
+    writer = createWriter();
+    writer.publishDomain("example.tld");
+
+    // The old glue record is deleted without reading anything again.
+    verifyZone(fakeDomainRecords("example.tld", 0, 0, 1, 1));
+    verify(resourceRecordSets, times(2)).list(anyString(), anyString());
+  }
+
+  @Test
+  public void testLoadDomain_staleSnapshot_readsAgain() {
+    DomainBase domain =
+        persistResource(
+            fakeDomain(
+                "example.tld", ImmutableSet.of(persistResource(fakeHost("0.external"))), 0));
+    writer.publishDomain("example.tld");
+    verifyZone(fakeDomainRecords("example.tld", 0, 0, 1, 0));
+
+    // Someone else changes the zone, so the snapshot no longer matches it.
+    stubZone = fakeDomainRecords("example.tld", 0, 0, 2, 2);
+    persistResource(
+        domain
+            .asBuilder()
+            .setDsData(
+                ImmutableSet.of(
+                    DelegationSignerData.create(0, 3, 1, base16().decode("1234567890ABCDEF"))))
+            .build());
+    writer = createWriter();
+    writer.publishDomain("example.tld");
+
+    verifyZone(fakeDomainRecords("example.tld", 0, 0, 1, 1));
+    // The first attempt is rejected, and the retry reads the domain again.
+    verify(changes, times(3)).create(anyString(), anyString(), ArgumentMatchers.any());
+    verify(resourceRecordSets, times(2)).list(anyString(), anyString());
+  }
+
+  @Test
+  public void testLoadDomain_staleSnapshotWithoutChanges_readsAgain() {
+    persistResource(
+        fakeDomain("example.tld", ImmutableSet.of(persistResource(fakeHost("0.external"))), 0));
+    writer.publishDomain("example.tld");
+    verifyZone(fakeDomainRecords("example.tld", 0, 0, 1, 0));
+    verify(resourceRecordSets, times(1)).list(anyString(), anyString());
+
+    // Someone else changes the zone, but the snapshot still matches the domain.
+    stubZone = fakeDomainRecords("example.tld", 0, 0, 2, 2);
+    writer = createWriter();
+    writer.publishDomain("example.tld");
+
+    // The domain is read again instead of skipping the write, and its records are restored.
+    verifyZone(fakeDomainRecords("example.tld", 0, 0, 1, 0));
+    verify(resourceRecordSets, times(2)).list(anyString(), anyString());
+    verify(changes, times(2)).create(anyString(), anyString(), ArgumentMatchers.any());
+  }
+
+  @Test
+  public void testLoadDomains_staleSnapshotWithoutChangesForOneDomain_readsItAgain() {
+    HostResource host = persistResource(fakeHost("0.external"));
+    persistResource(fakeDomain("example.tld", ImmutableSet.of(host), 0));
+    DomainBase otherDomain = persistResource(fakeDomain("other.tld", ImmutableSet.of(host), 0));
+    writer.publishDomain("example.tld");
+    writer.publishDomain("other.tld");
+    verifyZone(
+        Sets.union(
+                fakeDomainRecords("example.tld", 0, 0, 1, 0),
+                fakeDomainRecords("other.tld", 0, 0, 1, 0))
+            .immutableCopy());
+    verify(resourceRecordSets, times(2)).list(anyString(), anyString());
+
+    // Someone else changes one domain, but the snapshot still matches what it should be.
+    stubZone =
+        Sets.union(
+                fakeDomainRecords("example.tld", 0, 0, 2, 2),
+                fakeDomainRecords("other.tld", 0, 0, 1, 0))
+            .immutableCopy();
+    persistResource(
+        otherDomain
+            .asBuilder()
+            .setDsData(
+                ImmutableSet.of(
+                    DelegationSignerData.create(0, 3, 1, base16().decode("1234567890ABCDEF"))))
+            .build());
+    writer = createWriter();
+    writer.publishDomain("example.tld");
+    writer.publishDomain("other.tld");
+
+    // Only the unchanged domain is read again, and its records are restored in the same change.
+    verifyZone(
+        Sets.union(
+                fakeDomainRecords("example.tld", 0, 0, 1, 0),
+                fakeDomainRecords("other.tld", 0, 0, 1, 1))
+            .immutableCopy());
+    verify(resourceRecordSets, times(3)).list(anyString(), anyString());
+    verify(changes, times(2)).create(anyString(), anyString(), ArgumentMatchers.any());
+  }
+
   @Test
   public void testLoadHost_externalHost() {
     writer.publishHost("ns1.example.com");
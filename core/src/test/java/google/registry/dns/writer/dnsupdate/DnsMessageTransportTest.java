@@ -14,23 +14,43 @@
 
 package google.registry.dns.writer.dnsupdate;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.io.BaseEncoding.base16;
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.base.VerifyException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Bytes;
+import google.registry.testing.FakeClock;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.EOFException;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetAddress;
+import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
 import javax.net.SocketFactory;
 import org.joda.time.Duration;
 import org.junit.Before;
@@ -45,6 +65,7 @@ import org.xbill.DNS.Name;
 import org.xbill.DNS.Opcode;
 import org.xbill.DNS.Rcode;
 import org.xbill.DNS.Record;
+import org.xbill.DNS.TextParseException;
 import org.xbill.DNS.Type;
 import org.xbill.DNS.Update;
 
@@ -56,6 +77,8 @@ public class DnsMessageTransportTest {
 
   private final SocketFactory mockFactory = mock(SocketFactory.class);
   private final Socket mockSocket = mock(Socket.class);
+  private final FakeClock clock = new FakeClock();
+  private final DnsConnectionPool connectionPool = new DnsConnectionPool();
 
   private Message simpleQuery;
   private Message expectedResponse;
@@ -67,7 +90,7 @@ public class DnsMessageTransportTest {
     expectedResponse = responseMessageWithCode(simpleQuery, Rcode.NOERROR);
     when(mockFactory.createSocket(InetAddress.getByName(UPDATE_HOST), DnsMessageTransport.DNS_PORT))
         .thenReturn(mockSocket);
-    resolver = new DnsMessageTransport(mockFactory, UPDATE_HOST, Duration.ZERO);
+    resolver = createTransport(Duration.ZERO, 16);
   }
 
   @Test
@@ -119,7 +142,7 @@ public class DnsMessageTransportTest {
     when(mockSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
 
     Duration testTimeout = Duration.standardSeconds(1);
-    DnsMessageTransport resolver = new DnsMessageTransport(mockFactory, UPDATE_HOST, testTimeout);
+    DnsMessageTransport resolver = createTransport(testTimeout, 16);
     Message expectedQuery = new Message();
     assertThrows(SocketTimeoutException.class, () -> resolver.send(expectedQuery));
     verify(mockSocket).setSoTimeout((int) testTimeout.getMillis());
@@ -171,6 +194,167 @@ public class DnsMessageTransportTest {
         .contains("response opcode 'STATUS' does not match query opcode 'QUERY'");
   }
 
+  @Test
+  public void testConnectionIsReused() throws Exception {
+    byte[] responseBytes = messageToBytesWithLength(expectedResponse);
+    when(mockSocket.getInputStream())
+        .thenReturn(new ByteArrayInputStream(Bytes.concat(responseBytes, responseBytes)));
+    when(mockSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+
+    resolver.send(simpleQuery);
+    clock.advanceBy(Duration.standardSeconds(30));
+    // A transport created for a later request uses the same pool of connections.
+    createTransport(Duration.ZERO, 16).send(simpleQuery);
+
+    verify(mockFactory, times(1)).createSocket(any(InetAddress.class), anyInt());
+    verify(mockSocket, never()).close();
+  }
+
+  @Test
+  public void testIdleConnectionIsClosedAfterTimeout() throws Exception {
+    Socket secondSocket = mock(Socket.class);
+    when(mockFactory.createSocket(InetAddress.getByName(UPDATE_HOST), DnsMessageTransport.DNS_PORT))
+        .thenReturn(mockSocket, secondSocket);
+    for (Socket socket : ImmutableList.of(mockSocket, secondSocket)) {
+      when(socket.getInputStream())
+          .thenReturn(new ByteArrayInputStream(messageToBytesWithLength(expectedResponse)));
+      when(socket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+    }
+
+    resolver.send(simpleQuery);
+    clock.advanceBy(Duration.standardMinutes(2));
+    resolver.send(simpleQuery);
+
+    verify(mockFactory, times(2)).createSocket(any(InetAddress.class), anyInt());
+    verify(mockSocket).close();
+  }
+
+  @Test
+  public void testFailedPooledConnection_retriesOnNewConnection() throws Exception {
+    Socket secondSocket = mock(Socket.class);
+    when(mockFactory.createSocket(InetAddress.getByName(UPDATE_HOST), DnsMessageTransport.DNS_PORT))
+        .thenReturn(mockSocket, secondSocket);
+    // The first socket only has a single response, as if the server closed the connection after.
+    when(mockSocket.getInputStream())
+        .thenReturn(new ByteArrayInputStream(messageToBytesWithLength(expectedResponse)));
+    when(mockSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+    when(secondSocket.getInputStream())
+        .thenReturn(new ByteArrayInputStream(messageToBytesWithLength(expectedResponse)));
+    when(secondSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+
+    resolver.send(simpleQuery);
+    Message actualResponse = resolver.send(simpleQuery);
+
+    assertThat(actualResponse.getHeader().getID()).isEqualTo(simpleQuery.getHeader().getID());
+    verify(mockSocket).close();
+    verify(mockFactory, times(2)).createSocket(any(InetAddress.class), anyInt());
+  }
+
+  @Test
+  public void testFailedNewConnection_closesSocket() throws Exception {
+    when(mockSocket.getInputStream()).thenReturn(new ByteArrayInputStream(new byte[0]));
+    when(mockSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+    assertThrows(EOFException.class, () -> resolver.send(simpleQuery));
+    verify(mockSocket).close();
+  }
+
+  @Test
+  public void testSendAll_duplicateIdsThrowsException() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> resolver.sendAll(ImmutableList.of(simpleQuery, simpleQuery)));
+    assertThat(thrown).hasMessageThat().contains("must have distinct IDs");
+  }
+
+  @Test
+  public void testSendAll_localServer_matchesResponsesAnsweredOutOfOrder() throws Exception {
+    ImmutableList<Message> queries =
+        IntStream.range(0, 6).mapToObj(this::newUpdate).collect(toImmutableList());
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try (ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+      when(mockFactory.createSocket(
+              InetAddress.getByName(UPDATE_HOST), DnsMessageTransport.DNS_PORT))
+          .thenAnswer(
+              invocation ->
+                  new Socket(InetAddress.getLoopbackAddress(), serverSocket.getLocalPort()));
+      Future<Integer> server = executor.submit(() -> answerInReverseOrder(serverSocket, 2));
+      DnsMessageTransport transport = createTransport(Duration.standardSeconds(10), 2);
+
+      ImmutableList<Message> responses = transport.sendAll(queries);
+
+      assertThat(responses.stream().map(response -> response.getHeader().getID()))
+          .containsExactlyElementsIn(
+              queries.stream().map(query -> query.getHeader().getID()).collect(toImmutableList()))
+          .inOrder();
+      // The connection is kept open for reuse, and the server keeps reading until it is closed.
+      connectionPool.take(UPDATE_HOST, clock.nowUtc().minusMinutes(1)).get().close();
+      assertThat(server.get(10, SECONDS)).isEqualTo(6);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private DnsMessageTransport createTransport(Duration timeout, int maxPipelinedMessages) {
+    return new DnsMessageTransport(
+        mockFactory,
+        UPDATE_HOST,
+        timeout,
+        Duration.standardMinutes(1),
+        4,
+        maxPipelinedMessages,
+        connectionPool,
+        clock);
+  }
+
+  private Message newUpdate(int id) {
+    try {
+      Update update = new Update(Name.fromString("tld", Name.root));
+      update.getHeader().setID(id);
+      update.add(
+          ARecord.newRecord(Name.fromString("host-" + id + ".tld", Name.root), Type.A, DClass.IN));
+      return update;
+    } catch (TextParseException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * A stand-in DNS server, which accepts one connection and answers the queries on it in batches of
+   * the given size, with the responses of each batch in reverse order. Returns the number of
+   * queries answered once the connection is closed.
+   */
+  private int answerInReverseOrder(ServerSocket serverSocket, int batchSize) throws IOException {
+    int numAnswered = 0;
+    try (Socket socket = serverSocket.accept()) {
+      DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+      OutputStream outputStream = socket.getOutputStream();
+      while (true) {
+        Deque<Message> batch = new ArrayDeque<>();
+        while (batch.size() < batchSize) {
+          int length;
+          try {
+            length = inputStream.readUnsignedShort();
+          } catch (EOFException e) {
+            break;
+          }
+          byte[] messageData = new byte[length];
+          inputStream.readFully(messageData);
+          batch.push(new Message(messageData));
+        }
+        if (batch.isEmpty()) {
+          return numAnswered;
+        }
+        for (Message query : batch) {
+          outputStream.write(
+              messageToBytesWithLength(responseMessageWithCode(query, Rcode.NOERROR)));
+          numAnswered++;
+        }
+        outputStream.flush();
+      }
+    }
+  }
+
   private Message responseMessageWithCode(Message query, int responseCode) {
     Message message = new Message(query.getHeader().getID());
     message.getHeader().setOpcode(query.getHeader().getOpcode());
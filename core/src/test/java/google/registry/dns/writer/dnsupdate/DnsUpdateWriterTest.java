@@ -14,6 +14,7 @@
 
 package google.registry.dns.writer.dnsupdate;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.io.BaseEncoding.base16;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assertWithMessage;
@@ -28,10 +29,12 @@ import static google.registry.testing.DatastoreHelper.persistDeletedHost;
 import static google.registry.testing.DatastoreHelper.persistResource;
 import static org.junit.Assert.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import com.google.common.base.Strings;
 import com.google.common.base.VerifyException;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -82,6 +85,7 @@ public class DnsUpdateWriterTest {
 
   @Mock private DnsMessageTransport mockResolver;
   @Captor private ArgumentCaptor<Update> updateCaptor;
+  @Captor private ArgumentCaptor<ImmutableList<Message>> messagesCaptor;
 
   private final FakeClock clock = new FakeClock(DateTime.parse("1971-01-01TZ"));
 
@@ -417,6 +421,51 @@ public class DnsUpdateWriterTest {
     assertThat(thrown).hasMessageThat().contains("SERVFAIL");
   }
 
+  @Test
+  public void testCommit_oversizeUpdate_isSplitBetweenDomains() throws Exception {
+    when(mockResolver.sendAll(any()))
+        .thenAnswer(
+            invocation -> {
+              ImmutableList<Message> messages = invocation.getArgument(0);
+              return messages.stream()
+                  .map(message -> messageWithResponseCode(Rcode.NOERROR))
+                  .collect(toImmutableList());
+            });
+    // Each deleted domain adds a single record of more than 60 bytes.
+    for (int i = 0; i < 1500; i++) {
+      writer.publishDomain(Strings.repeat("a", 56) + i + ".tld");
+    }
+    writer.commit();
+
+    verify(mockResolver, never()).send(any(Message.class));
+    verify(mockResolver).sendAll(messagesCaptor.capture());
+    ImmutableList<Message> messages = messagesCaptor.getValue();
+    assertThat(messages.size()).isGreaterThan(1);
+    assertThat(messages.stream().map(message -> message.getHeader().getID()).distinct().count())
+        .isEqualTo(messages.size());
+    int numRecords = 0;
+    for (Message message : messages) {
+      assertThat(message.toWire().length)
+          .isAtMost(DnsMessageTransport.MESSAGE_MAXIMUM_LENGTH);
+      assertThatUpdatedZoneIs((Update) message, "tld.");
+      numRecords += message.getSectionArray(Section.UPDATE).length;
+    }
+    assertThat(numRecords).isEqualTo(1500);
+  }
+
+  @Test
+  public void testCommit_oversizeUpdate_failsWhenAnyMessageFails() throws Exception {
+    when(mockResolver.sendAll(any()))
+        .thenReturn(
+            ImmutableList.of(
+                messageWithResponseCode(Rcode.NOERROR), messageWithResponseCode(Rcode.SERVFAIL)));
+    for (int i = 0; i < 1500; i++) {
+      writer.publishDomain(Strings.repeat("a", 56) + i + ".tld");
+    }
+    VerifyException thrown = assertThrows(VerifyException.class, () -> writer.commit());
+    assertThat(thrown).hasMessageThat().contains("SERVFAIL");
+  }
+
   private void assertThatUpdatedZoneIs(Update update, String zoneName) {
     Record[] zoneRecords = update.getSectionArray(Section.ZONE);
     assertThat(zoneRecords[0].getName().toString()).isEqualTo(zoneName);
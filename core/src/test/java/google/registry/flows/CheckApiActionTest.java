@@ -28,6 +28,8 @@ import static google.registry.testing.DatastoreHelper.persistReservedList;
 import static google.registry.testing.DatastoreHelper.persistResource;
 import static org.mockito.Mockito.verify;
 
+import google.registry.config.RegistryConfig;
+import google.registry.model.index.ForeignKeyIndexFilter;
 import google.registry.model.registry.Registry;
 import google.registry.monitoring.whitebox.CheckApiMetric;
 import google.registry.monitoring.whitebox.CheckApiMetric.Availability;
@@ -36,8 +38,11 @@ import google.registry.monitoring.whitebox.CheckApiMetric.Tier;
 import google.registry.testing.AppEngineRule;
 import google.registry.testing.FakeClock;
 import google.registry.testing.FakeResponse;
+import google.registry.testing.TestCacheRule;
 import java.util.Map;
+import java.util.Optional;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 import org.json.simple.JSONValue;
 import org.junit.Before;
 import org.junit.Rule;
@@ -61,6 +66,10 @@ public class CheckApiActionTest {
 
   @Rule public final MockitoRule mocks = MockitoJUnit.rule();
 
+  @Rule
+  public final TestCacheRule testCacheRule =
+      new TestCacheRule.Builder().withForeignKeyIndexFilter(Duration.standardDays(1)).build();
+
   @Mock private CheckApiMetrics checkApiMetrics;
   @Captor private ArgumentCaptor<CheckApiMetric> metricCaptor;
 
@@ -236,6 +245,27 @@ public class CheckApiActionTest {
     verifySuccessMetric(STANDARD, REGISTERED);
   }
 
+  @Test
+  public void testSuccess_registeredElsewhere_availableUntilForeignKeyFilterRebuild() {
+    RegistryConfig.overrideIsForeignKeyIndexFilterEnabledForTesting(true);
+    try {
+      // The filter is built before the domain is created, as if it was created on another instance.
+      assertThat(getCheckResponse("somedomain.example")).containsEntry("available", true);
+      persistActiveDomain("somedomain.example");
+      assertThat(getCheckResponse("somedomain.example")).containsEntry("available", true);
+      // Simulate the periodic rebuild of the filter.
+      ForeignKeyIndexFilter.setCacheForTest(Optional.of(Duration.standardDays(1)));
+      assertThat(getCheckResponse("somedomain.example"))
+          .containsExactly(
+              "tier", "standard",
+              "status", "success",
+              "available", false,
+              "reason", "In use");
+    } finally {
+      RegistryConfig.overrideIsForeignKeyIndexFilterEnabledForTesting(false);
+    }
+  }
+
   @Test
   public void testSuccess_reserved_standard() {
     assertThat(getCheckResponse("foo.example"))
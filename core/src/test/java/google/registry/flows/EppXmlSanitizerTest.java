@@ -15,9 +15,11 @@
 package google.registry.flows;
 
 import static com.google.common.truth.Truth.assertThat;
+import static google.registry.flows.EppXmlSanitizer.sanitizeAndPrettyPrintEppXml;
 import static google.registry.flows.EppXmlSanitizer.sanitizeEppXml;
 import static google.registry.testing.TestDataHelper.loadBytes;
 import static google.registry.xml.XmlTestUtils.assertXmlEqualsIgnoreHeader;
+import static google.registry.xml.XmlTransformer.prettyPrint;
 import static java.nio.charset.StandardCharsets.UTF_16LE;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -135,4 +137,39 @@ public class EppXmlSanitizerTest {
     //               maintaining Java 8 build compatibility.
     assertThat(sanitizedXml.replace(" standalone=\"no\"", "")).isEqualTo(inputXml);
   }
+
+  @Test
+  public void testSanitizeAndPrettyPrint_loginPasswords_sanitized() throws Exception {
+    byte[] inputXmlBytes =
+        new EppLoader(
+                this,
+                "login_update_password.xml",
+                ImmutableMap.of("PW", "oldpass", "NEWPW", "newPw"))
+            .getEppXml()
+            .getBytes(UTF_8);
+    String prettyXml = sanitizeAndPrettyPrintEppXml(inputXmlBytes);
+    assertThat(prettyXml).doesNotContain("oldpass");
+    assertThat(prettyXml).doesNotContain("newPw");
+    assertThat(prettyXml).isEqualTo(prettyPrint(sanitizeEppXml(inputXmlBytes)));
+  }
+
+  @Test
+  public void testSanitizeAndPrettyPrint_contactAuthInfo_sanitized() throws Exception {
+    byte[] inputXmlBytes = loadBytes(getClass(), "contact_info.xml").read();
+    assertThat(sanitizeAndPrettyPrintEppXml(inputXmlBytes))
+        .isEqualTo(prettyPrint(sanitizeEppXml(inputXmlBytes)));
+  }
+
+  @Test
+  public void testSanitizeAndPrettyPrint_unicode_hasCorrectCharCount() throws Exception {
+    byte[] inputXmlBytes = "<pw>\u007F\u4E43x</pw>".getBytes(UTF_8);
+    assertXmlEqualsIgnoreHeader("<pw>C**</pw>", sanitizeAndPrettyPrintEppXml(inputXmlBytes));
+  }
+
+  @Test
+  public void testSanitizeAndPrettyPrint_invalidXml_encodedToBase64() {
+    byte[] inputXmlBytes = "<pw>".getBytes(UTF_8);
+    assertThat(sanitizeAndPrettyPrintEppXml(inputXmlBytes))
+        .isEqualTo(Base64.getMimeEncoder().encodeToString(inputXmlBytes));
+  }
 }
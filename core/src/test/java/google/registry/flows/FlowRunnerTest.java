@@ -20,6 +20,8 @@ import static com.google.common.truth.Truth8.assertThat;
 import static google.registry.testing.TestDataHelper.loadFile;
 import static google.registry.testing.TestLogHandlerUtils.findFirstLogMessageByPrefix;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
@@ -39,6 +41,8 @@ import google.registry.testing.FakeHttpSession;
 import google.registry.testing.ShardableTestCase;
 import java.util.List;
 import java.util.Optional;
+import java.util.logging.Level;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -81,6 +85,13 @@ public class FlowRunnerTest extends ShardableTestCase {
         new StatelessRequestSessionMetadata("TheRegistrar", ImmutableSet.of());
     flowRunner.trid = Trid.create("client-123", "server-456");
     flowRunner.flowReporter = Mockito.mock(FlowReporter.class);
+    flowRunner.eppMetrics = Mockito.mock(EppMetrics.class);
+    flowRunner.commandLogMaxLength = 16384;
+  }
+
+  @After
+  public void after() {
+    LoggerConfig.getConfig(FlowRunner.class).setLevel(null);
   }
 
   @Test
@@ -96,6 +107,21 @@ public class FlowRunnerTest extends ShardableTestCase {
     assertThat(eppMetricBuilder.build().getCommandName()).hasValue("TestCommand");
   }
 
+  @Test
+  public void testRun_transactionalCommand_setsStorageStatsOnMetric() throws Exception {
+    flowRunner.isTransactional = true;
+    flowRunner.run(eppMetricBuilder);
+    assertThat(eppMetricBuilder.build().getStorageStats().get().getTransactionAttempts())
+        .isEqualTo(1);
+  }
+
+  @Test
+  public void testRun_nonTransactionalCommand_setsStorageStatsOnMetric() throws Exception {
+    flowRunner.run(eppMetricBuilder);
+    assertThat(eppMetricBuilder.build().getStorageStats().get().getTransactionAttempts())
+        .isEqualTo(0);
+  }
+
   @Test
   public void testRun_callsFlowReporterOnce() throws Exception {
     flowRunner.run(eppMetricBuilder);
@@ -175,4 +201,31 @@ public class FlowRunnerTest extends ShardableTestCase {
     String xml = Joiner.on('\n').join(lines.subList(3, lines.size() - 4));
     assertThat(xml).isEqualTo(sanitizedDomainCreateXml);
   }
+
+  @Test
+  public void testRun_loggingStatement_truncatesLongXml() throws Exception {
+    flowRunner.commandLogMaxLength = 20;
+    flowRunner.inputXmlBytes =
+        loadFile(getClass(), "domain_create_prettyprinted.xml").getBytes(UTF_8);
+    flowRunner.run(eppMetricBuilder);
+    List<String> lines =
+        Splitter.on("\n\t")
+            .splitToList(findFirstLogMessageByPrefix(handler, "EPP Command\n\t"));
+    assertThat(lines.get(3)).isEqualTo("<?xml version=\"1.0\" ");
+    assertThat(lines.get(4)).matches("\\.\\.\\. \\(\\d+ characters truncated\\)");
+  }
+
+  @Test
+  public void testRun_loggingStatement_recordsLoggingTime() throws Exception {
+    flowRunner.run(eppMetricBuilder);
+    verify(flowRunner.eppMetrics).recordCommandLoggingTime(eq("TestCommand"), anyDouble());
+  }
+
+  @Test
+  public void testRun_loggingDisabled_doesNotFormatXml() throws Exception {
+    LoggerConfig.getConfig(FlowRunner.class).setLevel(Level.WARNING);
+    flowRunner.run(eppMetricBuilder);
+    verify(flowRunner.eppMetrics, never())
+        .recordCommandLoggingTime(eq("TestCommand"), anyDouble());
+  }
 }
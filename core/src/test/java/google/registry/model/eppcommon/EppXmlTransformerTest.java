@@ -15,13 +15,17 @@
 package google.registry.model.eppcommon;
 
 import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.eppcommon.EppXmlTransformer.marshalInput;
 import static google.registry.model.eppcommon.EppXmlTransformer.unmarshal;
 import static google.registry.testing.TestDataHelper.loadBytes;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertThrows;
 
 import google.registry.model.eppinput.EppInput;
 import google.registry.model.eppoutput.EppOutput;
 import google.registry.testing.ShardableTestCase;
+import google.registry.xml.ValidationMode;
+import google.registry.xml.XmlException;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -42,4 +46,31 @@ public class EppXmlTransformerTest extends ShardableTestCase {
         ClassCastException.class,
         () -> unmarshal(EppOutput.class, loadBytes(getClass(), "contact_info.xml").read()));
   }
+
+  @Test
+  public void testUnmarshalingRepeatedly_returnsNewObjects() throws Exception {
+    byte[] bytes = loadBytes(getClass(), "contact_info.xml").read();
+    EppInput first = unmarshal(EppInput.class, bytes);
+    EppInput second = unmarshal(EppInput.class, bytes);
+    assertThat(second).isNotSameInstanceAs(first);
+    assertThat(second).isEqualTo(first);
+  }
+
+  @Test
+  public void testUnmarshaling_afterInvalidInput_succeeds() throws Exception {
+    assertThrows(
+        XmlException.class, () -> unmarshal(EppInput.class, "<epp>".getBytes(UTF_8)));
+    EppInput input = unmarshal(EppInput.class, loadBytes(getClass(), "contact_info.xml").read());
+    assertThat(input.getCommandType()).isEqualTo("info");
+  }
+
+  @Test
+  public void testMarshalingRepeatedly_includesXmlDeclaration() throws Exception {
+    EppInput input = unmarshal(EppInput.class, loadBytes(getClass(), "contact_info.xml").read());
+    for (int i = 0; i < 2; i++) {
+      String xml = new String(marshalInput(input, ValidationMode.STRICT), UTF_8);
+      assertThat(xml).startsWith("<?xml");
+      assertThat(unmarshal(EppInput.class, xml.getBytes(UTF_8))).isEqualTo(input);
+    }
+  }
 }
@@ -0,0 +1,175 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.index;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.monitoring.metrics.contrib.LongMetricSubject.assertThat;
+import static google.registry.model.index.ForeignKeyIndexFilter.FilterCheckOutcome.FILTER_NEGATIVE;
+import static google.registry.model.index.ForeignKeyIndexFilter.FilterCheckOutcome.FILTER_POSITIVE_EXISTS;
+import static google.registry.model.index.ForeignKeyIndexFilter.filterChecks;
+import static google.registry.testing.DatastoreHelper.createTld;
+import static google.registry.testing.DatastoreHelper.persistActiveDomain;
+import static google.registry.testing.DatastoreHelper.persistActiveHost;
+import static google.registry.testing.DatastoreHelper.persistDeletedDomain;
+
+import com.google.common.collect.ImmutableList;
+import google.registry.config.RegistryConfig;
+import google.registry.model.EntityTestCase;
+import google.registry.model.domain.DomainBase;
+import google.registry.model.host.HostResource;
+import google.registry.testing.TestCacheRule;
+import java.util.Optional;
+import org.joda.time.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+/** Unit tests for {@link ForeignKeyIndexFilter}. */
+public class ForeignKeyIndexFilterTest extends EntityTestCase {
+
+  @Rule
+  public final TestCacheRule testCacheRule =
+      new TestCacheRule.Builder()
+          .withForeignIndexKeyCache(Duration.standardDays(1))
+          .withForeignKeyIndexFilter(Duration.standardDays(1))
+          .build();
+
+  @Before
+  public void setUp() {
+    createTld("tld");
+    RegistryConfig.overrideIsForeignKeyIndexFilterEnabledForTesting(true);
+    filterChecks.reset();
+  }
+
+  @After
+  public void tearDown() {
+    RegistryConfig.overrideIsForeignKeyIndexFilterEnabledForTesting(false);
+  }
+
+  @Test
+  public void testMightExist_existingDomain() {
+    persistActiveDomain("example.tld");
+    assertThat(ForeignKeyIndexFilter.mightExist(DomainBase.class, "example.tld")).isTrue();
+    assertThat(ForeignKeyIndexFilter.mightExist(DomainBase.class, "nonexistent.tld")).isFalse();
+  }
+
+  @Test
+  public void testMightExist_deletedDomain_isNotInFilter() {
+    persistDeletedDomain("deleted.tld", fakeClock.nowUtc().minusDays(1));
+    assertThat(ForeignKeyIndexFilter.mightExist(DomainBase.class, "deleted.tld")).isFalse();
+  }
+
+  @Test
+  public void testPut_addsDomainCreatedAfterBuild() {
+    assertThat(ForeignKeyIndexFilter.mightExist(DomainBase.class, "new.tld")).isFalse();
+    DomainBase domain = persistActiveDomain("new.tld");
+    // The filter isn't rebuilt yet, so the new domain is only seen once it is put explicitly.
+    assertThat(ForeignKeyIndexFilter.mightExist(DomainBase.class, "new.tld")).isFalse();
+    ForeignKeyIndexFilter.put(domain);
+    assertThat(ForeignKeyIndexFilter.mightExist(DomainBase.class, "new.tld")).isTrue();
+  }
+
+  @Test
+  public void testIsEnabledFor_onlyDomains() {
+    assertThat(ForeignKeyIndexFilter.isEnabledFor(DomainBase.class)).isTrue();
+    assertThat(ForeignKeyIndexFilter.isEnabledFor(HostResource.class)).isFalse();
+    RegistryConfig.overrideIsForeignKeyIndexFilterEnabledForTesting(false);
+    assertThat(ForeignKeyIndexFilter.isEnabledFor(DomainBase.class)).isFalse();
+  }
+
+  @Test
+  public void testLoadCached_skipsDomainsNotInFilter() {
+    persistActiveDomain("example.tld");
+    assertThat(
+            ForeignKeyIndex.loadCached(
+                DomainBase.class,
+                ImmutableList.of("example.tld", "nonexistent.tld"),
+                fakeClock.nowUtc()))
+        .containsExactly(
+            "example.tld",
+            ForeignKeyIndex.load(DomainBase.class, "example.tld", fakeClock.nowUtc()));
+    assertThat(filterChecks)
+        .hasValueForLabels(1, "DomainBase", FILTER_NEGATIVE.name())
+        .and()
+        .hasValueForLabels(1, "DomainBase", FILTER_POSITIVE_EXISTS.name())
+        .and()
+        .hasNoOtherValues();
+  }
+
+  @Test
+  public void testLoadFiltered_skipsDomainsNotInFilter() {
+    persistActiveDomain("example.tld");
+    persistDeletedDomain("deleted.tld", fakeClock.nowUtc().minusDays(1));
+    assertThat(
+            ForeignKeyIndex.loadFiltered(
+                DomainBase.class,
+                ImmutableList.of("example.tld", "deleted.tld", "nonexistent.tld"),
+                fakeClock.nowUtc()))
+        .containsExactly(
+            "example.tld",
+            ForeignKeyIndex.load(DomainBase.class, "example.tld", fakeClock.nowUtc()));
+    assertThat(filterChecks)
+        .hasValueForLabels(2, "DomainBase", FILTER_NEGATIVE.name())
+        .and()
+        .hasValueForLabels(1, "DomainBase", FILTER_POSITIVE_EXISTS.name())
+        .and()
+        .hasNoOtherValues();
+  }
+
+  @Test
+  public void testLoadFiltered_filterDisabled_loadsAllDomains() {
+    RegistryConfig.overrideIsForeignKeyIndexFilterEnabledForTesting(false);
+    assertThat(ForeignKeyIndexFilter.isEnabledFor(DomainBase.class)).isFalse();
+    persistActiveDomain("example.tld");
+    assertThat(
+            ForeignKeyIndex.loadFiltered(
+                DomainBase.class,
+                ImmutableList.of("example.tld", "nonexistent.tld"),
+                fakeClock.nowUtc()))
+        .containsKey("example.tld");
+    assertThat(filterChecks).hasNoOtherValues();
+  }
+
+  @Test
+  public void testLoadCached_domainCreatedElsewhere_notSeenUntilRebuild() {
+    // Build the filter before the domain exists.
+    assertThat(
+            ForeignKeyIndex.loadCached(
+                DomainBase.class, ImmutableList.of("other.tld"), fakeClock.nowUtc()))
+        .isEmpty();
+    persistActiveDomain("other.tld");
+    assertThat(
+            ForeignKeyIndex.loadCached(
+                DomainBase.class, ImmutableList.of("other.tld"), fakeClock.nowUtc()))
+        .isEmpty();
+    // Simulate the periodic rebuild of the filter.
+    ForeignKeyIndexFilter.setCacheForTest(Optional.of(Duration.standardDays(1)));
+    assertThat(
+            ForeignKeyIndex.loadCached(
+                DomainBase.class, ImmutableList.of("other.tld"), fakeClock.nowUtc()))
+        .containsKey("other.tld");
+  }
+
+  @Test
+  public void testLoadCached_hostsAreNotFiltered() {
+    persistActiveHost("ns1.example.tld");
+    assertThat(
+            ForeignKeyIndex.loadCached(
+                HostResource.class, ImmutableList.of("ns1.example.tld"), fakeClock.nowUtc()))
+        .containsKey("ns1.example.tld");
+    assertThat(filterChecks).hasNoOtherValues();
+  }
+}
@@ -15,6 +15,7 @@
 package google.registry.model.rde;
 
 import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.rde.RdeDepositType.DIFF;
 import static google.registry.model.rde.RdeMode.FULL;
 import static google.registry.model.rde.RdeMode.THIN;
 import static google.registry.model.rde.RdeNamingUtils.makePartialName;
@@ -47,6 +48,19 @@ public class RdeNamingUtilsTest {
         .isEqualTo("wretched_2000-12-18_thin_S1_R123");
   }
 
+  @Test
+  public void testMakeRydeFilename_differentialDeposit() {
+    assertThat(makeRydeFilename("forlorn", DateTime.parse("2000-12-18TZ"), FULL, DIFF, 1, 2))
+        .isEqualTo("forlorn_2000-12-18_diff_S1_R2");
+  }
+
+  @Test
+  public void testMakeRydeFilename_differentialBrdaDeposit_throwsIae() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> makeRydeFilename("forlorn", DateTime.parse("2000-12-18TZ"), THIN, DIFF, 1, 0));
+  }
+
   @Test
   public void testMakeRydeFilename_timestampNotAtTheWitchingHour_throwsIae() {
     assertThrows(
@@ -29,6 +29,7 @@ import static google.registry.model.registry.label.DomainLabelMetrics.premiumLis
 import static google.registry.model.registry.label.PremiumListUtils.deletePremiumList;
 import static google.registry.model.registry.label.PremiumListUtils.doesPremiumListExist;
 import static google.registry.model.registry.label.PremiumListUtils.getPremiumPrice;
+import static google.registry.model.registry.label.PremiumListUtils.prefetchPremiumListEntries;
 import static google.registry.model.registry.label.PremiumListUtils.savePremiumListAndEntries;
 import static google.registry.persistence.transaction.TransactionManagerFactory.tm;
 import static google.registry.testing.DatastoreHelper.createTld;
@@ -196,6 +197,29 @@ public class PremiumListUtilsTest {
         .hasNoOtherValues();
   }
 
+  @Test
+  public void testPrefetchPremiumListEntries_pricesAreCached() {
+    prefetchPremiumListEntries(ImmutableList.of("rich", "lol", "icann"), Registry.get("tld"));
+    assertThat(getPremiumPrice("rich", Registry.get("tld"))).hasValue(Money.parse("USD 1999"));
+    assertThat(getPremiumPrice("lol", Registry.get("tld"))).hasValue(Money.parse("USD 999"));
+    assertThat(getPremiumPrice("icann", Registry.get("tld"))).hasValue(Money.parse("JPY 100"));
+    assertMetricOutcomeCount(3, CACHED_POSITIVE);
+  }
+
+  @Test
+  public void testPrefetchPremiumListEntries_noPremiumList_isNoop() {
+    createTld("ghost");
+    persistResource(
+        new Registry.Builder()
+            .setTldStr("ghost")
+            .setPremiumPricingEngine(StaticPremiumListPricingEngine.NAME)
+            .setDnsWriters(ImmutableSet.of(VoidDnsWriter.NAME))
+            .build());
+    prefetchPremiumListEntries(ImmutableList.of("rich"), Registry.get("ghost"));
+    assertThat(getPremiumPrice("rich", Registry.get("ghost"))).isEmpty();
+    assertThat(premiumListChecks).hasNoOtherValues();
+  }
+
   @Test
   public void testGetPremiumPrice_bloomFilterFalsePositive() {
     // Remove one of the premium list entries from behind the Bloom filter's back.
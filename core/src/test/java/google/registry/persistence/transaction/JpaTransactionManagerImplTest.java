@@ -14,12 +14,16 @@
 
 package google.registry.persistence.transaction;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.truth.Truth.assertThat;
 import static google.registry.persistence.transaction.TransactionManagerFactory.jpaTm;
 import static google.registry.testing.TestDataHelper.fileClassPath;
 import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.googlecode.objectify.Key;
 import google.registry.model.ImmutableObject;
 import google.registry.persistence.VKey;
 import google.registry.persistence.transaction.JpaTestRules.JpaUnitTestRule;
@@ -27,10 +31,12 @@ import google.registry.testing.FakeClock;
 import java.io.Serializable;
 import java.math.BigInteger;
 import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
 import javax.persistence.Entity;
 import javax.persistence.EntityManager;
 import javax.persistence.Id;
 import javax.persistence.IdClass;
+import javax.persistence.MappedSuperclass;
 import javax.persistence.RollbackException;
 import org.junit.Rule;
 import org.junit.Test;
@@ -54,6 +60,9 @@ public class JpaTransactionManagerImplTest {
       new TestCompoundIdEntity("compoundIdEntity", 10, "foo");
   private final VKey<TestCompoundIdEntity> compoundIdEntityKey =
       VKey.createSql(TestCompoundIdEntity.class, new CompoundId("compoundIdEntity", 10));
+  private final ImmutableList<TestInheritedIdEntity> inheritedIdEntities =
+      ImmutableList.of(
+          new TestInheritedIdEntity("entity1", "foo"), new TestInheritedIdEntity("entity2", "bar"));
   private final ImmutableList<TestEntity> moreEntities =
       ImmutableList.of(
           new TestEntity("entity1", "foo"),
@@ -65,7 +74,8 @@ public class JpaTransactionManagerImplTest {
       new JpaTestRules.Builder()
           .withInitScript(fileClassPath(getClass(), "test_schema.sql"))
           .withClock(fakeClock)
-          .withEntityClass(TestEntity.class, TestCompoundIdEntity.class)
+          .withEntityClass(
+              TestEntity.class, TestCompoundIdEntity.class, TestInheritedIdEntity.class)
           .buildUnitTestRule();
 
   @Test
@@ -304,6 +314,85 @@ public class JpaTransactionManagerImplTest {
     assertThat(persisted.data).isEqualTo("foo");
   }
 
+  @Test
+  public void loadMultiple_succeeds() {
+    jpaTm().transact(() -> jpaTm().saveAllNew(moreEntities));
+    jpaTm().transact(() -> jpaTm().saveNew(compoundIdEntity));
+    ImmutableList<VKey<? extends ImmutableObject>> keys =
+        ImmutableList.of(
+            VKey.createSql(TestEntity.class, "entity1"),
+            VKey.createSql(TestEntity.class, "entity3"),
+            VKey.createSql(TestEntity.class, "nonexistent"),
+            VKey.createSql(TestEntity.class, "entity1"),
+            compoundIdEntityKey);
+    ImmutableMap<VKey<? extends ImmutableObject>, ImmutableObject> loaded =
+        jpaTm().transact(() -> jpaTm().load(keys));
+    assertThat(loaded)
+        .containsExactly(
+            keys.get(0), moreEntities.get(0),
+            keys.get(1), moreEntities.get(2),
+            compoundIdEntityKey, compoundIdEntity);
+  }
+
+  @Test
+  public void loadMultiple_moreKeysThanBatchSize_succeeds() {
+    ImmutableList<TestEntity> entities =
+        IntStream.range(0, JpaTransactionManagerImpl.LOAD_BATCH_SIZE + 10)
+            .mapToObj(i -> new TestEntity("entity" + i, "data" + i))
+            .collect(toImmutableList());
+    jpaTm().transact(() -> jpaTm().saveAllNew(entities));
+    ImmutableList<VKey<TestEntity>> keys =
+        entities.stream()
+            .map(entity -> VKey.createSql(TestEntity.class, entity.name))
+            .collect(toImmutableList());
+    ImmutableMap<VKey<? extends TestEntity>, TestEntity> loaded =
+        jpaTm().transact(() -> jpaTm().load(keys));
+    assertThat(loaded).hasSize(entities.size());
+    assertThat(loaded.values()).containsExactlyElementsIn(entities);
+    assertThat(loaded.get(keys.get(42))).isEqualTo(entities.get(42));
+  }
+
+  @Test
+  public void loadMultiple_keysWithSameSqlKey_succeeds() {
+    jpaTm().transact(() -> jpaTm().saveAllNew(moreEntities));
+    ImmutableList<VKey<TestEntity>> keys =
+        ImmutableList.of(
+            VKey.createSql(TestEntity.class, "entity1"),
+            VKey.create(TestEntity.class, "entity1", mock(Key.class)),
+            VKey.createSql(TestEntity.class, "entity2"));
+    ImmutableMap<VKey<? extends TestEntity>, TestEntity> loaded =
+        jpaTm().transact(() -> jpaTm().load(keys));
+    assertThat(loaded)
+        .containsExactly(
+            keys.get(0), moreEntities.get(0),
+            keys.get(1), moreEntities.get(0),
+            keys.get(2), moreEntities.get(1));
+  }
+
+  @Test
+  public void loadMultiple_inheritedId_succeeds() {
+    jpaTm().transact(() -> jpaTm().saveAllNew(inheritedIdEntities));
+    ImmutableList<VKey<TestInheritedIdEntity>> keys =
+        ImmutableList.of(
+            VKey.createSql(TestInheritedIdEntity.class, "entity1"),
+            VKey.createSql(TestInheritedIdEntity.class, "entity2"),
+            VKey.createSql(TestInheritedIdEntity.class, "nonexistent"));
+    ImmutableMap<VKey<? extends TestInheritedIdEntity>, TestInheritedIdEntity> loaded =
+        jpaTm().transact(() -> jpaTm().load(keys));
+    assertThat(loaded)
+        .containsExactly(
+            keys.get(0), inheritedIdEntities.get(0), keys.get(1), inheritedIdEntities.get(1));
+  }
+
+  @Test
+  public void deleteInheritedIdEntity_succeeds() {
+    TestInheritedIdEntity entity = inheritedIdEntities.get(0);
+    jpaTm().transact(() -> jpaTm().saveNew(entity));
+    assertThat(jpaTm().transact(() -> jpaTm().checkExists(entity))).isTrue();
+    jpaTm().transact(() -> jpaTm().delete(VKey.createSql(TestInheritedIdEntity.class, "entity1")));
+    assertThat(jpaTm().transact(() -> jpaTm().checkExists(entity))).isFalse();
+  }
+
   @Test
   public void loadAll_succeeds() {
     jpaTm().transact(() -> jpaTm().saveAllNew(moreEntities));
@@ -429,6 +518,23 @@ public class JpaTransactionManagerImplTest {
     }
   }
 
+  @MappedSuperclass
+  private abstract static class TestIdBase extends ImmutableObject {
+    @Id String name;
+  }
+
+  @Entity(name = "TestInheritedIdEntity")
+  private static class TestInheritedIdEntity extends TestIdBase {
+    private String data;
+
+    private TestInheritedIdEntity() {}
+
+    private TestInheritedIdEntity(String name, String data) {
+      this.name = name;
+      this.data = data;
+    }
+  }
+
   @Entity(name = "TestCompoundIdEntity")
   @IdClass(CompoundId.class)
   private static class TestCompoundIdEntity extends ImmutableObject {
@@ -308,6 +308,34 @@ public class TransactionManagerTest {
         .isEqualTo(Maps.uniqueIndex(moreEntities, TestEntity::key));
   }
 
+  @TestTemplate
+  void storageStats_recordsOperations() {
+    tm().transact(() -> tm().saveAllNew(moreEntities));
+    List<VKey<TestEntity>> keys =
+        moreEntities.stream().map(TestEntity::key).collect(toImmutableList());
+    StorageStats.startRecording();
+    fakeClock.advanceOneMilli();
+    tm().transact(() -> tm().delete(keys.get(0)));
+    tm().transact(() -> tm().load(keys.subList(1, 3)));
+    StorageStats stats = StorageStats.stopRecording();
+    assertThat(stats.getReads()).isAtLeast(1);
+    assertThat(stats.getKeysLoaded()).isAtLeast(2);
+    assertThat(stats.getWrites()).isAtLeast(1);
+    assertThat(stats.getTransactionAttempts()).isEqualTo(2);
+    assertThat(stats.getTransactionRetries()).isEqualTo(0);
+  }
+
+  @TestTemplate
+  void storageStats_notRecordedOutsideOfRecording() {
+    tm().transact(() -> tm().saveNew(theEntity));
+    StorageStats.startRecording();
+    StorageStats stats = StorageStats.stopRecording();
+    assertThat(stats.getReads()).isEqualTo(0);
+    assertThat(stats.getWrites()).isEqualTo(0);
+    assertThat(stats.getTransactionAttempts()).isEqualTo(0);
+    assertThrows(IllegalStateException.class, StorageStats::stopRecording);
+  }
+
   private static void assertEntityExists(TestEntity entity) {
     assertThat(tm().transact(() -> tm().checkExists(entity))).isTrue();
   }
@@ -329,6 +329,58 @@ public final class AbstractJsonableObjectTest {
                 "}"));
   }
 
+  abstract static class GeneratedBase extends AbstractJsonableObject {
+    @JsonableElement("messages[]")
+    static final String MESSAGE = "base message";
+    @JsonableElement String overridden() {
+      return "old value";
+    }
+  }
+
+  static final class GeneratedInherited extends GeneratedBase {
+    @JsonableElement("messages[]")
+    final String message = "inherited message";
+    @JsonableElement final int myInt = 42;
+    @JsonableElement("*") final Object subObject = new AbstractJsonableObject() {
+      @JsonableElement String innerKey = "innerValue";
+    };
+
+    @Override
+    String overridden() {
+      return "new value";
+    }
+  }
+
+  @Test
+  public void testGeneratedSerializer_works() {
+    assertThat(AbstractJsonableObject.hasGeneratedSerializer(GeneratedInherited.class)).isTrue();
+    assertThat(new GeneratedInherited().toJson())
+        .isEqualTo(
+            createJson(
+                "{",
+                "  'messages':['base message','inherited message'],",
+                "  'myInt':42,",
+                "  'innerKey':'innerValue',",
+                "  'overridden':'new value'",
+                "}"));
+  }
+
+  @Test
+  public void testGeneratedSerializer_notGeneratedForPrivateClasses() {
+    assertThat(AbstractJsonableObject.hasGeneratedSerializer(InheritedWithStatic.class)).isFalse();
+    assertThat(AbstractJsonableObject.hasGeneratedSerializer(InheritedOverriding.class)).isFalse();
+  }
+
+  @Test
+  public void testGeneratedSerializer_usedByAutoValueClasses() {
+    RdapDataStructures.Link link =
+        RdapDataStructures.Link.builder()
+            .setHref("https://example.tld/rdap/help")
+            .setRel("self")
+            .build();
+    assertThat(AbstractJsonableObject.hasGeneratedSerializer(link.getClass())).isTrue();
+  }
+
   @Test
   public void testMerge_works() {
     Jsonable jsonable = new AbstractJsonableObject() {
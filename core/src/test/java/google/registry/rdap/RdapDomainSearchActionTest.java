@@ -37,6 +37,7 @@ import com.google.common.collect.Range;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import google.registry.config.RegistryConfig;
 import google.registry.model.contact.ContactResource;
 import google.registry.model.domain.DomainBase;
 import google.registry.model.domain.Period;
@@ -1112,6 +1113,42 @@ public class RdapDomainSearchActionTest extends RdapSearchActionTestCase<RdapDom
     verifyMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(5L), IncompletenessWarningType.TRUNCATED);
   }
 
+  @Test
+  public void testDomainMatch_found_streamed() {
+    action.rdapStreamSearchResults = true;
+    login("evilregistrar");
+    runSuccessfulTestWithCatLol(RequestType.NAME, "cat.lol", "rdap_domain.json");
+    verifyMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(1L));
+  }
+
+  @Test
+  public void testDomainMatch_notFound_streamed() {
+    action.rdapStreamSearchResults = true;
+    action.registrarParam = Optional.of("otherregistrar");
+    runNotFoundTest(RequestType.NAME, "cat.lol", "No domains found");
+    verifyErrorMetrics(SearchType.BY_DOMAIN_NAME);
+  }
+
+  @Test
+  public void testDomainMatch_truncatedResultsSet_streamed() {
+    action.rdapStreamSearchResults = true;
+    createManyDomainsAndHosts(5, 1, 2);
+    runSuccessfulTestWithFourDomains(
+        RequestType.NAME,
+        "domain*.lol",
+        "47-LOL",
+        "46-LOL",
+        "45-LOL",
+        "44-LOL",
+        "name=domain*.lol&cursor=ZG9tYWluNC5sb2w%3D",
+        "rdap_domains_four_truncated.json");
+    // The results come first, and the notices with the navigation links after them.
+    assertThat(response.getPayload()).startsWith("{\"domainSearchResults\":[");
+    assertThat(response.getPayload().indexOf("\"notices\""))
+        .isGreaterThan(response.getPayload().indexOf("domain4.lol"));
+    verifyMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(5L), IncompletenessWarningType.TRUNCATED);
+  }
+
   @Test
   public void testDomainMatch_tldSearchOrderedProperly() {
     createManyDomainsAndHosts(4, 1, 2);
@@ -1204,6 +1241,76 @@ public class RdapDomainSearchActionTest extends RdapSearchActionTestCase<RdapDom
             "domain9.lol"));
   }
 
+  @Test
+  public void testDomainMatch_cursorNavigationWithTldSuffix_usingNameIndex() throws Exception {
+    boolean origIsIndexEnabled = RegistryConfig.isRdapNameIndexEnabled();
+    try {
+      RegistryConfig.overrideIsRdapNameIndexEnabledForTesting(true);
+      RdapNameIndex.setCacheForTest(Optional.empty());
+      createManyDomainsAndHosts(11, 1, 2);
+      checkCursorNavigation(
+          RequestType.NAME,
+          "*.lol",
+          ImmutableList.of(
+              "cat.lol",
+              "cat2.lol",
+              "domain1.lol",
+              "domain10.lol",
+              "domain11.lol",
+              "domain2.lol",
+              "domain3.lol",
+              "domain4.lol",
+              "domain5.lol",
+              "domain6.lol",
+              "domain7.lol",
+              "domain8.lol",
+              "domain9.lol"));
+    } finally {
+      RegistryConfig.overrideIsRdapNameIndexEnabledForTesting(origIsIndexEnabled);
+    }
+  }
+
+  @Test
+  public void testDomainMatch_usingNameIndex_mightBeIncomplete() {
+    boolean origIsIndexEnabled = RegistryConfig.isRdapNameIndexEnabled();
+    try {
+      RegistryConfig.overrideIsRdapNameIndexEnabledForTesting(true);
+      RdapNameIndex.setCacheForTest(Optional.empty());
+      createManyDomainsAndHosts(4, 1, 2);
+      rememberWildcardType("domain*.lol");
+      // The index doesn't list domains created since it was built, so even a result set with all
+      // the indexed domains may be missing some.
+      JsonObject obj = generateActualJson(RequestType.NAME, "domain*.lol");
+      assertThat(response.getStatus()).isEqualTo(200);
+      checkNumberOfDomainsInResult(obj, 4);
+      assertThat(obj.getAsJsonArray("notices").toString())
+          .contains("Search results may contain incomplete information");
+      verifyMetrics(
+          SearchType.BY_DOMAIN_NAME,
+          Optional.of(4L),
+          IncompletenessWarningType.MIGHT_BE_INCOMPLETE);
+    } finally {
+      RegistryConfig.overrideIsRdapNameIndexEnabledForTesting(origIsIndexEnabled);
+    }
+  }
+
+  @Test
+  public void testDomainMatch_usingNameIndex_allFilteredOut_namesReadLimited() {
+    boolean origIsIndexEnabled = RegistryConfig.isRdapNameIndexEnabled();
+    try {
+      RegistryConfig.overrideIsRdapNameIndexEnabledForTesting(true);
+      RdapNameIndex.setCacheForTest(Optional.empty());
+      createManyDomainsAndHosts(200, 1, 2);
+      action.registrarParam = Optional.of("otherregistrar");
+      // None of the indexed domains belong to the requested registrar, so the search gives up after
+      // reading RESULT_SET_SIZE_SCALING_FACTOR * (rdapResultSetMaxSize + 1) of them.
+      runNotFoundTest(RequestType.NAME, "domain*.lol", "No domains found");
+      verifyErrorMetrics(SearchType.BY_DOMAIN_NAME, Optional.of(150L), 404);
+    } finally {
+      RegistryConfig.overrideIsRdapNameIndexEnabledForTesting(origIsIndexEnabled);
+    }
+  }
+
   @Test
   public void testNameserverMatch_foundMultiple() {
     rememberWildcardType("ns1.cat.lol");
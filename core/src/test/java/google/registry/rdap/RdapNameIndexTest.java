@@ -0,0 +1,91 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rdap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import google.registry.rdap.RdapNameIndex.NameIndex;
+import java.util.Optional;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link RdapNameIndex}. */
+@RunWith(JUnit4.class)
+public class RdapNameIndexTest {
+
+  private final NameIndex index =
+      new NameIndex(
+          ImmutableList.of(
+              "example.tld",
+              "cat.lol",
+              "cat.tld",
+              "cat.xtld",
+              "exam.co.uk",
+              "cat2.lol",
+              "dog.tld",
+              "cat.co.uk",
+              "ns1.cat.tld"));
+
+  private ImmutableList<String> getMatchingNames(String pattern, Optional<String> cursor) {
+    return ImmutableList.copyOf(
+        index.getMatchingNames(RdapSearchPattern.createFromLdhDomainName(pattern), cursor));
+  }
+
+  @Test
+  public void testPrefix_searchesAllTlds() {
+    assertThat(getMatchingNames("cat*", Optional.empty()))
+        .containsExactly("cat.co.uk", "cat.lol", "cat.tld", "cat.xtld", "cat2.lol")
+        .inOrder();
+  }
+
+  @Test
+  public void testPrefixAndSuffix_onlySearchesTld() {
+    assertThat(getMatchingNames("ca*.tld", Optional.empty()))
+        .containsExactly("cat.tld")
+        .inOrder();
+  }
+
+  @Test
+  public void testSuffix_listsWholeTld() {
+    assertThat(getMatchingNames("*.tld", Optional.empty()))
+        .containsExactly("cat.tld", "dog.tld", "example.tld", "ns1.cat.tld")
+        .inOrder();
+  }
+
+  @Test
+  public void testMultiLabelSuffix() {
+    assertThat(getMatchingNames("*.co.uk", Optional.empty()))
+        .containsExactly("cat.co.uk", "exam.co.uk")
+        .inOrder();
+  }
+
+  @Test
+  public void testCursor_skipsNamesUpToAndIncludingCursor() {
+    assertThat(getMatchingNames("cat*", Optional.of("cat.tld")))
+        .containsExactly("cat.xtld", "cat2.lol")
+        .inOrder();
+    assertThat(getMatchingNames("*.tld", Optional.of("d")))
+        .containsExactly("dog.tld", "example.tld", "ns1.cat.tld")
+        .inOrder();
+  }
+
+  @Test
+  public void testNoMatches() {
+    assertThat(getMatchingNames("cow*", Optional.empty())).isEmpty();
+    assertThat(getMatchingNames("*.example", Optional.empty())).isEmpty();
+  }
+}
@@ -22,6 +22,7 @@ import static google.registry.model.rde.RdeMode.FULL;
 import static google.registry.model.rde.RdeMode.THIN;
 import static google.registry.testing.DatastoreHelper.createTld;
 import static google.registry.testing.DatastoreHelper.persistResource;
+import static org.joda.time.DateTimeConstants.SUNDAY;
 import static org.joda.time.DateTimeConstants.TUESDAY;
 import static org.joda.time.Duration.standardDays;
 
@@ -61,6 +62,7 @@ public class PendingDepositCheckerTest {
     checker.brdaInterval = standardDays(7);
     checker.clock = clock;
     checker.rdeInterval = standardDays(1);
+    checker.rdeFullDepositDayOfWeek = SUNDAY;
   }
 
   @Test
@@ -160,6 +162,48 @@ public class PendingDepositCheckerTest {
                 "fun", DateTime.parse("2000-01-01TZ"), FULL, RDE_STAGING, standardDays(1))));
   }
 
+  @Test
+  public void testMethod_differentialDepositsEnabled_depositsDifferential() {
+    checker.rdeDifferentialDepositsEnabled = true;
+    clock.setTo(DateTime.parse("2000-01-01TZ"));  // Saturday
+    createTldWithEscrowEnabled("lol");
+    clock.advanceOneMilli();
+    setCursor(Registry.get("lol"), RDE_STAGING, DateTime.parse("1999-12-31TZ"));
+    clock.advanceOneMilli();
+    PendingDeposit deposit =
+        PendingDeposit.createDifferential(
+            "lol", DateTime.parse("1999-12-31TZ"), RDE_STAGING, standardDays(1));
+    assertThat(checker.getTldsAndWatermarksPendingDepositForRdeAndBrda())
+        .isEqualTo(ImmutableSetMultimap.of("lol", deposit));
+    assertThat(deposit.previousWatermark()).isEqualTo(DateTime.parse("1999-12-30TZ"));
+  }
+
+  @Test
+  public void testMethod_differentialDepositsEnabled_fullDepositOnFullDepositDay() {
+    checker.rdeDifferentialDepositsEnabled = true;
+    clock.setTo(DateTime.parse("2000-01-02TZ"));  // Sunday
+    createTldWithEscrowEnabled("lol");
+    clock.advanceOneMilli();
+    setCursor(Registry.get("lol"), RDE_STAGING, DateTime.parse("2000-01-02TZ"));
+    clock.advanceOneMilli();
+    assertThat(checker.getTldsAndWatermarksPendingDepositForRdeAndBrda()).isEqualTo(
+        ImmutableSetMultimap.of(
+            "lol", PendingDeposit.create(
+                "lol", DateTime.parse("2000-01-02TZ"), FULL, RDE_STAGING, standardDays(1))));
+  }
+
+  @Test
+  public void testMethod_differentialDepositsEnabled_firstDepositIsFull() {
+    checker.rdeDifferentialDepositsEnabled = true;
+    clock.setTo(DateTime.parse("2000-01-01T08:00Z"));  // Saturday
+    createTldWithEscrowEnabled("lol");
+    clock.advanceOneMilli();
+    assertThat(checker.getTldsAndWatermarksPendingDepositForRdeAndBrda()).isEqualTo(
+        ImmutableSetMultimap.of(
+            "lol", PendingDeposit.create(
+                "lol", DateTime.parse("2000-01-01TZ"), FULL, RDE_STAGING, standardDays(1))));
+  }
+
   private static void setCursor(
       final Registry registry, final CursorType cursorType, final DateTime value) {
     CursorDao.saveCursor(Cursor.create(cursorType, value, registry), registry.getTldStr());
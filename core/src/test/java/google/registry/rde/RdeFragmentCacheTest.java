@@ -0,0 +1,126 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.testing.DatastoreHelper.newContactResource;
+
+import com.google.common.collect.ImmutableList;
+import google.registry.model.contact.ContactResource;
+import google.registry.model.rde.RdeMode;
+import google.registry.testing.AppEngineRule;
+import google.registry.xml.ValidationMode;
+import java.util.function.Supplier;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link RdeFragmentCache}. */
+@RunWith(JUnit4.class)
+public class RdeFragmentCacheTest {
+
+  @Rule public final AppEngineRule appEngine = AppEngineRule.builder().withDatastore().build();
+
+  private final RdeMarshaller marshaller = new RdeMarshaller(ValidationMode.LENIENT);
+  private final ContactResource contact = newContactResource("contact_1");
+
+  private int marshalled = 0;
+
+  @Test
+  public void testGet_marshalsOnce() {
+    DepositFragment fragment = getAndSave(contact, RdeMode.FULL, ImmutableList.of());
+    assertThat(marshalled).isEqualTo(1);
+    assertThat(fragment.xml()).contains("contact_1");
+
+    RdeFragmentCache cache = RdeFragmentCache.load(contact);
+    assertThat(
+            cache.get(
+                contact,
+                RdeMode.FULL,
+                ImmutableList.of(),
+                () -> {
+                  throw new AssertionError("Cached fragment was marshalled again");
+                }))
+        .isEqualTo(fragment);
+    assertThat(cache.hits).isEqualTo(1);
+    assertThat(cache.misses).isEqualTo(0);
+  }
+
+  @Test
+  public void testGet_changedResource_marshalsAgain() {
+    getAndSave(contact, RdeMode.FULL, ImmutableList.of());
+    ContactResource changed = contact.asBuilder().setEmailAddress("new@example.tld").build();
+    DepositFragment fragment = getAndSave(changed, RdeMode.FULL, ImmutableList.of());
+    assertThat(marshalled).isEqualTo(2);
+    assertThat(fragment.xml()).contains("new@example.tld");
+
+    // The new fragment replaces the old one.
+    getAndSave(changed, RdeMode.FULL, ImmutableList.of());
+    assertThat(marshalled).isEqualTo(2);
+  }
+
+  @Test
+  public void testGet_changedDependencies_marshalsAgain() {
+    getAndSave(contact, RdeMode.FULL, ImmutableList.of("ns1.example.tld"));
+    getAndSave(contact, RdeMode.FULL, ImmutableList.of("ns1.example.tld"));
+    assertThat(marshalled).isEqualTo(1);
+    getAndSave(contact, RdeMode.FULL, ImmutableList.of("ns2.example.tld"));
+    assertThat(marshalled).isEqualTo(2);
+  }
+
+  @Test
+  public void testGet_modesAreCachedSeparately() {
+    getAndSave(contact, RdeMode.FULL, ImmutableList.of());
+    getAndSave(contact, RdeMode.THIN, ImmutableList.of());
+    assertThat(marshalled).isEqualTo(2);
+    getAndSave(contact, RdeMode.FULL, ImmutableList.of());
+    getAndSave(contact, RdeMode.THIN, ImmutableList.of());
+    assertThat(marshalled).isEqualTo(2);
+  }
+
+  @Test
+  public void testGet_errorsAreNotCached() {
+    Supplier<DepositFragment> failingMarshaller =
+        () -> {
+          marshalled++;
+          return DepositFragment.create(RdeResourceType.CONTACT, "", "Invalid contact");
+        };
+    for (int i = 0; i < 2; i++) {
+      RdeFragmentCache cache = RdeFragmentCache.load(contact);
+      assertThat(cache.get(contact, RdeMode.FULL, ImmutableList.of(), failingMarshaller).error())
+          .isEqualTo("Invalid contact");
+      cache.save();
+    }
+    assertThat(marshalled).isEqualTo(2);
+  }
+
+  /** Gets a fragment of {@code resource} through a new cache, as a new staging run would. */
+  private DepositFragment getAndSave(
+      ContactResource resource, RdeMode mode, ImmutableList<?> dependencies) {
+    RdeFragmentCache cache = RdeFragmentCache.load(resource);
+    DepositFragment fragment =
+        cache.get(
+            resource,
+            mode,
+            dependencies,
+            () -> {
+              marshalled++;
+              return marshaller.marshalContact(resource);
+            });
+    cache.save();
+    return fragment;
+  }
+}
@@ -16,11 +16,18 @@ package google.registry.rde;
 
 import static com.google.common.truth.Truth.assertThat;
 import static google.registry.testing.DatastoreHelper.loadRegistrar;
+import static google.registry.testing.DatastoreHelper.newContactResource;
+import static google.registry.testing.DatastoreHelper.newHostResource;
 import static google.registry.xml.ValidationMode.STRICT;
 
+import com.google.common.collect.ImmutableList;
+import google.registry.model.host.HostResource;
+import google.registry.model.rde.RdeDepositType;
+import google.registry.model.rde.RdeMode;
 import google.registry.testing.AppEngineRule;
 import google.registry.testing.ShardableTestCase;
 import google.registry.xml.XmlTestUtils;
+import org.joda.time.DateTime;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -80,6 +87,44 @@ public class RdeMarshallerTest extends ShardableTestCase {
         "registrar.upDate");
   }
 
+  @Test
+  public void testMarshalDelete_contact_producesDeleteFragment() {
+    DepositFragment fragment =
+        new RdeMarshaller(STRICT).marshalDelete(newContactResource("contact_1"));
+    assertThat(fragment.type()).isEqualTo(RdeResourceType.CONTACT);
+    assertThat(fragment.delete()).isTrue();
+    assertThat(fragment.xml()).contains("<rdeContact:id>contact_1</rdeContact:id>");
+  }
+
+  @Test
+  public void testMarshalDelete_host_isIdentifiedByRoid() {
+    HostResource host = newHostResource("ns1.example.tld");
+    DepositFragment fragment = new RdeMarshaller(STRICT).marshalDelete(host);
+    assertThat(fragment.type()).isEqualTo(RdeResourceType.HOST);
+    assertThat(fragment.xml())
+        .contains(String.format("<rdeHost:roid>%s</rdeHost:roid>", host.getRepoId()));
+  }
+
+  @Test
+  public void testMakeHeader_differentialDeposit_hasDeletesBeforeContents() {
+    RdeMarshaller marshaller = new RdeMarshaller(STRICT);
+    String delete = marshaller.marshalDelete(newContactResource("contact_1")).xml();
+    String header =
+        marshaller.makeHeader(
+            "AAAAAAAAAAAAA",
+            DateTime.parse("2000-01-02TZ"),
+            RdeResourceType.getUris(RdeMode.FULL),
+            0,
+            RdeDepositType.DIFF,
+            "BBBBBBBBBBBBB",
+            ImmutableList.of(delete));
+    assertThat(header).contains("type=\"DIFF\"");
+    assertThat(header).contains("prevId=\"BBBBBBBBBBBBB\"");
+    assertThat(header).endsWith("<rde:contents>\n");
+    assertThat(header.indexOf("<rde:deletes>")).isLessThan(header.indexOf(delete));
+    assertThat(header.indexOf(delete)).isLessThan(header.indexOf("</rde:deletes>"));
+  }
+
   @Test
   public void testMarshalRegistrar_unicodeCharacters_dontGetMangled() {
     DepositFragment fragment =
@@ -51,6 +51,7 @@ import google.registry.model.common.Cursor;
 import google.registry.model.common.Cursor.CursorType;
 import google.registry.model.host.HostResource;
 import google.registry.model.ofy.Ofy;
+import google.registry.model.rde.RdeDepositType;
 import google.registry.model.registry.Registry;
 import google.registry.request.HttpException.BadRequestException;
 import google.registry.request.RequestParameters;
@@ -743,6 +744,75 @@ public class RdeStagingActionTest extends MapreduceTestCase<RdeStagingAction> {
         .isEqualTo(DateTime.parse("1984-12-21TZ"));
   }
 
+  @Test
+  public void testMapReduce_differentialDeposit_containsChangesAndDeletes() throws Exception {
+    clock.setTo(DateTime.parse("1984-12-17T12:00Z"));
+    createTldWithEscrowEnabled("lol");
+    makeHostResource(clock, "ns1.justine.lol", "feed::a:bee");
+    HostResource ns2 = makeHostResource(clock, "ns2.justine.lol", "3.1.33.7");
+    HostResource ns3 = makeHostResource(clock, "ns3.justine.lol", "dead:beef::cafe");
+
+    // Between the previous deposit and this one, ns2 is modified and ns3 is deleted.
+    clock.setTo(DateTime.parse("1984-12-18T12:00Z"));
+    persistResourceWithCommitLog(
+        ns2.asBuilder()
+            .setInetAddresses(ImmutableSet.of(InetAddresses.forString("1.2.3.4")))
+            .build());
+    persistResourceWithCommitLog(ns3.asBuilder().setDeletionTime(clock.nowUtc()).build());
+    setCursor(Registry.get("lol"), RDE_STAGING, DateTime.parse("1984-12-19TZ"));
+    setCursor(Registry.get("lol"), BRDA, DateTime.parse("1984-12-25TZ"));
+
+    clock.setTo(DateTime.parse("1984-12-19T12:00Z")); // Wednesday
+    action.pendingDepositChecker.rdeDifferentialDepositsEnabled = true;
+    action.pendingDepositChecker.rdeFullDepositDayOfWeek = DateTimeConstants.SUNDAY;
+    action.run();
+    executeTasksUntilEmpty("mapreduce", clock);
+
+    String xml = readXml("lol_1984-12-19_diff_S1_R0.xml.ghostryde");
+    // The deletes come before the contents, which only have the host that was modified.
+    String hostDelete = String.format("<rdeHost:roid>%s</rdeHost:roid>", ns3.getRepoId());
+    assertThat(xml).contains("<rde:deletes>");
+    assertThat(xml.indexOf(hostDelete)).isGreaterThan(xml.indexOf("<rde:deletes>"));
+    assertThat(xml.indexOf(hostDelete)).isLessThan(xml.indexOf("</rde:deletes>"));
+    assertThat(xml.indexOf("</rde:deletes>")).isLessThan(xml.indexOf("<rde:contents>"));
+    assertThat(xml).doesNotContain("ns1.justine.lol");
+    assertThat(xml).doesNotContain("ns3.justine.lol");
+
+    XjcRdeDeposit deposit = unmarshal(XjcRdeDeposit.class, xml.getBytes(UTF_8));
+    assertThat(deposit.getType()).isEqualTo(XjcRdeDepositTypeType.DIFF);
+    assertThat(deposit.getPrevId())
+        .isEqualTo(RdeUtil.timestampToId(DateTime.parse("1984-12-18TZ")));
+    XjcRdeHost host = extractAndRemoveContentWithType(XjcRdeHost.class, deposit);
+    assertThat(host.getName()).isEqualTo("ns2.justine.lol");
+    assertThat(host.getAddrs().get(0).getValue()).isEqualTo("1.2.3.4");
+
+    // The header still counts the unchanged host, but not the deleted one.
+    XjcRdeHeader header = extractAndRemoveContentWithType(XjcRdeHeader.class, deposit);
+    assertThat(mapifyCounts(header))
+        .containsExactly(
+            RdeResourceType.CONTACT.getUri(),
+            0L,
+            RdeResourceType.DOMAIN.getUri(),
+            0L,
+            RdeResourceType.HOST.getUri(),
+            2L,
+            RdeResourceType.REGISTRAR.getUri(),
+            2L,
+            RdeResourceType.IDN.getUri(),
+            (long) IdnTableEnum.values().length);
+
+    // The upload and report actions find the deposit through its revision.
+    assertThat(RdeUtil.getStagedDepositType("lol", DateTime.parse("1984-12-19TZ")))
+        .isEqualTo(RdeDepositType.DIFF);
+    assertThat(
+            ofy()
+                .load()
+                .key(Cursor.createKey(RDE_STAGING, Registry.get("lol")))
+                .now()
+                .getCursorTime())
+        .isEqualTo(DateTime.parse("1984-12-20TZ"));
+  }
+
   private void doManualModeMapReduceTest(int revision, ImmutableSet<String> tlds) throws Exception {
     clock.setTo(DateTime.parse("1999-12-31TZ"));
     for (String tld : tlds) {
@@ -0,0 +1,177 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static com.google.common.base.Strings.repeat;
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.io.Closer;
+import google.registry.keyring.api.Keyring;
+import google.registry.testing.BouncyCastleProviderRule;
+import google.registry.testing.FakeKeyringModule;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import org.joda.time.DateTime;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link RydePipe}. */
+@RunWith(JUnit4.class)
+public final class RydePipeTest {
+
+  private static final String LINE = "Fanatics have their dreams, wherewith they weave.\n";
+  private static final DateTime MODIFIED = DateTime.parse("2000-01-01T00:00:00Z");
+
+  @Rule public final BouncyCastleProviderRule bouncy = new BouncyCastleProviderRule();
+
+  private final byte[] data = makeData(1024 * 1024);
+
+  @Test
+  public void testWrite_passesDataThrough() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    Random random = new Random(42);
+    try (OutputStream pipe = new RydePipe("TestPipe", output)) {
+      int off = 0;
+      while (off < data.length) {
+        int len = Math.min(data.length - off, random.nextInt(100_000));
+        if (len == 1) {
+          pipe.write(data[off]);
+        } else {
+          pipe.write(data, off, len);
+        }
+        off += len;
+      }
+    }
+    assertThat(output.toByteArray()).isEqualTo(data);
+  }
+
+  @Test
+  public void testFlush_reachesWrappedStream() throws Exception {
+    FlushCountingOutputStream output = new FlushCountingOutputStream();
+    try (OutputStream pipe = new RydePipe("TestPipe", output)) {
+      pipe.write(data, 0, 10);
+      pipe.flush();
+      pipe.write(data, 10, 10);
+      pipe.flush();
+    }
+    assertThat(output.flushes).isEqualTo(2);
+    assertThat(output.flushedSize).isEqualTo(20);
+  }
+
+  @Test
+  public void testClose_doesNotCloseWrappedStream() throws Exception {
+    FlushCountingOutputStream output = new FlushCountingOutputStream();
+    new RydePipe("TestPipe", output).close();
+    output.write(1);
+    assertThat(output.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testCompression_sameOutputAsSerial() throws Exception {
+    assertThat(compress(true)).isEqualTo(compress(false));
+  }
+
+  @Test
+  public void testGhostryde_pipelinedRoundTrip() throws Exception {
+    Keyring keyring = new FakeKeyringModule().get();
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    ByteArrayOutputStream lengthOutput = new ByteArrayOutputStream();
+    try (OutputStream encoder =
+        Ghostryde.encoder(output, keyring.getRdeStagingEncryptionKey(), lengthOutput, true)) {
+      encoder.write(data);
+    }
+    assertThat(Ghostryde.decode(output.toByteArray(), keyring.getRdeStagingDecryptionKey()))
+        .isEqualTo(data);
+    assertThat(lengthOutput.toString(UTF_8.name())).isEqualTo(Integer.toString(data.length));
+  }
+
+  @Test
+  public void testFailure_wrappedStreamThrows() throws Exception {
+    OutputStream output =
+        new OutputStream() {
+          @Override
+          public void write(int b) throws IOException {
+            throw new IOException("Disk full");
+          }
+        };
+    OutputStream pipe = new RydePipe("TestPipe", output);
+    // Write more than the queue holds, to check that a failure doesn't block the writer.
+    for (int i = 0; i < 32; i++) {
+      try {
+        pipe.write(data);
+      } catch (IOException e) {
+        break;
+      }
+    }
+    IOException thrown = assertThrows(IOException.class, pipe::close);
+    assertThat(thrown).hasMessageThat().contains("TestPipe");
+    assertThat(thrown).hasCauseThat().hasMessageThat().isEqualTo("Disk full");
+  }
+
+  @Test
+  public void testFailure_writeAfterClose() throws Exception {
+    OutputStream pipe = new RydePipe("TestPipe", new ByteArrayOutputStream());
+    pipe.close();
+    assertThrows(IllegalStateException.class, () -> pipe.write(1));
+  }
+
+  /** Runs the data through the file and compression layers, optionally with a pipe in between. */
+  private byte[] compress(boolean pipelined) throws IOException {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    Closer closer = Closer.create();
+    try {
+      OutputStream kompressor = closer.register(RydeCompression.openCompressor(output));
+      if (pipelined) {
+        kompressor = closer.register(new RydePipe("TestPipe", kompressor));
+      }
+      OutputStream fileLayer =
+          closer.register(RydeFileEncoding.openPgpFileWriter(kompressor, "test.xml", MODIFIED));
+      fileLayer.write(data);
+    } finally {
+      closer.close();
+    }
+    return output.toByteArray();
+  }
+
+  /** Returns compressible but varied test data. */
+  private static byte[] makeData(int size) {
+    Random random = new Random(1);
+    StringBuilder builder = new StringBuilder(size + 100);
+    while (builder.length() < size) {
+      builder
+          .append(repeat(LINE, random.nextInt(3)))
+          .append(random.nextLong())
+          .append('\n');
+    }
+    return builder.substring(0, size).getBytes(UTF_8);
+  }
+
+  private static class FlushCountingOutputStream extends ByteArrayOutputStream {
+    int flushes;
+    int flushedSize;
+
+    @Override
+    public void flush() {
+      flushes++;
+      flushedSize = size();
+    }
+  }
+}
@@ -22,6 +22,8 @@ import static java.util.Collections.unmodifiableMap;
 import com.google.common.base.Throwables;
 import com.google.common.net.MediaType;
 import google.registry.request.Response;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
 import org.joda.time.DateTime;
@@ -32,6 +34,7 @@ public final class FakeResponse implements Response {
   private int status = 200;
   private MediaType contentType = MediaType.HTML_UTF_8;
   private String payload = "";
+  private StringWriter payloadWriter;
   private final Map<String, Object> headers = new HashMap<>();
   private boolean wasMutuallyExclusiveResponseSet;
   private String lastResponseStackTrace;
@@ -45,7 +48,7 @@ public final class FakeResponse implements Response {
   }
 
   public String getPayload() {
-    return payload;
+    return (payloadWriter == null) ? payload : payloadWriter.toString();
   }
 
   public Map<String, Object> getHeaders() {
@@ -61,9 +64,9 @@ public final class FakeResponse implements Response {
   @Override
   public void setContentType(MediaType contentType) {
     checkArgument(
-        payload.isEmpty(),
+        getPayload().isEmpty(),
         "setContentType must be called before setPayload; payload is: %s",
-        payload);
+        getPayload());
     this.contentType = checkNotNull(contentType);
   }
 
@@ -73,6 +76,13 @@ public final class FakeResponse implements Response {
     this.payload = checkNotNull(payload);
   }
 
+  @Override
+  public Writer getPayloadWriter() {
+    checkResponsePerformedOnce();
+    payloadWriter = new StringWriter();
+    return payloadWriter;
+  }
+
   @Override
   public void setHeader(String header, String value) {
     headers.put(checkNotNull(header), checkNotNull(value));
@@ -18,6 +18,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import google.registry.model.EppResource;
 import google.registry.model.index.ForeignKeyIndex;
+import google.registry.model.index.ForeignKeyIndexFilter;
 import google.registry.model.registry.label.PremiumList;
 import java.util.Map;
 import java.util.Optional;
@@ -67,6 +68,13 @@ public class TestCacheRule extends ExternalResource {
       return this;
     }
 
+    public Builder withForeignKeyIndexFilter(Duration refresh) {
+      cacheHandlerMap.put(
+          "ForeignKeyIndexFilter.cacheFilters",
+          new TestCacheHandler(ForeignKeyIndexFilter::setCacheForTest, refresh));
+      return this;
+    }
+
     public Builder withPremiumListsCache(Duration expiry) {
       cacheHandlerMap.put(
           "PremiumList.cachePremiumLists",
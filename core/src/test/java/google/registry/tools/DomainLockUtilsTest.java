@@ -37,10 +37,12 @@ import static org.mockito.Mockito.mock;
 import com.google.common.collect.ImmutableList;
 import google.registry.batch.AsyncTaskEnqueuerTest;
 import google.registry.batch.RelockDomainAction;
+import google.registry.config.RegistryConfig;
 import google.registry.model.billing.BillingEvent;
 import google.registry.model.billing.BillingEvent.Reason;
 import google.registry.model.domain.DomainBase;
 import google.registry.model.host.HostResource;
+import google.registry.model.index.ForeignKeyIndex;
 import google.registry.model.registry.Registry;
 import google.registry.model.reporting.HistoryEntry;
 import google.registry.schema.domain.RegistryLock;
@@ -49,6 +51,7 @@ import google.registry.testing.DatastoreHelper;
 import google.registry.testing.DeterministicStringGenerator;
 import google.registry.testing.FakeClock;
 import google.registry.testing.TaskQueueHelper.TaskMatcher;
+import google.registry.testing.TestCacheRule;
 import google.registry.testing.UserInfo;
 import google.registry.util.AppEngineServiceUtils;
 import google.registry.util.StringGenerator.Alphabets;
@@ -86,6 +89,10 @@ public final class DomainLockUtilsTest {
           .withUserService(UserInfo.create(POC_ID, "12345"))
           .build();
 
+  @Rule
+  public final TestCacheRule testCacheRule =
+      new TestCacheRule.Builder().withForeignKeyIndexFilter(standardDays(1)).build();
+
   private DomainBase domain;
 
   @Before
@@ -271,6 +278,24 @@ public final class DomainLockUtilsTest {
                 standardDays(6).plus(standardSeconds(30))));
   }
 
+  @Test
+  public void testSuccess_createLock_domainMissedByForeignKeyFilter() {
+    RegistryConfig.overrideIsForeignKeyIndexFilterEnabledForTesting(true);
+    try {
+      // The filter is built before the domain is created, as if it was created on another instance.
+      assertThat(
+              ForeignKeyIndex.loadCached(
+                  DomainBase.class, ImmutableList.of("new.tld"), clock.nowUtc()))
+          .isEmpty();
+      persistResource(newDomainBase("new.tld"));
+      RegistryLock lock =
+          domainLockUtils.saveNewRegistryLockRequest("new.tld", "TheRegistrar", POC_ID, false);
+      assertThat(lock.getDomainName()).isEqualTo("new.tld");
+    } finally {
+      RegistryConfig.overrideIsForeignKeyIndexFilterEnabledForTesting(false);
+    }
+  }
+
   @Test
   public void testFailure_createUnlock_alreadyPendingUnlock() {
     RegistryLock lock =
@@ -23,6 +23,7 @@ import static google.registry.whois.WhoisTestData.loadFile;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import google.registry.config.RegistryConfig;
 import google.registry.model.contact.ContactAddress;
 import google.registry.model.contact.ContactPhoneNumber;
 import google.registry.model.contact.ContactResource;
@@ -40,7 +41,9 @@ import google.registry.persistence.VKey;
 import google.registry.testing.AppEngineRule;
 import google.registry.testing.FakeClock;
 import google.registry.whois.WhoisResponse.WhoisResponseResults;
+import java.util.Optional;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -310,4 +313,44 @@ public class DomainWhoisResponseTest {
                 .plainTextOutput())
         .contains("Domain Status: ok");
   }
+
+  @Test
+  public void testCachedResponse_isServedUntilDomainChanges() {
+    boolean origIsCachingEnabled = RegistryConfig.isWhoisResponseCachingEnabled();
+    try {
+      RegistryConfig.overrideIsWhoisResponseCachingEnabledForTesting(true);
+      DomainWhoisResponseCache.setCacheForTest(Optional.of(Duration.standardDays(1)));
+      String expected = loadFile("whois_domain.txt");
+      assertThat(getPlainTextOutput(domainBase)).isEqualTo(expected);
+
+      // Changes to the nameservers aren't visible while the rendered response is cached.
+      persistResource(hostResource1.asBuilder().setHostName("ns03.exampleregistrar.tld").build());
+      assertThat(getPlainTextOutput(domainBase)).isEqualTo(expected);
+
+      // The time of the query is still rendered for each query.
+      clock.advanceOneMilli();
+      assertThat(getPlainTextOutput(domainBase))
+          .isEqualTo(expected.replace("2009-05-29T20:15:00Z", "2009-05-29T20:15:00.001Z"));
+
+      // A change to the domain itself re-renders the response.
+      assertThat(
+              getPlainTextOutput(
+                  domainBase
+                      .asBuilder()
+                      .setStatusValues(ImmutableSet.of(StatusValue.CLIENT_HOLD))
+                      .build()))
+          .contains("Domain Status: clientHold");
+    } finally {
+      RegistryConfig.overrideIsWhoisResponseCachingEnabledForTesting(origIsCachingEnabled);
+      DomainWhoisResponseCache.setCacheForTest(Optional.empty());
+    }
+  }
+
+  private String getPlainTextOutput(DomainBase domain) {
+    return new DomainWhoisResponse(domain, false, "Please contact registrar", clock.nowUtc())
+        .getResponse(
+            false,
+            "Doodle Disclaimer\nI exist so that carriage return\nin disclaimer can be tested.")
+        .plainTextOutput();
+  }
 }
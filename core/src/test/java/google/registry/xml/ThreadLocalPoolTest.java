@@ -0,0 +1,79 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.xml;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ThreadLocalPool}. */
+@RunWith(JUnit4.class)
+public class ThreadLocalPoolTest {
+
+  private final AtomicInteger created = new AtomicInteger();
+  private final ThreadLocalPool<Object> pool =
+      new ThreadLocalPool<>(
+          "object",
+          () -> {
+            created.incrementAndGet();
+            return new Object();
+          });
+
+  @Test
+  public void testBorrow_emptyPool_createsInstance() throws Exception {
+    assertThat(pool.borrow()).isNotNull();
+    assertThat(created.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testBorrow_afterRelease_reusesInstance() throws Exception {
+    Object instance = pool.borrow();
+    pool.release(instance);
+    assertThat(pool.borrow()).isSameInstanceAs(instance);
+    assertThat(created.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testBorrow_instanceInUse_createsNewInstance() throws Exception {
+    Object instance = pool.borrow();
+    assertThat(pool.borrow()).isNotSameInstanceAs(instance);
+    assertThat(created.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testBorrow_withoutRelease_doesNotReuseInstance() throws Exception {
+    Object instance = pool.borrow();
+    pool.release(instance);
+    pool.borrow();
+    assertThat(pool.borrow()).isNotSameInstanceAs(instance);
+    assertThat(created.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testBorrow_otherThread_doesNotShareInstance() throws Exception {
+    Object instance = pool.borrow();
+    pool.release(instance);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    Object otherThreadInstance = executor.submit(() -> pool.borrow()).get();
+    executor.shutdown();
+    assertThat(otherThreadInstance).isNotSameInstanceAs(instance);
+    assertThat(pool.borrow()).isSameInstanceAs(instance);
+  }
+}
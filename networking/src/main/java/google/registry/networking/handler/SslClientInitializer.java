@@ -24,6 +24,10 @@ import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.ssl.SslProvider;
@@ -55,6 +59,8 @@ public class SslClientInitializer<C extends Channel> extends ChannelInitializer<
   // The following two suppliers only need be none-null when client authentication is required.
   private final Supplier<PrivateKey> privateKeySupplier;
   private final Supplier<ImmutableList<X509Certificate>> certificateChainSupplier;
+  // The protocols to offer with ALPN, in order of preference, or empty to not use ALPN.
+  private final ImmutableList<String> applicationProtocols;
 
   public static SslClientInitializer<NioSocketChannel>
       createSslClientInitializerWithSystemTrustStore(
@@ -64,6 +70,23 @@ public class SslClientInitializer<C extends Channel> extends ChannelInitializer<
     return new SslClientInitializer<>(sslProvider, hostProvider, portProvider, null, null, null);
   }
 
+  /**
+   * Creates an initializer that trusts the system trust store and offers the given application
+   * protocols with ALPN, e. g. {@code h2} for HTTP/2.
+   *
+   * <p>The protocol that the server selects can be read from {@link
+   * SslHandler#applicationProtocol} after the handshake completes.
+   */
+  public static SslClientInitializer<NioSocketChannel>
+      createSslClientInitializerWithSystemTrustStoreAndApplicationProtocols(
+          SslProvider sslProvider,
+          Function<Channel, String> hostProvider,
+          Function<Channel, Integer> portProvider,
+          ImmutableList<String> applicationProtocols) {
+    return new SslClientInitializer<>(
+        sslProvider, hostProvider, portProvider, null, null, null, applicationProtocols);
+  }
+
   public static SslClientInitializer<NioSocketChannel>
       createSslClientInitializerWithSystemTrustStoreAndClientAuthentication(
           SslProvider sslProvider,
@@ -88,6 +111,25 @@ public class SslClientInitializer<C extends Channel> extends ChannelInitializer<
       ImmutableList<X509Certificate> trustedCertificates,
       Supplier<PrivateKey> privateKeySupplier,
       Supplier<ImmutableList<X509Certificate>> certificateChainSupplier) {
+    this(
+        sslProvider,
+        hostProvider,
+        portProvider,
+        trustedCertificates,
+        privateKeySupplier,
+        certificateChainSupplier,
+        ImmutableList.of());
+  }
+
+  @VisibleForTesting
+  SslClientInitializer(
+      SslProvider sslProvider,
+      Function<Channel, String> hostProvider,
+      Function<Channel, Integer> portProvider,
+      ImmutableList<X509Certificate> trustedCertificates,
+      Supplier<PrivateKey> privateKeySupplier,
+      Supplier<ImmutableList<X509Certificate>> certificateChainSupplier,
+      ImmutableList<String> applicationProtocols) {
     logger.atInfo().log("Client SSL Provider: %s", sslProvider);
     this.sslProvider = sslProvider;
     this.hostProvider = hostProvider;
@@ -95,6 +137,7 @@ public class SslClientInitializer<C extends Channel> extends ChannelInitializer<
     this.trustedCertificates = trustedCertificates;
     this.privateKeySupplier = privateKeySupplier;
     this.certificateChainSupplier = certificateChainSupplier;
+    this.applicationProtocols = applicationProtocols;
   }
 
   @Override
@@ -115,6 +158,15 @@ public class SslClientInitializer<C extends Channel> extends ChannelInitializer<
           privateKeySupplier.get(), certificateChainSupplier.get().toArray(new X509Certificate[0]));
     }
 
+    if (!applicationProtocols.isEmpty()) {
+      sslContextBuilder.applicationProtocolConfig(
+          new ApplicationProtocolConfig(
+              Protocol.ALPN,
+              SelectorFailureBehavior.NO_ADVERTISE,
+              SelectedListenerFailureBehavior.ACCEPT,
+              applicationProtocols));
+    }
+
     SslHandler sslHandler =
         sslContextBuilder
             .build()
@@ -28,6 +28,10 @@ import io.netty.channel.ChannelPipeline;
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.channel.local.LocalAddress;
 import io.netty.channel.local.LocalChannel;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
 import io.netty.handler.ssl.ClientAuth;
 import io.netty.handler.ssl.OpenSsl;
 import io.netty.handler.ssl.SniHandler;
@@ -99,11 +103,28 @@ public class SslClientInitializerTest {
   private ChannelHandler getServerHandler(
       boolean requireClientCert, PrivateKey privateKey, X509Certificate certificate)
       throws Exception {
-    SslContext sslContext =
+    return getServerHandler(requireClientCert, privateKey, certificate, ImmutableList.of());
+  }
+
+  private ChannelHandler getServerHandler(
+      boolean requireClientCert,
+      PrivateKey privateKey,
+      X509Certificate certificate,
+      ImmutableList<String> applicationProtocols)
+      throws Exception {
+    SslContextBuilder sslContextBuilder =
         SslContextBuilder.forServer(privateKey, certificate)
             .trustManager(InsecureTrustManagerFactory.INSTANCE)
-            .clientAuth(requireClientCert ? ClientAuth.REQUIRE : ClientAuth.NONE)
-            .build();
+            .clientAuth(requireClientCert ? ClientAuth.REQUIRE : ClientAuth.NONE);
+    if (!applicationProtocols.isEmpty()) {
+      sslContextBuilder.applicationProtocolConfig(
+          new ApplicationProtocolConfig(
+              Protocol.ALPN,
+              SelectorFailureBehavior.NO_ADVERTISE,
+              SelectedListenerFailureBehavior.ACCEPT,
+              applicationProtocols));
+    }
+    SslContext sslContext = sslContextBuilder.build();
     return new SniHandler(
         hostname -> {
           sniHostReceived = hostname;
@@ -197,6 +218,56 @@ public class SslClientInitializerTest {
     assertThat(sniHostReceived).isEqualTo(SSL_HOST);
   }
 
+  @Test
+  public void testSuccess_applicationProtocols_serverSelectsOfferedProtocol() throws Exception {
+    LocalAddress localAddress = new LocalAddress("APPLICATION_PROTOCOLS_SELECTED_" + sslProvider);
+    SelfSignedCaCertificate ssc = SelfSignedCaCertificate.create(SSL_HOST);
+    nettyRule.setUpServer(
+        localAddress,
+        getServerHandler(false, ssc.key(), ssc.cert(), ImmutableList.of("h2", "http/1.1")));
+
+    // The client prefers h2, which the server supports as well.
+    SslClientInitializer<LocalChannel> sslClientInitializer =
+        new SslClientInitializer<>(
+            sslProvider,
+            hostProvider,
+            portProvider,
+            ImmutableList.of(ssc.cert()),
+            null,
+            null,
+            ImmutableList.of("h2", "http/1.1"));
+    nettyRule.setUpClient(localAddress, sslClientInitializer);
+
+    setUpSslChannel(nettyRule.getClientChannel(), ssc.cert());
+    nettyRule.assertThatMessagesWork();
+    assertThat(nettyRule.getClientChannel().pipeline().get(SslHandler.class).applicationProtocol())
+        .isEqualTo("h2");
+  }
+
+  @Test
+  public void testSuccess_applicationProtocols_serverWithoutAlpn() throws Exception {
+    LocalAddress localAddress = new LocalAddress("APPLICATION_PROTOCOLS_NO_ALPN_" + sslProvider);
+    SelfSignedCaCertificate ssc = SelfSignedCaCertificate.create(SSL_HOST);
+    nettyRule.setUpServer(localAddress, getServerHandler(false, ssc.key(), ssc.cert()));
+
+    // The handshake still succeeds, but no application protocol is selected.
+    SslClientInitializer<LocalChannel> sslClientInitializer =
+        new SslClientInitializer<>(
+            sslProvider,
+            hostProvider,
+            portProvider,
+            ImmutableList.of(ssc.cert()),
+            null,
+            null,
+            ImmutableList.of("h2"));
+    nettyRule.setUpClient(localAddress, sslClientInitializer);
+
+    setUpSslChannel(nettyRule.getClientChannel(), ssc.cert());
+    nettyRule.assertThatMessagesWork();
+    assertThat(nettyRule.getClientChannel().pipeline().get(SslHandler.class).applicationProtocol())
+        .isNull();
+  }
+
   @Test
   public void testFailure_customTrustManager_serverCertExpired() throws Exception {
     LocalAddress localAddress =
@@ -0,0 +1,265 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.processors;
+
+import com.google.common.collect.Ordering;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.annotation.processing.SupportedSourceVersion;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Annotation processor that generates a {@code JsonableSerializer} for the subclasses of {@code
+ * AbstractJsonableObject}.
+ *
+ * <p>The serializer of {@code Outer.Inner} is named {@code JsonableSerializer_Outer_Inner}. It
+ * reads the {@code JsonableElement} members of the class and its superclasses directly, in the
+ * same order as the reflective implementation: fields sorted by name, then methods sorted by name,
+ * with overridden methods only read once.
+ *
+ * <p>No serializer is generated for a class whose members can't all be read from a class in its
+ * package (such as private members, or classes nested in private classes), or for generic
+ * classes. The members of those are still read with reflection.
+ */
+@SupportedAnnotationTypes(JsonableSerializerProcessor.JSONABLE_ELEMENT)
+@SupportedSourceVersion(SourceVersion.RELEASE_8)
+public class JsonableSerializerProcessor extends AbstractProcessor {
+
+  static final String JSONABLE_ELEMENT =
+      "google.registry.rdap.AbstractJsonableObject.JsonableElement";
+
+  private static final String JSONABLE_OBJECT_PACKAGE = "google.registry.rdap";
+  private static final String JSONABLE_OBJECT_CLASS = "AbstractJsonableObject";
+  private static final String SERIALIZER_CLASS_NAME_TEMP = "JsonableSerializer_%s";
+
+  private static final ClassName SERIALIZER_INTERFACE =
+      ClassName.get(JSONABLE_OBJECT_PACKAGE, JSONABLE_OBJECT_CLASS, "JsonableSerializer");
+  private static final ClassName JSON_OBJECT_BUILDER =
+      ClassName.get(JSONABLE_OBJECT_PACKAGE, JSONABLE_OBJECT_CLASS, "JsonObjectBuilder");
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    TypeElement jsonableObject =
+        getElementUtils().getTypeElement(JSONABLE_OBJECT_PACKAGE + "." + JSONABLE_OBJECT_CLASS);
+    if (jsonableObject == null) {
+      return false;
+    }
+    // Classes that don't declare any elements themselves, such as the AutoValue classes that are
+    // generated in later rounds, also get a serializer, so all root elements are searched.
+    List<TypeElement> types = new ArrayList<>();
+    addTypes(ElementFilter.typesIn(roundEnv.getRootElements()), types);
+    for (TypeElement type : types) {
+      if (type.equals(jsonableObject)
+          || !getTypeUtils()
+              .isSubtype(
+                  getTypeUtils().erasure(type.asType()),
+                  getTypeUtils().erasure(jsonableObject.asType()))) {
+        continue;
+      }
+      createSerializer(type)
+          .ifPresent(
+              javaFile -> {
+                try {
+                  javaFile.writeTo(processingEnv.getFiler());
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              });
+    }
+    return false;
+  }
+
+  /** Adds the given types, and all the types nested in them, to a list. */
+  private static void addTypes(Iterable<TypeElement> types, List<TypeElement> allTypes) {
+    for (TypeElement type : types) {
+      allTypes.add(type);
+      addTypes(ElementFilter.typesIn(type.getEnclosedElements()), allTypes);
+    }
+  }
+
+  /** Returns the serializer of the given class, or empty if it can't have one. */
+  private Optional<JavaFile> createSerializer(TypeElement type) {
+    String packageName = getElementUtils().getPackageOf(type).getQualifiedName().toString();
+    if (!packageName.equals(JSONABLE_OBJECT_PACKAGE) || !type.getTypeParameters().isEmpty()) {
+      return Optional.empty();
+    }
+    List<String> simpleNames = new ArrayList<>();
+    for (Element element = type;
+        !(element instanceof PackageElement);
+        element = element.getEnclosingElement()) {
+      if (element.getModifiers().contains(Modifier.PRIVATE)) {
+        return Optional.empty();
+      }
+      simpleNames.add(0, element.getSimpleName().toString());
+    }
+
+    List<Element> fields = new ArrayList<>();
+    List<Element> methods = new ArrayList<>();
+    Set<String> methodNames = new HashSet<>();
+    for (Optional<TypeElement> clazz = Optional.of(type);
+        clazz.isPresent();
+        clazz = getSuperclass(clazz.get())) {
+      for (Element element : clazz.get().getEnclosedElements()) {
+        if (!getJsonableElement(element).isPresent()) {
+          continue;
+        }
+        if (!isAccessibleFrom(element, packageName)) {
+          return Optional.empty();
+        }
+        if (element.getKind() == ElementKind.FIELD) {
+          fields.add(element);
+        } else if (element.getKind() == ElementKind.METHOD) {
+          if (!((ExecutableElement) element).getParameters().isEmpty()) {
+            // Let the reflective implementation report the error.
+            return Optional.empty();
+          }
+          // A method that is overridden in a subclass is only read once.
+          if (methodNames.add(element.getSimpleName().toString())) {
+            methods.add(element);
+          }
+        }
+      }
+    }
+    if (fields.isEmpty() && methods.isEmpty()) {
+      return Optional.empty();
+    }
+
+    ClassName typeName = ClassName.get(type);
+    MethodSpec.Builder addElements =
+        MethodSpec.methodBuilder("addElements")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(typeName, "object")
+            .addParameter(JSON_OBJECT_BUILDER, "builder");
+    Ordering<Element> byName = Ordering.natural().onResultOf(e -> e.getSimpleName().toString());
+    for (Element field : byName.sortedCopy(fields)) {
+      addElements.addStatement(
+          "builder.add($S, $S, $L)",
+          getElementName(field),
+          describe(field, ""),
+          readMember(field, typeName));
+    }
+    for (Element method : byName.sortedCopy(methods)) {
+      addElements.addStatement(
+          "builder.add($S, $S, $L())",
+          getElementName(method),
+          describe(method, "()"),
+          readMember(method, typeName));
+    }
+
+    TypeSpec serializer =
+        TypeSpec.classBuilder(
+                String.format(SERIALIZER_CLASS_NAME_TEMP, String.join("_", simpleNames)))
+            .addModifiers(Modifier.FINAL)
+            .addSuperinterface(ParameterizedTypeName.get(SERIALIZER_INTERFACE, typeName))
+            .addMethod(addElements.build())
+            .build();
+    return Optional.of(JavaFile.builder(packageName, serializer).build());
+  }
+
+  /** Returns the expression that reads a member, without the parentheses of a method call. */
+  private static CodeBlock readMember(Element member, ClassName typeName) {
+    String memberName = member.getSimpleName().toString();
+    return member.getModifiers().contains(Modifier.STATIC)
+        ? CodeBlock.of("$T.$N", typeName, memberName)
+        : CodeBlock.of("object.$N", memberName);
+  }
+
+  private Optional<TypeElement> getSuperclass(TypeElement type) {
+    TypeMirror superclass = type.getSuperclass();
+    return superclass.getKind() == TypeKind.DECLARED
+        ? Optional.of((TypeElement) ((DeclaredType) superclass).asElement())
+        : Optional.empty();
+  }
+
+  /** Returns whether a member can be read by a class in the given package that isn't a subclass. */
+  private boolean isAccessibleFrom(Element member, String packageName) {
+    Set<Modifier> modifiers = member.getModifiers();
+    if (modifiers.contains(Modifier.PRIVATE)) {
+      return false;
+    }
+    return modifiers.contains(Modifier.PUBLIC)
+        || getElementUtils()
+            .getPackageOf(member)
+            .getQualifiedName()
+            .contentEquals(packageName);
+  }
+
+  /** Returns the {@code JsonableElement} annotation of a member, if it has one. */
+  private static Optional<AnnotationMirror> getJsonableElement(Element element) {
+    return element.getAnnotationMirrors().stream()
+        .filter(
+            annotation ->
+                ((TypeElement) annotation.getAnnotationType().asElement())
+                    .getQualifiedName()
+                    .contentEquals(JSONABLE_ELEMENT))
+        .map(annotation -> (AnnotationMirror) annotation)
+        .findFirst();
+  }
+
+  /**
+   * Returns the name of the element, which is the name of the member unless the {@code
+   * JsonableElement} overrides it.
+   */
+  private static String getElementName(Element member) {
+    return getJsonableElement(member).get().getElementValues().entrySet().stream()
+        .filter(entry -> entry.getKey().getSimpleName().contentEquals("value"))
+        .map(entry -> (String) entry.getValue().getValue())
+        .filter(value -> !value.isEmpty())
+        .findFirst()
+        .orElse(member.getSimpleName().toString());
+  }
+
+  /** Describes a member for error messages. */
+  private static String describe(Element member, String suffix) {
+    return String.format(
+        "%s.%s%s", member.getEnclosingElement().getSimpleName(), member.getSimpleName(), suffix);
+  }
+
+  private Elements getElementUtils() {
+    return processingEnv.getElementUtils();
+  }
+
+  private Types getTypeUtils() {
+    return processingEnv.getTypeUtils();
+  }
+}
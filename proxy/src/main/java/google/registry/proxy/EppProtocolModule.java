@@ -16,6 +16,7 @@ package google.registry.proxy;
 
 import static google.registry.util.ResourceUtils.readResourceBytes;
 
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableList;
 import dagger.Module;
 import dagger.Provides;
@@ -32,8 +33,8 @@ import google.registry.proxy.handler.RelayHandler.FullHttpRequestRelayHandler;
 import google.registry.proxy.metric.FrontendMetrics;
 import google.registry.proxy.quota.QuotaConfig;
 import google.registry.proxy.quota.QuotaManager;
+import google.registry.proxy.quota.SharedTokenCounter;
 import google.registry.proxy.quota.TokenStore;
-import google.registry.util.Clock;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
@@ -44,7 +45,6 @@ import java.io.IOException;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Supplier;
 import javax.inject.Named;
 import javax.inject.Provider;
@@ -169,8 +169,12 @@ public final class EppProtocolModule {
   @Provides
   @EppProtocol
   static TokenStore provideTokenStore(
-      ProxyConfig config, ScheduledExecutorService refreshExecutor, Clock clock) {
-    return new TokenStore(new QuotaConfig(config.epp.quota, PROTOCOL_NAME), refreshExecutor, clock);
+      ProxyConfig config,
+      Ticker ticker,
+      SharedTokenCounter sharedCounter,
+      ExecutorService executorService) {
+    return new TokenStore(
+        new QuotaConfig(config.epp.quota, PROTOCOL_NAME), ticker, sharedCounter, executorService);
   }
 
   @Provides
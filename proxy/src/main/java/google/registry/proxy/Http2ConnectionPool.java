@@ -0,0 +1,268 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static google.registry.proxy.Protocol.PROTOCOL_KEY;
+import static google.registry.proxy.handler.RelayHandler.RELAY_CHANNEL_KEY;
+
+import com.google.common.flogger.FluentLogger;
+import google.registry.proxy.Protocol.BackendProtocol;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.handler.ssl.SslHandshakeCompletionEvent;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import java.nio.channels.ClosedChannelException;
+import javax.inject.Provider;
+
+/**
+ * A pool of HTTP/2 connections to a {@link BackendProtocol}, over which relay channels are opened
+ * as streams.
+ *
+ * <p>Each pool belongs to an {@link EventLoop}, and its connections are registered with it. The
+ * streams are handled by the same thread as the client connections that they relay, just like
+ * dedicated relay connections, so none of the relay state needs to be synchronized. All the methods
+ * of the pool must be called from its event loop.
+ *
+ * <p>The pool keeps a fixed number of connections. They are opened by {@link #warmUp} when the
+ * proxy starts, so that the first clients don't wait for TCP and SSL handshakes. A connection that
+ * is closed, or that the backend has sent a GOAWAY on, is replaced the next time a stream is
+ * opened. Each stream is opened on the connection that carries the fewest active streams.
+ */
+final class Http2ConnectionPool {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private final EventLoop eventLoop;
+  private final BackendProtocol protocol;
+  private final Bootstrap bootstrap;
+
+  /**
+   * The connections of the pool, which are only succeeded once HTTP/2 is negotiated.
+   *
+   * <p>A null element is a connection that hasn't been opened yet.
+   */
+  private final Future<Channel>[] connections;
+
+  @SuppressWarnings("unchecked")
+  Http2ConnectionPool(
+      EventLoop eventLoop,
+      NetworkTransport transport,
+      ByteBufAllocator allocator,
+      BackendProtocol protocol,
+      int size) {
+    checkArgument(protocol.isMultiplexed(), "Protocol %s is not multiplexed", protocol.name());
+    checkArgument(size > 0, "The pool of %s must have at least one connection", protocol.name());
+    this.eventLoop = eventLoop;
+    this.protocol = protocol;
+    this.bootstrap =
+        new Bootstrap()
+            .group(eventLoop)
+            .channel(transport.channelClass())
+            .option(ChannelOption.SO_KEEPALIVE, true)
+            .option(ChannelOption.ALLOCATOR, allocator)
+            .attr(PROTOCOL_KEY, protocol);
+    this.connections = (Future<Channel>[]) new Future<?>[size];
+  }
+
+  /** Opens all the connections of the pool that are not open yet. */
+  void warmUp() {
+    replaceUnusableConnections();
+  }
+
+  /**
+   * Opens a stream that relays to and from the given channel.
+   *
+   * <p>The stream channel is initialized by the given handler, and its relay channel is set to the
+   * relayed channel, just like a dedicated relay connection.
+   */
+  Future<Http2StreamChannel> openStream(Channel relayedChannel, ChannelHandler streamHandler) {
+    Promise<Http2StreamChannel> streamPromise = eventLoop.newPromise();
+    Future<Channel> unusedFuture =
+        acquireConnection()
+            .addListener(
+                (Future<Channel> connectionFuture) -> {
+                  if (!connectionFuture.isSuccess()) {
+                    streamPromise.setFailure(connectionFuture.cause());
+                    return;
+                  }
+                  Future<Http2StreamChannel> unusedStreamFuture =
+                      new Http2StreamChannelBootstrap(connectionFuture.getNow())
+                          .handler(streamHandler)
+                          .attr(PROTOCOL_KEY, protocol)
+                          .attr(RELAY_CHANNEL_KEY, relayedChannel)
+                          .open(streamPromise);
+                });
+    return streamPromise;
+  }
+
+  /**
+   * Returns the usable connection with the fewest active streams.
+   *
+   * <p>If there is none, the connections that are being opened are waited for. If there are none
+   * of those either, because every connection that was just opened failed right away, the returned
+   * future is failed.
+   */
+  private Future<Channel> acquireConnection() {
+    replaceUnusableConnections();
+    Channel leastBusyConnection = null;
+    Future<Channel> pendingConnection = null;
+    Throwable connectionFailure = null;
+    for (Future<Channel> connection : connections) {
+      if (!connection.isDone()) {
+        if (pendingConnection == null) {
+          pendingConnection = connection;
+        }
+      } else if (!connection.isSuccess()) {
+        connectionFailure = connection.cause();
+      } else if (isUsable(connection.getNow())
+          && (leastBusyConnection == null
+              || activeStreams(connection.getNow()) < activeStreams(leastBusyConnection))) {
+        leastBusyConnection = connection.getNow();
+      }
+    }
+    if (leastBusyConnection != null) {
+      return eventLoop.newSucceededFuture(leastBusyConnection);
+    }
+    if (pendingConnection != null) {
+      return pendingConnection;
+    }
+    return eventLoop.newFailedFuture(
+        new IllegalStateException(
+            "No HTTP/2 connection is available for " + protocol.name(), connectionFailure));
+  }
+
+  /**
+   * Opens a new connection in place of each one that is not usable anymore.
+   *
+   * <p>After this method returns, each connection is either usable or being opened.
+   */
+  private void replaceUnusableConnections() {
+    for (int i = 0; i < connections.length; i++) {
+      Future<Channel> connection = connections[i];
+      if (connection == null
+          || (connection.isDone()
+              && (!connection.isSuccess() || !isUsable(connection.getNow())))) {
+        connections[i] = connect();
+      }
+    }
+  }
+
+  /** Whether new streams can be opened on a connection. */
+  private static boolean isUsable(Channel connection) {
+    Http2FrameCodec codec = connection.pipeline().get(Http2FrameCodec.class);
+    return connection.isActive() && codec != null && !codec.connection().goAwayReceived();
+  }
+
+  private static int activeStreams(Channel connection) {
+    return connection.pipeline().get(Http2FrameCodec.class).connection().numActiveStreams();
+  }
+
+  /** Opens a connection, which is succeeded once HTTP/2 is negotiated on it. */
+  private Future<Channel> connect() {
+    Promise<Channel> readyPromise = eventLoop.newPromise();
+    ChannelFuture unusedFuture =
+        bootstrap
+            .clone()
+            .handler(
+                new ChannelInitializer<Channel>() {
+                  @Override
+                  protected void initChannel(Channel connection) throws Exception {
+                    for (Provider<? extends ChannelHandler> handlerProvider :
+                        protocol.connectionHandlerProviders()) {
+                      connection.pipeline().addLast(handlerProvider.get());
+                    }
+                    connection.pipeline().addLast(new ReadinessHandler(readyPromise));
+                  }
+                })
+            .connect(protocol.host(), protocol.port())
+            .addListener(
+                (ChannelFuture future) -> {
+                  if (!future.isSuccess()) {
+                    readyPromise.tryFailure(future.cause());
+                  }
+                });
+    readyPromise.addListener(
+        (Future<Channel> future) -> {
+          if (future.isSuccess()) {
+            logger.atInfo().log(
+                "HTTP/2 connection established: %s %s", protocol.name(), future.getNow());
+          } else {
+            logger.atWarning().withCause(future.cause()).log(
+                "Cannot establish HTTP/2 connection for %s.", protocol.name());
+          }
+        });
+    return readyPromise;
+  }
+
+  /**
+   * Handler that succeeds the promise of a connection once HTTP/2 is negotiated on it.
+   *
+   * <p>This handler is added after the connection handlers of the {@link BackendProtocol}, so by
+   * the time it's notified of the SSL handshake completion, an {@link Http2MultiplexHandler} is in
+   * the pipeline if HTTP/2 was negotiated.
+   */
+  private static class ReadinessHandler extends ChannelInboundHandlerAdapter {
+
+    private final Promise<Channel> readyPromise;
+
+    ReadinessHandler(Promise<Channel> readyPromise) {
+      this.readyPromise = readyPromise;
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+      if (evt instanceof SslHandshakeCompletionEvent) {
+        SslHandshakeCompletionEvent handshakeEvent = (SslHandshakeCompletionEvent) evt;
+        if (!handshakeEvent.isSuccess()) {
+          readyPromise.tryFailure(handshakeEvent.cause());
+        } else if (ctx.pipeline().get(Http2MultiplexHandler.class) == null) {
+          readyPromise.tryFailure(
+              new IllegalStateException("HTTP/2 was not negotiated on " + ctx.channel()));
+        } else {
+          readyPromise.trySuccess(ctx.channel());
+        }
+      }
+      super.userEventTriggered(ctx, evt);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+      logger.atInfo().log("HTTP/2 connection closed: %s", ctx.channel());
+      readyPromise.tryFailure(new ClosedChannelException());
+      super.channelInactive(ctx);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      logger.atWarning().withCause(cause).log(
+          "Closing HTTP/2 connection %s due to exception.", ctx.channel());
+      ChannelFuture unusedFuture = ctx.close();
+    }
+  }
+}
@@ -15,6 +15,7 @@
 package google.registry.proxy;
 
 import static google.registry.networking.handler.SslClientInitializer.createSslClientInitializerWithSystemTrustStore;
+import static google.registry.networking.handler.SslClientInitializer.createSslClientInitializerWithSystemTrustStoreAndApplicationProtocols;
 
 import com.google.common.collect.ImmutableList;
 import dagger.Module;
@@ -22,12 +23,15 @@ import dagger.Provides;
 import google.registry.networking.handler.SslClientInitializer;
 import google.registry.proxy.Protocol.BackendProtocol;
 import google.registry.proxy.handler.BackendMetricsHandler;
+import google.registry.proxy.handler.Http2NegotiationHandler;
 import google.registry.proxy.handler.RelayHandler.FullHttpResponseRelayHandler;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
 import io.netty.handler.logging.LoggingHandler;
+import io.netty.handler.ssl.ApplicationProtocolNames;
 import io.netty.handler.ssl.SslProvider;
 import java.security.cert.X509Certificate;
 import javax.annotation.Nullable;
@@ -40,6 +44,10 @@ import javax.inject.Qualifier;
  * <p>Only a builder is provided because the client protocol itself depends on the remote host
  * address, which is provided in the server protocol module that relays to this client protocol
  * module, e. g. {@link WhoisProtocolModule}.
+ *
+ * <p>When HTTP/2 is enabled in the config, the requests are relayed as streams of a few HTTP/2
+ * connections that are shared by all the client connections, instead of over an HTTP/1.1
+ * connection for each client connection.
  */
 @Module
 public class HttpsRelayProtocolModule {
@@ -48,17 +56,24 @@ public class HttpsRelayProtocolModule {
   @Qualifier
   public @interface HttpsRelayProtocol {}
 
+  /** Dagger qualifier to provide handlers of the shared HTTP/2 connections to the backend. */
+  @Qualifier
+  public @interface HttpsRelayConnection {}
+
   private static final String PROTOCOL_NAME = "https_relay";
 
   @Provides
   @HttpsRelayProtocol
   static BackendProtocol.Builder provideProtocolBuilder(
       ProxyConfig config,
-      @HttpsRelayProtocol ImmutableList<Provider<? extends ChannelHandler>> handlerProviders) {
+      @HttpsRelayProtocol ImmutableList<Provider<? extends ChannelHandler>> handlerProviders,
+      @HttpsRelayConnection
+          ImmutableList<Provider<? extends ChannelHandler>> connectionHandlerProviders) {
     return Protocol.backendBuilder()
         .name(PROTOCOL_NAME)
         .port(config.httpsRelay.port)
-        .handlerProviders(handlerProviders);
+        .handlerProviders(handlerProviders)
+        .connectionHandlerProviders(connectionHandlerProviders);
   }
 
   @Provides
@@ -71,16 +86,38 @@ public class HttpsRelayProtocolModule {
         channel -> channel.attr(Protocol.PROTOCOL_KEY).get().port());
   }
 
+  @Provides
+  @HttpsRelayConnection
+  static SslClientInitializer<NioSocketChannel> provideHttp2SslClientInitializer(
+      SslProvider sslProvider) {
+    return createSslClientInitializerWithSystemTrustStoreAndApplicationProtocols(
+        sslProvider,
+        channel -> ((BackendProtocol) channel.attr(Protocol.PROTOCOL_KEY).get()).host(),
+        channel -> channel.attr(Protocol.PROTOCOL_KEY).get().port(),
+        ImmutableList.of(ApplicationProtocolNames.HTTP_2));
+  }
+
   @Provides
   @HttpsRelayProtocol
   static ImmutableList<Provider<? extends ChannelHandler>> provideHandlerProviders(
+      ProxyConfig config,
       @HttpsRelayProtocol
           Provider<SslClientInitializer<NioSocketChannel>> sslClientInitializerProvider,
       Provider<HttpClientCodec> httpClientCodecProvider,
+      Provider<Http2StreamFrameToHttpObjectCodec> http2StreamCodecProvider,
       Provider<HttpObjectAggregator> httpObjectAggregatorProvider,
       Provider<BackendMetricsHandler> backendMetricsHandlerProvider,
       Provider<LoggingHandler> loggingHandlerProvider,
       Provider<FullHttpResponseRelayHandler> relayHandlerProvider) {
+    if (config.httpsRelay.http2.enabled) {
+      // SSL is set up by the connection that carries the stream.
+      return ImmutableList.of(
+          http2StreamCodecProvider,
+          httpObjectAggregatorProvider,
+          backendMetricsHandlerProvider,
+          loggingHandlerProvider,
+          relayHandlerProvider);
+    }
     return ImmutableList.of(
         sslClientInitializerProvider,
         httpClientCodecProvider,
@@ -90,11 +127,34 @@ public class HttpsRelayProtocolModule {
         relayHandlerProvider);
   }
 
+  @Provides
+  @HttpsRelayConnection
+  static ImmutableList<Provider<? extends ChannelHandler>> provideConnectionHandlerProviders(
+      ProxyConfig config,
+      @HttpsRelayConnection
+          Provider<SslClientInitializer<NioSocketChannel>> sslClientInitializerProvider,
+      Provider<Http2NegotiationHandler> http2NegotiationHandlerProvider) {
+    if (!config.httpsRelay.http2.enabled) {
+      return ImmutableList.of();
+    }
+    return ImmutableList.of(sslClientInitializerProvider, http2NegotiationHandlerProvider);
+  }
+
   @Provides
   static HttpClientCodec provideHttpClientCodec() {
     return new HttpClientCodec();
   }
 
+  @Provides
+  static Http2StreamFrameToHttpObjectCodec provideHttp2StreamFrameToHttpObjectCodec() {
+    return new Http2StreamFrameToHttpObjectCodec(false);
+  }
+
+  @Provides
+  static Http2NegotiationHandler provideHttp2NegotiationHandler(ProxyConfig config) {
+    return new Http2NegotiationHandler(config.httpsRelay.http2.pingIntervalSeconds);
+  }
+
   @Provides
   static HttpObjectAggregator provideHttpObjectAggregator(ProxyConfig config) {
     return new HttpObjectAggregator(config.httpsRelay.maxMessageLengthBytes);
@@ -0,0 +1,127 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy;
+
+import com.google.common.base.Ascii;
+import com.google.common.flogger.FluentLogger;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+/**
+ * The socket implementation that the channels of the proxy use.
+ *
+ * <p>All the channels of a server must use the same transport, since a channel can only be
+ * registered with an event loop of its own transport.
+ */
+enum NetworkTransport {
+
+  /** The JDK's non-blocking I/O, which works on any platform. */
+  NIO {
+    @Override
+    EventLoopGroup newEventLoopGroup(int threads) {
+      return new NioEventLoopGroup(threads);
+    }
+
+    @Override
+    Class<? extends ServerSocketChannel> serverChannelClass() {
+      return NioServerSocketChannel.class;
+    }
+
+    @Override
+    Class<? extends SocketChannel> channelClass() {
+      return NioSocketChannel.class;
+    }
+
+    @Override
+    boolean setReusePort(ServerBootstrap serverBootstrap) {
+      logger.atWarning().log("SO_REUSEPORT is not supported by the %s transport.", this);
+      return false;
+    }
+  },
+
+  /** Linux's native epoll, which makes fewer copies and system calls than NIO. */
+  EPOLL {
+    @Override
+    EventLoopGroup newEventLoopGroup(int threads) {
+      return new EpollEventLoopGroup(threads);
+    }
+
+    @Override
+    Class<? extends ServerSocketChannel> serverChannelClass() {
+      return EpollServerSocketChannel.class;
+    }
+
+    @Override
+    Class<? extends SocketChannel> channelClass() {
+      return EpollSocketChannel.class;
+    }
+
+    @Override
+    boolean setReusePort(ServerBootstrap serverBootstrap) {
+      serverBootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+      return true;
+    }
+  };
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /**
+   * Creates a group of event loops.
+   *
+   * @param threads the number of threads, or 0 for Netty's default
+   */
+  abstract EventLoopGroup newEventLoopGroup(int threads);
+
+  abstract Class<? extends ServerSocketChannel> serverChannelClass();
+
+  abstract Class<? extends SocketChannel> channelClass();
+
+  /**
+   * Lets the server bind more than one listening socket to the same port, if the transport supports
+   * it.
+   *
+   * @return whether the port can now be bound more than once
+   */
+  abstract boolean setReusePort(ServerBootstrap serverBootstrap);
+
+  /**
+   * Returns the transport of the given configured type.
+   *
+   * @param type "epoll", "nio", or "auto" to use epoll if it is available and NIO otherwise
+   * @throws IllegalStateException if epoll is requested but isn't available
+   * @throws IllegalArgumentException if the type isn't known
+   */
+  static NetworkTransport forType(String type) {
+    if (Ascii.equalsIgnoreCase(type, "auto")) {
+      return Epoll.isAvailable() ? EPOLL : NIO;
+    }
+    NetworkTransport transport = valueOf(Ascii.toUpperCase(type));
+    if (transport == EPOLL && !Epoll.isAvailable()) {
+      throw new IllegalStateException(
+          "Epoll transport is unavailable", Epoll.unavailabilityCause());
+    }
+    return transport;
+  }
+}
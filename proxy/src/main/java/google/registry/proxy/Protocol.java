@@ -47,8 +47,10 @@ public interface Protocol {
     return new AutoValue_Protocol_FrontendProtocol.Builder().hasBackend(true);
   }
 
+  /** A builder for {@link BackendProtocol}, by default each channel is a connection of its own. */
   static BackendProtocol.Builder backendBuilder() {
-    return new AutoValue_Protocol_BackendProtocol.Builder();
+    return new AutoValue_Protocol_BackendProtocol.Builder()
+        .connectionHandlerProviders(ImmutableList.of());
   }
 
   /**
@@ -121,10 +123,28 @@ public interface Protocol {
     /** The hostname that the proxy connects to. */
     public abstract String host();
 
+    /**
+     * The {@link ChannelHandler} providers to use for the HTTP/2 connections that are shared by
+     * the channels of this protocol, in order.
+     *
+     * <p>If this list is empty, each channel is a dedicated connection to the remote peer.
+     * Otherwise, each channel is a stream of one of the shared connections, and the {@link
+     * #handlerProviders} only apply to the stream.
+     */
+    public abstract ImmutableList<Provider<? extends ChannelHandler>> connectionHandlerProviders();
+
+    /** Whether the channels of this protocol are streams of shared HTTP/2 connections. */
+    public boolean isMultiplexed() {
+      return !connectionHandlerProviders().isEmpty();
+    }
+
     /** Builder of {@link BackendProtocol}. */
     @AutoValue.Builder
     public abstract static class Builder extends Protocol.Builder<Builder, BackendProtocol> {
       public abstract Builder host(String value);
+
+      public abstract Builder connectionHandlerProviders(
+          ImmutableList<Provider<? extends ChannelHandler>> value);
     }
   }
 }
@@ -40,6 +40,8 @@ public class ProxyConfig {
   public String projectId;
   public List<String> gcpScopes;
   public int serverCertificateCacheSeconds;
+  public boolean allowInMemoryQuotaLeases;
+  public Transport transport;
   public Gcs gcs;
   public Kms kms;
   public Epp epp;
@@ -49,6 +51,15 @@ public class ProxyConfig {
   public HttpsRelay httpsRelay;
   public Metrics metrics;
 
+  /** Configuration options that apply to the network transport of all connections. */
+  public static class Transport {
+    public String type;
+    public int acceptorThreads;
+    public int workerThreads;
+    public boolean pooledDirectBuffers;
+    public boolean reusePort;
+  }
+
   /** Configuration options that apply to GCS. */
   public static class Gcs {
     public String bucket;
@@ -81,6 +92,14 @@ public class ProxyConfig {
     public int maxMessageLengthBytes;
     public int readTimeoutSeconds;
     public Quota quota;
+    public WhoisResponseCache responseCache;
+  }
+
+  /** Configuration options that apply to the in-proxy cache of WHOIS responses. */
+  public static class WhoisResponseCache {
+    public boolean enabled;
+    public long maxSizeBytes;
+    public int expirationSeconds;
   }
 
   /** Configuration options that apply to GCP load balancer health check protocol. */
@@ -101,6 +120,14 @@ public class ProxyConfig {
   public static class HttpsRelay {
     public int port;
     public int maxMessageLengthBytes;
+    public Http2 http2;
+  }
+
+  /** Configuration options that apply to relaying over shared HTTP/2 connections. */
+  public static class Http2 {
+    public boolean enabled;
+    public int connectionsPerEventLoop;
+    public int pingIntervalSeconds;
   }
 
   /** Configuration options that apply to Stackdriver monitoring metrics. */
@@ -121,6 +148,7 @@ public class ProxyConfig {
     }
 
     public int refreshSeconds;
+    public int leaseSize;
     public QuotaGroup defaultQuota;
     public List<QuotaGroup> customQuota;
   }
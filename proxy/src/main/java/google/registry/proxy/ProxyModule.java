@@ -24,6 +24,7 @@ import com.google.api.services.cloudkms.v1.CloudKMS;
 import com.google.api.services.cloudkms.v1.model.DecryptRequest;
 import com.google.api.services.storage.Storage;
 import com.google.auth.oauth2.GoogleCredentials;
+import com.google.common.base.Ticker;
 import com.google.common.flogger.LoggerConfig;
 import com.google.monitoring.metrics.MetricReporter;
 import dagger.Component;
@@ -39,6 +40,9 @@ import google.registry.proxy.WebWhoisProtocolsModule.HttpWhoisProtocol;
 import google.registry.proxy.WebWhoisProtocolsModule.HttpsWhoisProtocol;
 import google.registry.proxy.WhoisProtocolModule.WhoisProtocol;
 import google.registry.proxy.handler.ProxyProtocolHandler;
+import google.registry.proxy.metric.FrontendMetrics;
+import google.registry.proxy.quota.InMemorySharedTokenCounter;
+import google.registry.proxy.quota.SharedTokenCounter;
 import google.registry.util.Clock;
 import google.registry.util.GoogleCredentialsBundle;
 import google.registry.util.SystemClock;
@@ -55,7 +59,6 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Supplier;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.Handler;
@@ -299,6 +302,11 @@ public class ProxyModule {
     }
   }
 
+  @Provides
+  static NetworkTransport provideNetworkTransport(ProxyConfig config) {
+    return NetworkTransport.forType(config.transport.type);
+  }
+
   @Provides
   static SslProvider provideSslProvider() {
     // Prefer OpenSSL.
@@ -317,8 +325,27 @@ public class ProxyModule {
   }
 
   @Provides
-  static ScheduledExecutorService provideScheduledExecutorService() {
-    return Executors.newSingleThreadScheduledExecutor();
+  static Ticker provideTicker() {
+    return Ticker.systemTicker();
+  }
+
+  /**
+   * Provides the counter of the quota tokens that are shared by all replicas.
+   *
+   * <p>Only the in-process counter is available, so the quota is shared by the protocols of this
+   * replica alone. Leasing from it is refused unless the config explicitly allows it, since it
+   * wouldn't enforce the quota across replicas. A counter service that all replicas reach should
+   * be bound here before a lease size is configured for multiple replicas.
+   */
+  @Provides
+  @Singleton
+  static SharedTokenCounter provideSharedTokenCounter(ProxyConfig config, Clock clock) {
+    checkArgument(
+        config.allowInMemoryQuotaLeases
+            || (config.epp.quota.leaseSize == 0 && config.whois.quota.leaseSize == 0),
+        "Quota leases need a token counter shared by all replicas, but only the in-memory counter"
+            + " is available. Set allowInMemoryQuotaLeases to lease from it anyway.");
+    return new InMemorySharedTokenCounter(clock);
   }
 
   @Singleton
@@ -361,6 +388,14 @@ public class ProxyModule {
 
     Set<FrontendProtocol> protocols();
 
+    ProxyConfig proxyConfig();
+
+    SharedTokenCounter sharedTokenCounter();
+
+    NetworkTransport networkTransport();
+
+    FrontendMetrics frontendMetrics();
+
     MetricReporter metricReporter();
   }
 }
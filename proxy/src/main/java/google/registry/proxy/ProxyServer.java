@@ -14,37 +14,48 @@
 
 package google.registry.proxy;
 
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static google.registry.proxy.Protocol.PROTOCOL_KEY;
 import static google.registry.proxy.handler.RelayHandler.RELAY_BUFFER_KEY;
 import static google.registry.proxy.handler.RelayHandler.RELAY_CHANNEL_KEY;
 import static google.registry.proxy.handler.RelayHandler.writeToRelayChannel;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableTable;
+import com.google.common.collect.ListMultimap;
 import com.google.common.flogger.FluentLogger;
 import com.google.monitoring.metrics.MetricReporter;
 import google.registry.proxy.Protocol.BackendProtocol;
 import google.registry.proxy.Protocol.FrontendProtocol;
 import google.registry.proxy.ProxyConfig.Environment;
 import google.registry.proxy.ProxyModule.ProxyComponent;
+import google.registry.proxy.metric.FrontendMetrics;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.http2.Http2StreamChannel;
 import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.Future;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 import io.netty.util.internal.logging.JdkLoggerFactory;
 import java.util.ArrayDeque;
-import java.util.HashMap;
 import java.util.Queue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -61,34 +72,67 @@ public class ProxyServer implements Runnable {
   private static final int MAX_SOCKET_BACKLOG = 128;
 
   private final ImmutableSet<FrontendProtocol> protocols;
-  private final HashMap<Integer, Channel> portToChannelMap = new HashMap<>();
-  private final EventLoopGroup eventGroup = new NioEventLoopGroup();
+  private final ListMultimap<Integer, Channel> portToChannelsMap = ArrayListMultimap.create();
+  private final ProxyConfig.Transport transportConfig;
+  private final ProxyConfig.Http2 http2Config;
+  private final NetworkTransport transport;
+  private final FrontendMetrics frontendMetrics;
+  private final EventLoopGroup acceptorGroup;
+  private final EventLoopGroup workerGroup;
 
   ProxyServer(ProxyComponent proxyComponent) {
     this.protocols = ImmutableSet.copyOf(proxyComponent.protocols());
+    this.transportConfig = proxyComponent.proxyConfig().transport;
+    this.http2Config = proxyComponent.proxyConfig().httpsRelay.http2;
+    this.transport = proxyComponent.networkTransport();
+    this.frontendMetrics = proxyComponent.frontendMetrics();
+    // Reject a quota config that the token counter can't serve now, not on the first connection.
+    proxyComponent.sharedTokenCounter();
+    this.acceptorGroup = transport.newEventLoopGroup(transportConfig.acceptorThreads);
+    this.workerGroup = transport.newEventLoopGroup(transportConfig.workerThreads);
   }
 
   /**
    * A {@link ChannelInitializer} for connections from a client of a certain protocol.
    *
-   * <p>The {@link #initChannel(NioSocketChannel)} method does the following:
+   * <p>The {@link #initChannel(SocketChannel)} method does the following:
    *
    * <ol>
    *   <li>Determine the {@link FrontendProtocol} of the inbound {@link Channel} from its parent
    *       {@link Channel}, i. e. the {@link Channel} that binds to local port and listens.
    *   <li>Add handlers for the {@link FrontendProtocol} to the inbound {@link Channel}.
    *   <li>Establish an outbound {@link Channel} that serves as the relay channel of the inbound
-   *       {@link Channel}, as specified by {@link FrontendProtocol#relayProtocol}.
+   *       {@link Channel}, as specified by {@link FrontendProtocol#relayProtocol}. If the {@link
+   *       BackendProtocol} is multiplexed, the relay channel is a stream of a pooled HTTP/2
+   *       connection instead of a connection of its own.
    *   <li>After the outbound {@link Channel} connects successfully, enable {@link
    *       ChannelOption#AUTO_READ} on the inbound {@link Channel} to start reading.
    * </ol>
    */
-  private static class ServerChannelInitializer extends ChannelInitializer<NioSocketChannel> {
+  static class ServerChannelInitializer extends ChannelInitializer<SocketChannel> {
+
+    private final NetworkTransport transport;
+    private final ByteBufAllocator allocator;
+    private final FrontendMetrics frontendMetrics;
+    private final ImmutableTable<EventLoop, BackendProtocol, Http2ConnectionPool> connectionPools;
+
+    ServerChannelInitializer(
+        NetworkTransport transport,
+        ByteBufAllocator allocator,
+        FrontendMetrics frontendMetrics,
+        ImmutableTable<EventLoop, BackendProtocol, Http2ConnectionPool> connectionPools) {
+      this.transport = transport;
+      this.allocator = allocator;
+      this.frontendMetrics = frontendMetrics;
+      this.connectionPools = connectionPools;
+    }
+
     @Override
-    protected void initChannel(NioSocketChannel inboundChannel) throws Exception {
+    protected void initChannel(SocketChannel inboundChannel) throws Exception {
       // Add inbound channel handlers.
       FrontendProtocol inboundProtocol =
           (FrontendProtocol) inboundChannel.parent().attr(PROTOCOL_KEY).get();
+      frontendMetrics.registerAcceptedConnection(inboundProtocol.name(), inboundChannel);
       inboundChannel.attr(PROTOCOL_KEY).set(inboundProtocol);
       inboundChannel.attr(RELAY_BUFFER_KEY).set(new ArrayDeque<>());
       addHandlers(inboundChannel.pipeline(), inboundProtocol.handlerProviders());
@@ -102,27 +146,36 @@ public class ProxyServer implements Runnable {
             "Connection established: %s %s", inboundProtocol.name(), inboundChannel);
         // Connect to the relay (outbound) channel specified by the BackendProtocol.
         BackendProtocol outboundProtocol = inboundProtocol.relayProtocol();
-        Bootstrap bootstrap =
-            new Bootstrap()
-                // Use the same thread to connect to the relay channel, therefore avoiding
-                // synchronization handling due to interactions between the two channels
-                .group(inboundChannel.eventLoop())
-                .channel(NioSocketChannel.class)
-                .handler(
-                    new ChannelInitializer<NioSocketChannel>() {
-                      @Override
-                      protected void initChannel(NioSocketChannel outboundChannel)
-                          throws Exception {
-                        addHandlers(
-                            outboundChannel.pipeline(), outboundProtocol.handlerProviders());
-                      }
-                    })
-                .option(ChannelOption.SO_KEEPALIVE, true)
-                // Outbound channel relays to inbound channel.
-                .attr(RELAY_CHANNEL_KEY, inboundChannel)
-                .attr(PROTOCOL_KEY, outboundProtocol);
+        if (outboundProtocol.isMultiplexed()) {
+          openOutboundStream(
+              connectionPools.get(inboundChannel.eventLoop(), outboundProtocol),
+              inboundProtocol,
+              outboundProtocol,
+              inboundChannel);
+        } else {
+          Bootstrap bootstrap =
+              new Bootstrap()
+                  // Use the same thread to connect to the relay channel, therefore avoiding
+                  // synchronization handling due to interactions between the two channels
+                  .group(inboundChannel.eventLoop())
+                  .channel(transport.channelClass())
+                  .handler(
+                      new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel outboundChannel)
+                            throws Exception {
+                          addHandlers(
+                              outboundChannel.pipeline(), outboundProtocol.handlerProviders());
+                        }
+                      })
+                  .option(ChannelOption.SO_KEEPALIVE, true)
+                  .option(ChannelOption.ALLOCATOR, allocator)
+                  // Outbound channel relays to inbound channel.
+                  .attr(RELAY_CHANNEL_KEY, inboundChannel)
+                  .attr(PROTOCOL_KEY, outboundProtocol);
 
-        connectOutboundChannel(bootstrap, inboundProtocol, outboundProtocol, inboundChannel);
+          connectOutboundChannel(bootstrap, inboundProtocol, outboundProtocol, inboundChannel);
+        }
         // If the inbound connection is closed, close its outbound relay connection as well. There
         // is no way to recover from an inbound connection termination, as the connection can only
         // be initiated by the client.
@@ -169,7 +222,7 @@ public class ProxyServer implements Runnable {
         Bootstrap bootstrap,
         FrontendProtocol inboundProtocol,
         BackendProtocol outboundProtocol,
-        NioSocketChannel inboundChannel) {
+        SocketChannel inboundChannel) {
       ChannelFuture outboundChannelFuture =
           bootstrap.connect(outboundProtocol.host(), outboundProtocol.port());
       outboundChannelFuture.addListener(
@@ -239,6 +292,72 @@ public class ProxyServer implements Runnable {
           });
     }
 
+    /**
+     * Opens a stream of a pooled HTTP/2 connection that serves as the relay channel of an inbound
+     * channel, and sets the relevant metadata on both channels.
+     *
+     * <p>An HTTP/2 stream only carries one request and its response, after which it is closed. The
+     * stream is therefore opened before the request is received, and each time it is closed while
+     * the inbound connection is still active, another one is opened in its place. Requests that
+     * the inbound channel receives while its stream is busy are kept in its relay buffer, and each
+     * new stream relays the oldest one.
+     */
+    @VisibleForTesting
+    static void openOutboundStream(
+        Http2ConnectionPool connectionPool,
+        FrontendProtocol inboundProtocol,
+        BackendProtocol outboundProtocol,
+        Channel inboundChannel) {
+      Future<Http2StreamChannel> unusedFuture =
+          connectionPool
+              .openStream(
+                  inboundChannel,
+                  new ChannelInitializer<Http2StreamChannel>() {
+                    @Override
+                    protected void initChannel(Http2StreamChannel outboundChannel)
+                        throws Exception {
+                      addHandlers(outboundChannel.pipeline(), outboundProtocol.handlerProviders());
+                      outboundChannel.pipeline().addLast(new SingleRequestHandler());
+                    }
+                  })
+              .addListener(
+                  (Future<Http2StreamChannel> future) -> {
+                    if (!future.isSuccess()) {
+                      logger.atSevere().withCause(future.cause()).log(
+                          "Cannot open relay stream for %s channel: %s.",
+                          inboundProtocol.name(), inboundChannel);
+                      ChannelFuture unusedCloseFuture = inboundChannel.close();
+                      return;
+                    }
+                    Http2StreamChannel outboundChannel = future.getNow();
+                    inboundChannel.attr(RELAY_CHANNEL_KEY).set(outboundChannel);
+                    inboundChannel.config().setAutoRead(true);
+                    logger.atFine().log(
+                        "Relay stream opened: %s <-> %s\nFRONTEND: %s\nBACKEND: %s",
+                        inboundProtocol.name(),
+                        outboundProtocol.name(),
+                        inboundChannel,
+                        outboundChannel);
+                    Object msg = inboundChannel.attr(RELAY_BUFFER_KEY).get().poll();
+                    if (msg != null) {
+                      writeToRelayChannel(inboundChannel, outboundChannel, msg, true);
+                    }
+                    ChannelFuture unusedStreamCloseFuture =
+                        outboundChannel
+                            .closeFuture()
+                            .addListener(
+                                (ChannelFuture future2) -> {
+                                  if (inboundChannel.isActive()) {
+                                    openOutboundStream(
+                                        connectionPool,
+                                        inboundProtocol,
+                                        outboundProtocol,
+                                        inboundChannel);
+                                  }
+                                });
+                  });
+    }
+
     private static void addHandlers(
         ChannelPipeline channelPipeline,
         ImmutableList<Provider<? extends ChannelHandler>> handlerProviders) {
@@ -248,41 +367,90 @@ public class ProxyServer implements Runnable {
     }
   }
 
+  /**
+   * Handler that lets an HTTP/2 stream only carry one request.
+   *
+   * <p>A request that is relayed to a stream that already carried one, e. g. because the client
+   * sent it before the response to its previous request was relayed back, is put back in the relay
+   * buffer of the inbound channel instead, so that it's relayed over the next stream.
+   */
+  @VisibleForTesting
+  static class SingleRequestHandler extends ChannelOutboundHandlerAdapter {
+
+    private boolean requestWritten;
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+        throws Exception {
+      if (!requestWritten) {
+        requestWritten = true;
+        super.write(ctx, msg, promise);
+        return;
+      }
+      // The buffer now owns the reference that would have been released when the message was
+      // written out.
+      Channel inboundChannel = ctx.channel().attr(RELAY_CHANNEL_KEY).get();
+      inboundChannel.attr(RELAY_BUFFER_KEY).get().add(msg);
+      promise.setSuccess();
+    }
+  }
+
   @Override
   public void run() {
     try {
+      ByteBufAllocator allocator =
+          transportConfig.pooledDirectBuffers
+              ? new PooledByteBufAllocator(true)
+              : ByteBufAllocator.DEFAULT;
       ServerBootstrap serverBootstrap =
           new ServerBootstrap()
-              .group(eventGroup)
-              .channel(NioServerSocketChannel.class)
-              .childHandler(new ServerChannelInitializer())
+              .group(acceptorGroup, workerGroup)
+              .channel(transport.serverChannelClass())
+              .childHandler(
+                  new ServerChannelInitializer(
+                      transport, allocator, frontendMetrics, createConnectionPools(allocator)))
               .option(ChannelOption.SO_BACKLOG, MAX_SOCKET_BACKLOG)
+              .option(ChannelOption.ALLOCATOR, allocator)
               .childOption(ChannelOption.SO_KEEPALIVE, true)
+              .childOption(ChannelOption.ALLOCATOR, allocator)
               // Do not read before relay channel is established.
               .childOption(ChannelOption.AUTO_READ, false);
+      frontendMetrics.registerEventLoopGroup("acceptor", acceptorGroup);
+      frontendMetrics.registerEventLoopGroup("worker", workerGroup);
+
+      // With SO_REUSEPORT, each acceptor thread gets a listening socket of its own for every port,
+      // and the kernel balances incoming connections between them. Otherwise, a port can only be
+      // bound once.
+      int bindsPerPort = 1;
+      if (transportConfig.reusePort && transport.setReusePort(serverBootstrap)) {
+        bindsPerPort = Math.max(transportConfig.acceptorThreads, 1);
+      }
+      logger.atInfo().log(
+          "Using the %s transport, binding each port %d time(s).", transport, bindsPerPort);
 
       // Bind to each port specified in portToHandlersMap.
-      protocols.forEach(
-          protocol -> {
-            int port = protocol.port();
-            try {
-              // Wait for binding to be established for each listening port.
-              ChannelFuture serverChannelFuture = serverBootstrap.bind(port).sync();
-              if (serverChannelFuture.isSuccess()) {
-                logger.atInfo().log(
-                    "Start listening on port %s for %s protocol.", port, protocol.name());
-                Channel serverChannel = serverChannelFuture.channel();
-                serverChannel.attr(PROTOCOL_KEY).set(protocol);
-                portToChannelMap.put(port, serverChannel);
-              }
-            } catch (InterruptedException e) {
-              logger.atSevere().withCause(e).log(
-                  "Cannot listen on port %d for %s protocol.", port, protocol.name());
+      for (FrontendProtocol protocol : protocols) {
+        int port = protocol.port();
+        for (int i = 0; i < bindsPerPort; i++) {
+          try {
+            // Wait for binding to be established for each listening port.
+            ChannelFuture serverChannelFuture = serverBootstrap.bind(port).sync();
+            if (serverChannelFuture.isSuccess()) {
+              logger.atInfo().log(
+                  "Start listening on port %s for %s protocol.", port, protocol.name());
+              Channel serverChannel = serverChannelFuture.channel();
+              serverChannel.attr(PROTOCOL_KEY).set(protocol);
+              portToChannelsMap.put(port, serverChannel);
             }
-          });
+          } catch (InterruptedException e) {
+            logger.atSevere().withCause(e).log(
+                "Cannot listen on port %d for %s protocol.", port, protocol.name());
+          }
+        }
+      }
 
       // Wait for all listening ports to close.
-      portToChannelMap.forEach(
+      portToChannelsMap.forEach(
           (port, channel) -> {
             try {
               // Block until all server channels are closed.
@@ -298,8 +466,39 @@ public class ProxyServer implements Runnable {
           });
     } finally {
       logger.atInfo().log("Shutting down server...");
-      Future<?> unusedFuture = eventGroup.shutdownGracefully();
+      Future<?> unusedAcceptorShutdown = acceptorGroup.shutdownGracefully();
+      Future<?> unusedWorkerShutdown = workerGroup.shutdownGracefully();
+    }
+  }
+
+  /**
+   * Creates a pool of HTTP/2 connections to each multiplexed backend for each worker event loop,
+   * and starts opening their connections.
+   *
+   * <p>Client connections are handled by a worker event loop, so each of them relays to a pool
+   * that belongs to the same thread.
+   */
+  private ImmutableTable<EventLoop, BackendProtocol, Http2ConnectionPool> createConnectionPools(
+      ByteBufAllocator allocator) {
+    ImmutableSet<BackendProtocol> multiplexedProtocols =
+        protocols.stream()
+            .filter(FrontendProtocol::hasBackend)
+            .map(FrontendProtocol::relayProtocol)
+            .filter(BackendProtocol::isMultiplexed)
+            .collect(toImmutableSet());
+    ImmutableTable.Builder<EventLoop, BackendProtocol, Http2ConnectionPool> connectionPools =
+        new ImmutableTable.Builder<>();
+    for (EventExecutor executor : workerGroup) {
+      EventLoop eventLoop = (EventLoop) executor;
+      for (BackendProtocol protocol : multiplexedProtocols) {
+        Http2ConnectionPool connectionPool =
+            new Http2ConnectionPool(
+                eventLoop, transport, allocator, protocol, http2Config.connectionsPerEventLoop);
+        eventLoop.execute(connectionPool::warmUp);
+        connectionPools.put(eventLoop, protocol, connectionPool);
+      }
     }
+    return connectionPools.build();
   }
 
   public static void main(String[] args) throws Exception {
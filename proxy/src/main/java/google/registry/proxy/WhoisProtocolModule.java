@@ -14,6 +14,7 @@
 
 package google.registry.proxy;
 
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableList;
 import dagger.Module;
 import dagger.Provides;
@@ -25,22 +26,25 @@ import google.registry.proxy.handler.FrontendMetricsHandler;
 import google.registry.proxy.handler.ProxyProtocolHandler;
 import google.registry.proxy.handler.QuotaHandler.WhoisQuotaHandler;
 import google.registry.proxy.handler.RelayHandler.FullHttpRequestRelayHandler;
+import google.registry.proxy.handler.WhoisCacheHandler;
 import google.registry.proxy.handler.WhoisServiceHandler;
 import google.registry.proxy.metric.FrontendMetrics;
 import google.registry.proxy.quota.QuotaConfig;
 import google.registry.proxy.quota.QuotaManager;
+import google.registry.proxy.quota.SharedTokenCounter;
 import google.registry.proxy.quota.TokenStore;
+import google.registry.proxy.whois.WhoisResponseCache;
 import google.registry.util.Clock;
 import io.netty.channel.ChannelHandler;
 import io.netty.handler.codec.LineBasedFrameDecoder;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Supplier;
 import javax.inject.Named;
 import javax.inject.Provider;
 import javax.inject.Qualifier;
 import javax.inject.Singleton;
+import org.joda.time.Duration;
 
 /** A module that provides the {@link FrontendProtocol} used for whois protocol. */
 @Module
@@ -71,21 +75,27 @@ public class WhoisProtocolModule {
   @Provides
   @WhoisProtocol
   static ImmutableList<Provider<? extends ChannelHandler>> provideHandlerProviders(
+      ProxyConfig config,
       Provider<ProxyProtocolHandler> proxyProtocolHandlerProvider,
       @WhoisProtocol Provider<ReadTimeoutHandler> readTimeoutHandlerProvider,
       Provider<LineBasedFrameDecoder> lineBasedFrameDecoderProvider,
       Provider<WhoisServiceHandler> whoisServiceHandlerProvider,
       Provider<FrontendMetricsHandler> frontendMetricsHandlerProvider,
       Provider<WhoisQuotaHandler> whoisQuotaHandlerProvider,
+      Provider<WhoisCacheHandler> whoisCacheHandlerProvider,
       Provider<FullHttpRequestRelayHandler> relayHandlerProvider) {
-    return ImmutableList.of(
-        proxyProtocolHandlerProvider,
-        readTimeoutHandlerProvider,
-        lineBasedFrameDecoderProvider,
-        whoisServiceHandlerProvider,
-        frontendMetricsHandlerProvider,
-        whoisQuotaHandlerProvider,
-        relayHandlerProvider);
+    ImmutableList.Builder<Provider<? extends ChannelHandler>> builder =
+        new ImmutableList.Builder<Provider<? extends ChannelHandler>>()
+            .add(proxyProtocolHandlerProvider)
+            .add(readTimeoutHandlerProvider)
+            .add(lineBasedFrameDecoderProvider)
+            .add(whoisServiceHandlerProvider)
+            .add(frontendMetricsHandlerProvider)
+            .add(whoisQuotaHandlerProvider);
+    if (config.whois.responseCache.enabled) {
+      builder.add(whoisCacheHandlerProvider);
+    }
+    return builder.add(relayHandlerProvider).build();
   }
 
   @Provides
@@ -102,6 +112,16 @@ public class WhoisProtocolModule {
     return new LineBasedFrameDecoder(config.whois.maxMessageLengthBytes);
   }
 
+  @Provides
+  @Singleton
+  @WhoisProtocol
+  static WhoisResponseCache provideWhoisResponseCache(ProxyConfig config, Clock clock) {
+    return new WhoisResponseCache(
+        config.whois.responseCache.maxSizeBytes,
+        Duration.standardSeconds(config.whois.responseCache.expirationSeconds),
+        clock);
+  }
+
   @Provides
   @WhoisProtocol
   static ReadTimeoutHandler provideReadTimeoutHandler(ProxyConfig config) {
@@ -111,9 +131,12 @@ public class WhoisProtocolModule {
   @Provides
   @WhoisProtocol
   static TokenStore provideTokenStore(
-      ProxyConfig config, ScheduledExecutorService refreshExecutor, Clock clock) {
+      ProxyConfig config,
+      Ticker ticker,
+      SharedTokenCounter sharedCounter,
+      ExecutorService executorService) {
     return new TokenStore(
-        new QuotaConfig(config.whois.quota, PROTOCOL_NAME), refreshExecutor, clock);
+        new QuotaConfig(config.whois.quota, PROTOCOL_NAME), ticker, sharedCounter, executorService);
   }
 
   @Provides
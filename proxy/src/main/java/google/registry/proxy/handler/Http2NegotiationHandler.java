@@ -0,0 +1,67 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy.handler;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+
+/**
+ * Handler that sets up an HTTP/2 connection to the backend once the SSL handshake completes.
+ *
+ * <p>The connection must have been offered HTTP/2 with ALPN by the {@code SslClientInitializer}
+ * that precedes this handler. If the backend selects HTTP/2, this handler replaces itself with the
+ * HTTP/2 codec, an {@link Http2MultiplexHandler} that carries each request as a stream channel of
+ * its own, and an {@link Http2PingHandler} that checks the health of the connection. Otherwise the
+ * connection is closed, because requests can't be multiplexed over it.
+ */
+public class Http2NegotiationHandler extends ApplicationProtocolNegotiationHandler {
+
+  private final int pingIntervalSeconds;
+
+  public Http2NegotiationHandler(int pingIntervalSeconds) {
+    super(ApplicationProtocolNames.HTTP_1_1);
+    this.pingIntervalSeconds = pingIntervalSeconds;
+  }
+
+  @Override
+  protected void configurePipeline(ChannelHandlerContext ctx, String protocol) throws Exception {
+    if (!ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+      throw new IllegalStateException(
+          String.format("Backend selected %s instead of HTTP/2 for %s", protocol, ctx.channel()));
+    }
+    // The handlers are added right after this one, and before any handler that follows it, so they
+    // are inserted in reverse order.
+    ChannelPipeline pipeline = ctx.pipeline();
+    pipeline.addAfter(ctx.name(), null, new Http2PingHandler());
+    pipeline.addAfter(ctx.name(), null, new IdleStateHandler(0, 0, pingIntervalSeconds));
+    // Streams are only ever opened by the proxy, so the handler of inbound streams is never used.
+    pipeline.addAfter(
+        ctx.name(), null, new Http2MultiplexHandler(new ChannelInboundHandlerAdapter()));
+    pipeline.addAfter(
+        ctx.name(),
+        null,
+        Http2FrameCodecBuilder.forClient()
+            // The backend has no use for pushing responses that were not requested.
+            .initialSettings(Http2Settings.defaultSettings().pushEnabled(false))
+            .build());
+  }
+}
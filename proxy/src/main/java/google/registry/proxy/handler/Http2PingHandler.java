@@ -0,0 +1,73 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy.handler;
+
+import com.google.common.flogger.FluentLogger;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http2.DefaultHttp2PingFrame;
+import io.netty.handler.codec.http2.Http2PingFrame;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Handler that checks the health of an HTTP/2 connection with PING frames.
+ *
+ * <p>This handler is added to the connection after the {@code Http2MultiplexHandler}, behind an
+ * {@link IdleStateHandler}, so it only sees the frames that are not part of any stream. A PING is
+ * sent whenever the connection has been idle for a while. If the connection is idle again before
+ * the PING is acknowledged, the backend is deemed unreachable and the connection is closed, so that
+ * no more requests are relayed over it.
+ *
+ * <p>All the connection-level frames end here, and are released after they are read.
+ */
+public class Http2PingHandler extends ChannelInboundHandlerAdapter {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** The content of the last PING that was sent, to match it with its acknowledgement. */
+  private long pingContent;
+
+  private boolean pingOutstanding;
+
+  @Override
+  public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+    if (!(evt instanceof IdleStateEvent)) {
+      super.userEventTriggered(ctx, evt);
+      return;
+    }
+    if (pingOutstanding) {
+      logger.atWarning().log("PING not acknowledged, closing HTTP/2 connection %s", ctx.channel());
+      ChannelFuture unusedFuture = ctx.close();
+      return;
+    }
+    pingOutstanding = true;
+    pingContent++;
+    ChannelFuture unusedFuture = ctx.writeAndFlush(new DefaultHttp2PingFrame(pingContent));
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof Http2PingFrame) {
+      Http2PingFrame pingFrame = (Http2PingFrame) msg;
+      if (pingFrame.ack() && pingFrame.content() == pingContent) {
+        pingOutstanding = false;
+      }
+    }
+    ReferenceCountUtil.release(msg);
+  }
+}
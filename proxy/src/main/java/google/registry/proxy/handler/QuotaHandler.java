@@ -15,10 +15,13 @@
 package google.registry.proxy.handler;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static google.registry.proxy.Protocol.PROTOCOL_KEY;
 import static google.registry.proxy.handler.EppServiceHandler.CLIENT_CERTIFICATE_HASH_KEY;
 import static google.registry.proxy.handler.ProxyProtocolHandler.REMOTE_ADDRESS_KEY;
 
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import google.registry.proxy.EppProtocolModule.EppProtocol;
 import google.registry.proxy.WhoisProtocolModule.WhoisProtocol;
 import google.registry.proxy.metric.FrontendMetrics;
@@ -28,6 +31,9 @@ import google.registry.proxy.quota.QuotaManager.QuotaRequest;
 import google.registry.proxy.quota.QuotaManager.QuotaResponse;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayDeque;
+import java.util.Queue;
 import java.util.concurrent.Future;
 import javax.inject.Inject;
 
@@ -37,13 +43,20 @@ import javax.inject.Inject;
  * <p>This handler attempts to acquire quota during the first {@link #channelRead} operation, not
  * when connection is established. The reason is that the {@code userId} used for acquiring quota is
  * not always available when the connection is just open.
+ *
+ * <p>The quota is acquired without blocking the event loop. If the response is not available right
+ * away, the messages that are read in the meantime are held until the quota is granted.
  */
 public abstract class QuotaHandler extends ChannelInboundHandlerAdapter {
 
   protected final QuotaManager quotaManager;
+  protected ListenableFuture<QuotaResponse> quotaFuture;
   protected QuotaResponse quotaResponse;
   protected final FrontendMetrics metrics;
 
+  /** The messages read while the quota is being acquired. */
+  private final Queue<Object> pendingMessages = new ArrayDeque<>();
+
   protected QuotaHandler(QuotaManager quotaManager, FrontendMetrics metrics) {
     this.quotaManager = quotaManager;
     this.metrics = metrics;
@@ -56,17 +69,53 @@ public abstract class QuotaHandler extends ChannelInboundHandlerAdapter {
 
   @Override
   public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-    if (quotaResponse == null) {
+    if (quotaResponse != null) {
+      ctx.fireChannelRead(msg);
+      return;
+    }
+    if (quotaFuture == null) {
       String userId = getUserId(ctx);
       checkNotNull(userId, "Cannot obtain User ID");
-      quotaResponse = quotaManager.acquireQuota(QuotaRequest.create(userId));
-      if (!quotaResponse.success()) {
-        String protocolName = ctx.channel().attr(PROTOCOL_KEY).get().name();
-        metrics.registerQuotaRejection(protocolName, isUserIdPii() ? "none" : userId);
-        throw new OverQuotaException(protocolName, isUserIdPii() ? "none" : userId);
+      quotaFuture = quotaManager.acquireQuota(QuotaRequest.create(userId));
+      if (!quotaFuture.isDone()) {
+        quotaFuture.addListener(
+            () -> {
+              try {
+                handleQuotaResponse(ctx);
+              } catch (Exception e) {
+                ctx.fireExceptionCaught(e);
+              }
+            },
+            ctx.executor());
       }
     }
-    ctx.fireChannelRead(msg);
+    pendingMessages.add(msg);
+    if (quotaFuture.isDone()) {
+      handleQuotaResponse(ctx);
+    }
+  }
+
+  /** Passes the pending messages on if the quota is granted, or rejects the connection. */
+  private void handleQuotaResponse(ChannelHandlerContext ctx) throws OverQuotaException {
+    if (quotaResponse != null) {
+      return;
+    }
+    quotaResponse = Futures.getUnchecked(quotaFuture);
+    if (!quotaResponse.success() || !ctx.channel().isActive()) {
+      // The messages are dropped if the connection was closed while the quota was acquired.
+      pendingMessages.forEach(ReferenceCountUtil::release);
+      pendingMessages.clear();
+    }
+    if (!quotaResponse.success()) {
+      String protocolName = ctx.channel().attr(PROTOCOL_KEY).get().name();
+      String userId = getUserId(ctx);
+      metrics.registerQuotaRejection(protocolName, isUserIdPii() ? "none" : userId);
+      throw new OverQuotaException(protocolName, isUserIdPii() ? "none" : userId);
+    }
+    Object msg;
+    while ((msg = pendingMessages.poll()) != null) {
+      ctx.fireChannelRead(msg);
+    }
   }
 
   /**
@@ -157,9 +206,17 @@ public abstract class QuotaHandler extends ChannelInboundHandlerAdapter {
       // If no reads occurred before the connection is inactive (for example when the handshake
       // is not successful), no quota is leased and therefore no return is needed.
       // Note that the quota response can be a failure, in which case no token was leased to us from
-      // the token store. Consequently no return is necessary.
-      if (quotaResponse != null && quotaResponse.success()) {
-        Future<?> unusedFuture = quotaManager.releaseQuota(QuotaRebate.create(quotaResponse));
+      // the token store. Consequently no return is necessary. The quota may still be being
+      // acquired, in which case it is returned once it is granted.
+      if (quotaFuture != null) {
+        quotaFuture.addListener(
+            () -> {
+              QuotaResponse response = Futures.getUnchecked(quotaFuture);
+              if (response.success()) {
+                Future<?> unusedFuture = quotaManager.releaseQuota(QuotaRebate.create(response));
+              }
+            },
+            directExecutor());
       }
       ctx.fireChannelInactive();
     }
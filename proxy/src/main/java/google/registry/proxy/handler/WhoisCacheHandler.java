@@ -0,0 +1,106 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy.handler;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import google.registry.proxy.WhoisProtocolModule.WhoisProtocol;
+import google.registry.proxy.metric.FrontendMetrics;
+import google.registry.proxy.whois.WhoisResponseCache;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
+import java.util.Optional;
+import javax.inject.Inject;
+
+/**
+ * Handler that answers WHOIS queries from the {@link WhoisResponseCache} and fills it with the
+ * responses that are relayed from the backend.
+ *
+ * <p>This handler is added right before the {@link RelayHandler}. A query whose response is cached
+ * is answered right away and doesn't go any further, so it doesn't incur an HTTPS request to the
+ * backend. Any other query is relayed as usual, and the response to it is cached when it's written
+ * back through this handler. Only successful responses are cached.
+ *
+ * <p>The WHOIS protocol has one query per connection, so the handler only needs to remember the
+ * query that was relayed.
+ */
+public class WhoisCacheHandler extends ChannelDuplexHandler {
+
+  private final WhoisResponseCache cache;
+  private final FrontendMetrics metrics;
+
+  /** The query that was relayed to the backend, whose response should be cached. */
+  private String relayedQuery;
+
+  @Inject
+  WhoisCacheHandler(@WhoisProtocol WhoisResponseCache cache, FrontendMetrics metrics) {
+    this.cache = cache;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof FullHttpRequest) {
+      // ISO-8859-1 maps each byte to its own character, so queries with different bytes never
+      // share a cache key, whatever encoding the client used.
+      String query = ((FullHttpRequest) msg).content().toString(ISO_8859_1);
+      Optional<byte[]> cachedResponse = cache.get(query);
+      metrics.registerWhoisCacheLookup(cachedResponse.isPresent());
+      if (cachedResponse.isPresent()) {
+        ReferenceCountUtil.release(msg);
+        ChannelFuture unusedFuture = ctx.writeAndFlush(makeResponse(cachedResponse.get()));
+        return;
+      }
+      relayedQuery = query;
+    }
+    super.channelRead(ctx, msg);
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+      throws Exception {
+    if (relayedQuery != null && msg instanceof FullHttpResponse) {
+      FullHttpResponse response = (FullHttpResponse) msg;
+      if (response.status().equals(HttpResponseStatus.OK)) {
+        cache.put(relayedQuery, ByteBufUtil.getBytes(response.content()));
+      }
+      relayedQuery = null;
+    }
+    super.write(ctx, msg, promise);
+  }
+
+  private static FullHttpResponse makeResponse(byte[] content) {
+    FullHttpResponse response =
+        new DefaultFullHttpResponse(
+            HttpVersion.HTTP_1_1, HttpResponseStatus.OK, Unpooled.copiedBuffer(content));
+    response
+        .headers()
+        .set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.TEXT_PLAIN)
+        .setInt(HttpHeaderNames.CONTENT_LENGTH, content.length);
+    return response;
+  }
+}
@@ -16,15 +16,20 @@ package google.registry.proxy.metric;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.monitoring.metrics.EventMetric;
 import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
 import com.google.monitoring.metrics.Metric;
 import com.google.monitoring.metrics.MetricRegistryImpl;
 import google.registry.util.NonFinalForTesting;
 import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.SingleThreadEventExecutor;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -78,6 +83,69 @@ public class FrontendMetrics extends BaseMetrics {
               LABELS,
               DEFAULT_LATENCY_FITTER);
 
+  static final IncrementableMetric whoisCacheLookupsCounter =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/proxy/frontend/whois_cache_lookups",
+              "Total number of WHOIS queries looked up in the proxy's response cache.",
+              "WHOIS Cache Lookups",
+              ImmutableSet.of(
+                  LabelDescriptor.create(
+                      "result", "Whether the response was cached (hit) or relayed (miss).")));
+
+  /** The names of the event loops that are monitored, such as "worker-0". */
+  private static final ConcurrentMap<EventExecutor, String> eventLoopNames =
+      new ConcurrentHashMap<>();
+
+  private static final ConcurrentMap<String, ChannelGroup> eventLoopConnections =
+      new ConcurrentHashMap<>();
+
+  private static final ImmutableSet<LabelDescriptor> EVENT_LOOP_LABELS =
+      ImmutableSet.of(LabelDescriptor.create("event_loop", "Name of the event loop."));
+
+  static final IncrementableMetric acceptedConnectionsCounter =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/proxy/frontend/accepted_connections",
+              "Total number of connections accepted by the proxy, of any protocol.",
+              "Accepted Connections",
+              ImmutableSet.of(LabelDescriptor.create("protocol", "Name of the protocol.")));
+
+  static final Metric<Long> eventLoopConnectionsGauge =
+      MetricRegistryImpl.getDefault()
+          .newGauge(
+              "/proxy/frontend/event_loop_connections",
+              "Number of open connections from clients served by each event loop.",
+              "Event Loop Connections",
+              EVENT_LOOP_LABELS,
+              () ->
+                  eventLoopConnections.entrySet().stream()
+                      .collect(
+                          ImmutableMap.toImmutableMap(
+                              entry -> ImmutableList.of(entry.getKey()),
+                              entry -> (long) entry.getValue().size())),
+              Long.class);
+
+  static final Metric<Long> eventLoopPendingTasksGauge =
+      MetricRegistryImpl.getDefault()
+          .newGauge(
+              "/proxy/frontend/event_loop_pending_tasks",
+              "Number of tasks waiting to be run by each event loop, which grows when the event"
+                  + " loop is saturated.",
+              "Event Loop Pending Tasks",
+              EVENT_LOOP_LABELS,
+              () ->
+                  eventLoopNames.entrySet().stream()
+                      .filter(entry -> entry.getKey() instanceof SingleThreadEventExecutor)
+                      .collect(
+                          ImmutableMap.toImmutableMap(
+                              entry -> ImmutableList.of(entry.getValue()),
+                              entry ->
+                                  (long)
+                                      ((SingleThreadEventExecutor) entry.getKey())
+                                          .pendingTasks())),
+              Long.class);
+
   @Inject
   public FrontendMetrics() {}
 
@@ -86,6 +154,40 @@ public class FrontendMetrics extends BaseMetrics {
     totalConnectionsCounter.reset();
     activeConnections.clear();
     latencyMs.reset();
+    whoisCacheLookupsCounter.reset();
+    acceptedConnectionsCounter.reset();
+    eventLoopNames.clear();
+    eventLoopConnections.clear();
+  }
+
+  /**
+   * Monitors the event loops of a group.
+   *
+   * <p>Each event loop is named after the group and its index in the group, such as "worker-0".
+   */
+  public void registerEventLoopGroup(String groupName, EventLoopGroup eventLoopGroup) {
+    int index = 0;
+    for (EventExecutor eventLoop : eventLoopGroup) {
+      eventLoopNames.put(eventLoop, String.format("%s-%d", groupName, index++));
+    }
+  }
+
+  /**
+   * Records a connection accepted by the proxy.
+   *
+   * <p>Unlike {@link #registerActiveConnection}, this is called for connections of every protocol,
+   * as soon as they are accepted, so the rate of this counter is the proxy's connection rate.
+   */
+  @NonFinalForTesting
+  public void registerAcceptedConnection(String protocol, Channel channel) {
+    acceptedConnectionsCounter.increment(protocol);
+    String eventLoopName = eventLoopNames.get(channel.eventLoop());
+    if (eventLoopName != null) {
+      eventLoopConnections
+          .computeIfAbsent(
+              eventLoopName, name -> new DefaultChannelGroup(GlobalEventExecutor.INSTANCE))
+          .add(channel);
+    }
   }
 
   @NonFinalForTesting
@@ -107,6 +209,11 @@ public class FrontendMetrics extends BaseMetrics {
     quotaRejectionsCounter.increment(protocol, certHash);
   }
 
+  @NonFinalForTesting
+  public void registerWhoisCacheLookup(boolean hit) {
+    whoisCacheLookupsCounter.increment(hit ? "hit" : "miss");
+  }
+
   @NonFinalForTesting
   public void responseSent(String protocol, String certHash, Duration latency) {
     latencyMs.record(latency.getMillis(), protocol, certHash);
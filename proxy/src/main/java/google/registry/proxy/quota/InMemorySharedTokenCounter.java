@@ -0,0 +1,91 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy.quota;
+
+import static java.lang.StrictMath.max;
+import static java.lang.StrictMath.min;
+
+import google.registry.util.Clock;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A {@link SharedTokenCounter} that is kept in memory.
+ *
+ * <p>The counter is only shared by the token stores of a single process, so it doesn't limit the
+ * quota of a user across replicas. It stands in for a counter service in tests, and in
+ * environments that run a single replica.
+ */
+@ThreadSafe
+public class InMemorySharedTokenCounter implements SharedTokenCounter {
+
+  /** The tokens of a user that have been leased since the last refill. */
+  private static class Count {
+    long refill;
+    long refillMillis;
+    int leased;
+  }
+
+  private final Clock clock;
+
+  @GuardedBy("this")
+  private final Map<String, Count> counts = new HashMap<>();
+
+  public InMemorySharedTokenCounter(Clock clock) {
+    this.clock = clock;
+  }
+
+  @Override
+  public synchronized Lease borrow(
+      String protocolName, String userId, int amount, int tokenAmount, long refillPeriodMillis) {
+    long nowMillis = clock.nowUtc().getMillis();
+    Count count =
+        counts.computeIfAbsent(
+            key(protocolName, userId),
+            unused -> {
+              Count newCount = new Count();
+              newCount.refillMillis = nowMillis;
+              newCount.refill = 1;
+              return newCount;
+            });
+    if (refillPeriodMillis != 0 && nowMillis - count.refillMillis >= refillPeriodMillis) {
+      count.refill++;
+      count.refillMillis = nowMillis;
+      count.leased = 0;
+    }
+    int tokens = max(0, min(amount, tokenAmount - count.leased));
+    count.leased += tokens;
+    return Lease.create(
+        tokens,
+        count.refill,
+        refillPeriodMillis == 0
+            ? Long.MAX_VALUE
+            : count.refillMillis + refillPeriodMillis - nowMillis);
+  }
+
+  @Override
+  public synchronized void giveBack(String protocolName, String userId, long refill, int amount) {
+    Count count = counts.get(key(protocolName, userId));
+    if (count != null && count.refill == refill) {
+      count.leased = max(0, count.leased - amount);
+    }
+  }
+
+  private static String key(String protocolName, String userId) {
+    return protocolName + "/" + userId;
+  }
+}
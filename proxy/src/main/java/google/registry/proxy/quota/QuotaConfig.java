@@ -30,6 +30,7 @@ public class QuotaConfig {
 
   private final String protocolName;
   private final int refreshSeconds;
+  private final int leaseSize;
   private final QuotaGroup defaultQuota;
   private final ImmutableMap<String, QuotaGroup> customQuotaMap;
 
@@ -42,6 +43,7 @@ public class QuotaConfig {
   public QuotaConfig(Quota quota, String protocolName) {
     this.protocolName = protocolName;
     refreshSeconds = quota.refreshSeconds;
+    leaseSize = quota.leaseSize;
     defaultQuota = quota.defaultQuota;
     ImmutableMap.Builder<String, QuotaGroup> mapBuilder = new ImmutableMap.Builder<>();
     quota.customQuota.forEach(
@@ -80,6 +82,11 @@ public class QuotaConfig {
     return Duration.standardSeconds(refreshSeconds);
   }
 
+  /** Returns the number of tokens leased at a time from the shared counter, or 0 if not shared. */
+  int getLeaseSize() {
+    return leaseSize;
+  }
+
   /** Returns the name of the protocol for which this quota config is made. */
   String getProtocolName() {
     return protocolName;
@@ -14,24 +14,26 @@
 
 package google.registry.proxy.quota;
 
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static google.registry.proxy.quota.TokenStore.NO_TOKEN_GRANTED;
+
 import com.google.auto.value.AutoValue;
-import google.registry.proxy.quota.TokenStore.TimestampedInteger;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import javax.annotation.concurrent.ThreadSafe;
-import org.joda.time.DateTime;
 
 /**
- * A thread-safe quota manager that schedules background refresh if necessary.
+ * A thread-safe quota manager.
  *
  * <p>This class abstracts away details about the {@link TokenStore}. It:
  *
  * <ul>
- *   <li>Translates a {@link QuotaRequest} to taking one token from the store, blocks the caller,
- *       and responds with a {@link QuotaResponse}.
+ *   <li>Translates a {@link QuotaRequest} to taking one token from the store, without blocking the
+ *       caller, and responds with a {@link QuotaResponse} once the token is granted or denied.
  *   <li>Translates a {@link QuotaRebate} to putting the token to the store asynchronously, and
  *       immediately returns.
- *   <li>Periodically refreshes the token records asynchronously to purge stale recodes.
  * </ul>
  *
  * <p>There should be one {@link QuotaManager} per protocol.
@@ -54,7 +56,7 @@ public class QuotaManager {
   @AutoValue
   public abstract static class QuotaResponse {
     public static QuotaResponse create(
-        boolean success, String userId, DateTime grantedTokenRefillTime) {
+        boolean success, String userId, long grantedTokenRefillTime) {
       return new AutoValue_QuotaManager_QuotaResponse(success, userId, grantedTokenRefillTime);
     }
 
@@ -62,7 +64,7 @@ public class QuotaManager {
 
     abstract String userId();
 
-    abstract DateTime grantedTokenRefillTime();
+    abstract long grantedTokenRefillTime();
   }
 
   /** Value class representing a quota rebate. */
@@ -75,7 +77,7 @@ public class QuotaManager {
 
     abstract String userId();
 
-    abstract DateTime grantedTokenRefillTime();
+    abstract long grantedTokenRefillTime();
   }
 
   private final TokenStore tokenStore;
@@ -85,13 +87,23 @@ public class QuotaManager {
   public QuotaManager(TokenStore tokenStore, ExecutorService backgroundExecutor) {
     this.tokenStore = tokenStore;
     this.backgroundExecutor = backgroundExecutor;
-    tokenStore.scheduleRefresh();
   }
 
-  /** Attempts to acquire requested quota, synchronously. */
-  public QuotaResponse acquireQuota(QuotaRequest request) {
-    TimestampedInteger tokens = tokenStore.take(request.userId());
-    return QuotaResponse.create(tokens.value() != 0, request.userId(), tokens.timestamp());
+  /**
+   * Attempts to acquire requested quota, asynchronously.
+   *
+   * <p>The response is usually available right away, unless the tokens of the user are leased
+   * and the next lease has to be borrowed first.
+   */
+  public ListenableFuture<QuotaResponse> acquireQuota(QuotaRequest request) {
+    return Futures.transform(
+        tokenStore.takeAsync(request.userId()),
+        grantedTokenRefillTime ->
+            QuotaResponse.create(
+                grantedTokenRefillTime != NO_TOKEN_GRANTED,
+                request.userId(),
+                grantedTokenRefillTime),
+        directExecutor());
   }
 
   /** Returns granted quota to the token store, asynchronously. */
@@ -0,0 +1,68 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy.quota;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * A counter of the tokens that all the proxy replicas have leased, for each user of each protocol.
+ *
+ * <p>The counter is the source of truth for quota that is shared across replicas. Each {@link
+ * TokenStore} borrows tokens from it in batches, and grants them locally, so that only one call in
+ * a batch reaches the counter. The counter refills the tokens of a user on its own schedule, and
+ * numbers each refill, so that tokens leased from different refills can be told apart.
+ *
+ * <p>Implementations must be thread-safe, and atomic across replicas.
+ */
+public interface SharedTokenCounter {
+
+  /**
+   * Leases up to {@code amount} tokens of a user.
+   *
+   * @param protocolName the name of the protocol of the quota.
+   * @param userId the identifier of the user.
+   * @param amount the number of tokens to lease.
+   * @param tokenAmount the number of tokens allotted to the user in each refill.
+   * @param refillPeriodMillis the refill period of the user, or 0 if refill is disabled.
+   * @return the lease of the tokens, which may be fewer than requested, even none.
+   */
+  Lease borrow(
+      String protocolName, String userId, int amount, int tokenAmount, long refillPeriodMillis);
+
+  /**
+   * Returns leased tokens that have not been used.
+   *
+   * <p>The tokens are discarded if they are from an earlier refill than the current one.
+   */
+  void giveBack(String protocolName, String userId, long refill, int amount);
+
+  /** Value class representing tokens leased from the counter. */
+  @AutoValue
+  abstract class Lease {
+
+    public static Lease create(int tokens, long refill, long millisUntilRefill) {
+      return new AutoValue_SharedTokenCounter_Lease(tokens, refill, millisUntilRefill);
+    }
+
+    /** The number of tokens that are leased. */
+    public abstract int tokens();
+
+    /** The number of the refill that the tokens are from, starting at 1. */
+    public abstract long refill();
+
+    /** The time until the next refill, after which the tokens are not valid anymore. */
+    public abstract long millisUntilRefill();
+  }
+}
@@ -14,21 +14,29 @@
 
 package google.registry.proxy.quota;
 
-import static google.registry.proxy.quota.QuotaConfig.SENTINEL_UNLIMITED_TOKENS;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 import static java.lang.StrictMath.max;
 import static java.lang.StrictMath.min;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
 import com.google.common.flogger.FluentLogger;
-import google.registry.util.Clock;
+import com.google.common.math.LongMath;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import google.registry.proxy.quota.SharedTokenCounter.Lease;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
-import org.joda.time.DateTime;
-import org.joda.time.Duration;
 
 /**
  * A thread-safe token store that supports concurrent {@link #take}, {@link #put}, and {@link
@@ -39,98 +47,471 @@ import org.joda.time.Duration;
  * results in quota fulfillment failure, leading to automatic connection termination. For details on
  * tokens, see {@code config/default-config.yaml}.
  *
- * <p>The store also lazily refills tokens for a {@code userId} when a {@link #take} or a {@link
- * #put} takes place. It also exposes a {@link #refresh} method that goes through each entry in the
- * store and purges stale entries, in order to prevent the token store from growing too large.
+ * <p>Each user has a bucket of tokens, whose count and last refill time are packed into a single
+ * {@link AtomicLong}, so that {@link #take} and {@link #put} are lock-free and don't allocate once
+ * the user has a bucket. The store lazily refills the bucket of a {@code userId} when a {@link
+ * #take} or a {@link #put} takes place. Times are read from a {@link Ticker} and kept in
+ * milliseconds since the store was created.
+ *
+ * <p>If a lease size is configured, the quota of a user is shared by all the proxy replicas. The
+ * tokens are then borrowed from a {@link SharedTokenCounter} in batches of that size, instead of
+ * being refilled locally. The next batch is borrowed in the background once half of the current
+ * one is taken, so that tokens are granted without waiting for the counter. The batches are always
+ * borrowed in the background, so that neither {@link #take} nor {@link #takeAsync} block the
+ * calling thread, which is usually an event loop. When a bucket runs dry, {@link #take} denies the
+ * token, and {@link #takeAsync} grants it once the next batch is borrowed. The refill time of
+ * leased tokens is the number of the refill of the counter that they are from.
+ *
+ * <p>Buckets that have not been refilled for longer than the refresh period are purged by {@link
+ * #refresh}, in order to prevent the token store from growing too large. Instead of running
+ * periodically, it is started when a {@link #take} adds a bucket and as many buckets have been
+ * added since the last refresh as there were left after it. It runs on the background executor, so
+ * that the scan doesn't hold up the thread that adds the bucket.
  *
  * <p>There should be one token store for each protocol.
  */
 @ThreadSafe
 public class TokenStore {
 
+  /** The value of {@link #take} when no token is granted. */
+  static final long NO_TOKEN_GRANTED = -1;
+
+  /** The least number of buckets that are added between two refreshes. */
+  static final int MIN_BUCKETS_ADDED_BEFORE_REFRESH = 1024;
+
+  /**
+   * How long a leasing bucket waits before it asks the shared counter again, once the counter has
+   * no more tokens for the user.
+   *
+   * <p>Other replicas may give tokens back before the next refill, and there is no next refill at
+   * all if refill is disabled.
+   */
+  static final long EXHAUSTED_RETRY_MILLIS = 1000;
+
+  /** The number of low bits of a bucket state that hold the token count. */
+  private static final int TOKEN_BITS = 24;
+
+  private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+
   /** Value class representing a timestamped integer. */
   @AutoValue
   abstract static class TimestampedInteger {
 
-    static TimestampedInteger create(int value, DateTime timestamp) {
+    static TimestampedInteger create(int value, long timestamp) {
       return new AutoValue_TokenStore_TimestampedInteger(value, timestamp);
     }
 
     abstract int value();
 
-    abstract DateTime timestamp();
+    abstract long timestamp();
   }
 
   /**
-   * A wrapper to get around Java lambda's closure limitation.
+   * The tokens of a user.
    *
-   * <p>Use the class to modify the value of a local variable captured by an lambda.
+   * <p>The state of a bucket packs the refill time of its tokens in its high bits and the number
+   * of tokens left in its low {@link #TOKEN_BITS} bits, so that both are updated with a single
+   * compare-and-set.
    */
-  private static class Wrapper<T> {
-    T value;
+  private interface TokenBucket {
+
+    /** Takes one token, returning its refill time or {@link #NO_TOKEN_GRANTED}. */
+    long take(long nowMillis);
+
+    /** Returns one token, unless it was taken before the last refill. */
+    void put(long returnedTokenRefillTime, long nowMillis);
+
+    /** Returns when the bucket was last refilled, in milliseconds since the store was created. */
+    long lastRefillMillis();
+
+    long state();
+
+    /** Releases the tokens of the bucket, after it is removed from the store. */
+    default void discard() {}
+
+    /** Returns a future that completes once the tokens being added to the bucket are added. */
+    default ListenableFuture<?> pendingRefill() {
+      return immediateFuture(null);
+    }
+  }
+
+  /** A bucket that is refilled locally. */
+  private static final class LocalTokenBucket implements TokenBucket {
+
+    private final int tokenAmount;
+    private final long refillPeriodMillis;
+    private final AtomicLong state;
+
+    LocalTokenBucket(int tokenAmount, long refillPeriodMillis, long nowMillis) {
+      this.tokenAmount = tokenAmount;
+      this.refillPeriodMillis = refillPeriodMillis;
+      this.state = new AtomicLong(pack(nowMillis, tokenAmount));
+    }
+
+    @Override
+    public long take(long nowMillis) {
+      while (true) {
+        long currentState = state.get();
+        long refilledState = refill(currentState, nowMillis);
+        int tokens = tokens(refilledState);
+        if (tokens == 0) {
+          // The state is only updated when a token is taken. An empty bucket that needs a refill
+          // is refilled with no tokens anyway.
+          return NO_TOKEN_GRANTED;
+        }
+        if (state.compareAndSet(currentState, pack(refillTime(refilledState), tokens - 1))) {
+          return refillTime(refilledState);
+        }
+      }
+    }
+
+    @Override
+    public void put(long returnedTokenRefillTime, long nowMillis) {
+      while (true) {
+        long currentState = state.get();
+        long newState = refill(currentState, nowMillis);
+        if (refillTime(newState) == returnedTokenRefillTime) {
+          newState = pack(returnedTokenRefillTime, min(tokens(newState) + 1, tokenAmount));
+        }
+        if (newState == currentState || state.compareAndSet(currentState, newState)) {
+          return;
+        }
+      }
+    }
+
+    /** Returns the state after a refill, if refill is enabled and one is needed. */
+    private long refill(long currentState, long nowMillis) {
+      return refillPeriodMillis != 0 && nowMillis - refillTime(currentState) >= refillPeriodMillis
+          ? pack(nowMillis, tokenAmount)
+          : currentState;
+    }
+
+    @Override
+    public long lastRefillMillis() {
+      return refillTime(state.get());
+    }
+
+    @Override
+    public long state() {
+      return state.get();
+    }
+  }
+
+  /**
+   * A bucket that is refilled with tokens leased from the {@link SharedTokenCounter}.
+   *
+   * <p>The leased tokens are only valid until the counter refills the tokens of the user, after
+   * which the bucket is empty until a lease from the new refill is added.
+   */
+  private final class LeasedTokenBucket implements TokenBucket {
+
+    private final String userId;
+    private final int tokenAmount;
+    private final long refillPeriodMillis;
+    private final int leaseAmount;
+
+    /** The state of the bucket, with no tokens from refill 0 until the first lease is added. */
+    private final AtomicLong state = new AtomicLong(pack(0, 0));
+
+    /** The lease that is being borrowed in the background, if any. */
+    private final AtomicReference<ListenableFuture<?>> pendingBorrow = new AtomicReference<>();
+
+    private volatile long lastRefillMillis;
+
+    /** When the leased tokens expire. */
+    private volatile long expiryMillis;
+
+    /** Until when the counter is known to have no more tokens for the user. */
+    private volatile long exhaustedUntilMillis;
+
+    LeasedTokenBucket(String userId, int tokenAmount, long refillPeriodMillis, long nowMillis) {
+      this.userId = userId;
+      this.tokenAmount = tokenAmount;
+      this.refillPeriodMillis = refillPeriodMillis;
+      this.leaseAmount = min(leaseSize, tokenAmount);
+      this.lastRefillMillis = nowMillis;
+    }
+
+    @Override
+    public long take(long nowMillis) {
+      long refillTime = takeLeased(nowMillis);
+      if (refillTime == NO_TOKEN_GRANTED && borrowInBackground(nowMillis).isDone()) {
+        // The background executor may borrow the lease before it returns, e.g. if it is direct.
+        refillTime = takeLeased(nowMillis);
+      }
+      return refillTime;
+    }
+
+    private long takeLeased(long nowMillis) {
+      if (nowMillis >= expiryMillis) {
+        return NO_TOKEN_GRANTED;
+      }
+      while (true) {
+        long currentState = state.get();
+        int tokens = tokens(currentState);
+        if (tokens == 0) {
+          return NO_TOKEN_GRANTED;
+        }
+        if (state.compareAndSet(currentState, pack(refillTime(currentState), tokens - 1))) {
+          if (tokens - 1 <= leaseAmount / 2) {
+            borrowInBackground(nowMillis);
+          }
+          return refillTime(currentState);
+        }
+      }
+    }
+
+    @Override
+    public void put(long returnedTokenRefillTime, long nowMillis) {
+      if (nowMillis >= expiryMillis) {
+        return;
+      }
+      while (true) {
+        long currentState = state.get();
+        if (refillTime(currentState) != returnedTokenRefillTime) {
+          return;
+        }
+        int tokens = min(tokens(currentState) + 1, tokenAmount);
+        // Tokens that pile up locally are given back, so that other replicas can borrow them.
+        int surplus = tokens > 2 * leaseAmount ? tokens - leaseAmount : 0;
+        if (state.compareAndSet(currentState, pack(returnedTokenRefillTime, tokens - surplus))) {
+          if (surplus > 0) {
+            giveBackInBackground(returnedTokenRefillTime, surplus);
+          }
+          return;
+        }
+      }
+    }
+
+    private Lease borrow() {
+      return sharedCounter.borrow(
+          config.getProtocolName(), userId, leaseAmount, tokenAmount, refillPeriodMillis);
+    }
+
+    /**
+     * Borrows a lease in the background, unless one is already being borrowed or the counter is
+     * known to be exhausted.
+     *
+     * @return a future that completes once the lease is added to the bucket.
+     */
+    private ListenableFuture<?> borrowInBackground(long nowMillis) {
+      if (nowMillis < exhaustedUntilMillis) {
+        return immediateFuture(null);
+      }
+      ListenableFutureTask<?> task =
+          ListenableFutureTask.create(
+              () -> {
+                try {
+                  addLease(borrow(), nowMillis());
+                } catch (RuntimeException e) {
+                  logger.atWarning().withCause(e).log(
+                      "Cannot lease tokens of %s for protocol %s",
+                      userId, config.getProtocolName());
+                } finally {
+                  pendingBorrow.set(null);
+                }
+              },
+              null);
+      while (!pendingBorrow.compareAndSet(null, task)) {
+        ListenableFuture<?> currentBorrow = pendingBorrow.get();
+        if (currentBorrow != null) {
+          return currentBorrow;
+        }
+      }
+      backgroundExecutor.execute(task);
+      return task;
+    }
+
+    @Override
+    public ListenableFuture<?> pendingRefill() {
+      ListenableFuture<?> currentBorrow = pendingBorrow.get();
+      return currentBorrow == null ? immediateFuture(null) : currentBorrow;
+    }
+
+    private void giveBackInBackground(long refill, int amount) {
+      backgroundExecutor.execute(
+          () -> {
+            try {
+              sharedCounter.giveBack(config.getProtocolName(), userId, refill, amount);
+            } catch (RuntimeException e) {
+              logger.atWarning().withCause(e).log(
+                  "Cannot give back tokens of %s for protocol %s",
+                  userId, config.getProtocolName());
+            }
+          });
+    }
+
+    /**
+     * Adds leased tokens to the bucket.
+     *
+     * <p>Tokens from a later refill replace the ones in the bucket, and tokens from an earlier one
+     * are discarded.
+     */
+    private void addLease(Lease lease, long nowMillis) {
+      while (true) {
+        long currentState = state.get();
+        long currentRefill = refillTime(currentState);
+        long newState;
+        if (lease.refill() > currentRefill) {
+          newState = pack(lease.refill(), lease.tokens());
+        } else if (lease.refill() == currentRefill) {
+          newState = pack(currentRefill, min(tokens(currentState) + lease.tokens(), tokenAmount));
+        } else {
+          return;
+        }
+        if (state.compareAndSet(currentState, newState)) {
+          break;
+        }
+      }
+      // The times are updated after the tokens, so they may lag behind a concurrent lease. At worst
+      // tokens are borrowed once more than needed, or granted slightly past their refill.
+      lastRefillMillis = nowMillis;
+      expiryMillis = LongMath.saturatedAdd(nowMillis, lease.millisUntilRefill());
+      exhaustedUntilMillis =
+          lease.tokens() < leaseAmount
+              ? min(expiryMillis, LongMath.saturatedAdd(nowMillis, EXHAUSTED_RETRY_MILLIS))
+              : 0;
+    }
+
+    @Override
+    public long lastRefillMillis() {
+      return lastRefillMillis;
+    }
+
+    @Override
+    public long state() {
+      return state.get();
+    }
+
+    @Override
+    public void discard() {
+      // The bucket is not in the store anymore, so the tokens it hands out from now on are lost.
+      long currentState = state.getAndSet(pack(refillTime(state.get()), 0));
+      if (tokens(currentState) > 0 && nowMillis() < expiryMillis) {
+        giveBackInBackground(refillTime(currentState), tokens(currentState));
+      }
+    }
+  }
+
+  private static long pack(long refillTime, int tokens) {
+    return (refillTime << TOKEN_BITS) | tokens;
+  }
+
+  private static long refillTime(long state) {
+    return state >>> TOKEN_BITS;
+  }
+
+  private static int tokens(long state) {
+    return (int) (state & TOKEN_MASK);
   }
 
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
-  /** A map of {@code userId} to available tokens, timestamped at last refill time. */
-  private final ConcurrentHashMap<String, TimestampedInteger> tokensMap = new ConcurrentHashMap<>();
+  /** A map of {@code userId} to its bucket of tokens. */
+  private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+  private final AtomicInteger bucketsAddedSinceRefresh = new AtomicInteger();
+  private volatile int bucketsAddedBeforeRefresh = MIN_BUCKETS_ADDED_BEFORE_REFRESH;
 
   private final QuotaConfig config;
-  private final ScheduledExecutorService refreshExecutor;
-  private final Clock clock;
+  private final Ticker ticker;
+  private final long startNanos;
+
+  /** The number of tokens borrowed at a time from the shared counter, or 0 if it's not used. */
+  private final int leaseSize;
+
+  @Nullable private final SharedTokenCounter sharedCounter;
+
+  /** The executor that refreshes the store and borrows and gives back leases. */
+  private final Executor backgroundExecutor;
 
-  public TokenStore(QuotaConfig config, ScheduledExecutorService refreshExecutor, Clock clock) {
+  /**
+   * Creates a token store that refills the tokens locally, and refreshes itself on the given
+   * executor.
+   */
+  public TokenStore(QuotaConfig config, Ticker ticker, Executor backgroundExecutor) {
+    this(config, ticker, 0, null, backgroundExecutor);
+  }
+
+  /**
+   * Creates a token store that leases the tokens from a shared counter, if the config has a lease
+   * size, with the leases borrowed and the store refreshed in the background on the given executor.
+   */
+  public TokenStore(
+      QuotaConfig config,
+      Ticker ticker,
+      SharedTokenCounter sharedCounter,
+      Executor backgroundExecutor) {
+    this(config, ticker, config.getLeaseSize(), sharedCounter, backgroundExecutor);
+  }
+
+  private TokenStore(
+      QuotaConfig config,
+      Ticker ticker,
+      int leaseSize,
+      @Nullable SharedTokenCounter sharedCounter,
+      Executor backgroundExecutor) {
+    checkArgument(leaseSize >= 0, "Lease size %s is negative", leaseSize);
     this.config = config;
-    this.refreshExecutor = refreshExecutor;
-    this.clock = clock;
+    this.ticker = ticker;
+    this.startNanos = ticker.read();
+    this.leaseSize = leaseSize;
+    this.sharedCounter = sharedCounter;
+    this.backgroundExecutor = backgroundExecutor;
+  }
+
+  /** Returns the current time, in milliseconds since this store was created. */
+  private long nowMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(ticker.read() - startNanos);
   }
 
   /**
    * Attempts to take one token from the token store.
    *
-   * <p>This method first check if the user already has an existing entry in the tokens map, and if
-   * that entry has been last refilled before the refill period. In either case it will reset the
-   * token amount to the allotted to the user.
+   * <p>This method first check if the user already has a bucket, and if that bucket has been last
+   * refilled before the refill period. In either case it will reset the token amount to the
+   * allotted to the user.
    *
-   * <p>The request can be partially fulfilled or all-or-nothing, meaning if there are fewer tokens
-   * available than requested, we can grant all available ones, or grant nothing, depending on the
-   * {@code partialGrant} parameter.
+   * <p>This method never blocks. If the tokens of the user are leased and the bucket has run dry,
+   * the token is denied while the next lease is borrowed in the background.
    *
    * @param userId the identifier of the user requesting the token.
-   * @return the number of token granted, timestamped at refill time of the pool of tokens from
-   *     which the granted one is taken.
+   * @return the refill time of the pool of tokens from which the granted token is taken, or {@link
+   *     #NO_TOKEN_GRANTED} if there are no tokens left.
    */
-  TimestampedInteger take(String userId) {
-    Wrapper<TimestampedInteger> grantedToken = new Wrapper<>();
-    tokensMap.compute(
-        userId,
-        (user, availableTokens) -> {
-          DateTime now = clock.nowUtc();
-          int currentTokenCount;
-          DateTime refillTime;
-          // Checks if the user is provisioned with unlimited tokens.
-          if (config.hasUnlimitedTokens(user)) {
-            grantedToken.value = TimestampedInteger.create(1, now);
-            return TimestampedInteger.create(SENTINEL_UNLIMITED_TOKENS, now);
-          }
-          // Checks if the entry exists.
-          if (availableTokens == null
-              // Or if refill is enabled and the entry needs to be refilled.
-              || (!config.getRefillPeriod(user).isEqual(Duration.ZERO)
-                  && !new Duration(availableTokens.timestamp(), now)
-                      .isShorterThan(config.getRefillPeriod(user)))) {
-            currentTokenCount = config.getTokenAmount(user);
-            refillTime = now;
-          } else {
-            currentTokenCount = availableTokens.value();
-            refillTime = availableTokens.timestamp();
-          }
-          int newTokenCount = max(0, currentTokenCount - 1);
-          grantedToken.value =
-              TimestampedInteger.create(currentTokenCount - newTokenCount, refillTime);
-          return TimestampedInteger.create(newTokenCount, refillTime);
-        });
-    return grantedToken.value;
+  long take(String userId) {
+    long nowMillis = nowMillis();
+    // Checks if the user is provisioned with unlimited tokens.
+    if (config.hasUnlimitedTokens(userId)) {
+      return nowMillis;
+    }
+    TokenBucket bucket = buckets.get(userId);
+    if (bucket == null) {
+      bucket = addBucket(userId, nowMillis);
+    }
+    return bucket.take(nowMillis);
+  }
+
+  /**
+   * Attempts to take one token from the token store, waiting for the next lease of tokens if the
+   * bucket of the user has run dry.
+   *
+   * <p>The returned future completes in the thread that adds the lease, so its listeners must not
+   * block either.
+   *
+   * @see #take
+   */
+  ListenableFuture<Long> takeAsync(String userId) {
+    long refillTime = take(userId);
+    TokenBucket bucket = buckets.get(userId);
+    if (refillTime != NO_TOKEN_GRANTED || bucket == null) {
+      return immediateFuture(refillTime);
+    }
+    ListenableFuture<?> pendingRefill = bucket.pendingRefill();
+    if (pendingRefill.isDone()) {
+      return immediateFuture(NO_TOKEN_GRANTED);
+    }
+    return Futures.transform(pendingRefill, unused -> bucket.take(nowMillis()), directExecutor());
   }
 
   /**
@@ -144,79 +525,84 @@ public class TokenStore {
    * @param returnedTokenRefillTime The refill time of the pool of tokens from which the returned
    *     one is taken from.
    */
-  void put(String userId, DateTime returnedTokenRefillTime) {
-    tokensMap.computeIfPresent(
-        userId,
-        (user, availableTokens) -> {
-          DateTime now = clock.nowUtc();
-          int currentTokenCount = availableTokens.value();
-          DateTime refillTime = availableTokens.timestamp();
-          int newTokenCount;
-          // Check if quota is unlimited.
-          if (!config.hasUnlimitedTokens(userId)) {
-            // Check if refill is enabled and a refill is needed.
-            if (!config.getRefillPeriod(user).isEqual(Duration.ZERO)
-                && !new Duration(availableTokens.timestamp(), now)
-                    .isShorterThan(config.getRefillPeriod(user))) {
-              currentTokenCount = config.getTokenAmount(user);
-              refillTime = now;
-            }
-            // If the returned token comes from the current pool, add it back, otherwise discard it.
-            newTokenCount =
-                returnedTokenRefillTime.equals(refillTime)
-                    ? min(currentTokenCount + 1, config.getTokenAmount(userId))
-                    : currentTokenCount;
-          } else {
-            newTokenCount = SENTINEL_UNLIMITED_TOKENS;
-          }
-          return TimestampedInteger.create(newTokenCount, refillTime);
-        });
+  void put(String userId, long returnedTokenRefillTime) {
+    TokenBucket bucket = buckets.get(userId);
+    if (bucket != null) {
+      bucket.put(returnedTokenRefillTime, nowMillis());
+    }
+  }
+
+  /** Adds a bucket for the user, unless another thread just did. */
+  private TokenBucket addBucket(String userId, long nowMillis) {
+    int tokenAmount = config.getTokenAmount(userId);
+    checkArgument(
+        tokenAmount >= 0 && tokenAmount <= TOKEN_MASK,
+        "Token amount %s is out of range",
+        tokenAmount);
+    long refillPeriodMillis = config.getRefillPeriod(userId).getMillis();
+    TokenBucket newBucket =
+        leaseSize == 0
+            ? new LocalTokenBucket(tokenAmount, refillPeriodMillis, nowMillis)
+            : new LeasedTokenBucket(userId, tokenAmount, refillPeriodMillis, nowMillis);
+    TokenBucket existingBucket = buckets.putIfAbsent(userId, newBucket);
+    if (existingBucket != null) {
+      return existingBucket;
+    }
+    // Only the thread that resets the counter starts a refresh.
+    int threshold = bucketsAddedBeforeRefresh;
+    if (bucketsAddedSinceRefresh.incrementAndGet() >= threshold
+        && bucketsAddedSinceRefresh.getAndSet(0) >= threshold) {
+      backgroundExecutor.execute(
+          () -> {
+            refresh();
+            logger.atInfo().log(
+                "Refreshed quota for protocol %s, %d users left",
+                config.getProtocolName(), buckets.size());
+          });
+    }
+    return newBucket;
   }
 
   /**
-   * Refreshes the token store and deletes any entry that has not been refilled for longer than the
+   * Refreshes the token store and deletes any bucket that has not been refilled for longer than the
    * refresh period.
    *
-   * <p>Strictly speaking it should delete the entries that have not been updated (put, taken,
+   * <p>Strictly speaking it should delete the buckets that have not been updated (put, taken,
    * refill) for longer than the refresh period. But the last update time is not recorded. Typically
    * the refill period is much shorter than the refresh period, so the last refill time should serve
    * as a good proxy for last update time as the actual update time cannot be one refill period
    * later from the refill time, otherwise another refill would have been performed.
    */
   void refresh() {
-    tokensMap.forEach(
-        (user, availableTokens) -> {
-          if (!new Duration(availableTokens.timestamp(), clock.nowUtc())
-              .isShorterThan(config.getRefreshPeriod())) {
-            tokensMap.remove(user);
-          }
-        });
-  }
-
-  /** Schedules token store refresh if enabled. */
-  void scheduleRefresh() {
-    // Only schedule refresh if the refresh period is not zero.
-    if (!config.getRefreshPeriod().isEqual(Duration.ZERO)) {
-      Future<?> unusedFuture =
-          refreshExecutor.scheduleWithFixedDelay(
-              () -> {
-                refresh();
-                logger.atInfo().log("Refreshing quota for protocol %s", config.getProtocolName());
-              },
-              config.getRefreshPeriod().getStandardSeconds(),
-              config.getRefreshPeriod().getStandardSeconds(),
-              TimeUnit.SECONDS);
+    long refreshPeriodMillis = config.getRefreshPeriod().getMillis();
+    // Refresh is disabled if the refresh period is zero.
+    if (refreshPeriodMillis != 0) {
+      long nowMillis = nowMillis();
+      buckets.forEach(
+          (user, bucket) -> {
+            // Only removes the bucket if it hasn't been replaced in the meantime.
+            if (nowMillis - bucket.lastRefillMillis() >= refreshPeriodMillis
+                && buckets.remove(user, bucket)) {
+              bucket.discard();
+            }
+          });
     }
+    bucketsAddedBeforeRefresh = max(buckets.size(), MIN_BUCKETS_ADDED_BEFORE_REFRESH);
   }
 
   /**
    * Helper method to retrieve the timestamped token value for a {@code userId} for testing.
    *
-   * <p>This non-mutating method is exposed solely for testing, so that the {@link #tokensMap} can
+   * <p>This non-mutating method is exposed solely for testing, so that the {@link #buckets} can
    * stay private and not be altered unintentionally.
    */
   @VisibleForTesting
   TimestampedInteger getTokenForTests(String userId) {
-    return tokensMap.get(userId);
+    TokenBucket bucket = buckets.get(userId);
+    if (bucket == null) {
+      return null;
+    }
+    long state = bucket.state();
+    return TimestampedInteger.create(tokens(state), refillTime(state));
   }
 }
@@ -0,0 +1,80 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy.whois;
+
+import com.google.common.base.Ascii;
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import google.registry.util.Clock;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.concurrent.ThreadSafe;
+import org.joda.time.Duration;
+
+/**
+ * A thread-safe cache of the WHOIS responses that the backend returned for recent queries.
+ *
+ * <p>The cache is the proxy's local, read-only copy of the registry data that bots query over and
+ * over again. It is filled with the responses that are relayed from the backend, and a cached
+ * response is served for a fixed time after it was relayed, after which the query is relayed again.
+ * The total size of the cached responses is bounded, and the least recently used ones are evicted
+ * first.
+ *
+ * <p>Queries are cached by their normalized text. WHOIS lookups are case-insensitive and ignore
+ * surrounding whitespace, so queries that only differ in those respects share a response. Only
+ * ASCII letters and whitespace are normalized, and all other characters are compared exactly.
+ *
+ * <p>There should be one cache for the WHOIS protocol, shared by all connections.
+ */
+@ThreadSafe
+public class WhoisResponseCache {
+
+  private static final CharMatcher ASCII_WHITESPACE =
+      CharMatcher.ascii().and(CharMatcher.whitespace());
+
+  private final Cache<String, byte[]> cache;
+
+  public WhoisResponseCache(long maxSizeBytes, Duration expiration, Clock clock) {
+    cache =
+        CacheBuilder.newBuilder()
+            .maximumWeight(maxSizeBytes)
+            .<String, byte[]>weigher((query, response) -> query.length() + response.length)
+            .expireAfterWrite(expiration.getMillis(), TimeUnit.MILLISECONDS)
+            .ticker(
+                new Ticker() {
+                  @Override
+                  public long read() {
+                    return TimeUnit.MILLISECONDS.toNanos(clock.nowUtc().getMillis());
+                  }
+                })
+            .build();
+  }
+
+  /** Returns the cached response to {@code query}, if there's one that hasn't expired. */
+  public Optional<byte[]> get(String query) {
+    return Optional.ofNullable(cache.getIfPresent(normalize(query)));
+  }
+
+  /** Caches the response that the backend returned for {@code query}. */
+  public void put(String query, byte[] response) {
+    cache.put(normalize(query), response);
+  }
+
+  private static String normalize(String query) {
+    return Ascii.toLowerCase(ASCII_WHITESPACE.trimAndCollapseFrom(query, ' '));
+  }
+}
@@ -0,0 +1,203 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy;
+
+import com.google.common.collect.ImmutableList;
+import google.registry.proxy.Protocol.BackendProtocol;
+import google.registry.proxy.handler.RelayHandler.FullHttpResponseRelayHandler;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.DefaultHttp2GoAwayFrame;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.SslHandshakeCompletionEvent;
+import io.netty.util.concurrent.Future;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.rules.ExternalResource;
+
+/**
+ * Helper for testing the relay of requests over pooled HTTP/2 connections.
+ *
+ * <p>The rule runs a plaintext HTTP/2 backend on a loopback port, which answers each request with
+ * a response that has the same content. The backend and all the channels of a test share a single
+ * thread, just like a worker event loop of the proxy and the pools of connections that belong to
+ * it.
+ *
+ * <p>Used in {@link Http2ConnectionPoolTest} and {@link ProxyServerTest}.
+ */
+public final class Http2BackendRule extends ExternalResource {
+
+  private static final int MAX_CONTENT_LENGTH = 1024 * 1024;
+
+  private final EventLoopGroup eventLoopGroup = new NioEventLoopGroup(1);
+
+  // The server side of the connections that the backend accepted, in order.
+  private final List<Channel> connections = new CopyOnWriteArrayList<>();
+
+  // Whether the backend sends a GOAWAY before the next response that it sends.
+  private final AtomicBoolean goAwayBeforeNextResponse = new AtomicBoolean();
+
+  private Channel serverChannel;
+
+  @Override
+  protected void before() {
+    ServerBootstrap serverBootstrap =
+        new ServerBootstrap()
+            .group(eventLoopGroup)
+            .channel(NioServerSocketChannel.class)
+            .childHandler(
+                new ChannelInitializer<SocketChannel>() {
+                  @Override
+                  protected void initChannel(SocketChannel connection) {
+                    connections.add(connection);
+                    connection
+                        .pipeline()
+                        .addLast(
+                            Http2FrameCodecBuilder.forServer().build(),
+                            new Http2MultiplexHandler(
+                                new ChannelInitializer<Http2StreamChannel>() {
+                                  @Override
+                                  protected void initChannel(Http2StreamChannel stream) {
+                                    stream
+                                        .pipeline()
+                                        .addLast(
+                                            new Http2StreamFrameToHttpObjectCodec(true),
+                                            new HttpObjectAggregator(MAX_CONTENT_LENGTH),
+                                            new EchoHandler());
+                                  }
+                                }));
+                  }
+                });
+    serverChannel =
+        serverBootstrap.bind(InetAddress.getLoopbackAddress(), 0).syncUninterruptibly().channel();
+  }
+
+  @Override
+  protected void after() {
+    Future<?> unusedFuture = eventLoopGroup.shutdownGracefully();
+  }
+
+  /** Returns the event loop that all the channels of the test must be registered with. */
+  EventLoop eventLoop() {
+    return eventLoopGroup.next();
+  }
+
+  /** Returns the port that the backend listens on. */
+  int port() {
+    return ((InetSocketAddress) serverChannel.localAddress()).getPort();
+  }
+
+  /** Returns the number of connections that the backend accepted. */
+  int connectionCount() {
+    return connections.size();
+  }
+
+  /** Makes the backend tell the client to stop opening streams before its next response. */
+  void goAwayBeforeNextResponse() {
+    goAwayBeforeNextResponse.set(true);
+  }
+
+  /** Returns a multiplexed protocol that connects to the backend. */
+  BackendProtocol protocol() {
+    return protocol(InetAddress.getLoopbackAddress().getHostAddress(), port());
+  }
+
+  /**
+   * Returns a multiplexed protocol that connects to the given host and port.
+   *
+   * <p>Its streams relay the responses to their relay channel, just like the HTTPS relay protocol.
+   */
+  BackendProtocol protocol(String host, int port) {
+    return Protocol.backendBuilder()
+        .name("backend")
+        .host(host)
+        .port(port)
+        .handlerProviders(
+            ImmutableList.of(
+                () -> new Http2StreamFrameToHttpObjectCodec(false),
+                () -> new HttpObjectAggregator(MAX_CONTENT_LENGTH),
+                FullHttpResponseRelayHandler::new))
+        .connectionHandlerProviders(ImmutableList.of(PriorKnowledgeHandler::new))
+        .build();
+  }
+
+  /** Runs a task on the event loop, and waits for its result. */
+  <T> T call(Callable<T> task) throws Exception {
+    return eventLoop().submit(task).get();
+  }
+
+  /** Handler that answers a request with a response that has the same content. */
+  private class EchoHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+      if (goAwayBeforeNextResponse.getAndSet(false)) {
+        // The GOAWAY still lets the client finish the streams that it already opened.
+        ChannelFuture unusedFuture =
+            ctx.channel().parent().writeAndFlush(new DefaultHttp2GoAwayFrame(Http2Error.NO_ERROR));
+      }
+      FullHttpResponse response =
+          new DefaultFullHttpResponse(
+              HttpVersion.HTTP_1_1, HttpResponseStatus.OK, request.content().retainedDuplicate());
+      response.headers().setInt("content-length", response.content().readableBytes());
+      ChannelFuture unusedFuture = ctx.writeAndFlush(response);
+    }
+  }
+
+  /**
+   * Handler that starts HTTP/2 as soon as a connection is established.
+   *
+   * <p>This takes the place of the SSL handshake and the ALPN of the HTTPS relay protocol, and it
+   * notifies the connection of a successful handshake once the HTTP/2 handlers are set up.
+   */
+  private static class PriorKnowledgeHandler extends ChannelInboundHandlerAdapter {
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+      ChannelPipeline pipeline = ctx.pipeline();
+      pipeline.addAfter(
+          ctx.name(), null, new Http2MultiplexHandler(new ChannelInboundHandlerAdapter()));
+      pipeline.addAfter(ctx.name(), null, Http2FrameCodecBuilder.forClient().build());
+      pipeline.remove(this);
+      super.channelActive(ctx);
+      pipeline.fireUserEventTriggered(SslHandshakeCompletionEvent.SUCCESS);
+    }
+  }
+}
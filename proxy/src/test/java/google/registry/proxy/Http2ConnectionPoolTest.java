@@ -0,0 +1,162 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.proxy.TestUtils.makeHttpPostRequest;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertThrows;
+
+import com.google.common.base.Throwables;
+import google.registry.proxy.Protocol.BackendProtocol;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.util.concurrent.Future;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.UnknownHostException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link Http2ConnectionPool}.
+ *
+ * <p>The pool connects to an HTTP/2 backend on a loopback port, and requests are sent over the
+ * streams that it opens.
+ */
+@RunWith(JUnit4.class)
+public class Http2ConnectionPoolTest {
+
+  @Rule public final Http2BackendRule backend = new Http2BackendRule();
+
+  // The pool only sets this channel as the relay channel of its streams.
+  private final EmbeddedChannel relayedChannel = new EmbeddedChannel();
+
+  private final BlockingQueue<String> responses = new LinkedBlockingQueue<>();
+
+  private Http2ConnectionPool createPool(BackendProtocol protocol, int size) {
+    return new Http2ConnectionPool(
+        backend.eventLoop(), NetworkTransport.NIO, ByteBufAllocator.DEFAULT, protocol, size);
+  }
+
+  /** Opens a stream whose responses are added to {@link #responses}. */
+  private Future<Http2StreamChannel> openStream(Http2ConnectionPool pool) throws Exception {
+    return backend.call(
+        () ->
+            pool.openStream(
+                relayedChannel,
+                new ChannelInitializer<Http2StreamChannel>() {
+                  @Override
+                  protected void initChannel(Http2StreamChannel stream) {
+                    stream
+                        .pipeline()
+                        .addLast(
+                            new Http2StreamFrameToHttpObjectCodec(false),
+                            new HttpObjectAggregator(1024),
+                            new SimpleChannelInboundHandler<FullHttpResponse>() {
+                              @Override
+                              protected void channelRead0(
+                                  ChannelHandlerContext ctx, FullHttpResponse response) {
+                                responses.add(response.content().toString(US_ASCII));
+                              }
+                            });
+                  }
+                }));
+  }
+
+  /** Sends a request over a new stream, and returns the stream once the response is received. */
+  private Http2StreamChannel sendRequest(Http2ConnectionPool pool, String content)
+      throws Exception {
+    Http2StreamChannel stream = openStream(pool).get(10, SECONDS);
+    ChannelFuture unusedFuture =
+        stream.writeAndFlush(makeHttpPostRequest(content, "backend.test", "/"));
+    assertThat(responses.poll(10, SECONDS)).isEqualTo(content);
+    return stream;
+  }
+
+  /** Returns the root cause of the failure of a stream that can't be opened. */
+  private static Throwable getStreamFailure(Future<Http2StreamChannel> streamFuture) {
+    return Throwables.getRootCause(
+        assertThrows(ExecutionException.class, () -> streamFuture.get(10, SECONDS)));
+  }
+
+  @Test
+  public void testSuccess_requestsRelayedOverStreams() throws Exception {
+    Http2ConnectionPool pool = createPool(backend.protocol(), 1);
+    Http2StreamChannel stream1 = sendRequest(pool, "first request");
+    Http2StreamChannel stream2 = sendRequest(pool, "second request");
+    // Each request has a stream of its own, and the connection is reused.
+    assertThat(stream2).isNotSameInstanceAs(stream1);
+    assertThat(stream2.parent()).isSameInstanceAs(stream1.parent());
+    assertThat(backend.connectionCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testSuccess_goAwayReceived_connectionReplaced() throws Exception {
+    Http2ConnectionPool pool = createPool(backend.protocol(), 1);
+    backend.goAwayBeforeNextResponse();
+    // The stream that was already opened when the GOAWAY was sent still gets its response.
+    Http2StreamChannel stream1 = sendRequest(pool, "first request");
+    Http2StreamChannel stream2 = sendRequest(pool, "second request");
+    assertThat(stream2.parent()).isNotSameInstanceAs(stream1.parent());
+    assertThat(backend.connectionCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testSuccess_connectionClosed_connectionReplaced() throws Exception {
+    Http2ConnectionPool pool = createPool(backend.protocol(), 1);
+    Http2StreamChannel stream1 = sendRequest(pool, "first request");
+    stream1.parent().close().syncUninterruptibly();
+    Http2StreamChannel stream2 = sendRequest(pool, "second request");
+    assertThat(stream2.parent()).isNotSameInstanceAs(stream1.parent());
+    assertThat(backend.connectionCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testFailure_connectionRefused() throws Exception {
+    int unusedPort;
+    try (ServerSocket socket = new ServerSocket(0)) {
+      unusedPort = socket.getLocalPort();
+    }
+    Http2ConnectionPool pool = createPool(backend.protocol("127.0.0.1", unusedPort), 1);
+    assertThat(getStreamFailure(openStream(pool))).isInstanceOf(ConnectException.class);
+    // The failed connection is replaced by the next stream, which fails again.
+    assertThat(getStreamFailure(openStream(pool))).isInstanceOf(ConnectException.class);
+  }
+
+  @Test
+  public void testFailure_connectionFailedImmediately() throws Exception {
+    // The host name is resolved while the connection is opened, so that it fails before the pool
+    // looks for a usable connection.
+    Http2ConnectionPool pool =
+        createPool(backend.protocol("nonexistent.invalid", backend.port()), 2);
+    assertThat(getStreamFailure(openStream(pool))).isInstanceOf(UnknownHostException.class);
+    assertThat(getStreamFailure(openStream(pool))).isInstanceOf(UnknownHostException.class);
+  }
+}
@@ -19,6 +19,7 @@ import static google.registry.proxy.ProxyConfig.Environment.LOCAL;
 import static google.registry.proxy.ProxyConfig.getProxyConfig;
 
 import com.google.common.base.Suppliers;
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -43,6 +44,8 @@ import google.registry.proxy.handler.QuotaHandler.WhoisQuotaHandler;
 import google.registry.proxy.handler.RelayHandler.FullHttpRequestRelayHandler;
 import google.registry.proxy.handler.RelayHandler.FullHttpResponseRelayHandler;
 import google.registry.proxy.handler.WebWhoisRedirectHandler;
+import google.registry.proxy.quota.InMemorySharedTokenCounter;
+import google.registry.proxy.quota.SharedTokenCounter;
 import google.registry.testing.FakeClock;
 import google.registry.util.Clock;
 import io.netty.channel.Channel;
@@ -54,8 +57,7 @@ import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import java.time.Duration;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -273,8 +275,19 @@ public abstract class ProtocolModuleTest {
 
     @Singleton
     @Provides
-    static ScheduledExecutorService provideScheduledExecutorService() {
-      return Executors.newSingleThreadScheduledExecutor();
+    Ticker provideFakeTicker() {
+      return new Ticker() {
+        @Override
+        public long read() {
+          return TimeUnit.MILLISECONDS.toNanos(fakeClock.nowUtc().getMillis());
+        }
+      };
+    }
+
+    @Singleton
+    @Provides
+    SharedTokenCounter provideSharedTokenCounter() {
+      return new InMemorySharedTokenCounter(fakeClock);
     }
 
     @Singleton
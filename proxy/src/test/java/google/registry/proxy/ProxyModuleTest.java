@@ -21,6 +21,7 @@ import static org.junit.Assert.assertThrows;
 
 import com.beust.jcommander.ParameterException;
 import google.registry.proxy.ProxyConfig.Environment;
+import google.registry.testing.FakeClock;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -119,6 +120,31 @@ public class ProxyModuleTest {
     assertThat(proxyModule.provideEnvironment()).isEqualTo(Environment.ALPHA);
   }
 
+  @Test
+  public void testSuccess_provideSharedTokenCounter_noLeases() {
+    ProxyConfig config = getProxyConfig(LOCAL);
+    assertThat(ProxyModule.provideSharedTokenCounter(config, new FakeClock())).isNotNull();
+  }
+
+  @Test
+  public void testFailure_provideSharedTokenCounter_leasesFromInMemoryCounter() {
+    ProxyConfig config = getProxyConfig(LOCAL);
+    config.whois.quota.leaseSize = 100;
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> ProxyModule.provideSharedTokenCounter(config, new FakeClock()));
+    assertThat(e).hasMessageThat().contains("allowInMemoryQuotaLeases");
+  }
+
+  @Test
+  public void testSuccess_provideSharedTokenCounter_leasesFromInMemoryCounterAllowed() {
+    ProxyConfig config = getProxyConfig(LOCAL);
+    config.epp.quota.leaseSize = 100;
+    config.allowInMemoryQuotaLeases = true;
+    assertThat(ProxyModule.provideSharedTokenCounter(config, new FakeClock())).isNotNull();
+  }
+
   @Test
   public void testFailure_parseArgs_wrongEnvironment() {
     String[] args = {"--env", "beta"};
@@ -0,0 +1,177 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.proxy.Protocol.PROTOCOL_KEY;
+import static google.registry.proxy.TestUtils.makeHttpPostRequest;
+import static google.registry.proxy.handler.RelayHandler.RELAY_BUFFER_KEY;
+import static google.registry.proxy.handler.RelayHandler.RELAY_CHANNEL_KEY;
+import static google.registry.proxy.handler.RelayHandler.writeToRelayChannel;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.collect.ImmutableList;
+import google.registry.proxy.Protocol.BackendProtocol;
+import google.registry.proxy.Protocol.FrontendProtocol;
+import google.registry.proxy.ProxyServer.ServerChannelInitializer;
+import google.registry.proxy.ProxyServer.SingleRequestHandler;
+import google.registry.proxy.handler.RelayHandler.FullHttpRequestRelayHandler;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import java.util.ArrayDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for the relay of client connections over streams of pooled HTTP/2 connections, as
+ * set up by {@link ProxyServer}.
+ *
+ * <p>The client connection is a {@link LocalChannel} that shares the event loop of the HTTP/2
+ * backend, just like the client connections and the pools of a worker event loop of the proxy.
+ */
+@RunWith(JUnit4.class)
+public class ProxyServerTest {
+
+  @Rule public final Http2BackendRule backend = new Http2BackendRule();
+
+  private final BlockingQueue<String> responses = new LinkedBlockingQueue<>();
+
+  /**
+   * Sets up an inbound channel that relays to streams of the given pool, and returns the client
+   * side of its connection, which receives the responses.
+   *
+   * <p>Like the client connections of the proxy, the inbound channel only starts reading once its
+   * first stream is open.
+   */
+  private Channel setUpClientConnection(
+      LocalAddress localAddress, Http2ConnectionPool pool, BackendProtocol outboundProtocol) {
+    FrontendProtocol inboundProtocol =
+        Protocol.frontendBuilder()
+            .name("frontend")
+            .port(0)
+            .handlerProviders(ImmutableList.of(FullHttpRequestRelayHandler::new))
+            .relayProtocol(outboundProtocol)
+            .build();
+    ChannelFuture unusedFuture =
+        new ServerBootstrap()
+            .group(backend.eventLoop())
+            .channel(LocalServerChannel.class)
+            .childOption(ChannelOption.AUTO_READ, false)
+            .childHandler(
+                new ChannelInitializer<LocalChannel>() {
+                  @Override
+                  protected void initChannel(LocalChannel inboundChannel) {
+                    inboundChannel.attr(PROTOCOL_KEY).set(inboundProtocol);
+                    inboundChannel.attr(RELAY_BUFFER_KEY).set(new ArrayDeque<>());
+                    inboundChannel.pipeline().addLast(new FullHttpRequestRelayHandler());
+                    ServerChannelInitializer.openOutboundStream(
+                        pool, inboundProtocol, outboundProtocol, inboundChannel);
+                  }
+                })
+            .bind(localAddress)
+            .syncUninterruptibly();
+    return new Bootstrap()
+        .group(backend.eventLoop())
+        .channel(LocalChannel.class)
+        .handler(
+            new SimpleChannelInboundHandler<FullHttpResponse>() {
+              @Override
+              protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse response) {
+                responses.add(response.content().toString(US_ASCII));
+              }
+            })
+        .connect(localAddress)
+        .syncUninterruptibly()
+        .channel();
+  }
+
+  @Test
+  public void testSuccess_pipelinedRequests_relayedInOrder() throws Exception {
+    BackendProtocol outboundProtocol = backend.protocol();
+    Http2ConnectionPool pool =
+        new Http2ConnectionPool(
+            backend.eventLoop(),
+            NetworkTransport.NIO,
+            ByteBufAllocator.DEFAULT,
+            outboundProtocol,
+            1);
+    Channel clientChannel =
+        setUpClientConnection(new LocalAddress("PIPELINED_REQUESTS"), pool, outboundProtocol);
+
+    // The client sends all the requests before it receives any response, so all but the first one
+    // arrive while the stream is busy, and wait for the streams that are opened after it.
+    ImmutableList<FullHttpRequest> requests =
+        ImmutableList.of(
+            makeHttpPostRequest("request 1", "backend.test", "/"),
+            makeHttpPostRequest("request 2", "backend.test", "/"),
+            makeHttpPostRequest("request 3", "backend.test", "/"));
+    for (FullHttpRequest request : requests) {
+      ChannelFuture unusedFuture = clientChannel.writeAndFlush(request);
+    }
+
+    assertThat(responses.poll(10, SECONDS)).isEqualTo("request 1");
+    assertThat(responses.poll(10, SECONDS)).isEqualTo("request 2");
+    assertThat(responses.poll(10, SECONDS)).isEqualTo("request 3");
+    // All the requests are released once they are written, including those that were buffered.
+    for (FullHttpRequest request : requests) {
+      assertThat(backend.call(request::refCnt)).isEqualTo(0);
+    }
+    assertThat(backend.connectionCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testSuccess_singleRequestHandler_laterRequestsBuffered() {
+    EmbeddedChannel inboundChannel = new EmbeddedChannel();
+    inboundChannel.attr(RELAY_BUFFER_KEY).set(new ArrayDeque<>());
+    EmbeddedChannel streamChannel = new EmbeddedChannel(new SingleRequestHandler());
+    streamChannel.attr(RELAY_CHANNEL_KEY).set(inboundChannel);
+    ByteBuf request1 = Unpooled.wrappedBuffer("request 1".getBytes(US_ASCII));
+    ByteBuf request2 = Unpooled.wrappedBuffer("request 2".getBytes(US_ASCII));
+
+    writeToRelayChannel(inboundChannel, streamChannel, request1, false);
+    writeToRelayChannel(inboundChannel, streamChannel, request2, false);
+
+    // Only the first request is written to the stream, and its reference belongs to the stream.
+    assertThat((Object) streamChannel.readOutbound()).isSameInstanceAs(request1);
+    assertThat((Object) streamChannel.readOutbound()).isNull();
+    assertThat(request1.refCnt()).isEqualTo(1);
+    // The second one is kept for the next stream, which will release it once it is written.
+    assertThat(inboundChannel.attr(RELAY_BUFFER_KEY).get()).containsExactly(request2);
+    assertThat(request2.refCnt()).isEqualTo(1);
+    assertThat(streamChannel.isActive()).isTrue();
+    request1.release();
+    request2.release();
+  }
+}
@@ -15,6 +15,7 @@
 package google.registry.proxy.handler;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
 import static google.registry.proxy.Protocol.PROTOCOL_KEY;
 import static google.registry.proxy.handler.EppServiceHandler.CLIENT_CERTIFICATE_HASH_KEY;
 import static org.junit.Assert.assertThrows;
@@ -24,6 +25,7 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.SettableFuture;
 import google.registry.proxy.Protocol;
 import google.registry.proxy.handler.QuotaHandler.EppQuotaHandler;
 import google.registry.proxy.handler.QuotaHandler.OverQuotaException;
@@ -35,9 +37,6 @@ import google.registry.proxy.quota.QuotaManager.QuotaResponse;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.embedded.EmbeddedChannel;
-import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
-import org.joda.time.Duration;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -52,7 +51,7 @@ public class EppQuotaHandlerTest {
   private final EppQuotaHandler handler = new EppQuotaHandler(quotaManager, metrics);
   private final EmbeddedChannel channel = new EmbeddedChannel(handler);
   private final String clientCertHash = "blah/123!";
-  private final DateTime now = DateTime.now(DateTimeZone.UTC);
+  private final long now = 12345;
   private final Object message = new Object();
 
   private void setProtocol(Channel channel) {
@@ -82,7 +81,7 @@ public class EppQuotaHandlerTest {
   @Test
   public void testSuccess_quotaGrantedAndReturned() {
     when(quotaManager.acquireQuota(QuotaRequest.create(clientCertHash)))
-        .thenReturn(QuotaResponse.create(true, clientCertHash, now));
+        .thenReturn(immediateFuture(QuotaResponse.create(true, clientCertHash, now)));
 
     // First read, acquire quota.
     assertThat(channel.writeInbound(message)).isTrue();
@@ -103,10 +102,44 @@ public class EppQuotaHandlerTest {
     verifyNoMoreInteractions(quotaManager);
   }
 
+  @Test
+  public void testSuccess_quotaPending_messagesHeldUntilGranted() {
+    SettableFuture<QuotaResponse> quotaFuture = SettableFuture.create();
+    when(quotaManager.acquireQuota(QuotaRequest.create(clientCertHash))).thenReturn(quotaFuture);
+
+    // The messages wait for the quota, which is only requested once.
+    Object newMessage = new Object();
+    assertThat(channel.writeInbound(message)).isFalse();
+    assertThat(channel.writeInbound(newMessage)).isFalse();
+    verify(quotaManager).acquireQuota(QuotaRequest.create(clientCertHash));
+
+    quotaFuture.set(QuotaResponse.create(true, clientCertHash, now));
+    channel.runPendingTasks();
+    assertThat((Object) channel.readInbound()).isEqualTo(message);
+    assertThat((Object) channel.readInbound()).isEqualTo(newMessage);
+    assertThat(channel.isActive()).isTrue();
+    verifyNoMoreInteractions(quotaManager);
+  }
+
+  @Test
+  public void testSuccess_channelClosedWhileQuotaPending_quotaReturned() {
+    SettableFuture<QuotaResponse> quotaFuture = SettableFuture.create();
+    when(quotaManager.acquireQuota(QuotaRequest.create(clientCertHash))).thenReturn(quotaFuture);
+    assertThat(channel.writeInbound(message)).isFalse();
+    ChannelFuture unusedFuture = channel.close();
+
+    // The quota is returned as soon as it is granted, and the message is dropped.
+    quotaFuture.set(QuotaResponse.create(true, clientCertHash, now));
+    channel.runPendingTasks();
+    assertThat((Object) channel.readInbound()).isNull();
+    verify(quotaManager)
+        .releaseQuota(QuotaRebate.create(QuotaResponse.create(true, clientCertHash, now)));
+  }
+
   @Test
   public void testFailure_quotaNotGranted() {
     when(quotaManager.acquireQuota(QuotaRequest.create(clientCertHash)))
-        .thenReturn(QuotaResponse.create(false, clientCertHash, now));
+        .thenReturn(immediateFuture(QuotaResponse.create(false, clientCertHash, now)));
     OverQuotaException e =
         assertThrows(OverQuotaException.class, () -> channel.writeInbound(message));
     ChannelFuture unusedFuture = channel.close();
@@ -126,12 +159,12 @@ public class EppQuotaHandlerTest {
     final String otherClientCertHash = "hola@9x";
     otherChannel.attr(CLIENT_CERTIFICATE_HASH_KEY).set(otherClientCertHash);
     setProtocol(otherChannel);
-    final DateTime later = now.plus(Duration.standardSeconds(1));
+    final long later = now + 1000;
 
     when(quotaManager.acquireQuota(QuotaRequest.create(clientCertHash)))
-        .thenReturn(QuotaResponse.create(true, clientCertHash, now));
+        .thenReturn(immediateFuture(QuotaResponse.create(true, clientCertHash, now)));
     when(quotaManager.acquireQuota(QuotaRequest.create(otherClientCertHash)))
-        .thenReturn(QuotaResponse.create(false, otherClientCertHash, later));
+        .thenReturn(immediateFuture(QuotaResponse.create(false, otherClientCertHash, later)));
 
     // Allows the first user.
     assertThat(channel.writeInbound(message)).isTrue();
@@ -153,11 +186,11 @@ public class EppQuotaHandlerTest {
     final EmbeddedChannel otherChannel = new EmbeddedChannel(otherHandler);
     otherChannel.attr(CLIENT_CERTIFICATE_HASH_KEY).set(clientCertHash);
     setProtocol(otherChannel);
-    final DateTime later = now.plus(Duration.standardSeconds(1));
+    final long later = now + 1000;
 
     when(quotaManager.acquireQuota(QuotaRequest.create(clientCertHash)))
-        .thenReturn(QuotaResponse.create(true, clientCertHash, now))
-        .thenReturn(QuotaResponse.create(false, clientCertHash, later));
+        .thenReturn(immediateFuture(QuotaResponse.create(true, clientCertHash, now)))
+        .thenReturn(immediateFuture(QuotaResponse.create(false, clientCertHash, later)));
 
     // Allows the first channel.
     assertThat(channel.writeInbound(message)).isTrue();
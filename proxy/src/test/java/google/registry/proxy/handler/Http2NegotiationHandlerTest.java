@@ -0,0 +1,163 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy.handler;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import google.registry.networking.util.SelfSignedCaCertificate;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http2.Http2FrameCodec;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import io.netty.handler.timeout.IdleStateHandler;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link Http2NegotiationHandler}.
+ *
+ * <p>The SSL handshake is carried out between two {@link EmbeddedChannel}s, by passing the records
+ * that each of them writes to the other one.
+ */
+@RunWith(JUnit4.class)
+public class Http2NegotiationHandlerTest {
+
+  private static final String SSL_HOST = "backend.example.tld";
+
+  private EmbeddedChannel clientChannel;
+  private EmbeddedChannel serverChannel;
+
+  private static ApplicationProtocolConfig alpnConfig(String... protocols) {
+    return new ApplicationProtocolConfig(
+        Protocol.ALPN,
+        SelectorFailureBehavior.NO_ADVERTISE,
+        SelectedListenerFailureBehavior.ACCEPT,
+        protocols);
+  }
+
+  /**
+   * Sets up a client that offers HTTP/2 like a pooled backend connection, and a server that
+   * supports the given application protocols, and completes the SSL handshake between them.
+   */
+  private void handshake(ImmutableList<String> serverProtocols) throws Exception {
+    SelfSignedCaCertificate ssc = SelfSignedCaCertificate.create(SSL_HOST);
+    SslContextBuilder serverContextBuilder =
+        SslContextBuilder.forServer(ssc.key(), ssc.cert()).sslProvider(SslProvider.JDK);
+    if (!serverProtocols.isEmpty()) {
+      serverContextBuilder.applicationProtocolConfig(
+          alpnConfig(serverProtocols.toArray(new String[0])));
+    }
+    SslContext clientContext =
+        SslContextBuilder.forClient()
+            .sslProvider(SslProvider.JDK)
+            .trustManager(InsecureTrustManagerFactory.INSTANCE)
+            .applicationProtocolConfig(alpnConfig(ApplicationProtocolNames.HTTP_2))
+            .build();
+    serverChannel = new EmbeddedChannel();
+    serverChannel.pipeline().addLast(serverContextBuilder.build().newHandler(serverChannel.alloc()));
+    clientChannel = new EmbeddedChannel();
+    clientChannel
+        .pipeline()
+        .addLast(
+            clientContext.newHandler(clientChannel.alloc(), SSL_HOST, 443),
+            new Http2NegotiationHandler(60),
+            new ExceptionDropper());
+    // Keep exchanging records until neither side has anything left to send.
+    boolean exchanged = true;
+    while (exchanged) {
+      exchanged = false;
+      ByteBuf record;
+      while ((record = clientChannel.readOutbound()) != null) {
+        serverChannel.writeInbound(record);
+        exchanged = true;
+      }
+      while ((record = serverChannel.readOutbound()) != null) {
+        clientChannel.writeInbound(record);
+        exchanged = true;
+      }
+    }
+    assertThat(clientChannel.pipeline().get(SslHandler.class).handshakeFuture().isSuccess())
+        .isTrue();
+  }
+
+  @After
+  public void tearDown() {
+    clientChannel.finishAndReleaseAll();
+    serverChannel.finishAndReleaseAll();
+  }
+
+  @Test
+  public void testSuccess_http2Selected_pipelineConfigured() throws Exception {
+    handshake(ImmutableList.of(ApplicationProtocolNames.HTTP_2));
+    assertThat(clientChannel.isActive()).isTrue();
+    assertThat(clientChannel.pipeline().get(Http2NegotiationHandler.class)).isNull();
+    // The handlers that follow the SSL handler are in the order that the HTTP/2 frames need.
+    assertThat(
+            clientChannel.pipeline().toMap().values().stream()
+                .map(Object::getClass)
+                .collect(toImmutableList()))
+        .containsExactly(
+            SslHandler.class,
+            Http2FrameCodec.class,
+            Http2MultiplexHandler.class,
+            IdleStateHandler.class,
+            Http2PingHandler.class,
+            ExceptionDropper.class)
+        .inOrder();
+  }
+
+  @Test
+  public void testFailure_http2NotSupported_connectionClosed() throws Exception {
+    handshake(ImmutableList.of(ApplicationProtocolNames.HTTP_1_1));
+    assertThat(clientChannel.isActive()).isFalse();
+    assertThat(clientChannel.pipeline().get(Http2FrameCodec.class)).isNull();
+  }
+
+  @Test
+  public void testFailure_noProtocolSelected_connectionClosed() throws Exception {
+    // Without ALPN, the server doesn't select any protocol, so HTTP/1.1 is assumed.
+    handshake(ImmutableList.of());
+    assertThat(clientChannel.isActive()).isFalse();
+    assertThat(clientChannel.pipeline().get(Http2FrameCodec.class)).isNull();
+  }
+
+  /**
+   * Handler that drops the exceptions that reach the end of the client pipeline.
+   *
+   * <p>The negotiation handler closes the connection itself when HTTP/2 isn't selected, and this
+   * keeps the {@link EmbeddedChannel} from rethrowing the exception that it passes on.
+   */
+  private static class ExceptionDropper extends ChannelInboundHandlerAdapter {
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {}
+  }
+}
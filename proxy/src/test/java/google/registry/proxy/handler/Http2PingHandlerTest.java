@@ -0,0 +1,84 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy.handler;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http2.DefaultHttp2GoAwayFrame;
+import io.netty.handler.codec.http2.DefaultHttp2PingFrame;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2PingFrame;
+import io.netty.handler.timeout.IdleStateEvent;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link Http2PingHandler}. */
+@RunWith(JUnit4.class)
+public class Http2PingHandlerTest {
+
+  private final EmbeddedChannel channel = new EmbeddedChannel(new Http2PingHandler());
+
+  private Http2PingFrame idleAndReadPing() {
+    channel.pipeline().fireUserEventTriggered(IdleStateEvent.ALL_IDLE_STATE_EVENT);
+    return channel.readOutbound();
+  }
+
+  @Test
+  public void testSuccess_pingSentWhenIdle() {
+    Http2PingFrame ping = idleAndReadPing();
+    assertThat(ping.ack()).isFalse();
+    assertThat(channel.isActive()).isTrue();
+  }
+
+  @Test
+  public void testSuccess_pingAcknowledged_connectionKeptOpen() {
+    Http2PingFrame ping = idleAndReadPing();
+    // No inbound message passed to the next handler.
+    assertThat(channel.writeInbound(new DefaultHttp2PingFrame(ping.content(), true))).isFalse();
+    Http2PingFrame nextPing = idleAndReadPing();
+    assertThat(nextPing.content()).isNotEqualTo(ping.content());
+    assertThat(channel.isActive()).isTrue();
+  }
+
+  @Test
+  public void testSuccess_pingNotAcknowledged_connectionClosed() {
+    idleAndReadPing();
+    channel.pipeline().fireUserEventTriggered(IdleStateEvent.ALL_IDLE_STATE_EVENT);
+    assertThat((Object) channel.readOutbound()).isNull();
+    assertThat(channel.isActive()).isFalse();
+  }
+
+  @Test
+  public void testSuccess_staleAcknowledgementIgnored() {
+    Http2PingFrame ping = idleAndReadPing();
+    assertThat(channel.writeInbound(new DefaultHttp2PingFrame(ping.content() + 1, true)))
+        .isFalse();
+    channel.pipeline().fireUserEventTriggered(IdleStateEvent.ALL_IDLE_STATE_EVENT);
+    assertThat(channel.isActive()).isFalse();
+  }
+
+  @Test
+  public void testSuccess_connectionFramesReleased() {
+    ByteBuf debugData = Unpooled.wrappedBuffer(new byte[] {1, 2, 3});
+    assertThat(channel.writeInbound(new DefaultHttp2GoAwayFrame(Http2Error.NO_ERROR, debugData)))
+        .isFalse();
+    assertThat(debugData.refCnt()).isEqualTo(0);
+    assertThat(channel.isActive()).isTrue();
+  }
+}
@@ -0,0 +1,123 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy.handler;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.proxy.TestUtils.makeWhoisHttpRequest;
+import static google.registry.proxy.TestUtils.makeWhoisHttpResponse;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import google.registry.proxy.metric.FrontendMetrics;
+import google.registry.proxy.whois.WhoisResponseCache;
+import google.registry.testing.FakeClock;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import org.joda.time.Duration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link WhoisCacheHandler}. */
+@RunWith(JUnit4.class)
+public class WhoisCacheHandlerTest {
+
+  private static final String RESPONSE = "Domain Name: test.tld\r\n";
+
+  private final FakeClock clock = new FakeClock();
+  private final FrontendMetrics metrics = mock(FrontendMetrics.class);
+  private final WhoisResponseCache cache =
+      new WhoisResponseCache(1024 * 1024, Duration.standardMinutes(1), clock);
+
+  @Test
+  public void testSuccess_cacheMiss_relaysAndCachesResponse() {
+    EmbeddedChannel channel = relay("test.tld", RESPONSE, HttpResponseStatus.OK);
+    assertThat(channel.isActive()).isTrue();
+    verify(metrics).registerWhoisCacheLookup(false);
+    assertThat(cache.get("test.tld")).isPresent();
+  }
+
+  @Test
+  public void testSuccess_cacheHit_answersWithoutRelaying() {
+    relay("test.tld", RESPONSE, HttpResponseStatus.OK);
+    EmbeddedChannel channel = new EmbeddedChannel(new WhoisCacheHandler(cache, metrics));
+    // Queries that only differ in case and whitespace share a response.
+    assertThat(channel.writeInbound(makeRequest(" TEST.tld "))).isFalse();
+    FullHttpResponse response = channel.readOutbound();
+    assertThat(response.status()).isEqualTo(HttpResponseStatus.OK);
+    assertThat(response.content().toString(US_ASCII)).isEqualTo(RESPONSE);
+    verify(metrics).registerWhoisCacheLookup(true);
+  }
+
+  @Test
+  public void testSuccess_expiredResponse_isRelayedAgain() {
+    relay("test.tld", RESPONSE, HttpResponseStatus.OK);
+    clock.advanceBy(Duration.standardMinutes(1));
+    assertThat(cache.get("test.tld")).isEmpty();
+    relay("test.tld", RESPONSE, HttpResponseStatus.OK);
+    assertThat(cache.get("test.tld")).isPresent();
+  }
+
+  @Test
+  public void testSuccess_errorResponse_isNotCached() {
+    relay("test.tld", RESPONSE, HttpResponseStatus.BAD_REQUEST);
+    assertThat(cache.get("test.tld")).isEmpty();
+  }
+
+  @Test
+  public void testSuccess_nonAsciiQueries_areCachedSeparately() {
+    // Both queries have the same length in UTF-8, and only differ in their non-ASCII characters.
+    EmbeddedChannel channel = new EmbeddedChannel(new WhoisCacheHandler(cache, metrics));
+    assertThat(channel.writeInbound(makeRequest("例え.tld".getBytes(UTF_8)))).isTrue();
+    assertThat(channel.writeOutbound(makeWhoisHttpResponse(RESPONSE, HttpResponseStatus.OK)))
+        .isTrue();
+
+    channel = new EmbeddedChannel(new WhoisCacheHandler(cache, metrics));
+    assertThat(channel.writeInbound(makeRequest("例子.tld".getBytes(UTF_8)))).isTrue();
+    verify(metrics, times(2)).registerWhoisCacheLookup(false);
+
+    channel = new EmbeddedChannel(new WhoisCacheHandler(cache, metrics));
+    assertThat(channel.writeInbound(makeRequest("例え.tld".getBytes(UTF_8)))).isFalse();
+    verify(metrics).registerWhoisCacheLookup(true);
+  }
+
+  /** Sends a query through a new channel, and the response back as if it was relayed. */
+  private EmbeddedChannel relay(String query, String response, HttpResponseStatus status) {
+    EmbeddedChannel channel = new EmbeddedChannel(new WhoisCacheHandler(cache, metrics));
+    assertThat(channel.writeInbound(makeRequest(query))).isTrue();
+    FullHttpRequest request = channel.readInbound();
+    assertThat(request.content().toString(US_ASCII)).isEqualTo(query);
+    assertThat(channel.writeOutbound(makeWhoisHttpResponse(response, status))).isTrue();
+    FullHttpResponse relayedResponse = channel.readOutbound();
+    assertThat(relayedResponse.content().toString(US_ASCII)).isEqualTo(response);
+    return channel;
+  }
+
+  private static FullHttpRequest makeRequest(String query) {
+    return makeWhoisHttpRequest(query, "www.example.com", "/test", "token");
+  }
+
+  private static FullHttpRequest makeRequest(byte[] query) {
+    FullHttpRequest request = makeRequest("").replace(Unpooled.wrappedBuffer(query));
+    request.headers().setInt("content-length", query.length);
+    return request;
+  }
+}
@@ -15,6 +15,7 @@
 package google.registry.proxy.handler;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
 import static google.registry.proxy.Protocol.PROTOCOL_KEY;
 import static google.registry.proxy.handler.ProxyProtocolHandler.REMOTE_ADDRESS_KEY;
 import static org.junit.Assert.assertThrows;
@@ -34,9 +35,6 @@ import google.registry.proxy.quota.QuotaManager.QuotaResponse;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.embedded.EmbeddedChannel;
-import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
-import org.joda.time.Duration;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -50,7 +48,7 @@ public class WhoisQuotaHandlerTest {
   private final FrontendMetrics metrics = mock(FrontendMetrics.class);
   private final WhoisQuotaHandler handler = new WhoisQuotaHandler(quotaManager, metrics);
   private final EmbeddedChannel channel = new EmbeddedChannel(handler);
-  private final DateTime now = DateTime.now(DateTimeZone.UTC);
+  private final long now = 12345;
   private final String remoteAddress = "127.0.0.1";
   private final Object message = new Object();
 
@@ -81,7 +79,7 @@ public class WhoisQuotaHandlerTest {
   @Test
   public void testSuccess_quotaGranted() {
     when(quotaManager.acquireQuota(QuotaRequest.create(remoteAddress)))
-        .thenReturn(QuotaResponse.create(true, remoteAddress, now));
+        .thenReturn(immediateFuture(QuotaResponse.create(true, remoteAddress, now)));
 
     // First read, acquire quota.
     assertThat(channel.writeInbound(message)).isTrue();
@@ -101,7 +99,7 @@ public class WhoisQuotaHandlerTest {
   @Test
   public void testFailure_quotaNotGranted() {
     when(quotaManager.acquireQuota(QuotaRequest.create(remoteAddress)))
-        .thenReturn(QuotaResponse.create(false, remoteAddress, now));
+        .thenReturn(immediateFuture(QuotaResponse.create(false, remoteAddress, now)));
     OverQuotaException e =
         assertThrows(OverQuotaException.class, () -> channel.writeInbound(message));
     assertThat(e).hasMessageThat().contains("none");
@@ -117,12 +115,12 @@ public class WhoisQuotaHandlerTest {
     final String otherRemoteAddress = "192.168.0.1";
     otherChannel.attr(REMOTE_ADDRESS_KEY).set(otherRemoteAddress);
     setProtocol(otherChannel);
-    final DateTime later = now.plus(Duration.standardSeconds(1));
+    final long later = now + 1000;
 
     when(quotaManager.acquireQuota(QuotaRequest.create(remoteAddress)))
-        .thenReturn(QuotaResponse.create(true, remoteAddress, now));
+        .thenReturn(immediateFuture(QuotaResponse.create(true, remoteAddress, now)));
     when(quotaManager.acquireQuota(QuotaRequest.create(otherRemoteAddress)))
-        .thenReturn(QuotaResponse.create(false, otherRemoteAddress, later));
+        .thenReturn(immediateFuture(QuotaResponse.create(false, otherRemoteAddress, later)));
 
     // Allows the first user.
     assertThat(channel.writeInbound(message)).isTrue();
@@ -144,20 +142,20 @@ public class WhoisQuotaHandlerTest {
     final EmbeddedChannel otherChannel = new EmbeddedChannel(otherHandler);
     otherChannel.attr(REMOTE_ADDRESS_KEY).set(remoteAddress);
     setProtocol(otherChannel);
-    final DateTime later = now.plus(Duration.standardSeconds(1));
+    final long later = now + 1000;
 
     // Set up the third channel for the same user
     final WhoisQuotaHandler thirdHandler = new WhoisQuotaHandler(quotaManager, metrics);
     final EmbeddedChannel thirdChannel = new EmbeddedChannel(thirdHandler);
     thirdChannel.attr(REMOTE_ADDRESS_KEY).set(remoteAddress);
-    final DateTime evenLater = now.plus(Duration.standardSeconds(60));
+    final long evenLater = now + 60000;
 
     when(quotaManager.acquireQuota(QuotaRequest.create(remoteAddress)))
-        .thenReturn(QuotaResponse.create(true, remoteAddress, now))
+        .thenReturn(immediateFuture(QuotaResponse.create(true, remoteAddress, now)))
         // Throttles the second connection.
-        .thenReturn(QuotaResponse.create(false, remoteAddress, later))
+        .thenReturn(immediateFuture(QuotaResponse.create(false, remoteAddress, later)))
         // Allows the third connection because token refilled.
-        .thenReturn(QuotaResponse.create(true, remoteAddress, evenLater));
+        .thenReturn(immediateFuture(QuotaResponse.create(true, remoteAddress, evenLater)));
 
     // Allows the first channel.
     assertThat(channel.writeInbound(message)).isTrue();
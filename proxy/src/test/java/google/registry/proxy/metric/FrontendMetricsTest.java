@@ -19,7 +19,11 @@ import static com.google.monitoring.metrics.contrib.LongMetricSubject.assertThat
 
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.DefaultChannelId;
+import io.netty.channel.DefaultEventLoopGroup;
 import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import java.util.concurrent.CountDownLatch;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -184,4 +188,63 @@ public class FrontendMetricsTest {
         .and()
         .hasNoOtherValues();
   }
+
+  @Test
+  public void testSuccess_registerAcceptedConnections() {
+    EmbeddedChannel channel1 = new EmbeddedChannel();
+    EmbeddedChannel channel2 = new EmbeddedChannel(DefaultChannelId.newInstance());
+    String otherProtocol = "other protocol";
+    metrics.registerEventLoopGroup("worker", channel1.eventLoop());
+
+    metrics.registerAcceptedConnection(PROTOCOL, channel1);
+    metrics.registerAcceptedConnection(otherProtocol, channel2);
+    assertThat(FrontendMetrics.acceptedConnectionsCounter)
+        .hasValueForLabels(1, PROTOCOL)
+        .and()
+        .hasValueForLabels(1, otherProtocol)
+        .and()
+        .hasNoOtherValues();
+    // The event loop of the second channel isn't monitored.
+    assertThat(FrontendMetrics.eventLoopConnectionsGauge)
+        .hasValueForLabels(1, "worker-0")
+        .and()
+        .hasNoOtherValues();
+
+    ChannelFuture unusedFuture = channel1.close();
+    assertThat(FrontendMetrics.eventLoopConnectionsGauge).hasNoOtherValues();
+    assertThat(FrontendMetrics.acceptedConnectionsCounter)
+        .hasValueForLabels(1, PROTOCOL)
+        .and()
+        .hasValueForLabels(1, otherProtocol)
+        .and()
+        .hasNoOtherValues();
+  }
+
+  @Test
+  public void testSuccess_eventLoopPendingTasks() throws Exception {
+    DefaultEventLoopGroup eventLoopGroup = new DefaultEventLoopGroup(2);
+    try {
+      metrics.registerEventLoopGroup("worker", eventLoopGroup);
+      EventExecutor eventLoop = eventLoopGroup.iterator().next();
+      CountDownLatch started = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      Future<?> unusedBlocker =
+          eventLoop.submit(
+              () -> {
+                started.countDown();
+                release.await();
+                return null;
+              });
+      started.await();
+      Future<?> unusedTask1 = eventLoop.submit(() -> {});
+      Future<?> unusedTask2 = eventLoop.submit(() -> {});
+      assertThat(FrontendMetrics.eventLoopPendingTasksGauge)
+          .hasValueForLabels(2, "worker-0")
+          .and()
+          .hasNoOtherValues();
+      release.countDown();
+    } finally {
+      Future<?> unusedFuture = eventLoopGroup.shutdownGracefully();
+    }
+  }
 }
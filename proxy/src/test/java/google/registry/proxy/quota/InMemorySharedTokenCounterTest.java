@@ -0,0 +1,97 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package google.registry.proxy.quota;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import google.registry.proxy.quota.SharedTokenCounter.Lease;
+import google.registry.testing.FakeClock;
+import org.joda.time.Duration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link InMemorySharedTokenCounter}. */
+@RunWith(JUnit4.class)
+public class InMemorySharedTokenCounterTest {
+
+  private static final String PROTOCOL = "protocol";
+  private static final String USER = "theUser";
+  private static final long REFILL_PERIOD_MILLIS = 10000;
+
+  private final FakeClock clock = new FakeClock();
+  private final InMemorySharedTokenCounter counter = new InMemorySharedTokenCounter(clock);
+
+  private Lease borrow(int amount) {
+    return counter.borrow(PROTOCOL, USER, amount, 5, REFILL_PERIOD_MILLIS);
+  }
+
+  @Test
+  public void testSuccess_borrow_cappedAtTokenAmount() {
+    assertThat(borrow(2)).isEqualTo(Lease.create(2, 1, 10000));
+    clock.advanceBy(Duration.standardSeconds(4));
+    assertThat(borrow(2)).isEqualTo(Lease.create(2, 1, 6000));
+    assertThat(borrow(2)).isEqualTo(Lease.create(1, 1, 6000));
+    assertThat(borrow(2)).isEqualTo(Lease.create(0, 1, 6000));
+  }
+
+  @Test
+  public void testSuccess_borrow_refill() {
+    assertThat(borrow(5)).isEqualTo(Lease.create(5, 1, 10000));
+    clock.advanceBy(Duration.standardSeconds(10));
+    assertThat(borrow(2)).isEqualTo(Lease.create(2, 2, 10000));
+  }
+
+  @Test
+  public void testSuccess_borrow_noRefill() {
+    assertThat(counter.borrow(PROTOCOL, USER, 5, 5, 0))
+        .isEqualTo(Lease.create(5, 1, Long.MAX_VALUE));
+    clock.advanceBy(Duration.standardDays(365));
+    assertThat(counter.borrow(PROTOCOL, USER, 5, 5, 0))
+        .isEqualTo(Lease.create(0, 1, Long.MAX_VALUE));
+  }
+
+  @Test
+  public void testSuccess_borrow_usersAndProtocolsCountedSeparately() {
+    assertThat(borrow(5).tokens()).isEqualTo(5);
+    assertThat(counter.borrow(PROTOCOL, "theOtherUser", 5, 5, REFILL_PERIOD_MILLIS).tokens())
+        .isEqualTo(5);
+    assertThat(counter.borrow("otherProtocol", USER, 5, 5, REFILL_PERIOD_MILLIS).tokens())
+        .isEqualTo(5);
+  }
+
+  @Test
+  public void testSuccess_giveBack() {
+    assertThat(borrow(5).tokens()).isEqualTo(5);
+    counter.giveBack(PROTOCOL, USER, 1, 2);
+    assertThat(borrow(5).tokens()).isEqualTo(2);
+  }
+
+  @Test
+  public void testSuccess_giveBack_earlierRefillDiscarded() {
+    assertThat(borrow(5).tokens()).isEqualTo(5);
+    clock.advanceBy(Duration.standardSeconds(10));
+    assertThat(borrow(5).refill()).isEqualTo(2);
+    counter.giveBack(PROTOCOL, USER, 1, 2);
+    assertThat(borrow(5).tokens()).isEqualTo(0);
+  }
+
+  @Test
+  public void testSuccess_giveBack_noLease() {
+    counter.giveBack(PROTOCOL, USER, 1, 2);
+    assertThat(borrow(5).tokens()).isEqualTo(5);
+  }
+}
@@ -15,20 +15,20 @@
 package google.registry.proxy.quota;
 
 import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static google.registry.proxy.quota.TokenStore.NO_TOKEN_GRANTED;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.MoreExecutors;
 import google.registry.proxy.quota.QuotaManager.QuotaRebate;
 import google.registry.proxy.quota.QuotaManager.QuotaRequest;
 import google.registry.proxy.quota.QuotaManager.QuotaResponse;
-import google.registry.proxy.quota.TokenStore.TimestampedInteger;
-import google.registry.testing.FakeClock;
 import java.util.concurrent.Future;
-import org.joda.time.DateTime;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -38,9 +38,9 @@ import org.junit.runners.JUnit4;
 public class QuotaManagerTest {
 
   private static final String USER_ID = "theUser";
+  private static final long REFILL_TIME = 12345;
 
   private final TokenStore tokenStore = mock(TokenStore.class);
-  private final FakeClock clock = new FakeClock();
 
   private QuotaManager quotaManager =
       new QuotaManager(tokenStore, MoreExecutors.newDirectExecutorService());
@@ -48,35 +48,33 @@ public class QuotaManagerTest {
   private QuotaResponse response;
 
   @Test
-  public void testSuccess_requestApproved() {
-    when(tokenStore.take(anyString())).thenReturn(TimestampedInteger.create(1, clock.nowUtc()));
+  public void testSuccess_requestApproved() throws Exception {
+    when(tokenStore.takeAsync(anyString())).thenReturn(immediateFuture(REFILL_TIME));
 
     request = QuotaRequest.create(USER_ID);
-    response = quotaManager.acquireQuota(request);
+    response = Futures.getDone(quotaManager.acquireQuota(request));
     assertThat(response.success()).isTrue();
     assertThat(response.userId()).isEqualTo(USER_ID);
-    assertThat(response.grantedTokenRefillTime()).isEqualTo(clock.nowUtc());
+    assertThat(response.grantedTokenRefillTime()).isEqualTo(REFILL_TIME);
   }
 
   @Test
-  public void testSuccess_requestDenied() {
-    when(tokenStore.take(anyString())).thenReturn(TimestampedInteger.create(0, clock.nowUtc()));
+  public void testSuccess_requestDenied() throws Exception {
+    when(tokenStore.takeAsync(anyString())).thenReturn(immediateFuture(NO_TOKEN_GRANTED));
 
     request = QuotaRequest.create(USER_ID);
-    response = quotaManager.acquireQuota(request);
+    response = Futures.getDone(quotaManager.acquireQuota(request));
     assertThat(response.success()).isFalse();
     assertThat(response.userId()).isEqualTo(USER_ID);
-    assertThat(response.grantedTokenRefillTime()).isEqualTo(clock.nowUtc());
+    assertThat(response.grantedTokenRefillTime()).isEqualTo(NO_TOKEN_GRANTED);
   }
 
   @Test
   public void testSuccess_rebate() throws Exception {
-    DateTime grantedTokenRefillTime = clock.nowUtc();
-    response = QuotaResponse.create(true, USER_ID, grantedTokenRefillTime);
+    response = QuotaResponse.create(true, USER_ID, REFILL_TIME);
     QuotaRebate rebate = QuotaRebate.create(response);
     Future<?> unusedFuture = quotaManager.releaseQuota(rebate);
-    verify(tokenStore).scheduleRefresh();
-    verify(tokenStore).put(USER_ID, grantedTokenRefillTime);
+    verify(tokenStore).put(USER_ID, REFILL_TIME);
     verifyNoMoreInteractions(tokenStore);
   }
 }
@@ -15,29 +15,35 @@
 package google.registry.proxy.quota;
 
 import static com.google.common.truth.Truth.assertThat;
-import static google.registry.proxy.quota.QuotaConfig.SENTINEL_UNLIMITED_TOKENS;
-import static org.mockito.ArgumentMatchers.eq;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static google.registry.proxy.quota.TokenStore.EXHAUSTED_RETRY_MILLIS;
+import static google.registry.proxy.quota.TokenStore.MIN_BUCKETS_ADDED_BEFORE_REFRESH;
+import static google.registry.proxy.quota.TokenStore.NO_TOKEN_GRANTED;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import google.registry.proxy.quota.TokenStore.TimestampedInteger;
 import google.registry.testing.FakeClock;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
-import org.mockito.ArgumentCaptor;
 
 /** Unit tests for {@link TokenStore}. */
 @RunWith(JUnit4.class)
@@ -45,35 +51,53 @@ public class TokenStoreTest {
 
   private final QuotaConfig quotaConfig = mock(QuotaConfig.class);
   private final FakeClock clock = new FakeClock();
-  private final ScheduledExecutorService refreshExecutor = mock(ScheduledExecutorService.class);
-  private final TokenStore tokenStore = spy(new TokenStore(quotaConfig, refreshExecutor, clock));
+  private final long startMillis = clock.nowUtc().getMillis();
+  private final Ticker ticker =
+      new Ticker() {
+        @Override
+        public long read() {
+          return TimeUnit.MILLISECONDS.toNanos(clock.nowUtc().getMillis());
+        }
+      };
+  private final TokenStore tokenStore = spy(new TokenStore(quotaConfig, ticker, directExecutor()));
+  private final InMemorySharedTokenCounter sharedCounter = new InMemorySharedTokenCounter(clock);
   private final String user = "theUser";
   private final String otherUser = "theOtherUser";
 
-  private DateTime assertTake(int grantAmount, int amountLeft, DateTime timestamp) {
+  /** Returns the current time of the token store, in milliseconds since it was created. */
+  private long now() {
+    return clock.nowUtc().getMillis() - startMillis;
+  }
+
+  private long assertTake(int grantAmount, int amountLeft, long timestamp) {
     return assertTake(user, grantAmount, amountLeft, timestamp);
   }
 
-  private DateTime assertTake(String user, int grantAmount, int amountLeft, DateTime timestamp) {
-    TimestampedInteger grantedToken = tokenStore.take(user);
-    assertThat(grantedToken).isEqualTo(TimestampedInteger.create(grantAmount, timestamp));
+  private long assertTake(String user, int grantAmount, int amountLeft, long timestamp) {
+    long grantedTokenRefillTime = tokenStore.take(user);
+    assertThat(grantedTokenRefillTime).isEqualTo(grantAmount == 0 ? NO_TOKEN_GRANTED : timestamp);
     assertThat(tokenStore.getTokenForTests(user))
         .isEqualTo(TimestampedInteger.create(amountLeft, timestamp));
-    return grantedToken.timestamp();
+    return grantedTokenRefillTime;
   }
 
-  private void assertPut(
-      DateTime returnedTokenRefillTime, int amountAfterReturn, DateTime refillTime) {
+  private void assertPut(long returnedTokenRefillTime, int amountAfterReturn, long refillTime) {
     assertPut(user, returnedTokenRefillTime, amountAfterReturn, refillTime);
   }
 
   private void assertPut(
-      String user, DateTime returnedTokenRefillTime, int amountAfterReturn, DateTime refillTime) {
+      String user, long returnedTokenRefillTime, int amountAfterReturn, long refillTime) {
     tokenStore.put(user, returnedTokenRefillTime);
     assertThat(tokenStore.getTokenForTests(user))
         .isEqualTo(TimestampedInteger.create(amountAfterReturn, refillTime));
   }
 
+  /** Returns a store that leases tokens from the shared counter, in the calling thread. */
+  private TokenStore createLeasingStore(int leaseSize) {
+    when(quotaConfig.getLeaseSize()).thenReturn(leaseSize);
+    return new TokenStore(quotaConfig, ticker, sharedCounter, directExecutor());
+  }
+
   private void submitAndWaitForTasks(ExecutorService executor, Runnable... tasks) {
     List<Future<?>> futures = new ArrayList<>();
     for (Runnable task : tasks) {
@@ -92,6 +116,7 @@ public class TokenStoreTest {
   @Before
   public void setUp() {
     when(quotaConfig.getRefreshPeriod()).thenReturn(Duration.standardSeconds(60));
+    when(quotaConfig.getProtocolName()).thenReturn("protocol");
     when(quotaConfig.getRefillPeriod(user)).thenReturn(Duration.standardSeconds(10));
     when(quotaConfig.getTokenAmount(user)).thenReturn(3);
     when(quotaConfig.getRefillPeriod(otherUser)).thenReturn(Duration.standardSeconds(15));
@@ -101,7 +126,7 @@ public class TokenStoreTest {
   @Test
   public void testSuccess_take() {
     // Take 3 tokens one by one.
-    DateTime refillTime = clock.nowUtc();
+    long refillTime = now();
     assertTake(1, 2, refillTime);
     assertTake(1, 1, refillTime);
     clock.advanceBy(Duration.standardSeconds(2));
@@ -113,22 +138,22 @@ public class TokenStoreTest {
 
     // Refill period passed. Take 1 token - success.
     clock.advanceBy(Duration.standardSeconds(6));
-    refillTime = clock.nowUtc();
+    refillTime = now();
     assertTake(1, 2, refillTime);
   }
 
   @Test
   public void testSuccess_put_entryDoesNotExist() {
-    tokenStore.put(user, clock.nowUtc());
+    tokenStore.put(user, now());
     assertThat(tokenStore.getTokenForTests(user)).isNull();
   }
 
   @Test
   public void testSuccess_put() {
-    DateTime refillTime = clock.nowUtc();
+    long refillTime = now();
 
     // Initialize the entry.
-    DateTime grantedTokenRefillTime = assertTake(1, 2, refillTime);
+    long grantedTokenRefillTime = assertTake(1, 2, refillTime);
 
     // Put into full bucket.
     assertPut(grantedTokenRefillTime, 3, refillTime);
@@ -143,19 +168,19 @@ public class TokenStoreTest {
     // Do not put old token back.
     grantedTokenRefillTime = assertTake(1, 2, refillTime);
     clock.advanceBy(Duration.standardSeconds(11));
-    refillTime = clock.nowUtc();
+    refillTime = now();
     assertPut(grantedTokenRefillTime, 3, refillTime);
   }
 
   @Test
   public void testSuccess_takeAndPut() {
-    DateTime refillTime = clock.nowUtc();
+    long refillTime = now();
 
     // Take 1 token.
-    DateTime grantedTokenRefillTime1 = assertTake(1, 2, refillTime);
+    long grantedTokenRefillTime1 = assertTake(1, 2, refillTime);
 
     // Take 1 token.
-    DateTime grantedTokenRefillTime2 = assertTake(1, 1, refillTime);
+    long grantedTokenRefillTime2 = assertTake(1, 1, refillTime);
 
     // Return first token.
     clock.advanceBy(Duration.standardSeconds(2));
@@ -163,45 +188,45 @@ public class TokenStoreTest {
 
     // Refill time passed, second returned token discarded.
     clock.advanceBy(Duration.standardSeconds(10));
-    refillTime = clock.nowUtc();
+    refillTime = now();
     assertPut(grantedTokenRefillTime2, 3, refillTime);
   }
 
   @Test
   public void testSuccess_multipleUsers() {
-    DateTime refillTime1 = clock.nowUtc();
-    DateTime refillTime2 = clock.nowUtc();
+    long refillTime1 = now();
+    long refillTime2 = now();
 
     // Take 1 from first user.
-    DateTime grantedTokenRefillTime1 = assertTake(user, 1, 2, refillTime1);
+    long grantedTokenRefillTime1 = assertTake(user, 1, 2, refillTime1);
 
     // Take 1 from second user.
-    DateTime grantedTokenRefillTime2 = assertTake(otherUser, 1, 4, refillTime2);
+    long grantedTokenRefillTime2 = assertTake(otherUser, 1, 4, refillTime2);
     assertTake(otherUser, 1, 3, refillTime2);
     assertTake(otherUser, 1, 2, refillTime2);
 
     // first user tokens refilled.
     clock.advanceBy(Duration.standardSeconds(10));
-    refillTime1 = clock.nowUtc();
-    DateTime grantedTokenRefillTime3 = assertTake(user, 1, 2, refillTime1);
-    DateTime grantedTokenRefillTime4 = assertTake(otherUser, 1, 1, refillTime2);
+    refillTime1 = now();
+    long grantedTokenRefillTime3 = assertTake(user, 1, 2, refillTime1);
+    long grantedTokenRefillTime4 = assertTake(otherUser, 1, 1, refillTime2);
     assertPut(user, grantedTokenRefillTime1, 2, refillTime1);
     assertPut(otherUser, grantedTokenRefillTime2, 2, refillTime2);
 
     // second user tokens refilled.
     clock.advanceBy(Duration.standardSeconds(5));
-    refillTime2 = clock.nowUtc();
+    refillTime2 = now();
     assertPut(user, grantedTokenRefillTime3, 3, refillTime1);
     assertPut(otherUser, grantedTokenRefillTime4, 5, refillTime2);
   }
 
   @Test
   public void testSuccess_refresh() {
-    DateTime refillTime1 = clock.nowUtc();
+    long refillTime1 = now();
     assertTake(user, 1, 2, refillTime1);
 
     clock.advanceBy(Duration.standardSeconds(5));
-    DateTime refillTime2 = clock.nowUtc();
+    long refillTime2 = now();
     assertTake(otherUser, 1, 4, refillTime2);
 
     clock.advanceBy(Duration.standardSeconds(55));
@@ -217,17 +242,19 @@ public class TokenStoreTest {
   public void testSuccess_unlimitedQuota() {
     when(quotaConfig.hasUnlimitedTokens(user)).thenReturn(true);
     for (int i = 0; i < 10000; ++i) {
-      assertTake(1, SENTINEL_UNLIMITED_TOKENS, clock.nowUtc());
+      assertThat(tokenStore.take(user)).isEqualTo(now());
     }
     for (int i = 0; i < 10000; ++i) {
-      assertPut(clock.nowUtc(), SENTINEL_UNLIMITED_TOKENS, clock.nowUtc());
+      tokenStore.put(user, now());
     }
+    // No bucket is kept for users with unlimited tokens.
+    assertThat(tokenStore.getTokenForTests(user)).isNull();
   }
 
   @Test
   public void testSuccess_noRefill() {
     when(quotaConfig.getRefillPeriod(user)).thenReturn(Duration.ZERO);
-    DateTime refillTime = clock.nowUtc();
+    long refillTime = now();
     assertTake(1, 2, refillTime);
     assertTake(1, 1, refillTime);
     assertTake(1, 0, refillTime);
@@ -238,7 +265,7 @@ public class TokenStoreTest {
   @Test
   public void testSuccess_noRefresh() {
     when(quotaConfig.getRefreshPeriod()).thenReturn(Duration.ZERO);
-    DateTime refillTime = clock.nowUtc();
+    long refillTime = now();
     assertTake(1, 2, refillTime);
     clock.advanceBy(Duration.standardDays(365));
     assertThat(tokenStore.getTokenForTests(user))
@@ -248,7 +275,7 @@ public class TokenStoreTest {
   @Test
   public void testSuccess_concurrency() throws Exception {
     ExecutorService executor = Executors.newWorkStealingPool();
-    final DateTime time1 = clock.nowUtc();
+    final long time1 = now();
     submitAndWaitForTasks(
         executor,
         () -> tokenStore.take(user),
@@ -269,7 +296,7 @@ public class TokenStoreTest {
 
     // First user refill.
     clock.advanceBy(Duration.standardSeconds(5));
-    final DateTime time2 = clock.nowUtc();
+    final long time2 = now();
     submitAndWaitForTasks(
         executor,
         () -> {
@@ -283,7 +310,7 @@ public class TokenStoreTest {
 
     // Second user refill.
     clock.advanceBy(Duration.standardSeconds(5));
-    final DateTime time3 = clock.nowUtc();
+    final long time3 = now();
     submitAndWaitForTasks(
         executor,
         () -> tokenStore.take(user),
@@ -297,19 +324,157 @@ public class TokenStoreTest {
   }
 
   @Test
-  public void testSuccess_scheduleRefresh() throws Exception {
-    when(quotaConfig.getRefreshPeriod()).thenReturn(Duration.standardSeconds(5));
+  public void testSuccess_lazyRefresh() {
+    // Stubs for any user override the ones from setUp(), so the user is stubbed again.
+    when(quotaConfig.getRefillPeriod(anyString())).thenReturn(Duration.standardSeconds(10));
+    when(quotaConfig.getTokenAmount(anyString())).thenReturn(1);
+    when(quotaConfig.getRefillPeriod(user)).thenReturn(Duration.standardSeconds(10));
+    when(quotaConfig.getTokenAmount(user)).thenReturn(3);
+    long refillTime = now();
+    assertTake(1, 2, refillTime);
+    clock.advanceBy(Duration.standardSeconds(60));
+
+    // The first refresh runs when the minimum number of buckets, including the user's, is added.
+    for (int i = 1; i < MIN_BUCKETS_ADDED_BEFORE_REFRESH - 1; ++i) {
+      tokenStore.take("user" + i);
+    }
+    verify(tokenStore, never()).refresh();
+    assertThat(tokenStore.getTokenForTests(user))
+        .isEqualTo(TimestampedInteger.create(2, refillTime));
+
+    tokenStore.take("lastUser");
+    verify(tokenStore).refresh();
+    assertThat(tokenStore.getTokenForTests(user)).isNull();
+    assertThat(tokenStore.getTokenForTests("lastUser"))
+        .isEqualTo(TimestampedInteger.create(0, now()));
+  }
 
-    tokenStore.scheduleRefresh();
+  @Test
+  public void testSuccess_lazyRefresh_runsInBackground() {
+    when(quotaConfig.getRefillPeriod(anyString())).thenReturn(Duration.standardSeconds(10));
+    when(quotaConfig.getTokenAmount(anyString())).thenReturn(1);
+    when(quotaConfig.getRefillPeriod(user)).thenReturn(Duration.standardSeconds(10));
+    when(quotaConfig.getTokenAmount(user)).thenReturn(3);
+    Queue<Runnable> backgroundTasks = new ArrayDeque<>();
+    TokenStore tokenStore = spy(new TokenStore(quotaConfig, ticker, backgroundTasks::add));
+    tokenStore.take(user);
+    clock.advanceBy(Duration.standardSeconds(60));
+    for (int i = 1; i < MIN_BUCKETS_ADDED_BEFORE_REFRESH; ++i) {
+      tokenStore.take("user" + i);
+    }
 
-    // Verify that a task is scheduled.
-    ArgumentCaptor<Runnable> argument = ArgumentCaptor.forClass(Runnable.class);
-    verify(refreshExecutor)
-        .scheduleWithFixedDelay(
-            argument.capture(), eq((long) 5), eq((long) 5), eq(TimeUnit.SECONDS));
+    // The thread that adds the last bucket only starts the refresh.
+    assertThat(backgroundTasks).hasSize(1);
+    verify(tokenStore, never()).refresh();
+    assertThat(tokenStore.getTokenForTests(user)).isNotNull();
 
-    // Verify that the scheduled task calls TokenStore.refresh().
-    argument.getValue().run();
+    backgroundTasks.remove().run();
     verify(tokenStore).refresh();
+    assertThat(tokenStore.getTokenForTests(user)).isNull();
+  }
+
+  @Test
+  public void testSuccess_leased_quotaSharedByStores() {
+    TokenStore tokenStore1 = createLeasingStore(1);
+    TokenStore tokenStore2 = createLeasingStore(1);
+
+    // The first token is taken from a lease that is borrowed right away on the direct executor,
+    // and the next lease is borrowed once the bucket is empty.
+    assertThat(tokenStore1.take(user)).isEqualTo(1);
+    assertThat(tokenStore1.getTokenForTests(user)).isEqualTo(TimestampedInteger.create(1, 1));
+    assertThat(tokenStore2.take(user)).isEqualTo(1);
+    assertThat(tokenStore2.getTokenForTests(user)).isEqualTo(TimestampedInteger.create(0, 1));
+
+    // All 3 tokens of the user are leased.
+    assertThat(tokenStore2.take(user)).isEqualTo(NO_TOKEN_GRANTED);
+    assertThat(tokenStore1.take(user)).isEqualTo(1);
+    assertThat(tokenStore1.take(user)).isEqualTo(NO_TOKEN_GRANTED);
+
+    // The counter refilled the tokens of the user.
+    clock.advanceBy(Duration.standardSeconds(10));
+    assertThat(tokenStore2.take(user)).isEqualTo(2);
+    assertThat(tokenStore2.getTokenForTests(user)).isEqualTo(TimestampedInteger.create(1, 2));
+  }
+
+  @Test
+  public void testSuccess_leased_put() {
+    TokenStore tokenStore = createLeasingStore(1);
+    long grantedTokenRefillTime = tokenStore.take(user);
+    tokenStore.put(user, grantedTokenRefillTime);
+    assertThat(tokenStore.getTokenForTests(user)).isEqualTo(TimestampedInteger.create(2, 1));
+
+    // Do not put tokens of an expired lease back.
+    grantedTokenRefillTime = tokenStore.take(user);
+    clock.advanceBy(Duration.standardSeconds(10));
+    tokenStore.put(user, grantedTokenRefillTime);
+    assertThat(tokenStore.getTokenForTests(user)).isEqualTo(TimestampedInteger.create(1, 1));
+  }
+
+  @Test
+  public void testSuccess_leased_surplusGivenBack() {
+    TokenStore tokenStore = createLeasingStore(1);
+    long grantedTokenRefillTime1 = tokenStore.take(otherUser);
+    long grantedTokenRefillTime2 = tokenStore.take(otherUser);
+    assertThat(tokenStore.getTokenForTests(otherUser)).isEqualTo(TimestampedInteger.create(1, 1));
+
+    tokenStore.put(otherUser, grantedTokenRefillTime1);
+    assertThat(tokenStore.getTokenForTests(otherUser)).isEqualTo(TimestampedInteger.create(2, 1));
+    tokenStore.put(otherUser, grantedTokenRefillTime2);
+    assertThat(tokenStore.getTokenForTests(otherUser)).isEqualTo(TimestampedInteger.create(1, 1));
+
+    // Only the token left in the store is leased.
+    assertThat(sharedCounter.borrow("protocol", otherUser, 5, 5, 15000).tokens()).isEqualTo(4);
+  }
+
+  @Test
+  public void testSuccess_leased_refreshGivesBackTokens() {
+    when(quotaConfig.getRefillPeriod(user)).thenReturn(Duration.ZERO);
+    TokenStore tokenStore = createLeasingStore(2);
+    assertThat(tokenStore.take(user)).isEqualTo(1);
+    assertThat(tokenStore.getTokenForTests(user)).isEqualTo(TimestampedInteger.create(2, 1));
+    clock.advanceBy(Duration.standardSeconds(60));
+
+    tokenStore.refresh();
+    assertThat(tokenStore.getTokenForTests(user)).isNull();
+    assertThat(sharedCounter.borrow("protocol", user, 3, 3, 0).tokens()).isEqualTo(2);
+  }
+
+  @Test
+  public void testSuccess_leased_noRefill_exhaustedCounterAskedAgain() {
+    when(quotaConfig.getRefillPeriod(user)).thenReturn(Duration.ZERO);
+    TokenStore tokenStore = createLeasingStore(1);
+    assertThat(tokenStore.take(user)).isEqualTo(1);
+    // Another replica leases the last token of the user.
+    assertThat(sharedCounter.borrow("protocol", user, 1, 3, 0).tokens()).isEqualTo(1);
+    assertThat(tokenStore.take(user)).isEqualTo(1);
+    assertThat(tokenStore.take(user)).isEqualTo(NO_TOKEN_GRANTED);
+
+    // The token that the other replica gives back is only borrowed after the retry interval, even
+    // though the leased tokens never expire.
+    sharedCounter.giveBack("protocol", user, 1, 1);
+    assertThat(tokenStore.take(user)).isEqualTo(NO_TOKEN_GRANTED);
+    clock.advanceBy(Duration.millis(EXHAUSTED_RETRY_MILLIS));
+    assertThat(tokenStore.take(user)).isEqualTo(1);
+    assertThat(tokenStore.take(user)).isEqualTo(NO_TOKEN_GRANTED);
+  }
+
+  @Test
+  public void testSuccess_leased_borrowNotAwaited() throws Exception {
+    when(quotaConfig.getLeaseSize()).thenReturn(1);
+    Queue<Runnable> leaseTasks = new ArrayDeque<>();
+    TokenStore tokenStore = new TokenStore(quotaConfig, ticker, sharedCounter, leaseTasks::add);
+
+    // The bucket is empty until the first lease is borrowed, which take doesn't wait for.
+    assertThat(tokenStore.take(user)).isEqualTo(NO_TOKEN_GRANTED);
+    ListenableFuture<Long> grantedTokenRefillTime = tokenStore.takeAsync(user);
+    assertThat(grantedTokenRefillTime.isDone()).isFalse();
+    // Only one lease is borrowed at a time.
+    assertThat(leaseTasks).hasSize(1);
+
+    leaseTasks.remove().run();
+    assertThat(Futures.getDone(grantedTokenRefillTime)).isEqualTo(1);
+    assertThat(tokenStore.getTokenForTests(user)).isEqualTo(TimestampedInteger.create(0, 1));
+    // The next lease is borrowed in the background once the token is taken.
+    assertThat(leaseTasks).hasSize(1);
   }
 }
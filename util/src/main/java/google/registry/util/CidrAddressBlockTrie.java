@@ -0,0 +1,202 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package google.registry.util;
+
+import static java.lang.Math.min;
+
+import java.net.InetAddress;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * An immutable set of {@link CidrAddressBlock}s, which can tell quickly whether an IP address is
+ * in any of them.
+ *
+ * <p>The blocks are kept in a binary trie with path compression (a PATRICIA trie), with one trie
+ * for each address family. An address is looked up by walking down the branches of the trie that
+ * its bits select, and it's in the set as soon as a node that ends a block is found. The lookup
+ * takes at most as many steps as the address has bits, however many blocks there are.
+ *
+ * <p>The addresses are kept in pairs of {@code long}s, the high 64 bits first. IPv4 addresses only
+ * use the high 32 bits of the first one.
+ */
+@Immutable
+public final class CidrAddressBlockTrie {
+
+  private static final int IPV4_BITS = 32;
+  private static final int IPV6_BITS = 128;
+
+  /**
+   * A node of the trie, which stands for the block of addresses that start with its prefix.
+   *
+   * <p>The nodes are only modified while the trie is built.
+   */
+  private static final class Node {
+    final long prefixHigh;
+    final long prefixLow;
+    final int prefixLength;
+    /** Whether the block of this node is in the set, in which case it has no children. */
+    boolean inSet;
+    @Nullable Node zero;
+    @Nullable Node one;
+
+    Node(long prefixHigh, long prefixLow, int prefixLength, boolean inSet) {
+      this.prefixHigh = prefixHigh;
+      this.prefixLow = prefixLow;
+      this.prefixLength = prefixLength;
+      this.inSet = inSet;
+    }
+  }
+
+  @Nullable private final Node ipv4Root;
+  @Nullable private final Node ipv6Root;
+
+  private CidrAddressBlockTrie(@Nullable Node ipv4Root, @Nullable Node ipv6Root) {
+    this.ipv4Root = ipv4Root;
+    this.ipv6Root = ipv6Root;
+  }
+
+  /** Returns a trie of the given blocks. */
+  public static CidrAddressBlockTrie create(Iterable<CidrAddressBlock> blocks) {
+    Node ipv4Root = null;
+    Node ipv6Root = null;
+    for (CidrAddressBlock block : blocks) {
+      byte[] bytes = block.getInetAddress().getAddress();
+      long high = high(bytes);
+      long low = low(bytes);
+      if (bytes.length * 8 == IPV4_BITS) {
+        ipv4Root = insert(ipv4Root, high, low, block.getNetmask());
+      } else {
+        ipv6Root = insert(ipv6Root, high, low, block.getNetmask());
+      }
+    }
+    return new CidrAddressBlockTrie(ipv4Root, ipv6Root);
+  }
+
+  /**
+   * Returns {@code true} if the supplied {@link InetAddress} is within any of the blocks, like
+   * {@link CidrAddressBlock#contains(InetAddress)} would for one of them.
+   */
+  public boolean contains(@Nullable InetAddress ipAddr) {
+    if (ipAddr == null) {
+      return false;
+    }
+    byte[] bytes = ipAddr.getAddress();
+    int addressBits = bytes.length * 8;
+    long high = high(bytes);
+    long low = low(bytes);
+    Node node = addressBits == IPV4_BITS ? ipv4Root : ipv6Root;
+    while (node != null
+        && commonPrefixLength(node.prefixHigh, node.prefixLow, high, low) >= node.prefixLength) {
+      if (node.inSet) {
+        return true;
+      }
+      // Only nodes that are in the set can have a prefix as long as an address.
+      node = bit(high, low, node.prefixLength) == 0 ? node.zero : node.one;
+    }
+    return false;
+  }
+
+  /** Returns {@code true} if there are no blocks in the trie. */
+  public boolean isEmpty() {
+    return ipv4Root == null && ipv6Root == null;
+  }
+
+  /**
+   * Inserts a block into the subtrie under a node, and returns the new root of the subtrie.
+   *
+   * <p>Blocks that are within a block of the subtrie are left out, and the blocks of the subtrie
+   * that are within the inserted block are dropped.
+   */
+  private static Node insert(@Nullable Node node, long high, long low, int length) {
+    if (node == null) {
+      return new Node(mask(high, length), mask(low, length - 64), length, true);
+    }
+    int common =
+        min(
+            commonPrefixLength(node.prefixHigh, node.prefixLow, high, low),
+            min(node.prefixLength, length));
+    if (common == node.prefixLength) {
+      if (node.inSet) {
+        return node;
+      }
+      if (length == node.prefixLength) {
+        node.inSet = true;
+        node.zero = null;
+        node.one = null;
+      } else if (bit(high, low, node.prefixLength) == 0) {
+        node.zero = insert(node.zero, high, low, length);
+      } else {
+        node.one = insert(node.one, high, low, length);
+      }
+      return node;
+    }
+    Node leaf = insert(null, high, low, length);
+    if (common == length) {
+      // The inserted block contains the whole subtrie.
+      return leaf;
+    }
+    Node branch = new Node(mask(high, common), mask(low, common - 64), common, false);
+    if (bit(high, low, common) == 0) {
+      branch.zero = leaf;
+      branch.one = node;
+    } else {
+      branch.zero = node;
+      branch.one = leaf;
+    }
+    return branch;
+  }
+
+  /** Returns the high 64 bits of an address. */
+  private static long high(byte[] bytes) {
+    long high = 0;
+    for (int i = 0; i < 8; i++) {
+      high = (high << 8) | (i < bytes.length ? bytes[i] & 0xff : 0);
+    }
+    return high;
+  }
+
+  /** Returns the low 64 bits of an address, which are all zeros for IPv4. */
+  private static long low(byte[] bytes) {
+    long low = 0;
+    for (int i = 8; i < bytes.length; i++) {
+      low = (low << 8) | (bytes[i] & 0xff);
+    }
+    return low;
+  }
+
+  /** Returns the given 64 bits with only the leading {@code length} of them kept. */
+  private static long mask(long bits, int length) {
+    if (length <= 0) {
+      return 0;
+    }
+    return length >= 64 ? bits : bits & (-1L << (64 - length));
+  }
+
+  /** Returns the number of leading bits that two addresses have in common. */
+  private static int commonPrefixLength(long high1, long low1, long high2, long low2) {
+    long difference = high1 ^ high2;
+    if (difference != 0) {
+      return Long.numberOfLeadingZeros(difference);
+    }
+    return 64 + Long.numberOfLeadingZeros(low1 ^ low2);
+  }
+
+  /** Returns the bit of an address at the given index, counted from the most significant one. */
+  private static long bit(long high, long low, int index) {
+    return index < 64 ? (high >>> (63 - index)) & 1 : (low >>> (127 - index)) & 1;
+  }
+}
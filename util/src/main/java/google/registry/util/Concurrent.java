@@ -21,6 +21,7 @@ import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.util.concurrent.Executors.newFixedThreadPool;
 
+import com.google.apphosting.api.ApiProxy;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.common.util.concurrent.Uninterruptibles;
@@ -96,5 +97,26 @@ public final class Concurrent {
     }
   }
 
+  /**
+   * Runs {@code task} on a new App Engine request thread, so that the calling request doesn't wait
+   * for it, or in the calling thread if no request thread can be created.
+   *
+   * <p>This can be used as the executor of {@link
+   * com.google.common.cache.CacheLoader#asyncReloading}, so that a request that triggers the
+   * refresh of a cache entry keeps using the old value instead of waiting for the reload.
+   */
+  public static void runOnRequestThread(Runnable task) {
+    ThreadFactory threadFactory =
+        ApiProxy.getCurrentEnvironment() != null ? currentRequestThreadFactory() : null;
+    Thread thread = (threadFactory == null) ? null : threadFactory.newThread(task);
+    if (thread == null) {
+      // As in transform(), default Java system threads can't interact with App Engine, so the task
+      // runs right away instead.
+      task.run();
+      return;
+    }
+    thread.start();
+  }
+
   private Concurrent() {}
 }
@@ -0,0 +1,138 @@
+// Copyright 2020 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package google.registry.util;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth.assertWithMessage;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.net.InetAddresses;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link CidrAddressBlockTrie}. */
+@RunWith(JUnit4.class)
+public class CidrAddressBlockTrieTest {
+
+  private static CidrAddressBlockTrie trie(String... blocks) {
+    return CidrAddressBlockTrie.create(
+        Stream.of(blocks).map(CidrAddressBlock::create).collect(toImmutableList()));
+  }
+
+  private static boolean contains(CidrAddressBlockTrie trie, String address) {
+    return trie.contains(InetAddresses.forString(address));
+  }
+
+  @Test
+  public void testEmpty() {
+    CidrAddressBlockTrie trie = trie();
+    assertThat(trie.isEmpty()).isTrue();
+    assertThat(contains(trie, "1.2.3.4")).isFalse();
+    assertThat(contains(trie, "2001:db8::1")).isFalse();
+    assertThat(trie.contains(null)).isFalse();
+  }
+
+  @Test
+  public void testIpv4() {
+    CidrAddressBlockTrie trie = trie("10.0.0.0/8", "192.168.1.0/24", "172.16.5.4");
+    assertThat(trie.isEmpty()).isFalse();
+    assertThat(contains(trie, "10.0.0.0")).isTrue();
+    assertThat(contains(trie, "10.255.255.255")).isTrue();
+    assertThat(contains(trie, "11.0.0.0")).isFalse();
+    assertThat(contains(trie, "192.168.1.77")).isTrue();
+    assertThat(contains(trie, "192.168.2.1")).isFalse();
+    assertThat(contains(trie, "172.16.5.4")).isTrue();
+    assertThat(contains(trie, "172.16.5.5")).isFalse();
+  }
+
+  @Test
+  public void testIpv6() {
+    CidrAddressBlockTrie trie = trie("2001:db8::/32", "2001:db9:1:2::/64", "::1");
+    assertThat(contains(trie, "2001:db8:ffff::1")).isTrue();
+    assertThat(contains(trie, "2001:db9:1:2:3:4:5:6")).isTrue();
+    assertThat(contains(trie, "2001:db9:1:3::")).isFalse();
+    assertThat(contains(trie, "::1")).isTrue();
+    assertThat(contains(trie, "::2")).isFalse();
+  }
+
+  @Test
+  public void testFamiliesKeptApart() {
+    CidrAddressBlockTrie trie = trie("0.0.0.0/0");
+    assertThat(contains(trie, "255.255.255.255")).isTrue();
+    assertThat(contains(trie, "::")).isFalse();
+    trie = trie("::/0");
+    assertThat(contains(trie, "ffff::")).isTrue();
+    assertThat(contains(trie, "0.0.0.0")).isFalse();
+  }
+
+  @Test
+  public void testNestedBlocks() {
+    // Blocks within other blocks, inserted in either order.
+    CidrAddressBlockTrie trie = trie("10.1.2.0/24", "10.0.0.0/8", "10.1.0.0/16");
+    assertThat(contains(trie, "10.200.0.1")).isTrue();
+    assertThat(contains(trie, "10.1.3.1")).isTrue();
+    trie = trie("10.0.0.0/8", "10.1.2.0/24");
+    assertThat(contains(trie, "10.200.0.1")).isTrue();
+    assertThat(contains(trie, "11.0.0.0")).isFalse();
+  }
+
+  @Test
+  public void testSiblingBlocks() {
+    CidrAddressBlockTrie trie = trie("10.0.0.0/9", "10.128.0.0/9", "10.0.0.0/24");
+    assertThat(contains(trie, "10.0.0.1")).isTrue();
+    assertThat(contains(trie, "10.127.0.1")).isTrue();
+    assertThat(contains(trie, "10.128.0.1")).isTrue();
+    assertThat(contains(trie, "9.255.255.255")).isFalse();
+  }
+
+  @Test
+  public void testMatchesCidrAddressBlock_randomBlocks() throws UnknownHostException {
+    Random random = new Random(1);
+    for (int bytes : new int[] {4, 16}) {
+      ImmutableList.Builder<CidrAddressBlock> blocks = new ImmutableList.Builder<>();
+      for (int i = 0; i < 50; i++) {
+        // Short prefixes from a small pool of addresses, so that blocks overlap and nest.
+        blocks.add(
+            CidrAddressBlock.create(
+                randomAddress(random, bytes, 4), random.nextInt(bytes * 8 + 1) / 2 + 4));
+      }
+      ImmutableList<CidrAddressBlock> blockList = blocks.build();
+      CidrAddressBlockTrie trie = CidrAddressBlockTrie.create(blockList);
+      for (int i = 0; i < 2000; i++) {
+        InetAddress address = randomAddress(random, bytes, 4);
+        assertWithMessage("Address %s in %s", address, blockList)
+            .that(trie.contains(address))
+            .isEqualTo(blockList.stream().anyMatch(block -> block.contains(address)));
+      }
+    }
+  }
+
+  /** Returns an address whose leading bytes are drawn from a few values. */
+  private static InetAddress randomAddress(Random random, int length, int values)
+      throws UnknownHostException {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = (byte) (i < length / 2 ? random.nextInt(values) : random.nextInt(256));
+    }
+    return InetAddress.getByAddress(bytes);
+  }
+}